@@ -0,0 +1,114 @@
+package org.jfunktor.core.events.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.impl.RxBus;
+import org.jfunktor.core.events.impl.RxBus.Priority;
+
+/**
+ * Latency of a control topic of a {@link RxBus} while producers flood a data
+ * topic, with the control topic in the HIGH lane and in the NORMAL one.
+ *
+ * The producers keep the drain busy with a backlog of up to {@value #BACKLOG}
+ * data events whose subscriber spends about a microsecond on each. A control event is published
+ * every 100 us and timed from its publication to its subscriber. In the HIGH
+ * lane it only waits for the data event being delivered, in the NORMAL lane
+ * for the whole backlog ahead of it. Every thread needs a core of its own for
+ * the latencies to be those of the bus rather than of the operating system
+ * scheduler. Not a unit test, run it with
+ * <pre>gradle runBenchmark -Pbenchmark=PriorityLaneBenchmark -PbenchmarkArgs="[controlEvents] [producers]"</pre>
+ */
+public class PriorityLaneBenchmark {
+
+	private static final int WORK_ITERATIONS = 200;
+
+	/**
+	 * data events published but not delivered yet, the producers wait beyond it
+	 */
+	private static final int BACKLOG = 10000;
+
+	private static final LongAdder sink = new LongAdder();
+
+	public static void main(String[] args) throws InterruptedException {
+		int controls = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int producers = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+
+		//warm up the code paths before measuring
+		run(Priority.HIGH,controls / 4,producers);
+
+		for(Priority priority : new Priority[]{Priority.HIGH,Priority.NORMAL}){
+			long[] latencies = run(priority,controls,producers);
+			Arrays.sort(latencies);
+			System.out.println(String.format("control in %-6s lane  p50 %,10.1f us  p99 %,10.1f us  max %,10.1f us",priority,
+					latencies[latencies.length / 2] / 1000.0,latencies[latencies.length * 99 / 100] / 1000.0,latencies[latencies.length - 1] / 1000.0));
+		}
+		System.out.println("cores "+Runtime.getRuntime().availableProcessors()+", checksum "+sink.sum());
+	}
+
+	/**
+	 * @return the latency of every control event in nanoseconds
+	 */
+	private static long[] run(Priority priority, int controls, int producers) throws InterruptedException {
+		RxBus<long[]> eventBus = new RxBus<long[]>("bench-"+priority).markPriority("control",priority);
+		long[] retVal = new long[controls];
+		LongAdder received = new LongAdder();
+		LongAdder published = new LongAdder();
+		LongAdder delivered = new LongAdder();
+		eventBus.subscribe("data",DeliveryMode.SYNC,evt->{
+			sink.add(work(evt[0]));
+			delivered.increment();
+		});
+		eventBus.subscribe("control",DeliveryMode.SYNC,evt->{
+			retVal[(int)evt[0]] = System.nanoTime() - evt[1];
+			received.increment();
+		});
+
+		Thread[] flooding = new Thread[producers];
+		for(int p = 0; p < producers; p++){
+			flooding[p] = new Thread(()->{
+				long i = 0;
+				while(!Thread.currentThread().isInterrupted()){
+					if(published.sum() - delivered.sum() >= BACKLOG){
+						Thread.yield();
+						continue;
+					}
+					published.increment();
+					eventBus.publish("data",new long[]{i++});
+				}
+			},"bench-producer-"+p);
+			flooding[p].start();
+		}
+		for(int i = 0; i < controls; i++){
+			long next = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(100);
+			while(System.nanoTime() < next){
+				//spin, a sleep would be far longer than the interval
+			}
+			eventBus.publish("control",new long[]{i,System.nanoTime()});
+		}
+		long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(5);
+		while(received.sum() < controls){
+			if(System.nanoTime() > deadline){
+				throw new IllegalStateException("Benchmark did not complete in time");
+			}
+			Thread.sleep(1);
+		}
+		for(Thread producer : flooding){
+			producer.interrupt();
+			producer.join();
+		}
+		eventBus.unSubscribeAll();
+		return retVal;
+	}
+
+	private static long work(long seed) {
+		long retVal = seed;
+		for(int i = 0; i < WORK_ITERATIONS; i++){
+			retVal = retVal * 6364136223846793005L + 1442695040888963407L;
+		}
+		return retVal & 1;
+	}
+
+}
@@ -0,0 +1,98 @@
+package org.jfunktor.core.events.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.impl.RxBus;
+import org.jfunktor.core.events.impl.ShardedBus;
+
+/**
+ * Throughput of a {@link ShardedBus} by number of shards, against a single {@link RxBus}.
+ *
+ * Every shard count is run with as many producers as shards over 64 topics, and
+ * each subscriber spends about a microsecond per event, so a shard is busy
+ * delivering rather than waiting for its queue. On a machine with enough cores
+ * the throughput grows close to linearly with the shards, up to the number of
+ * cores. Not a unit test, run it with
+ * <pre>gradle runBenchmark -Pbenchmark=ShardedBusBenchmark -PbenchmarkArgs="[eventsPerRun] [maxShards]"</pre>
+ */
+public class ShardedBusBenchmark {
+
+	private static final int TOPICS = 64;
+
+	private static final int WORK_ITERATIONS = 200;
+
+	//counters shared by the shards must not be a point of contention themselves
+	private static final LongAdder sink = new LongAdder();
+
+	public static void main(String[] args) throws InterruptedException {
+		int events = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		int maxShards = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+		//warm up the code paths before measuring
+		run(new ShardedBus<>("warmup",maxShards),maxShards,events / 4);
+
+		double single = run(new RxBus<>("single",RxBus.PublishMode.PER_TOPIC),1,events);
+		System.out.println(String.format("RxBus PER_TOPIC      %,12.0f events/s",single));
+		double base = 0;
+		for(int shards = 1; shards <= maxShards; shards = shards < maxShards && shards * 2 > maxShards ? maxShards : shards * 2){
+			double rate = run(new ShardedBus<>("bench-"+shards,shards),shards,events);
+			if(shards == 1){
+				base = rate;
+			}
+			System.out.println(String.format("ShardedBus %3d shards %,12.0f events/s  x%.2f",shards,rate,rate / base));
+		}
+		System.out.println("cores "+Runtime.getRuntime().availableProcessors()+", checksum "+sink.sum());
+	}
+
+	/**
+	 * @return events delivered per second
+	 */
+	private static double run(EventBus<long[]> eventBus, int producers, int events)
+			throws InterruptedException {
+		LongAdder delivered = new LongAdder();
+		for(int t = 0; t < TOPICS; t++){
+			eventBus.subscribe("bench.topic"+t,evt->{
+				sink.add(work(evt[0]));
+				delivered.increment();
+			});
+		}
+
+		String[] topics = new String[TOPICS];
+		for(int t = 0; t < TOPICS; t++){
+			topics[t] = "bench.topic"+t;
+		}
+
+		long start = System.nanoTime();
+		int perProducer = events / producers;
+		for(int p = 0; p < producers; p++){
+			int producer = p;
+			int count = p == producers - 1 ? events - perProducer * (producers - 1) : perProducer;
+			new Thread(()->{
+				for(int i = 0; i < count; i++){
+					eventBus.publish(topics[(i * producers + producer) % TOPICS],new long[]{i});
+				}
+			},"bench-producer-"+p).start();
+		}
+		long deadline = start + TimeUnit.MINUTES.toNanos(5);
+		while(delivered.sum() < events){
+			if(System.nanoTime() > deadline){
+				throw new IllegalStateException("Benchmark did not complete in time");
+			}
+			Thread.sleep(1);
+		}
+		long elapsed = System.nanoTime() - start;
+		eventBus.unSubscribeAll();
+		return events * (double)TimeUnit.SECONDS.toNanos(1) / elapsed;
+	}
+
+	private static long work(long seed) {
+		long retVal = seed;
+		for(int i = 0; i < WORK_ITERATIONS; i++){
+			retVal = retVal * 6364136223846793005L + 1442695040888963407L;
+		}
+		return retVal & 1;
+	}
+
+}
@@ -0,0 +1,91 @@
+package org.jfunktor.core.events.benchmarks;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.api.EventBus.OverflowPolicy;
+import org.jfunktor.core.events.api.EventCodec;
+import org.jfunktor.core.events.impl.RxBus;
+import org.jfunktor.core.events.impl.SocketBridge;
+
+/**
+ * Throughput of a single {@link SocketBridge} connection between two buses of this
+ * process over the loopback interface, with and without lingering small batches.
+ *
+ * The events are longs so that the codec costs next to nothing and the bridge
+ * itself is measured. Not a unit test, run it with
+ * <pre>gradle runBenchmark -Pbenchmark=SocketBridgeBenchmark -PbenchmarkArgs="[eventsPerRun]"</pre>
+ */
+public class SocketBridgeBenchmark {
+
+	private static final EventCodec<Long> CODEC = new EventCodec<Long>(){
+
+		@Override
+		public byte[] encode(Long event) {
+			long value = event;
+			byte[] retVal = new byte[8];
+			for(int i = 0; i < 8; i++){
+				retVal[i] = (byte)(value >>> (56 - i * 8));
+			}
+			return retVal;
+		}
+
+		@Override
+		public Long decode(byte[] data, int offset, int length) {
+			long retVal = 0;
+			for(int i = 0; i < 8; i++){
+				retVal = (retVal << 8) | (data[offset + i] & 0xff);
+			}
+			return retVal;
+		}
+	};
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int events = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+
+		//warm up the code paths before measuring
+		run(SocketBridge.DEFAULT_LINGER_MICROS,events / 4);
+
+		for(long linger : new long[]{0,SocketBridge.DEFAULT_LINGER_MICROS}){
+			run(linger,events);
+		}
+	}
+
+	private static void run(long linger, int events) throws IOException, InterruptedException {
+		RxBus<Long> local = new RxBus<>("bench-local");
+		RxBus<Long> remote = new RxBus<>("bench-remote");
+		LongAdder delivered = new LongAdder();
+		remote.subscribe("bench.topic",DeliveryMode.SYNC,evt->delivered.increment());
+
+		try(SocketBridge<Long> receiving = new SocketBridge<>("bench-receiving",remote,CODEC)
+					.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(),0));
+				SocketBridge<Long> sending = new SocketBridge<>("bench-sending",local,CODEC)
+					.withLinger(linger,TimeUnit.MICROSECONDS)
+					//every event is counted, none may be dropped
+					.connect(receiving.getLocalAddress(),SocketBridge.DEFAULT_QUEUE_CAPACITY,OverflowPolicy.BLOCK,"bench.topic")){
+
+			long start = System.nanoTime();
+			for(long i = 0; i < events; i++){
+				local.publish("bench.topic",i);
+			}
+			long deadline = start + TimeUnit.MINUTES.toNanos(5);
+			while(delivered.sum() < events){
+				if(System.nanoTime() > deadline){
+					throw new IllegalStateException("Benchmark did not complete in time");
+				}
+				Thread.sleep(1);
+			}
+			long elapsed = System.nanoTime() - start;
+			System.out.println(String.format("linger %4d us %,12.0f events/s, %,.1f events per write",
+					linger,events * (double)TimeUnit.SECONDS.toNanos(1) / elapsed,sending.getSent() / (double)sending.getBatches()));
+		}finally{
+			local.unSubscribeAll();
+			remote.unSubscribeAll();
+		}
+	}
+
+}
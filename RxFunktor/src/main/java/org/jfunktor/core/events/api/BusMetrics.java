@@ -0,0 +1,113 @@
+package org.jfunktor.core.events.api;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of the counters of a bus, see {@link EventBus#getMetrics()}.
+ *
+ * Counters only ever grow, so a rate is the difference between two snapshots
+ * divided by the time between them.
+ */
+public final class BusMetrics {
+
+	private String busName;
+	private long takenAt;
+	private long published;
+	private long deadEvents;
+	private long failedDispatches;
+	private List<TopicMetrics> topics;
+	private List<SubscriptionMetrics> deadTopicSubscriptions;
+
+	/**
+	 * @param takenAt {@link System#nanoTime()} when the snapshot was taken
+	 * @param published number of events published to the bus
+	 * @param deadEvents number of events published to a topic without subscribers
+	 */
+	public BusMetrics(String busName, long takenAt, long published, long deadEvents, List<TopicMetrics> topics,
+			List<SubscriptionMetrics> deadTopicSubscriptions) {
+		this(busName,takenAt,published,deadEvents,0,topics,deadTopicSubscriptions);
+	}
+
+	/**
+	 * @param failedDispatches number of events whose journaling or dispatch failed inside the bus
+	 */
+	public BusMetrics(String busName, long takenAt, long published, long deadEvents, long failedDispatches,
+			List<TopicMetrics> topics, List<SubscriptionMetrics> deadTopicSubscriptions) {
+		this.busName = busName;
+		this.takenAt = takenAt;
+		this.published = published;
+		this.deadEvents = deadEvents;
+		this.failedDispatches = failedDispatches;
+		this.topics = Collections.unmodifiableList(topics);
+		this.deadTopicSubscriptions = Collections.unmodifiableList(deadTopicSubscriptions);
+	}
+
+	public String getBusName() {
+		return busName;
+	}
+
+	public long getTakenAt() {
+		return takenAt;
+	}
+
+	public long getPublished() {
+		return published;
+	}
+
+	public long getDeadEvents() {
+		return deadEvents;
+	}
+
+	/**
+	 * @return number of events the bus failed to journal or to dispatch, each failure being logged
+	 */
+	public long getFailedDispatches() {
+		return failedDispatches;
+	}
+
+	public List<TopicMetrics> getTopics() {
+		return topics;
+	}
+
+	public List<SubscriptionMetrics> getDeadTopicSubscriptions() {
+		return deadTopicSubscriptions;
+	}
+
+	/**
+	 * @return the metrics of the topic, null if the bus does not know it
+	 */
+	public TopicMetrics getTopic(String name) {
+		for(TopicMetrics topic : topics){
+			if(topic.getTopic().equalsIgnoreCase(name)){
+				return topic;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param since an earlier snapshot of the same bus
+	 * @return events published to the topic per second between the two snapshots
+	 */
+	public double getPublishRate(String topic, BusMetrics since) {
+		double seconds = (double)(takenAt - since.takenAt) / TimeUnit.SECONDS.toNanos(1);
+		if(seconds <= 0){
+			return 0;
+		}
+		return (publishedTo(topic) - since.publishedTo(topic)) / seconds;
+	}
+
+	private long publishedTo(String name) {
+		TopicMetrics topic = getTopic(name);
+		return topic == null ? 0 : topic.getPublished();
+	}
+
+	@Override
+	public String toString() {
+		return "BusMetrics [busName=" + busName + ", published=" + published + ", deadEvents=" + deadEvents
+				+ ", failedDispatches=" + failedDispatches + ", topics=" + topics + "]";
+	}
+
+}
@@ -0,0 +1,33 @@
+package org.jfunktor.core.events.api;
+
+import rx.Subscription;
+
+/**
+ * The handle returned by the EventBus for every subscription.
+ * Besides unsubscribing, it tells how far the subscriber is behind the bus.
+ */
+public interface BusSubscription extends Subscription {
+
+	/**
+	 * @return the topic subscribed to, null for dead topic subscriptions
+	 */
+	String getTopic();
+
+	/**
+	 * @return number of events published to the subscriber and not yet delivered to it
+	 */
+	int getQueueDepth();
+
+	/**
+	 * @return number of events dropped for this subscriber by its overflow policy
+	 */
+	long getDropped();
+
+	/**
+	 * @return true while the subscriber is quarantined for falling behind, its events are then set aside
+	 */
+	default boolean isQuarantined() {
+		return false;
+	}
+
+}
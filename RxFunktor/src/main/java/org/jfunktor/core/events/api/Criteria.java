@@ -0,0 +1,231 @@
+package org.jfunktor.core.events.api;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Conditions on the details of an event, see
+ * {@link EventBus#subscribe(String, Criteria, EventBus.DeliveryMode, java.util.function.Consumer)}.
+ *
+ * An event matches when every condition holds: a detail equal to a value, or a
+ * detail within a range. A detail missing from the event fails its conditions,
+ * and criteria without any condition match every event. Numbers are compared by
+ * value whatever their type, so 5, 5L and 5.0 are equal; other values are equal
+ * when they are equals() and in range when they are Comparable of the same class
+ * as the bounds.
+ *
+ * A detail has at most one equality and one range, so a later condition on the
+ * same detail narrows the range or replaces the value. The criteria are read
+ * once when subscribing, changing them afterwards does not change the subscription.
+ */
+public class Criteria {
+
+	/**
+	 * The values a detail may take, a missing bound is unbounded
+	 */
+	public static final class Range{
+
+		private final Object lower;
+		private final boolean lowerInclusive;
+		private final Object upper;
+		private final boolean upperInclusive;
+
+		Range(Object lower,boolean lowerInclusive,Object upper,boolean upperInclusive){
+			this.lower = lower;
+			this.lowerInclusive = lowerInclusive;
+			this.upper = upper;
+			this.upperInclusive = upperInclusive;
+		}
+
+		Range withLower(Object lower,boolean inclusive){
+			return new Range(lower,inclusive,upper,upperInclusive);
+		}
+
+		Range withUpper(Object upper,boolean inclusive){
+			return new Range(lower,lowerInclusive,upper,inclusive);
+		}
+
+		/**
+		 * @return false if the value is null or cannot be compared with the bounds
+		 */
+		public boolean contains(Object value) {
+			if(value == null){
+				return false;
+			}
+			if(lower != null){
+				Integer order = compare(value,lower);
+				if(order == null || order < 0 || (order == 0 && !lowerInclusive)){
+					return false;
+				}
+			}
+			if(upper != null){
+				Integer order = compare(value,upper);
+				if(order == null || order > 0 || (order == 0 && !upperInclusive)){
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public String toString() {
+			return (lowerInclusive ? "[" : "(") + lower + "," + upper + (upperInclusive ? "]" : ")");
+		}
+	};
+
+	private static final Range UNBOUNDED = new Range(null,false,null,false);
+
+	private Map<String,Object> equalities = new LinkedHashMap<>();
+	private Map<String,Range> ranges = new LinkedHashMap<>();
+
+	public Criteria() {
+	}
+
+	/**
+	 * A copy of the conditions, unaffected by later changes of the original
+	 */
+	public Criteria(Criteria from) {
+		equalities.putAll(from.equalities);
+		ranges.putAll(from.ranges);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the value is null
+	 */
+	public Criteria equalTo(String detail, Object value) {
+		if(value == null){
+			throw new IllegalArgumentException(String.format("Detail %s cannot be compared with null",detail));
+		}
+		equalities.put(detail,canonical(value));
+		return this;
+	}
+
+	public Criteria atLeast(String detail, Comparable<?> min) {
+		ranges.put(detail,rangeOf(detail,min).withLower(min,true));
+		return this;
+	}
+
+	public Criteria greaterThan(String detail, Comparable<?> min) {
+		ranges.put(detail,rangeOf(detail,min).withLower(min,false));
+		return this;
+	}
+
+	public Criteria atMost(String detail, Comparable<?> max) {
+		ranges.put(detail,rangeOf(detail,max).withUpper(max,true));
+		return this;
+	}
+
+	public Criteria lessThan(String detail, Comparable<?> max) {
+		ranges.put(detail,rangeOf(detail,max).withUpper(max,false));
+		return this;
+	}
+
+	/**
+	 * Both bounds included
+	 */
+	public Criteria between(String detail, Comparable<?> min, Comparable<?> max) {
+		ranges.put(detail,rangeOf(detail,min).withLower(min,true).withUpper(max,true));
+		return this;
+	}
+
+	private Range rangeOf(String detail, Object bound) {
+		if(bound == null){
+			throw new IllegalArgumentException(String.format("Detail %s cannot be compared with null",detail));
+		}
+		return ranges.getOrDefault(detail,UNBOUNDED);
+	}
+
+	/**
+	 * @return the values of the equality conditions by detail, numbers in their canonical form
+	 */
+	public Map<String,Object> getEqualities() {
+		return Collections.unmodifiableMap(equalities);
+	}
+
+	public Map<String,Range> getRanges() {
+		return Collections.unmodifiableMap(ranges);
+	}
+
+	/**
+	 * @return number of conditions, an event matches when all of them hold
+	 */
+	public int size() {
+		return equalities.size() + ranges.size();
+	}
+
+	/**
+	 * Evaluates the criteria on their own, the bus matches all the criteria of a topic at once instead
+	 */
+	public boolean matches(Map<?,?> details) {
+		if(size() == 0){
+			return true;
+		}
+		if(details == null){
+			return false;
+		}
+		for(Map.Entry<String,Object> equality : equalities.entrySet()){
+			Object value = details.get(equality.getKey());
+			if(value == null || !equality.getValue().equals(canonical(value))){
+				return false;
+			}
+		}
+		for(Map.Entry<String,Range> range : ranges.entrySet()){
+			if(!range.getValue().contains(details.get(range.getKey()))){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The form values are compared in for equality: an integral number is a Long,
+	 * any other number a Double unless it is integral, anything else is as is
+	 */
+	public static Object canonical(Object value) {
+		if(!(value instanceof Number) || value instanceof Long){
+			return value;
+		}
+		if(isIntegral(value)){
+			return ((Number)value).longValue();
+		}
+		double number = ((Number)value).doubleValue();
+		if(number == Math.rint(number) && Math.abs(number) < Long.MAX_VALUE){
+			return (long)number;
+		}
+		return number;
+	}
+
+	private static boolean isIntegral(Object value) {
+		return value instanceof Integer || value instanceof Short || value instanceof Byte
+				|| (value instanceof BigInteger && ((BigInteger)value).bitLength() < 64);
+	}
+
+	/**
+	 * @return the order of the values, null if they cannot be compared
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Integer compare(Object value, Object bound) {
+		if(value instanceof Number && bound instanceof Number){
+			if((value instanceof Long || isIntegral(value)) && (bound instanceof Long || isIntegral(bound))){
+				return Long.compare(((Number)value).longValue(),((Number)bound).longValue());
+			}
+			if(value instanceof BigDecimal && bound instanceof BigDecimal){
+				return ((BigDecimal)value).compareTo((BigDecimal)bound);
+			}
+			return Double.compare(((Number)value).doubleValue(),((Number)bound).doubleValue());
+		}
+		if(value instanceof Comparable && value.getClass() == bound.getClass()){
+			return ((Comparable)value).compareTo(bound);
+		}
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return "Criteria [equalities=" + equalities + ", ranges=" + ranges + "]";
+	}
+
+}
@@ -1,35 +1,248 @@
 package org.jfunktor.core.events.api;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
+import rx.Observable;
 import rx.Observer;
 import rx.Subscription;
 
 
 
 public interface EventBus<T> {
-	
+
 	public enum DeliveryMode{
 		SYNC,
-		ASYNC
+		ASYNC,
+		/** over several ordered lanes picked by a key, see {@link EventBus#subscribe(String, Function, int, Consumer)} */
+		PARTITIONED,
+		/** like ASYNC, with the subscriber called on virtual threads when the runtime has them */
+		VIRTUAL
+	}
+
+	/**
+	 * What an ASYNC subscription does with a new event when its queue is full
+	 */
+	public enum OverflowPolicy{
+		/** the publisher waits until the subscriber makes room */
+		BLOCK,
+		/** the new event is dropped */
+		DROP_NEWEST,
+		/** the oldest queued event is dropped to make room for the new one */
+		DROP_OLDEST,
+		/** the subscriber is terminated with a MissingBackpressureException */
+		ERROR
 	}
 
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	/**
+	 * number of distinct topics a bus interns before it refuses new ones
+	 */
+	public static final int DEFAULT_MAX_TOPICS = 1 << 16;
+
+	/**
+	 * policy of the ASYNC subscriptions made without one. It never blocks, as a
+	 * single stalled subscriber would otherwise hold up every publisher of the bus
+	 */
+	public static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.DROP_OLDEST;
+
 
 	EventBus<T> unSubscribeAll();
 
-	Subscription subscribe(String string, Consumer<T> consumer);
+	BusSubscription subscribe(String string, Consumer<T> consumer);
 
 	EventBus<T> publish(String string, T evt);
 
-	Subscription subscribe(String string, DeliveryMode async, Consumer<T> consumer);
+	/**
+	 * Publishes all the events to the topic in one go, in iteration order.
+	 * The batch is routed once and every subscriber gets its events back to back.
+	 */
+	EventBus<T> publishAll(String topic, Collection<T> evts);
+
+	/**
+	 * An ASYNC subscriber gets its events through a queue of
+	 * {@link #DEFAULT_QUEUE_CAPACITY} events, unless the implementation says
+	 * otherwise. Once the queue is full the oldest events are dropped and counted
+	 * by {@link BusSubscription#getDropped()}, the publishers never wait for a
+	 * slow subscriber. A subscriber which must not lose events subscribes with
+	 * {@link #subscribe(String, int, OverflowPolicy, Consumer)} and
+	 * {@link OverflowPolicy#BLOCK} instead.
+	 */
+	BusSubscription subscribe(String string, DeliveryMode async, Consumer<T> consumer);
+
+	/**
+	 * ASYNC subscription holding at most capacity undelivered events
+	 */
+	BusSubscription subscribe(String topic, int capacity, OverflowPolicy policy, Consumer<T> consumer);
+
+
+	/**
+	 * ASYNC subscription which receives the events of the topic in chunks.
+	 * A chunk is handed to the consumer once it holds maxBatch events or maxDelay
+	 * has passed since the previous one, whichever comes first.
+	 */
+	BusSubscription subscribeBatched(String topic, int maxBatch, long maxDelay, TimeUnit unit, Consumer<List<T>> consumer);
+
+
+	BusSubscription subscribeForDeadTopics(DeliveryMode async,Consumer<T> consumer);
+
+	BusSubscription subscribeForDeadTopicsWithObserver(DeliveryMode async, Observer<T> consumer);
+
+	BusSubscription subscribeWithObserver(String topic, DeliveryMode async, Observer<T> consumer);
+
+	/**
+	 * ASYNC subscription holding at most capacity undelivered events
+	 */
+	BusSubscription subscribeWithObserver(String topic, int capacity, OverflowPolicy policy, Observer<T> consumer);
+
+
+	/**
+	 * PARTITIONED subscription delivering the events over the given number of lanes.
+	 * The events with the same key are delivered in order on the same lane, the
+	 * events of different keys in parallel, so the consumer is called from several
+	 * threads at once. Every lane holds up to {@link #DEFAULT_QUEUE_CAPACITY}
+	 * events under the {@link #DEFAULT_OVERFLOW_POLICY}. A key extractor which
+	 * throws fails the subscriber.
+	 */
+	BusSubscription subscribe(String topic, Function<T,?> keyExtractor, int lanes, Consumer<T> consumer);
+
+	/**
+	 * @see #subscribe(String, Function, int, Consumer)
+	 */
+	BusSubscription subscribeWithObserver(String topic, Function<T,?> keyExtractor, int lanes, Observer<T> consumer);
+
+	/**
+	 * PARTITIONED subscription whose every lane holds at most capacity undelivered events
+	 * @see #subscribe(String, Function, int, Consumer)
+	 */
+	BusSubscription subscribe(String topic, Function<T,?> keyExtractor, int lanes, int capacity, OverflowPolicy policy,
+			Consumer<T> consumer);
+
+	/**
+	 * @see #subscribe(String, Function, int, int, OverflowPolicy, Consumer)
+	 */
+	BusSubscription subscribeWithObserver(String topic, Function<T,?> keyExtractor, int lanes, int capacity,
+			OverflowPolicy policy, Observer<T> consumer);
+
+
+	/**
+	 * ASYNC subscription which only ever holds the latest event per key.
+	 * While the consumer is busy, a new event replaces the undelivered event of
+	 * its key, so the consumer always gets the freshest event of a key and the
+	 * backlog is bounded by the number of keys. The replaced events are counted
+	 * as dropped.
+	 */
+	BusSubscription subscribeConflated(String topic, Function<T,?> keyExtractor, Consumer<T> consumer);
+
+	/**
+	 * @see #subscribeConflated(String, Function, Consumer)
+	 */
+	BusSubscription subscribeConflatedWithObserver(String topic, Function<T,?> keyExtractor, Observer<T> consumer);
+
+
+	/**
+	 * Subscription receiving only the events of the topic whose details meet the
+	 * criteria. The criteria of all the subscriptions of a topic are indexed
+	 * together, so an event is matched once against the index and a subscriber
+	 * is only called with the events it wants.
+	 * @throws IllegalArgumentException if the topic is a wildcard pattern or the mode PARTITIONED
+	 */
+	BusSubscription subscribe(String topic, Criteria criteria, DeliveryMode async, Consumer<T> consumer);
+
+	/**
+	 * @see #subscribe(String, Criteria, DeliveryMode, Consumer)
+	 */
+	BusSubscription subscribeWithObserver(String topic, Criteria criteria, DeliveryMode async, Observer<T> consumer);
+
+
+	/**
+	 * Resolves the topic once into a handle of this bus. Publishing with the handle
+	 * skips the normalization and lookup of the topic name on every event.
+	 *
+	 * A topic resolved, or subscribed to, stays interned for the lifetime of the
+	 * bus, as its handle may be held anywhere. Up to {@link #DEFAULT_MAX_TOPICS}
+	 * topics are interned unless the implementation lets this be changed, so
+	 * per entity topics are better expressed as criteria or partition keys on a
+	 * shared topic.
+	 * @throws IllegalStateException if the bus already holds its maximum of topics
+	 */
+	Topic topic(String name);
+
+	/**
+	 * @throws IllegalArgumentException if the topic was resolved by another bus
+	 */
+	EventBus<T> publish(Topic topic, T evt);
+
+	BusSubscription subscribe(Topic topic, DeliveryMode async, Consumer<T> consumer);
+
+	BusSubscription subscribeWithObserver(Topic topic, DeliveryMode async, Observer<T> consumer);
+
+
+	/**
+	 * Publishes the request to the topic when the returned observable is
+	 * subscribed to, then emits the first reply given to it with
+	 * {@link #reply(Object, Object)} and completes. Every subscription to the
+	 * observable sends the request again and awaits a reply of its own.
+	 * The observable fails with a TimeoutException if no reply comes in time.
+	 *
+	 * A request is correlated with its reply by identity, unless the
+	 * implementation is given a correlation key, which a request and its copies
+	 * share, so that copies made by a transport or a replay can be replied to.
+	 */
+	Observable<T> request(String topic, T evt, long timeout, TimeUnit unit);
+
+	/**
+	 * Replies to a request received from the bus, the request being the very
+	 * event received or, with a correlation key, a copy of it. A reply answers
+	 * the oldest request awaiting one under the same key.
+	 * @return false if the request is not awaited, because it timed out or was answered already
+	 */
+	boolean reply(T request, T response);
+
+
+	/**
+	 * Publishes the event to the topic once the delay has passed, at most a tick
+	 * of the timer of the bus late. The pending events are held by a timer wheel,
+	 * so scheduling and cancelling one takes constant time whatever the number
+	 * pending. The events still pending when the bus is shut down are not published.
+	 * @return the pending publication, unsubscribing it cancels the publication
+	 */
+	Subscription publishAfter(String topic, T evt, long delay, TimeUnit unit);
+
+	/**
+	 * Publishes the event to the topic at the given time, right away if it is past
+	 * @see #publishAfter(String, Object, long, TimeUnit)
+	 */
+	Subscription publishAt(String topic, T evt, Instant at);
+
+
+	/**
+	 * Demand driven view of the topic: every subscriber to the returned observable
+	 * gets the events published to the topic from then on, but never more than it
+	 * has requested. Up to capacity events wait for demand, beyond that the policy
+	 * applies. The observable follows the backpressure protocol of RxJava, which is
+	 * the Reactive Streams one, and can be handed to Reactive Streams code through
+	 * RxJavaReactiveStreams.
+	 */
+	Observable<T> asPublisher(String topic, int capacity, OverflowPolicy policy);
 
-	
-	Subscription subscribeForDeadTopics(DeliveryMode async,Consumer<T> consumer);
+	/**
+	 * @see #asPublisher(String, int, OverflowPolicy)
+	 */
+	Observable<T> asPublisher(String topic);
 
-	Subscription subscribeForDeadTopicsWithObserver(DeliveryMode async, Observer<T> consumer);
 
-	Subscription subscribeWithObserver(String topic, DeliveryMode async, Observer<T> consumer);
+	/**
+	 * Takes a snapshot of the counters of the bus: events published per topic,
+	 * and for every subscription the events delivered, queued and dropped and the
+	 * time the subscriber takes per event. The counters are always on.
+	 */
+	BusMetrics getMetrics();
 
-	
 
-}
\ No newline at end of file
+}
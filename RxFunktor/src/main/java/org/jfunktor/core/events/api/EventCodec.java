@@ -0,0 +1,13 @@
+package org.jfunktor.core.events.api;
+
+/**
+ * Turns the events of a bus into bytes and back, for the buses which keep their
+ * events outside of the heap such as a journaled bus
+ */
+public interface EventCodec<T> {
+
+	byte[] encode(T event);
+
+	T decode(byte[] data, int offset, int length);
+
+}
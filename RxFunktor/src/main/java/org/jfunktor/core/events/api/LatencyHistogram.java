@@ -0,0 +1,126 @@
+package org.jfunktor.core.events.api;
+
+/**
+ * Distribution of delivery latencies, in nanoseconds.
+ *
+ * Latencies are counted in log-linear buckets, 16 per power of two, so a
+ * percentile is accurate to 1/16th of its value whatever its magnitude. Two
+ * histograms merge by adding up their buckets, which is how the latency of a
+ * topic is built from the latencies of its subscriptions.
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Number of buckets covering every latency up to Long.MAX_VALUE
+	 */
+	public static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	public static final LatencyHistogram EMPTY = new LatencyHistogram(new long[BUCKET_COUNT],0,0);
+
+	private long[] counts;
+	private long count;
+	private long sum;
+	private long max;
+
+	/**
+	 * @param counts number of latencies per bucket, as laid out by {@link #bucketOf(long)}
+	 * @param sum total of the latencies counted
+	 * @param max highest latency counted
+	 */
+	public LatencyHistogram(long[] counts, long sum, long max) {
+		if(counts.length != BUCKET_COUNT){
+			throw new IllegalArgumentException(String.format("A histogram has %d buckets, %d given",BUCKET_COUNT,counts.length));
+		}
+		this.counts = counts;
+		this.sum = sum;
+		this.max = max;
+		for(long bucket : counts){
+			count += bucket;
+		}
+	}
+
+	/**
+	 * @return the bucket counting the latency
+	 */
+	public static int bucketOf(long nanos) {
+		if(nanos < SUB_BUCKETS){
+			return (int)Math.max(nanos,0);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int)(nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * @return the highest latency counted by the bucket
+	 */
+	private static long upperBoundOf(int bucket) {
+		if(bucket < 2 * SUB_BUCKETS){
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lower = (long)(SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lower + (1L << shift) - 1;
+	}
+
+	public LatencyHistogram merge(LatencyHistogram other) {
+		long[] merged = new long[BUCKET_COUNT];
+		for(int i = 0; i < BUCKET_COUNT; i++){
+			merged[i] = counts[i] + other.counts[i];
+		}
+		return new LatencyHistogram(merged,sum + other.sum,Math.max(max,other.max));
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the latency under which the given percentage of the latencies fall, 0 if none was counted
+	 */
+	public long getPercentile(double percentile) {
+		if(count == 0){
+			return 0;
+		}
+		long rank = Math.max((long)Math.ceil(percentile / 100 * count),1);
+		long seen = 0;
+		for(int i = 0; i < BUCKET_COUNT; i++){
+			seen += counts[i];
+			if(seen >= rank){
+				return Math.min(upperBoundOf(i),max);
+			}
+		}
+		return max;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return count == 0 ? 0 : (double)sum / count;
+	}
+
+	public long getP50() {
+		return getPercentile(50);
+	}
+
+	public long getP99() {
+		return getPercentile(99);
+	}
+
+	public long getP999() {
+		return getPercentile(99.9);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("LatencyHistogram [count=%d, p50=%d, p99=%d, p999=%d, max=%d]",count,getP50(),getP99(),getP999(),max);
+	}
+
+}
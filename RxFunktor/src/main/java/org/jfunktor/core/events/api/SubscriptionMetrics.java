@@ -0,0 +1,75 @@
+package org.jfunktor.core.events.api;
+
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+
+/**
+ * What a subscription has received so far, as of a {@link BusMetrics} snapshot
+ */
+public final class SubscriptionMetrics {
+
+	private long id;
+	private String topic;
+	private DeliveryMode mode;
+	private long delivered;
+	private int queueDepth;
+	private long dropped;
+	private LatencyHistogram latency;
+
+	/**
+	 * @param id number of the subscription within its bus
+	 * @param topic topic or pattern subscribed to, null for a dead topic subscription
+	 * @param delivered number of calls made to the subscriber
+	 * @param latency time the subscriber took per call
+	 */
+	public SubscriptionMetrics(long id, String topic, DeliveryMode mode, long delivered, int queueDepth, long dropped,
+			LatencyHistogram latency) {
+		this.id = id;
+		this.topic = topic;
+		this.mode = mode;
+		this.delivered = delivered;
+		this.queueDepth = queueDepth;
+		this.dropped = dropped;
+		this.latency = latency;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	public DeliveryMode getMode() {
+		return mode;
+	}
+
+	public long getDelivered() {
+		return delivered;
+	}
+
+	/**
+	 * @see BusSubscription#getQueueDepth()
+	 */
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	/**
+	 * @see BusSubscription#getDropped()
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	@Override
+	public String toString() {
+		return "SubscriptionMetrics [id=" + id + ", topic=" + topic + ", mode=" + mode + ", delivered=" + delivered
+				+ ", queueDepth=" + queueDepth + ", dropped=" + dropped + ", latency=" + latency + "]";
+	}
+
+}
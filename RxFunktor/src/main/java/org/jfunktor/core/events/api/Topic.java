@@ -0,0 +1,36 @@
+package org.jfunktor.core.events.api;
+
+/**
+ * A topic resolved by an EventBus, see {@link EventBus#topic(String)}.
+ *
+ * The handle is interned by the bus which created it: the same name always
+ * resolves to the same handle and the id is the index of the topic in the
+ * routing table of that bus. A handle cannot be used on another bus.
+ */
+public final class Topic {
+
+	private final String name;
+	private final int id;
+
+	public Topic(String name, int id) {
+		this.name = name;
+		this.id = id;
+	}
+
+	/**
+	 * @return the normalized name of the topic
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	@Override
+	public String toString() {
+		return "Topic [name=" + name + ", id=" + id + "]";
+	}
+
+}
@@ -0,0 +1,77 @@
+package org.jfunktor.core.events.api;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What was published to a topic and delivered to its subscriptions, as of a
+ * {@link BusMetrics} snapshot. A pattern subscribed to has its own entry, with
+ * nothing published to it.
+ */
+public final class TopicMetrics {
+
+	private String topic;
+	private long published;
+	private long delivered;
+	private int queueDepth;
+	private long dropped;
+	private LatencyHistogram latency = LatencyHistogram.EMPTY;
+	private List<SubscriptionMetrics> subscriptions;
+
+	/**
+	 * The totals of the topic are added up from its subscriptions
+	 * @param published number of events published to the topic
+	 */
+	public TopicMetrics(String topic, long published, List<SubscriptionMetrics> subscriptions) {
+		this.topic = topic;
+		this.published = published;
+		this.subscriptions = Collections.unmodifiableList(subscriptions);
+		for(SubscriptionMetrics subscription : subscriptions){
+			delivered += subscription.getDelivered();
+			queueDepth += subscription.getQueueDepth();
+			dropped += subscription.getDropped();
+			latency = latency.merge(subscription.getLatency());
+		}
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	public long getPublished() {
+		return published;
+	}
+
+	/**
+	 * @return number of calls made to all the subscribers of the topic
+	 */
+	public long getDelivered() {
+		return delivered;
+	}
+
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * @return the latencies of all the subscribers of the topic
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	public List<SubscriptionMetrics> getSubscriptions() {
+		return subscriptions;
+	}
+
+	@Override
+	public String toString() {
+		return "TopicMetrics [topic=" + topic + ", published=" + published + ", delivered=" + delivered
+				+ ", queueDepth=" + queueDepth + ", dropped=" + dropped + ", latency=" + latency + "]";
+	}
+
+}
@@ -0,0 +1,320 @@
+package org.jfunktor.core.events.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+import org.jfunktor.core.events.api.EventBus.OverflowPolicy;
+
+import rx.Observer;
+import rx.Scheduler;
+import rx.exceptions.MissingBackpressureException;
+import rx.functions.Action0;
+
+/**
+ * Delivers the events of one ASYNC subscriber from a bounded queue.
+ *
+ * The bus hands events over through {@link #onNext(Object)} and the overflow
+ * policy decides what happens when the queue is full. The queue is drained on a
+ * worker of the given scheduler, one event at a time, so the subscriber sees the
+ * events in the order they were queued.
+ *
+ * An event can be queued in the lane of its priority, which the bus only does
+ * for a subscriber of several topics as the events of one topic share their
+ * priority. The events of the urgent lanes are delivered before those queued
+ * earlier in the lanes below, as picked by a {@link LanePicker} which keeps the
+ * lower lanes from starving. Each lane holds up to the capacity and is only
+ * created once an event of its priority comes, a subscriber which only ever
+ * gets NORMAL events has a single queue.
+ *
+ * A {@link Quarantine} can divert the publishers away from the queue while the
+ * subscriber catches up, a publisher blocked on a full queue is then diverted
+ * as well at its next recheck.
+ */
+class AsyncDelivery<T> implements QueuedDelivery<T> {
+
+	private static final long BLOCK_RECHECK_MILLIS = 100;
+
+	private static final int LANES = RxBus.Priority.values().length;
+
+	static final int NORMAL_LANE = RxBus.Priority.NORMAL.ordinal();
+
+	/**
+	 * the NORMAL lane
+	 */
+	private BlockingQueue<T> queue;
+	/**
+	 * the queue of every lane, null for a lane no event came to yet
+	 */
+	private AtomicReferenceArray<BlockingQueue<T>> lanes = new AtomicReferenceArray<>(LANES);
+	private volatile boolean laned;
+	private LanePicker picker = new LanePicker(LANES);
+	private IntPredicate ready = lane->{
+		BlockingQueue<T> laneQueue = lanes.get(lane);
+		return laneQueue != null && !laneQueue.isEmpty();
+	};
+	private int capacity;
+	private OverflowPolicy policy;
+	private Observer<T> observer;
+	private Scheduler.Worker worker;
+	private Action0 drainAction = ()->drain();
+	private Consumer<AsyncDelivery<T>> onOverflow;
+
+	private AtomicInteger wip = new AtomicInteger();
+	private AtomicLong dropped = new AtomicLong();
+	private volatile boolean done;
+	private volatile Throwable error;
+	private volatile boolean cancelled;
+	private volatile Consumer<T> diversion;
+
+	/**
+	 * number of events taken from the queue, written by the draining thread only
+	 */
+	private volatile long taken;
+
+	/**
+	 * @param capacity maximum number of undelivered events
+	 * @param policy what to do with an event which does not fit in the queue
+	 * @param observer the subscriber
+	 * @param scheduler where the subscriber is called
+	 * @param onOverflow called once when the subscriber fails with an overflow error
+	 */
+	AsyncDelivery(int capacity,OverflowPolicy policy,Observer<T> observer,Scheduler scheduler,Consumer<AsyncDelivery<T>> onOverflow){
+		if(capacity <= 0){
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		queue = new ArrayBlockingQueue<>(capacity);
+		lanes.set(NORMAL_LANE,queue);
+		this.capacity = capacity;
+		this.policy = policy;
+		this.observer = observer;
+		this.onOverflow = onOverflow;
+		worker = scheduler.createWorker();
+	}
+
+	@Override
+	public void onNext(T event) {
+		onNext(event,NORMAL_LANE);
+	}
+
+	/**
+	 * @param lane the ordinal of the priority of the event
+	 */
+	void onNext(T event, int lane) {
+		if(done || cancelled){
+			return;
+		}
+		Consumer<T> diverted = diversion;
+		if(diverted != null){
+			diverted.accept(event);
+			return;
+		}
+		BlockingQueue<T> target = laneOf(lane);
+		switch(policy){
+			case BLOCK:
+				put(target,event);
+				break;
+			case DROP_NEWEST:
+				if(!target.offer(event)){
+					dropped.incrementAndGet();
+				}
+				break;
+			case DROP_OLDEST:
+				while(!target.offer(event)){
+					if(target.poll() != null){
+						dropped.incrementAndGet();
+					}
+				}
+				break;
+			default:
+				if(!target.offer(event)){
+					dropped.incrementAndGet();
+					error = new MissingBackpressureException(String.format("Subscriber queue of capacity %d is full",capacity));
+					done = true;
+					clear();
+					onOverflow.accept(this);
+				}
+		}
+		schedule();
+	}
+
+	private BlockingQueue<T> laneOf(int lane) {
+		BlockingQueue<T> retVal = lanes.get(lane);
+		if(retVal == null){
+			lanes.compareAndSet(lane,null,new ArrayBlockingQueue<>(capacity));
+			retVal = lanes.get(lane);
+			laned = true;
+		}
+		return retVal;
+	}
+
+	private void put(BlockingQueue<T> target, T event) {
+		try{
+			//wake up now and then so that a cancelled subscriber does not hold the publisher
+			while(!cancelled && !target.offer(event,BLOCK_RECHECK_MILLIS,TimeUnit.MILLISECONDS)){
+				Consumer<T> diverted = diversion;
+				if(diverted != null){
+					diverted.accept(event);
+					return;
+				}
+			}
+			if(cancelled){
+				//the room may have been made by the subscription ending
+				target.clear();
+			}
+		}catch(InterruptedException e){
+			dropped.incrementAndGet();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Queues the event if there is room, whatever the policy
+	 * @return false if the queue is full
+	 */
+	boolean offer(T event) {
+		if(cancelled || !queue.offer(event)){
+			return false;
+		}
+		schedule();
+		return true;
+	}
+
+	/**
+	 * @param diversion takes the published events instead of the queue, null to queue them again
+	 */
+	void divert(Consumer<T> diversion) {
+		this.diversion = diversion;
+	}
+
+	long getTaken() {
+		return taken;
+	}
+
+	@Override
+	public void onCompleted() {
+		done = true;
+		schedule();
+	}
+
+	@Override
+	public void onError(Throwable e) {
+		error = e;
+		done = true;
+		schedule();
+	}
+
+	private void schedule() {
+		if(wip.getAndIncrement() == 0){
+			worker.schedule(drainAction);
+		}
+	}
+
+	private void drain() {
+		int missed = 1;
+		do{
+			T next;
+			while(!cancelled && (next = poll()) != null){
+				taken++;
+				try{
+					observer.onNext(next);
+				}catch(Throwable e){
+					fail(e);
+					return;
+				}
+			}
+			if(cancelled){
+				clear();
+				return;
+			}
+			if(done && isEmpty()){
+				terminate();
+				return;
+			}
+			missed = wip.addAndGet(-missed);
+		}while(missed != 0);
+	}
+
+	private T poll() {
+		if(!laned){
+			return queue.poll();
+		}
+		int lane = picker.pick(ready);
+		return lane < 0 ? null : lanes.get(lane).poll();
+	}
+
+	private boolean isEmpty() {
+		for(int i = 0; i < LANES; i++){
+			BlockingQueue<T> laneQueue = lanes.get(i);
+			if(laneQueue != null && !laneQueue.isEmpty()){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void clear() {
+		for(int i = 0; i < LANES; i++){
+			BlockingQueue<T> laneQueue = lanes.get(i);
+			if(laneQueue != null){
+				laneQueue.clear();
+			}
+		}
+	}
+
+	private void terminate() {
+		cancelled = true;
+		if(error != null){
+			observer.onError(error);
+		}else{
+			observer.onCompleted();
+		}
+		worker.unsubscribe();
+	}
+
+	/**
+	 * Ends the subscription of a subscriber which threw, so that the publishers
+	 * are not left waiting on a queue nobody drains any more
+	 */
+	private void fail(Throwable e) {
+		cancelled = true;
+		clear();
+		worker.unsubscribe();
+		observer.onError(e);
+	}
+
+	@Override
+	public void unsubscribe() {
+		cancelled = true;
+		clear();
+		worker.unsubscribe();
+	}
+
+	@Override
+	public boolean isUnsubscribed() {
+		return cancelled;
+	}
+
+	@Override
+	public int getQueueDepth() {
+		int retVal = 0;
+		for(int i = 0; i < LANES; i++){
+			BlockingQueue<T> laneQueue = lanes.get(i);
+			if(laneQueue != null){
+				retVal += laneQueue.size();
+			}
+		}
+		return retVal;
+	}
+
+	@Override
+	public long getDropped() {
+		return dropped.get();
+	}
+
+}
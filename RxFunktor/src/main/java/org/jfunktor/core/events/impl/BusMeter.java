@@ -0,0 +1,117 @@
+package org.jfunktor.core.events.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jfunktor.core.events.api.BusMetrics;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.api.SubscriptionMetrics;
+import org.jfunktor.core.events.api.TopicMetrics;
+
+import rx.Observer;
+
+/**
+ * The counters of a bus which do not belong to a topic route: events published
+ * to topics never interned, dead events, events the bus failed to dispatch, and
+ * the meters of the subscriptions.
+ *
+ * Meters are registered once their subscription is made and dropped by the
+ * first snapshot after they are unsubscribed, so subscribing and unsubscribing
+ * stay off the publishing path.
+ */
+class BusMeter {
+
+	/**
+	 * By default one delivery in 16 is timed
+	 */
+	static final int DEFAULT_SAMPLING = 16;
+
+	private String busName;
+	private volatile int sampleMask = DEFAULT_SAMPLING - 1;
+
+	private LongAdder unrouted = new LongAdder();
+	private LongAdder dead = new LongAdder();
+	private LongAdder failed = new LongAdder();
+	private AtomicLong ids = new AtomicLong();
+	private Set<SubscriptionMeter<?>> meters = ConcurrentHashMap.newKeySet();
+
+	BusMeter(String busName) {
+		this.busName = busName;
+	}
+
+	/**
+	 * @param everyNth one delivery in everyNth is timed, rounded up to a power of 2
+	 */
+	void setSampling(int everyNth) {
+		if(everyNth <= 0){
+			throw new IllegalArgumentException(String.format("Latency sampling must be positive, %d given",everyNth));
+		}
+		sampleMask = Math.max(Integer.highestOneBit(everyNth - 1) << 1,1) - 1;
+	}
+
+	/**
+	 * Creates the meter of a new subscription, the subscription is then given to
+	 * {@link SubscriptionMeter#attach}, which registers the meter
+	 * @param topic the normalized topic or pattern, null for dead topics
+	 */
+	<E> SubscriptionMeter<E> meter(String topic, DeliveryMode mode, Observer<E> observer) {
+		return new SubscriptionMeter<>(ids.incrementAndGet(),topic,mode,observer,sampleMask,meters);
+	}
+
+	/**
+	 * Counts events published to a topic the bus never interned
+	 */
+	void unrouted(long count) {
+		unrouted.add(count);
+	}
+
+	void dead(long count) {
+		dead.add(count);
+	}
+
+	/**
+	 * Counts events whose dispatch failed inside the bus
+	 */
+	void failed(long count) {
+		failed.add(count);
+	}
+
+	/**
+	 * @param published events published per interned topic
+	 */
+	BusMetrics snapshot(Map<String,Long> published) {
+		Map<String,List<SubscriptionMetrics>> byTopic = new TreeMap<>();
+		List<SubscriptionMetrics> deadTopicSubscriptions = new ArrayList<>();
+		Iterator<SubscriptionMeter<?>> iterator = meters.iterator();
+		while(iterator.hasNext()){
+			SubscriptionMeter<?> meter = iterator.next();
+			if(meter.getSubscription().isUnsubscribed()){
+				iterator.remove();
+				continue;
+			}
+			if(meter.getTopic() == null){
+				deadTopicSubscriptions.add(meter.snapshot());
+			}else{
+				byTopic.computeIfAbsent(meter.getTopic(),topic->new ArrayList<>()).add(meter.snapshot());
+			}
+		}
+		published.keySet().forEach(topic->byTopic.computeIfAbsent(topic,key->new ArrayList<>()));
+
+		List<TopicMetrics> topics = new ArrayList<>(byTopic.size());
+		long total = unrouted.sum();
+		for(Map.Entry<String,List<SubscriptionMetrics>> entry : byTopic.entrySet()){
+			long count = published.getOrDefault(entry.getKey(),0L);
+			total += count;
+			topics.add(new TopicMetrics(entry.getKey(),count,entry.getValue()));
+		}
+		return new BusMetrics(busName,System.nanoTime(),total,dead.sum(),failed.sum(),topics,deadTopicSubscriptions);
+	}
+
+}
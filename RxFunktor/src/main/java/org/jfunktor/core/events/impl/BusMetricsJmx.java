@@ -0,0 +1,89 @@
+package org.jfunktor.core.events.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.api.SubscriptionMetrics;
+import org.jfunktor.core.events.api.TopicMetrics;
+
+/**
+ * Exposes the metrics of a bus on the platform MBean server, under
+ * org.jfunktor.events:type=EventBus,name=&lt;bus name&gt;
+ */
+public final class BusMetricsJmx {
+
+	public static final String DOMAIN = "org.jfunktor.events";
+
+	private static class BusMetricsBean implements BusMetricsMXBean{
+
+		private EventBus<?> bus;
+
+		BusMetricsBean(EventBus<?> bus){
+			this.bus = bus;
+		}
+
+		@Override
+		public String getBusName() {
+			return bus.getMetrics().getBusName();
+		}
+
+		@Override
+		public long getPublished() {
+			return bus.getMetrics().getPublished();
+		}
+
+		@Override
+		public long getDeadEvents() {
+			return bus.getMetrics().getDeadEvents();
+		}
+
+		@Override
+		public long getFailedDispatches() {
+			return bus.getMetrics().getFailedDispatches();
+		}
+
+		@Override
+		public List<TopicMetrics> getTopics() {
+			return bus.getMetrics().getTopics();
+		}
+
+		@Override
+		public List<SubscriptionMetrics> getDeadTopicSubscriptions() {
+			return bus.getMetrics().getDeadTopicSubscriptions();
+		}
+	};
+
+	private BusMetricsJmx() {
+	}
+
+	/**
+	 * @return the name the bus was registered under
+	 * @throws IllegalStateException if a bus of the same name is already registered
+	 */
+	public static ObjectName register(EventBus<?> bus) {
+		try{
+			ObjectName retVal = nameOf(bus.getMetrics().getBusName());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new BusMetricsBean(bus),retVal);
+			return retVal;
+		}catch(JMException e){
+			throw new IllegalStateException(String.format("Could not register the metrics of bus %s",bus.getMetrics().getBusName()),e);
+		}
+	}
+
+	public static void unregister(ObjectName name) {
+		try{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		}catch(JMException e){
+			throw new IllegalStateException(String.format("Could not unregister %s",name),e);
+		}
+	}
+
+	public static ObjectName nameOf(String busName) throws JMException {
+		return new ObjectName(DOMAIN+":type=EventBus,name="+ObjectName.quote(busName));
+	}
+
+}
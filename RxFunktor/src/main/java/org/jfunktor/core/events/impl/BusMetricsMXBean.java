@@ -0,0 +1,26 @@
+package org.jfunktor.core.events.impl;
+
+import java.util.List;
+
+import org.jfunktor.core.events.api.SubscriptionMetrics;
+import org.jfunktor.core.events.api.TopicMetrics;
+
+/**
+ * The metrics of a bus as seen over JMX, every read takes a new snapshot
+ * @see BusMetricsJmx
+ */
+public interface BusMetricsMXBean {
+
+	String getBusName();
+
+	long getPublished();
+
+	long getDeadEvents();
+
+	long getFailedDispatches();
+
+	List<TopicMetrics> getTopics();
+
+	List<SubscriptionMetrics> getDeadTopicSubscriptions();
+
+}
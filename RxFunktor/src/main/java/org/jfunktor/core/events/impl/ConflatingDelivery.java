@@ -0,0 +1,153 @@
+package org.jfunktor.core.events.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import rx.Observer;
+import rx.Scheduler;
+
+/**
+ * Delivers only the latest event per key to a subscriber which cannot keep up.
+ *
+ * The pending events are kept in a map by key: a new event replaces the pending
+ * event of its key, so at most one event per key waits whatever the rate of the
+ * topic. Keys are delivered in the order they first became pending, one event at
+ * a time on a worker of the given scheduler, so the subscriber always gets the
+ * freshest event of a key when it is ready for it.
+ */
+class ConflatingDelivery<T> implements QueuedDelivery<T> {
+
+	private static final Object NULL_KEY = new Object();
+
+	private Function<T,?> keyExtractor;
+	private Observer<T> observer;
+	private Scheduler.Worker worker;
+
+	private Map<Object,T> pending = new LinkedHashMap<>();
+	private AtomicInteger wip = new AtomicInteger();
+	private AtomicLong conflated = new AtomicLong();
+	private volatile boolean done;
+	private volatile Throwable error;
+	private volatile boolean cancelled;
+
+	/**
+	 * @param keyExtractor key of an event, a pending event is replaced by the next one of the same key
+	 * @param observer the subscriber
+	 * @param scheduler where the subscriber is called
+	 */
+	ConflatingDelivery(Function<T,?> keyExtractor,Observer<T> observer,Scheduler scheduler){
+		this.keyExtractor = keyExtractor;
+		this.observer = observer;
+		worker = scheduler.createWorker();
+	}
+
+	@Override
+	public void onNext(T event) {
+		if(done || cancelled){
+			return;
+		}
+		Object key = keyExtractor.apply(event);
+		synchronized(pending){
+			if(pending.put(key == null ? NULL_KEY : key,event) != null){
+				conflated.incrementAndGet();
+			}
+		}
+		schedule();
+	}
+
+	@Override
+	public void onCompleted() {
+		done = true;
+		schedule();
+	}
+
+	@Override
+	public void onError(Throwable e) {
+		error = e;
+		done = true;
+		schedule();
+	}
+
+	private void schedule() {
+		if(wip.getAndIncrement() == 0){
+			worker.schedule(()->drain());
+		}
+	}
+
+	private T poll() {
+		synchronized(pending){
+			Iterator<T> iterator = pending.values().iterator();
+			if(!iterator.hasNext()){
+				return null;
+			}
+			T retVal = iterator.next();
+			iterator.remove();
+			return retVal;
+		}
+	}
+
+	private void drain() {
+		int missed = 1;
+		do{
+			T next;
+			while(!cancelled && (next = poll()) != null){
+				observer.onNext(next);
+			}
+			if(cancelled){
+				return;
+			}
+			if(done && getQueueDepth() == 0){
+				terminate();
+				return;
+			}
+			missed = wip.addAndGet(-missed);
+		}while(missed != 0);
+	}
+
+	private void terminate() {
+		cancelled = true;
+		if(error != null){
+			observer.onError(error);
+		}else{
+			observer.onCompleted();
+		}
+		worker.unsubscribe();
+	}
+
+	@Override
+	public void unsubscribe() {
+		cancelled = true;
+		synchronized(pending){
+			pending.clear();
+		}
+		worker.unsubscribe();
+	}
+
+	@Override
+	public boolean isUnsubscribed() {
+		return cancelled;
+	}
+
+	/**
+	 * @return number of keys with a pending event
+	 */
+	@Override
+	public int getQueueDepth() {
+		synchronized(pending){
+			return pending.size();
+		}
+	}
+
+	/**
+	 * @return number of events replaced by a newer event of their key before being delivered
+	 */
+	@Override
+	public long getDropped() {
+		return conflated.get();
+	}
+
+}
@@ -0,0 +1,185 @@
+package org.jfunktor.core.events.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.jfunktor.core.events.api.Criteria;
+import org.jfunktor.core.events.api.Event;
+
+/**
+ * The criteria subscriptions of one topic, indexed by the details they test.
+ *
+ * The equality conditions of all the subscriptions are kept in a hash map per
+ * detail, from the value to the subscriptions expecting it, and the ranges in a
+ * list per detail. An event is matched once against the index: each indexed
+ * detail of the event is looked up, every condition found to hold counts a hit
+ * for its subscription, and the subscriptions with as many hits as conditions
+ * get the event. A subscription whose conditions fail is never called.
+ *
+ * The index is immutable and replaced as a whole when a subscription is added
+ * or removed, so it is matched without locking from any number of publishers.
+ */
+class CriteriaIndex<S> {
+
+	private static final CriteriaIndex<?> EMPTY = new CriteriaIndex<>(Collections.emptyList(),Collections.emptyList());
+
+	private static final int[] NONE = new int[0];
+
+	private static class RangeCondition{
+
+		private int entry;
+		private Criteria.Range range;
+
+		RangeCondition(int entry,Criteria.Range range){
+			this.entry = entry;
+			this.range = range;
+		}
+	};
+
+	private List<Criteria> criteria;
+	private List<S> sinks;
+	private int[] conditions;
+	private int[] unconditional;
+	private Map<Object,Map<Object,int[]>> equalities = new HashMap<>();
+	private Map<Object,RangeCondition[]> ranges = new HashMap<>();
+
+	private CriteriaIndex(List<Criteria> criteria,List<S> sinks){
+		this.criteria = criteria;
+		this.sinks = sinks;
+		conditions = new int[sinks.size()];
+		int[] always = new int[sinks.size()];
+		int alwaysCount = 0;
+		Map<Object,List<RangeCondition>> rangeLists = new HashMap<>();
+		for(int entry = 0; entry < sinks.size(); entry++){
+			Criteria current = criteria.get(entry);
+			conditions[entry] = current.size();
+			if(current.size() == 0){
+				always[alwaysCount++] = entry;
+			}
+			for(Map.Entry<String,Object> equality : current.getEqualities().entrySet()){
+				Map<Object,int[]> byValue = equalities.computeIfAbsent(equality.getKey(),key->new HashMap<>());
+				int[] entries = byValue.getOrDefault(equality.getValue(),NONE);
+				entries = Arrays.copyOf(entries,entries.length + 1);
+				entries[entries.length - 1] = entry;
+				byValue.put(equality.getValue(),entries);
+			}
+			for(Map.Entry<String,Criteria.Range> range : current.getRanges().entrySet()){
+				rangeLists.computeIfAbsent(range.getKey(),key->new ArrayList<>()).add(new RangeCondition(entry,range.getValue()));
+			}
+		}
+		unconditional = Arrays.copyOf(always,alwaysCount);
+		rangeLists.forEach((detail,list)->ranges.put(detail,list.toArray(new RangeCondition[list.size()])));
+	}
+
+	@SuppressWarnings("unchecked")
+	static <S> CriteriaIndex<S> empty() {
+		return (CriteriaIndex<S>)EMPTY;
+	}
+
+	/**
+	 * The details of an event are those of an {@link Event}, or the event itself
+	 * if it is a map. Any other event has no details and only matches criteria
+	 * without conditions.
+	 */
+	static Map<?,?> detailsOf(Object event) {
+		if(event instanceof Event){
+			return ((Event)event).getEventDetails();
+		}
+		return event instanceof Map ? (Map<?,?>)event : null;
+	}
+
+	boolean isEmpty() {
+		return sinks.isEmpty();
+	}
+
+	List<S> getSinks() {
+		return Collections.unmodifiableList(sinks);
+	}
+
+	/**
+	 * @return a new index with the subscription added
+	 */
+	CriteriaIndex<S> with(Criteria added, S sink) {
+		List<Criteria> newCriteria = new ArrayList<>(criteria);
+		List<S> newSinks = new ArrayList<>(sinks);
+		//the subscription keeps the conditions it was made with
+		newCriteria.add(new Criteria(added));
+		newSinks.add(sink);
+		return new CriteriaIndex<>(newCriteria,newSinks);
+	}
+
+	/**
+	 * @return a new index without the subscription, this index if it does not hold it
+	 */
+	CriteriaIndex<S> without(S sink) {
+		int entry = sinks.indexOf(sink);
+		if(entry < 0){
+			return this;
+		}
+		List<Criteria> newCriteria = new ArrayList<>(criteria);
+		List<S> newSinks = new ArrayList<>(sinks);
+		newCriteria.remove(entry);
+		newSinks.remove(entry);
+		return new CriteriaIndex<>(newCriteria,newSinks);
+	}
+
+	/**
+	 * Hands the subscriptions matching the event to the target, in the order they were added
+	 */
+	void match(Object event, Consumer<S> target) {
+		if(sinks.isEmpty()){
+			return;
+		}
+		Map<?,?> details = detailsOf(event);
+		int[] hits = null;
+		int[] matched = null;
+		int matchCount = 0;
+		if(details != null && !details.isEmpty()){
+			hits = new int[sinks.size()];
+			matched = new int[sinks.size()];
+			for(Map.Entry<Object,Map<Object,int[]>> equality : equalities.entrySet()){
+				Object value = details.get(equality.getKey());
+				if(value != null){
+					int[] entries = equality.getValue().get(Criteria.canonical(value));
+					if(entries != null){
+						for(int entry : entries){
+							if(++hits[entry] == conditions[entry]){
+								matched[matchCount++] = entry;
+							}
+						}
+					}
+				}
+			}
+			for(Map.Entry<Object,RangeCondition[]> range : ranges.entrySet()){
+				Object value = details.get(range.getKey());
+				if(value != null){
+					for(RangeCondition condition : range.getValue()){
+						if(condition.range.contains(value) && ++hits[condition.entry] == conditions[condition.entry]){
+							matched[matchCount++] = condition.entry;
+						}
+					}
+				}
+			}
+		}
+		if(unconditional.length > 0){
+			if(matched == null){
+				matched = new int[unconditional.length];
+			}
+			System.arraycopy(unconditional,0,matched,matchCount,unconditional.length);
+			matchCount += unconditional.length;
+		}
+		if(matchCount == 0){
+			return;
+		}
+		Arrays.sort(matched,0,matchCount);
+		for(int i = 0; i < matchCount; i++){
+			target.accept(sinks.get(matched[i]));
+		}
+	}
+
+}
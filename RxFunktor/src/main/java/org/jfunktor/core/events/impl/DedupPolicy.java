@@ -0,0 +1,94 @@
+package org.jfunktor.core.events.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Which events a {@link RxBus} takes for repeats and for how long it remembers
+ * them, see {@link RxBus#withDedup(DedupPolicy)}
+ */
+public class DedupPolicy<T> {
+
+	public static final long DEFAULT_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+	public static final int DEFAULT_BUCKETS = 6;
+
+	public static final int DEFAULT_MAX_KEYS = 100000;
+
+	private Function<T,?> keyExtractor;
+	private long windowMillis = DEFAULT_WINDOW_MILLIS;
+	private int buckets = DEFAULT_BUCKETS;
+	private int maxKeys = DEFAULT_MAX_KEYS;
+	private double falsePositiveRate;
+
+	/**
+	 * @param keyExtractor gives the idempotency key of an event, equal for the copies
+	 * of an event and null for an event never to be taken for a repeat
+	 */
+	public DedupPolicy(Function<T,?> keyExtractor) {
+		this.keyExtractor = keyExtractor;
+	}
+
+	/**
+	 * An event is a repeat if an event with the same key was published within the window
+	 */
+	public DedupPolicy<T> withWindow(long window, TimeUnit unit) {
+		this.windowMillis = unit.toMillis(window);
+		return this;
+	}
+
+	/**
+	 * The window slides a bucket at a time, the keys of the oldest bucket being
+	 * forgotten all at once, so the window lasts between buckets - 1 and buckets
+	 * bucket lengths
+	 */
+	public DedupPolicy<T> withBuckets(int buckets) {
+		this.buckets = buckets;
+		return this;
+	}
+
+	/**
+	 * Number of keys remembered per bucket, so the memory used is bounded by as
+	 * many keys times the buckets. Once a bucket is full, the keys of the next
+	 * events of the bucket are not remembered and their repeats get through.
+	 */
+	public DedupPolicy<T> withMaxKeys(int maxKeys) {
+		this.maxKeys = maxKeys;
+		return this;
+	}
+
+	/**
+	 * Remembers the keys in Bloom filters sized for the maximum number of keys
+	 * instead of sets: the memory used is fixed and much smaller, but an event
+	 * is taken for a repeat at the given rate when it is not
+	 * @param falsePositiveRate between 0 and 1, 0 to remember the keys themselves
+	 */
+	public DedupPolicy<T> withFalsePositiveRate(double falsePositiveRate) {
+		this.falsePositiveRate = falsePositiveRate;
+		return this;
+	}
+
+	public Function<T,?> getKeyExtractor() {
+		return keyExtractor;
+	}
+
+	public long getWindowMillis() {
+		return windowMillis;
+	}
+
+	public int getBuckets() {
+		return buckets;
+	}
+
+	public int getMaxKeys() {
+		return maxKeys;
+	}
+
+	/**
+	 * @return 0 if the keys themselves are remembered
+	 */
+	public double getFalsePositiveRate() {
+		return falsePositiveRate;
+	}
+
+}
@@ -0,0 +1,241 @@
+package org.jfunktor.core.events.impl;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Remembers the idempotency keys of the events published over a sliding window
+ * of time, so that a {@link RxBus} can drop their repeats.
+ *
+ * The window is cut into buckets of equal length, each holding the keys first
+ * seen while it was the current one. A bucket is emptied when its turn comes
+ * round again, so the keys are forgotten a bucket at a time and the memory is
+ * bounded by the keys a bucket may hold. The keys are kept either as they are, in
+ * concurrent sets, or as bits of Bloom filters whose size does not depend on
+ * the keys at all. Publishers check and add keys concurrently, an add to a Bloom
+ * filter only locks the stripe of its key and moving on to a new bucket takes a
+ * lock of its own.
+ */
+abstract class DedupWindow<T> {
+
+	/**
+	 * The keys of one bucket of time
+	 */
+	abstract static class Bucket{
+
+		final long generation;
+
+		Bucket(long generation){
+			this.generation = generation;
+		}
+
+		abstract boolean contains(Object key,long hash);
+
+		/**
+		 * @return false if the key was there already
+		 */
+		abstract boolean add(Object key,long hash);
+	};
+
+	/**
+	 * Keys remembered as they are, up to a maximum per bucket
+	 */
+	static class HashWindow<T> extends DedupWindow<T>{
+
+		private int maxKeys;
+
+		HashWindow(DedupPolicy<T> policy){
+			super(policy);
+			maxKeys = policy.getMaxKeys();
+		}
+
+		@Override
+		Bucket newBucket(long generation){
+			return new Bucket(generation){
+
+				private Set<Object> keys = ConcurrentHashMap.newKeySet();
+				private AtomicInteger size = new AtomicInteger();
+
+				@Override
+				boolean contains(Object key,long hash){
+					return keys.contains(key);
+				}
+
+				@Override
+				boolean add(Object key,long hash){
+					if(keys.contains(key)){
+						return false;
+					}
+					if(size.get() >= maxKeys){
+						//full, the key is not remembered
+						return true;
+					}
+					if(keys.add(key)){
+						size.incrementAndGet();
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+	};
+
+	/**
+	 * Keys remembered as the bits of a Bloom filter per bucket. The false positive
+	 * rate is shared out between the buckets, as a key is looked up in all of them.
+	 *
+	 * The bits of a key are set one at a time, so two publishers adding the same
+	 * key at once could each set one of them first and both take the key as new.
+	 * The adds of a key therefore take the lock of one of a few stripes picked
+	 * by its hash, which keeps the adds of different keys apart.
+	 */
+	static class BloomWindow<T> extends DedupWindow<T>{
+
+		private static final int STRIPES = 64;
+
+		private int bits;
+		private int hashes;
+		private Object[] stripes = new Object[STRIPES];
+
+		BloomWindow(DedupPolicy<T> policy){
+			super(policy);
+			double keys = policy.getMaxKeys();
+			double rate = policy.getFalsePositiveRate() / policy.getBuckets();
+			double optimal = Math.ceil(-keys * Math.log(rate) / (Math.log(2) * Math.log(2)));
+			if(optimal > Integer.MAX_VALUE - 64){
+				throw new IllegalArgumentException(String.format("A Bloom filter for %.0f keys at a false positive rate of %g is too large",keys,rate));
+			}
+			bits = ((int)optimal + 63) & ~63;
+			hashes = Math.max(1,(int)Math.round(bits / keys * Math.log(2)));
+			for(int i = 0; i < STRIPES; i++){
+				stripes[i] = new Object();
+			}
+		}
+
+		@Override
+		Bucket newBucket(long generation){
+			return new Bucket(generation){
+
+				private AtomicLongArray words = new AtomicLongArray(bits / 64);
+
+				@Override
+				boolean contains(Object key,long hash){
+					int h1 = (int)hash;
+					//odd, so that the hashes of a key never all fall on the same bit
+					int h2 = (int)(hash >>> 32) | 1;
+					for(int i = 0; i < hashes; i++){
+						int bit = Math.floorMod(h1 + i * h2,bits);
+						if((words.get(bit >>> 6) & (1L << bit)) == 0){
+							return false;
+						}
+					}
+					return true;
+				}
+
+				@Override
+				boolean add(Object key,long hash){
+					int h1 = (int)hash;
+					int h2 = (int)(hash >>> 32) | 1;
+					boolean retVal = false;
+					//the bits of other keys share the words, so they are still set with a CAS
+					synchronized(stripes[(int)(hash >>> 58)]){
+						for(int i = 0; i < hashes; i++){
+							int bit = Math.floorMod(h1 + i * h2,bits);
+							long mask = 1L << bit;
+							long word;
+							do{
+								word = words.get(bit >>> 6);
+							}while((word & mask) == 0 && !words.compareAndSet(bit >>> 6,word,word | mask));
+							retVal |= (word & mask) == 0;
+						}
+					}
+					return retVal;
+				}
+			};
+		}
+	};
+
+	private Function<T,?> keyExtractor;
+	private long bucketNanos;
+	private AtomicReferenceArray<Bucket> buckets;
+
+	DedupWindow(DedupPolicy<T> policy){
+		keyExtractor = policy.getKeyExtractor();
+		buckets = new AtomicReferenceArray<>(policy.getBuckets());
+		bucketNanos = Math.max(1,TimeUnit.MILLISECONDS.toNanos(policy.getWindowMillis()) / policy.getBuckets());
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the policy makes no sense
+	 */
+	static <T> DedupWindow<T> create(DedupPolicy<T> policy) {
+		if(policy.getWindowMillis() <= 0 || policy.getBuckets() < 2 || policy.getMaxKeys() <= 0){
+			throw new IllegalArgumentException(String.format("Cannot remember %d keys over %d ms in %d buckets, a window takes at least 2 buckets",
+					policy.getMaxKeys(),policy.getWindowMillis(),policy.getBuckets()));
+		}
+		double rate = policy.getFalsePositiveRate();
+		if(rate < 0 || rate >= 1){
+			throw new IllegalArgumentException(String.format("False positive rate %g is not between 0 and 1",rate));
+		}
+		return rate > 0 ? new BloomWindow<>(policy) : new HashWindow<>(policy);
+	}
+
+	abstract Bucket newBucket(long generation);
+
+	/**
+	 * Remembers the key of the event
+	 * @return true if an event with the same key was seen within the window
+	 */
+	boolean isRepeat(T evt) {
+		Object key = keyExtractor.apply(evt);
+		if(key == null){
+			return false;
+		}
+		long hash = mix(key.hashCode());
+		long generation = Math.floorDiv(System.nanoTime(),bucketNanos);
+		Bucket current = current(generation);
+		for(int i = 0; i < buckets.length(); i++){
+			Bucket bucket = buckets.get(i);
+			if(bucket != null && bucket != current && generation - bucket.generation < buckets.length() && bucket.contains(key,hash)){
+				return true;
+			}
+		}
+		return !current.add(key,hash);
+	}
+
+	private Bucket current(long generation) {
+		int index = (int)Math.floorMod(generation,(long)buckets.length());
+		Bucket retVal = buckets.get(index);
+		if(retVal != null && retVal.generation >= generation){
+			return retVal;
+		}
+		synchronized(this){
+			retVal = buckets.get(index);
+			//a bucket of a later generation was made by a publisher with a later clock reading
+			if(retVal == null || retVal.generation < generation){
+				retVal = newBucket(generation);
+				buckets.set(index,retVal);
+			}
+		}
+		return retVal;
+	}
+
+	/**
+	 * Spreads the hash code over 64 bits, the two halves hash a key into a Bloom filter
+	 */
+	private static long mix(int hashCode) {
+		long retVal = (hashCode & 0xffffffffL) + 0x9E3779B97F4A7C15L;
+		retVal ^= retVal >>> 33;
+		retVal *= 0xff51afd7ed558ccdL;
+		retVal ^= retVal >>> 33;
+		retVal *= 0xc4ceb9fe1a85ec53L;
+		retVal ^= retVal >>> 33;
+		return retVal;
+	}
+
+}
@@ -0,0 +1,193 @@
+package org.jfunktor.core.events.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jfunktor.core.events.api.BusSubscription;
+import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.api.EventBus.OverflowPolicy;
+
+import rx.Observable;
+import rx.Observer;
+import rx.Producer;
+import rx.Subscriber;
+import rx.exceptions.MissingBackpressureException;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Delivers the events of a topic to one subscriber of {@link EventBus#asPublisher(String)}
+ * as fast as the subscriber requests them.
+ *
+ * The bus hands the events over through a SYNC subscription into a bounded
+ * queue, and the overflow policy decides what happens when the queue is full.
+ * The queue is drained by whichever thread finds demand and events together:
+ * the publisher when the subscriber has requested ahead, the subscriber when
+ * it requests events already queued. Either way the subscriber sees the events
+ * one at a time, in the order they were queued, and never more than it asked for.
+ */
+class DemandDelivery<T> implements Observer<T>, Producer {
+
+	private static final long BLOCK_RECHECK_MILLIS = 100;
+
+	private BlockingQueue<T> queue;
+	private int capacity;
+	private OverflowPolicy policy;
+	private Subscriber<? super T> subscriber;
+	private volatile BusSubscription upstream;
+
+	private AtomicLong requested = new AtomicLong();
+	private AtomicInteger wip = new AtomicInteger();
+	private volatile boolean done;
+	private volatile Throwable error;
+	private volatile boolean cancelled;
+
+	DemandDelivery(int capacity,OverflowPolicy policy,Subscriber<? super T> subscriber){
+		queue = new ArrayBlockingQueue<>(capacity);
+		this.capacity = capacity;
+		this.policy = policy;
+		this.subscriber = subscriber;
+	}
+
+	/**
+	 * @return a cold observable, every subscriber to it gets the events published to the topic from then on
+	 * @throws IllegalArgumentException if the capacity is not positive
+	 */
+	static <T> Observable<T> publisher(EventBus<T> bus, String topic, int capacity, OverflowPolicy policy) {
+		if(capacity <= 0){
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		return Observable.create(subscriber->{
+			DemandDelivery<T> delivery = new DemandDelivery<>(capacity,policy,subscriber);
+			subscriber.add(Subscriptions.create(()->delivery.cancel()));
+			subscriber.setProducer(delivery);
+			delivery.upstream = bus.subscribeWithObserver(topic,DeliveryMode.SYNC,delivery);
+			if(delivery.cancelled){
+				delivery.upstream.unsubscribe();
+			}
+		});
+	}
+
+	@Override
+	public void request(long n) {
+		if(n < 0){
+			throw new IllegalArgumentException(String.format("Cannot request %d events",n));
+		}
+		if(n == 0){
+			return;
+		}
+		long current;
+		long next;
+		do{
+			current = requested.get();
+			next = current + n;
+			if(next < 0){
+				//unbounded demand
+				next = Long.MAX_VALUE;
+			}
+		}while(!requested.compareAndSet(current,next));
+		drain();
+	}
+
+	@Override
+	public void onNext(T event) {
+		if(done || cancelled){
+			return;
+		}
+		switch(policy){
+			case BLOCK:
+				put(event);
+				break;
+			case DROP_NEWEST:
+				queue.offer(event);
+				break;
+			case DROP_OLDEST:
+				while(!queue.offer(event)){
+					queue.poll();
+				}
+				break;
+			default:
+				if(!queue.offer(event)){
+					error = new MissingBackpressureException(String.format("%d events are queued and none was requested",capacity));
+					done = true;
+					queue.clear();
+				}
+		}
+		drain();
+	}
+
+	private void put(T event) {
+		try{
+			//wake up now and then so that a cancelled subscriber does not hold the publisher
+			while(!cancelled && !queue.offer(event,BLOCK_RECHECK_MILLIS,TimeUnit.MILLISECONDS)){
+				//the subscriber makes room by requesting more
+			}
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void onCompleted() {
+		done = true;
+		drain();
+	}
+
+	@Override
+	public void onError(Throwable e) {
+		error = e;
+		done = true;
+		drain();
+	}
+
+	private void drain() {
+		if(wip.getAndIncrement() != 0){
+			return;
+		}
+		int missed = 1;
+		do{
+			long demand = requested.get();
+			long emitted = 0;
+			T next;
+			while(emitted != demand && !cancelled && (next = queue.poll()) != null){
+				subscriber.onNext(next);
+				emitted++;
+			}
+			if(cancelled){
+				queue.clear();
+				return;
+			}
+			//a terminal event needs no demand
+			if(done && (error != null || queue.isEmpty())){
+				terminate();
+				return;
+			}
+			if(emitted != 0 && demand != Long.MAX_VALUE){
+				requested.addAndGet(-emitted);
+			}
+			missed = wip.addAndGet(-missed);
+		}while(missed != 0);
+	}
+
+	private void terminate() {
+		cancel();
+		if(error != null){
+			subscriber.onError(error);
+		}else{
+			subscriber.onCompleted();
+		}
+	}
+
+	private void cancel() {
+		cancelled = true;
+		queue.clear();
+		BusSubscription subscription = upstream;
+		if(subscription != null){
+			subscription.unsubscribe();
+		}
+	}
+
+}
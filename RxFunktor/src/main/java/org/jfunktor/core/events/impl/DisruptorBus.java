@@ -0,0 +1,812 @@
+package org.jfunktor.core.events.impl;
+
+import static org.jfunktor.common.utils.LogUtil.warn;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.jfunktor.core.events.api.BusMetrics;
+import org.jfunktor.core.events.api.BusSubscription;
+import org.jfunktor.core.events.api.Criteria;
+import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.api.Topic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventTranslatorThreeArg;
+import com.lmax.disruptor.ExceptionHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import com.lmax.disruptor.dsl.ProducerType;
+
+import rx.Observable;
+import rx.Observer;
+import rx.Subscription;
+import rx.observers.SerializedObserver;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Disruptor backed implementation of the EventBus.
+ *
+ * Every publish claims a slot of a pre-allocated ring buffer. ASYNC subscribers
+ * run as event handlers, each on its own batch event processor thread gating the
+ * ring buffer, while SYNC subscribers are invoked on the publishing thread just
+ * like the {@link RxBus}. With several producers two publishers may reach the
+ * same SYNC subscriber at once, so SYNC subscribers are then serialized: a
+ * publisher finding the subscriber busy leaves its event to the thread already
+ * inside it, which may therefore run the subscriber for another publisher.
+ * Whether an event belongs to a dead topic is decided once
+ * at publish time and recorded in the slot, along with the id of the interned
+ * topic, so handlers filter their events with an int comparison.
+ *
+ * A handler holds the ring buffer back until it has caught up, so plain ASYNC
+ * subscribers always block the publishers when they fall a full ring behind.
+ * Subscriptions with an explicit capacity and overflow policy are fed from the
+ * publishing thread into their own bounded queue instead.
+ *
+ * Criteria subscriptions are kept in a {@link CriteriaIndex} per route and
+ * matched on the publishing thread.
+ *
+ * The metrics are counted as by the {@link RxBus}: per route on publish and per
+ * subscriber through a {@link SubscriptionMeter}.
+ */
+public class DisruptorBus<T> implements EventBus<T> {
+
+	private static Logger log = LoggerFactory.getLogger(DisruptorBus.class);
+
+	public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+	public enum WaitStrategyType{
+		BUSY_SPIN,
+		YIELDING,
+		BLOCKING
+	}
+
+	private static class Slot<T>{
+
+		private int topicId;
+		private T event;
+		private boolean dead;
+
+	};
+
+	private class Registration implements BusSubscription{
+
+		private TopicRoute route;
+		private Observer<T> observer;
+		private BatchEventProcessor<Slot<T>> processor;
+		private QueuedDelivery<T> delivery;
+		private volatile boolean unsubscribed;
+
+		/**
+		 * @param route the route of the topic, null for a dead topic subscription
+		 */
+		Registration(TopicRoute route,Observer<T> observer){
+			this.route = route;
+			this.observer = observer;
+		}
+
+		boolean isInline(){
+			return processor == null;
+		}
+
+		boolean matches(Slot<T> slot){
+			return !unsubscribed && (route == null ? slot.dead : route.topic.getId() == slot.topicId);
+		}
+
+		@Override
+		public void unsubscribe() {
+			if(!unsubscribed){
+				unsubscribed = true;
+				if(route == null){
+					deadTopicRegistrations.remove(this);
+				}else if(!route.registrations.remove(this)){
+					removeCriteria(route,this);
+				}
+				if(!isInline()){
+					stopProcessor(this);
+				}
+				if(delivery != null){
+					delivery.unsubscribe();
+				}
+			}
+		}
+
+		@Override
+		public boolean isUnsubscribed() {
+			return unsubscribed;
+		}
+
+		@Override
+		public String getTopic() {
+			return route == null ? null : route.topic.getName();
+		}
+
+		@Override
+		public int getQueueDepth() {
+			if(delivery != null){
+				return delivery.getQueueDepth();
+			}
+			//a handler lags behind by every event published after its sequence, of any topic
+			return isInline() ? 0 : (int)Math.max(ringBuffer.getCursor() - processor.getSequence().get(),0);
+		}
+
+		@Override
+		public long getDropped() {
+			return delivery != null ? delivery.getDropped() : 0;
+		}
+
+	};
+
+	/**
+	 * The registrations of a single topic. A route lives as long as the bus, a
+	 * route without registrations is a dead topic.
+	 */
+	private class TopicRoute{
+
+		private Topic topic;
+		private List<Registration> registrations = new CopyOnWriteArrayList<>();
+		private volatile CriteriaIndex<Registration> criteria = CriteriaIndex.empty();
+		private LongAdder published = new LongAdder();
+
+		TopicRoute(Topic topic){
+			this.topic = topic;
+		}
+	};
+
+	private class TopicHandler implements EventHandler<Slot<T>>{
+
+		private Registration registration;
+
+		TopicHandler(Registration registration){
+			this.registration = registration;
+		}
+
+		@Override
+		public void onEvent(Slot<T> slot, long sequence, boolean endOfBatch) throws Exception {
+			if(registration.matches(slot)){
+				registration.observer.onNext(slot.event);
+			}
+		}
+
+	};
+
+	/**
+	 * Collects the events of a topic and hands them over as a chunk once it is
+	 * full or its first event has waited for the maximum delay. The delay is
+	 * timed on the timer wheel of the bus, whose task hands the chunk over from
+	 * a handler thread, so a partial chunk goes out even if no other event is
+	 * ever published. Chunks are handed over under the lock of the handler, one
+	 * at a time.
+	 */
+	private class BatchingHandler implements EventHandler<Slot<T>>{
+
+		private Registration registration;
+		private int maxBatch;
+		private long maxDelayNanos;
+		private Consumer<List<T>> consumer;
+		private List<T> batch;
+		//tells the flush of a chunk from that of a later one
+		private long generation;
+		private TimerWheel.Timeout flush;
+
+		BatchingHandler(Registration registration,int maxBatch,long maxDelay,TimeUnit unit,Consumer<List<T>> consumer){
+			this.registration = registration;
+			this.maxBatch = maxBatch;
+			this.consumer = consumer;
+			maxDelayNanos = unit.toNanos(maxDelay);
+			batch = new ArrayList<>(maxBatch);
+		}
+
+		@Override
+		public void onEvent(Slot<T> slot, long sequence, boolean endOfBatch) throws Exception {
+			if(!registration.matches(slot)){
+				return;
+			}
+			synchronized(this){
+				batch.add(slot.event);
+				if(batch.size() >= maxBatch || maxDelayNanos <= 0){
+					handOver();
+				}else if(batch.size() == 1){
+					long due = generation;
+					flush = timer.schedule(()->executor.execute(()->flush(due)),maxDelayNanos,TimeUnit.NANOSECONDS);
+				}
+			}
+		}
+
+		private synchronized void flush(long due) {
+			if(due == generation && !batch.isEmpty() && !registration.isUnsubscribed()){
+				handOver();
+			}
+		}
+
+		private void handOver() {
+			List<T> chunk = batch;
+			batch = new ArrayList<>(maxBatch);
+			generation++;
+			if(flush != null){
+				flush.cancel();
+				flush = null;
+			}
+			consumer.accept(chunk);
+		}
+
+	};
+
+	private final EventTranslatorThreeArg<Slot<T>,TopicRoute,T,Boolean> translator =
+			(slot,sequence,route,event,dead)->{
+				slot.topicId = route == null ? -1 : route.topic.getId();
+				slot.event = event;
+				slot.dead = dead;
+			};
+
+	private String busName;
+	private RingBuffer<Slot<T>> ringBuffer;
+	private ExecutorService executor;
+	private volatile boolean closed;
+	private boolean multiProducer;
+	private BusMeter metrics;
+	private TimerWheel timer;
+	private ReplyDispatcher<T> replies;
+	private ScheduledPublications<T> scheduled;
+
+	private TopicRegistry<TopicRoute> topicRegistry = new TopicRegistry<>(topic->new TopicRoute(topic));
+
+	private List<Registration> deadTopicRegistrations = new CopyOnWriteArrayList<>();
+
+	private List<Registration> processors = new CopyOnWriteArrayList<>();
+
+	public DisruptorBus(String name){
+		this(name,DEFAULT_BUFFER_SIZE,ProducerType.MULTI,WaitStrategyType.BLOCKING);
+	}
+
+	/**
+	 * Creates the bus over a ring buffer of the given size
+	 * @param name name of the bus, also used to name the handler threads
+	 * @param bufferSize size of the ring buffer, must be a power of 2
+	 * @param producerType SINGLE if only one thread ever publishes on this bus, MULTI otherwise
+	 * @param waitStrategy how the handler threads wait for new events
+	 */
+	public DisruptorBus(String name,int bufferSize,ProducerType producerType,WaitStrategyType waitStrategy){
+		busName = name;
+		multiProducer = producerType == ProducerType.MULTI;
+		metrics = new BusMeter(name);
+		timer = new TimerWheel(name);
+		replies = new ReplyDispatcher<>(name,timer);
+		scheduled = new ScheduledPublications<>(timer,null,this::publish);
+		ringBuffer = RingBuffer.create(producerType,Slot::new,bufferSize,createWaitStrategy(waitStrategy));
+		executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+				.setNameFormat(name+"-handler-%d")
+				.setDaemon(true)
+				.build());
+	}
+
+	private static WaitStrategy createWaitStrategy(WaitStrategyType waitStrategy) {
+		switch(waitStrategy){
+			case BUSY_SPIN:
+				return new BusySpinWaitStrategy();
+			case YIELDING:
+				return new YieldingWaitStrategy();
+			default:
+				return new BlockingWaitStrategy();
+		}
+	}
+
+
+	@Override
+	public EventBus<T> unSubscribeAll() {
+		closed = true;
+		replies.cancelAll();
+		timer.stop();
+		processors.forEach(registration->stopProcessor(registration));
+		topicRegistry.forEach(route->route.registrations.forEach(registration->complete(registration)));
+		topicRegistry.forEach(route->route.criteria.getSinks().forEach(registration->complete(registration)));
+		deadTopicRegistrations.forEach(registration->complete(registration));
+		topicRegistry.forEach(route->{
+			route.registrations.clear();
+			route.criteria = CriteriaIndex.empty();
+		});
+		deadTopicRegistrations.clear();
+		executor.shutdown();
+		return this;
+	}
+
+
+	private void complete(Registration registration) {
+		if(registration.observer != null){
+			registration.observer.onCompleted();
+		}
+	}
+
+
+	@Override
+	public BusSubscription subscribe(String topic, Consumer<T> consumer) {
+		return this.subscribe(topic, DeliveryMode.SYNC, consumer);
+	}
+
+
+	@Override
+	public EventBus<T> publish(String topic, T evt) {
+		if(closed){
+			return this;
+		}
+		return publish(topicRegistry.find(TopicRegistry.normalize(topic)),evt);
+	}
+
+
+	@Override
+	public EventBus<T> publish(Topic topic, T evt) {
+		TopicRoute route = topicRegistry.get(topic);
+		if(closed){
+			return this;
+		}
+		return publish(route,evt);
+	}
+
+
+	private EventBus<T> publish(TopicRoute route, T evt) {
+		boolean dead = isDead(route);
+		count(route,dead,1);
+
+		for(Registration registration : dead ? deadTopicRegistrations : route.registrations){
+			if(registration.isInline()){
+				registration.observer.onNext(evt);
+			}
+		}
+		if(!dead){
+			deliverMatching(route,evt);
+		}
+
+		if(!processors.isEmpty()){
+			ringBuffer.publishEvent(translator,route,evt,dead);
+		}
+		return this;
+	}
+
+
+	private boolean isDead(TopicRoute route) {
+		return route == null || (route.registrations.isEmpty() && route.criteria.isEmpty());
+	}
+
+
+	private void deliverMatching(TopicRoute route, T evt) {
+		CriteriaIndex<Registration> index = route.criteria;
+		if(!index.isEmpty()){
+			index.match(evt,registration->registration.observer.onNext(evt));
+		}
+	}
+
+
+	private void count(TopicRoute route, boolean dead, int count) {
+		if(route == null){
+			metrics.unrouted(count);
+		}else{
+			route.published.add(count);
+		}
+		if(dead){
+			metrics.dead(count);
+		}
+	}
+
+
+	@Override
+	public Topic topic(String name) {
+		return topicRegistry.intern(name).topic;
+	}
+
+
+	@Override
+	public EventBus<T> publishAll(String topic, Collection<T> evts) {
+		if(closed || evts.isEmpty()){
+			return this;
+		}
+
+		TopicRoute route = topicRegistry.find(TopicRegistry.normalize(topic));
+		boolean dead = isDead(route);
+		count(route,dead,evts.size());
+
+		for(Registration registration : dead ? deadTopicRegistrations : route.registrations){
+			if(registration.isInline()){
+				evts.forEach(evt->registration.observer.onNext(evt));
+			}
+		}
+		if(!dead){
+			evts.forEach(evt->deliverMatching(route,evt));
+		}
+
+		if(!processors.isEmpty()){
+			//claim the slots in runs of at most a whole ring and publish each run at once
+			Iterator<T> iterator = evts.iterator();
+			int remaining = evts.size();
+			while(remaining > 0){
+				int run = Math.min(remaining,ringBuffer.getBufferSize());
+				long hi = ringBuffer.next(run);
+				long lo = hi - (run - 1);
+				for(long sequence = lo; sequence <= hi; sequence++){
+					translator.translateTo(ringBuffer.get(sequence),sequence,route,iterator.next(),dead);
+				}
+				ringBuffer.publish(lo,hi);
+				remaining -= run;
+			}
+		}
+		return this;
+	}
+
+
+	@Override
+	public BusSubscription subscribe(String topic, DeliveryMode async, Consumer<T> consumer) {
+		return this.subscribeWithObserver(topic,async,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribe(String topic, int capacity, OverflowPolicy policy, Consumer<T> consumer) {
+		return this.subscribeWithObserver(topic,capacity,policy,observerOf(consumer));
+	}
+
+
+	/**
+	 * The chunks are cut by a handler of their own: a chunk is handed over when
+	 * it is full, or by a task of the timer wheel of the bus once its first event
+	 * has waited for maxDelay, give or take a tick of the wheel.
+	 */
+	@Override
+	public BusSubscription subscribeBatched(String topic, int maxBatch, long maxDelay, TimeUnit unit,
+			Consumer<List<T>> consumer) {
+		Registration registration = new Registration(topicRegistry.intern(topic),null);
+		SubscriptionMeter<List<T>> meter = metrics.meter(registration.getTopic(),DeliveryMode.ASYNC,observerOf(consumer));
+		startProcessor(registration,new BatchingHandler(registration,maxBatch,maxDelay,unit,meter::onNext));
+		addRoute(registration);
+		return meter.attach(registration);
+	}
+
+
+	@Override
+	public BusSubscription subscribeForDeadTopics(DeliveryMode async, Consumer<T> consumer) {
+		return this.subscribeForDeadTopicsWithObserver(async,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeForDeadTopicsWithObserver(DeliveryMode async, Observer<T> consumer) {
+		checkMode(async);
+		SubscriptionMeter<T> meter = metrics.meter(null,async,consumer);
+		Registration registration = new Registration(null,inline(async,meter));
+		if(async == DeliveryMode.ASYNC){
+			startProcessor(registration,new TopicHandler(registration));
+		}else if(async == DeliveryMode.VIRTUAL){
+			deliverVirtual(registration,meter);
+		}
+		deadTopicRegistrations.add(registration);
+		return meter.attach(registration);
+	}
+
+
+	@Override
+	public BusSubscription subscribeWithObserver(String topic, DeliveryMode async, Observer<T> consumer) {
+		checkMode(async);
+		TopicRoute route = topicRegistry.intern(topic);
+		SubscriptionMeter<T> meter = metrics.meter(route.topic.getName(),async,consumer);
+		Registration registration = new Registration(route,inline(async,meter));
+		if(async == DeliveryMode.ASYNC){
+			startProcessor(registration,new TopicHandler(registration));
+		}else if(async == DeliveryMode.VIRTUAL){
+			deliverVirtual(registration,meter);
+		}
+		addRoute(registration);
+		return meter.attach(registration);
+	}
+
+
+	@Override
+	public BusSubscription subscribe(Topic topic, DeliveryMode async, Consumer<T> consumer) {
+		return this.subscribeWithObserver(topic,async,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeWithObserver(Topic topic, DeliveryMode async, Observer<T> consumer) {
+		//subscribing is not on the hot path, the handle is only checked to belong to this bus
+		topicRegistry.get(topic);
+		return this.subscribeWithObserver(topic.getName(),async,consumer);
+	}
+
+
+	@Override
+	public BusSubscription subscribeWithObserver(String topic, int capacity, OverflowPolicy policy, Observer<T> consumer) {
+		Registration registration = new Registration(topicRegistry.intern(topic),null);
+		SubscriptionMeter<T> meter = metrics.meter(registration.getTopic(),DeliveryMode.ASYNC,consumer);
+		registration.delivery = new AsyncDelivery<>(capacity,policy,meter,Schedulers.from(executor),
+				failed->registration.unsubscribe());
+		registration.observer = registration.delivery;
+		addRoute(registration);
+		return meter.attach(registration);
+	}
+
+
+	/**
+	 * The lanes are fed from the publishing thread, like a subscription with an
+	 * explicit capacity, and run on the handler threads of the bus
+	 */
+	@Override
+	public BusSubscription subscribe(String topic, Function<T,?> keyExtractor, int lanes, Consumer<T> consumer) {
+		return this.subscribeWithObserver(topic,keyExtractor,lanes,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeWithObserver(String topic, Function<T,?> keyExtractor, int lanes, Observer<T> consumer) {
+		return this.subscribeWithObserver(topic,keyExtractor,lanes,DEFAULT_QUEUE_CAPACITY,DEFAULT_OVERFLOW_POLICY,consumer);
+	}
+
+
+	@Override
+	public BusSubscription subscribe(String topic, Function<T,?> keyExtractor, int lanes, int capacity,
+			OverflowPolicy policy, Consumer<T> consumer) {
+		return this.subscribeWithObserver(topic,keyExtractor,lanes,capacity,policy,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeWithObserver(String topic, Function<T,?> keyExtractor, int lanes, int capacity,
+			OverflowPolicy policy, Observer<T> consumer) {
+		Registration registration = new Registration(topicRegistry.intern(topic),null);
+		SubscriptionMeter<T> meter = metrics.meter(registration.getTopic(),DeliveryMode.PARTITIONED,consumer);
+		registration.delivery = new PartitionedDelivery<>(keyExtractor,lanes,capacity,policy,meter,Schedulers.from(executor),
+				failed->registration.unsubscribe());
+		registration.observer = registration.delivery;
+		addRoute(registration);
+		return meter.attach(registration);
+	}
+
+
+	/**
+	 * Conflated subscribers are fed from the publishing thread and run on the
+	 * handler threads of the bus, like partitioned ones
+	 */
+	@Override
+	public BusSubscription subscribeConflated(String topic, Function<T,?> keyExtractor, Consumer<T> consumer) {
+		return this.subscribeConflatedWithObserver(topic,keyExtractor,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeConflatedWithObserver(String topic, Function<T,?> keyExtractor, Observer<T> consumer) {
+		Registration registration = new Registration(topicRegistry.intern(topic),null);
+		SubscriptionMeter<T> meter = metrics.meter(registration.getTopic(),DeliveryMode.ASYNC,consumer);
+		registration.delivery = new ConflatingDelivery<>(keyExtractor,meter,Schedulers.from(executor));
+		registration.observer = registration.delivery;
+		addRoute(registration);
+		return meter.attach(registration);
+	}
+
+
+	/**
+	 * Criteria subscribers are matched on the publishing thread, a handler would
+	 * have to see every event of the ring. ASYNC ones are fed into their own
+	 * queue, like a subscription with an explicit capacity, and run on the
+	 * handler threads of the bus.
+	 */
+	@Override
+	public BusSubscription subscribe(String topic, Criteria criteria, DeliveryMode async, Consumer<T> consumer) {
+		return this.subscribeWithObserver(topic,criteria,async,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeWithObserver(String topic, Criteria criteria, DeliveryMode async, Observer<T> consumer) {
+		checkMode(async);
+		TopicRoute route = topicRegistry.intern(topic);
+		SubscriptionMeter<T> meter = metrics.meter(route.topic.getName(),async,consumer);
+		Registration registration = new Registration(route,inline(async,meter));
+		if(async == DeliveryMode.ASYNC){
+			registration.delivery = new AsyncDelivery<>(DEFAULT_QUEUE_CAPACITY,DEFAULT_OVERFLOW_POLICY,meter,Schedulers.from(executor),
+					failed->registration.unsubscribe());
+			registration.observer = registration.delivery;
+		}else if(async == DeliveryMode.VIRTUAL){
+			deliverVirtual(registration,meter);
+		}
+		synchronized(route){
+			route.criteria = route.criteria.with(criteria,registration);
+		}
+		return meter.attach(registration);
+	}
+
+
+	private void removeCriteria(TopicRoute route, Registration registration) {
+		synchronized(route){
+			route.criteria = route.criteria.without(registration);
+		}
+	}
+
+
+	/**
+	 * @return the observer a SYNC subscriber is called through from the publishing threads
+	 */
+	private Observer<T> inline(DeliveryMode mode, Observer<T> observer) {
+		return mode == DeliveryMode.SYNC && multiProducer ? new SerializedObserver<>(observer) : observer;
+	}
+
+
+	private static void checkMode(DeliveryMode mode) {
+		if(mode == DeliveryMode.PARTITIONED){
+			throw new IllegalArgumentException("A PARTITIONED subscription needs a key extractor and a lane count");
+		}
+	}
+
+
+	/**
+	 * A VIRTUAL subscriber is fed from the publishing thread into its own queue,
+	 * like a subscription with an explicit capacity, and is called on virtual
+	 * threads rather than on a handler thread of its own
+	 */
+	private void deliverVirtual(Registration registration, Observer<T> consumer) {
+		registration.delivery = new AsyncDelivery<>(DEFAULT_QUEUE_CAPACITY,DEFAULT_OVERFLOW_POLICY,consumer,VirtualThreads.scheduler(),
+				failed->registration.unsubscribe());
+		registration.observer = registration.delivery;
+	}
+
+
+	private void startProcessor(Registration registration,EventHandler<Slot<T>> handler) {
+		BatchEventProcessor<Slot<T>> processor = new BatchEventProcessor<>(ringBuffer,ringBuffer.newBarrier(),handler);
+		processor.setExceptionHandler(new ExceptionHandler() {
+
+			@Override
+			public void handleEventException(Throwable ex, long sequence, Object event) {
+				warn(log,ex,"Handler for topic %s on bus %s failed at sequence %d",registration.getTopic(),busName,sequence);
+			}
+
+			@Override
+			public void handleOnStartException(Throwable ex) {
+				warn(log,ex,"Handler for topic %s on bus %s failed to start",registration.getTopic(),busName);
+			}
+
+			@Override
+			public void handleOnShutdownException(Throwable ex) {
+				warn(log,ex,"Handler for topic %s on bus %s failed to shutdown",registration.getTopic(),busName);
+			}
+
+		});
+
+		//the new handler only sees events published from now on
+		ringBuffer.addGatingSequences(processor.getSequence());
+		registration.processor = processor;
+		processors.add(registration);
+		executor.execute(processor);
+	}
+
+
+	private void stopProcessor(Registration registration) {
+		processors.remove(registration);
+		registration.processor.halt();
+		ringBuffer.removeGatingSequence(registration.processor.getSequence());
+	}
+
+
+	private void addRoute(Registration registration) {
+		registration.route.registrations.add(registration);
+	}
+
+
+	@Override
+	public Observable<T> request(String topic, T evt, long timeout, TimeUnit unit) {
+		if(closed){
+			return Observable.error(new IllegalStateException(String.format("Bus %s is shut down",busName)));
+		}
+		return replies.request(topic,evt,timeout,unit,request->publish(topic,request));
+	}
+
+
+	@Override
+	public boolean reply(T request, T response) {
+		return replies.reply(request,response);
+	}
+
+
+	@Override
+	public Subscription publishAfter(String topic, T evt, long delay, TimeUnit unit) {
+		if(closed){
+			return Subscriptions.unsubscribed();
+		}
+		return scheduled.publishAfter(topic,evt,delay,unit);
+	}
+
+
+	@Override
+	public Subscription publishAt(String topic, T evt, Instant at) {
+		if(closed){
+			return Subscriptions.unsubscribed();
+		}
+		return scheduled.publishAt(topic,evt,at);
+	}
+
+
+	@Override
+	public Observable<T> asPublisher(String topic, int capacity, OverflowPolicy policy) {
+		if(closed){
+			return Observable.error(new IllegalStateException(String.format("Bus %s is shut down",busName)));
+		}
+		return DemandDelivery.publisher(this,topic,capacity,policy);
+	}
+
+
+	@Override
+	public Observable<T> asPublisher(String topic) {
+		return asPublisher(topic,DEFAULT_QUEUE_CAPACITY,DEFAULT_OVERFLOW_POLICY);
+	}
+
+
+	@Override
+	public BusMetrics getMetrics() {
+		Map<String,Long> published = new HashMap<>();
+		topicRegistry.forEach(route->published.put(route.topic.getName(),route.published.sum()));
+		return metrics.snapshot(published);
+	}
+
+
+	/**
+	 * @see RxBus#withMaxTopics(int)
+	 */
+	public DisruptorBus<T> withMaxTopics(int maxTopics) {
+		topicRegistry.setMaxTopics(maxTopics);
+		return this;
+	}
+
+
+	/**
+	 * @see RxBus#withLatencySampling(int)
+	 */
+	public DisruptorBus<T> withLatencySampling(int everyNth) {
+		metrics.setSampling(everyNth);
+		return this;
+	}
+
+
+	/**
+	 * @see RxBus#withCorrelationKey(Function)
+	 */
+	public DisruptorBus<T> withCorrelationKey(Function<T,?> correlationKey) {
+		replies.setCorrelationKey(correlationKey);
+		return this;
+	}
+
+
+	private static <E> Observer<E> observerOf(Consumer<E> consumer) {
+		return new Observer<E>() {
+
+			@Override
+			public void onCompleted() {
+			}
+
+			@Override
+			public void onError(Throwable e) {
+			}
+
+			@Override
+			public void onNext(E event) {
+				consumer.accept(event);
+			}
+
+		};
+	}
+
+}
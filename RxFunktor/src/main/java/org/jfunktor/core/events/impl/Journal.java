@@ -0,0 +1,494 @@
+package org.jfunktor.core.events.impl;
+
+import static org.jfunktor.common.utils.LogUtil.warn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.jfunktor.core.events.api.EventCodec;
+import org.jfunktor.core.events.impl.JournalConfig.FsyncPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Append-only journal of the events published on a bus.
+ *
+ * The journal is a directory of memory mapped segment files, each one named
+ * after the offset of its first record. Every record gets the next offset, and
+ * is laid out as its length, a CRC32 of its content, the topic and the encoded
+ * event. The length is written last, so a record is only visible to the readers
+ * once it is complete, and a record torn by a crash fails its checksum and is
+ * dropped when the journal is opened again.
+ *
+ * A segment is rolled once the next record does not fit in it. The oldest
+ * completed segments are removed when the retention limits of the
+ * {@link JournalConfig} are exceeded, and when the segments are forced to disk
+ * is decided by its {@link FsyncPolicy}. The limits are checked on every roll
+ * and, with a maximum age, periodically by a housekeeping thread, so that a
+ * journal which has gone quiet still drops its old segments.
+ *
+ * Appends are serialized on the journal, reads are lock-free and can run
+ * concurrently with the appends.
+ */
+public class Journal<T> implements Closeable {
+
+	private static Logger log = LoggerFactory.getLogger(Journal.class);
+
+	private static final String SEGMENT_SUFFIX = ".seg";
+
+	/**
+	 * length and checksum of a record
+	 */
+	private static final int HEADER_SIZE = 8;
+
+	/**
+	 * longest interval between two checks of the age of the segments
+	 */
+	private static final long RETENTION_CHECK_MILLIS = 1000;
+
+	/**
+	 * Receives the records read from the journal
+	 */
+	interface RecordConsumer<T>{
+
+		void accept(long offset, T event);
+
+	};
+
+	/**
+	 * Receives the records read from the journal along with their topic
+	 */
+	interface TopicRecordConsumer<T>{
+
+		void accept(long offset, String topic, T event);
+
+	};
+
+	private static class Segment{
+
+		private long baseOffset;
+		private Path path;
+		private FileChannel channel;
+		private MappedByteBuffer buffer;
+		private ByteBuffer writer;
+		private int limit;
+		private volatile int count;
+		private long completedAt;
+
+		int capacity(){
+			return buffer.capacity();
+		}
+	};
+
+	private JournalConfig config;
+	private EventCodec<T> codec;
+	private List<Segment> segments = new CopyOnWriteArrayList<>();
+	private volatile Segment active;
+	private volatile long nextOffset;
+	private volatile boolean dirty;
+	private boolean closed;
+	private CRC32 checksum = new CRC32();
+	//forces the group commits and checks the age of the segments
+	private ScheduledExecutorService housekeeper;
+
+	/**
+	 * Opens the journal kept in the directory of the configuration, recovering the
+	 * segments left by a previous run
+	 */
+	public Journal(JournalConfig config, EventCodec<T> codec) throws IOException {
+		this.config = config;
+		this.codec = codec;
+
+		Files.createDirectories(config.getDirectory());
+		for(Path path : listSegments(config.getDirectory())){
+			if(Files.size(path) == 0){
+				//a crash right after creating the file, the segment is created again when needed
+				Files.delete(path);
+				continue;
+			}
+			Segment segment = openSegment(path,baseOffsetOf(path),0);
+			recover(segment);
+			segment.completedAt = Files.getLastModifiedTime(path).toMillis();
+			segments.add(segment);
+		}
+		if(segments.isEmpty()){
+			segments.add(openSegment(segmentPath(0),0,config.getSegmentSize()));
+		}
+		active = segments.get(segments.size() - 1);
+		nextOffset = active.baseOffset + active.count;
+
+		boolean groupCommit = config.getFsyncPolicy() == FsyncPolicy.GROUP_COMMIT;
+		boolean aging = config.getMaxAgeMillis() != Long.MAX_VALUE;
+		if(groupCommit || aging){
+			housekeeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+					.setNameFormat("journal-housekeeping-%d")
+					.setDaemon(true)
+					.build());
+		}
+		if(groupCommit){
+			housekeeper.scheduleWithFixedDelay(()->commit(),config.getGroupCommitMillis(),config.getGroupCommitMillis(),TimeUnit.MILLISECONDS);
+		}
+		if(aging){
+			long interval = Math.max(1,Math.min(config.getMaxAgeMillis(),RETENTION_CHECK_MILLIS));
+			housekeeper.scheduleWithFixedDelay(()->enforceRetention(),interval,interval,TimeUnit.MILLISECONDS);
+		}
+		enforceRetention();
+	}
+
+	private static List<Path> listSegments(Path directory) throws IOException {
+		List<Path> retVal = new ArrayList<>();
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory,"*"+SEGMENT_SUFFIX)){
+			stream.forEach(retVal::add);
+		}
+		Collections.sort(retVal,(left,right)->Long.compare(baseOffsetOf(left),baseOffsetOf(right)));
+		return retVal;
+	}
+
+	private static long baseOffsetOf(Path path) {
+		String name = path.getFileName().toString();
+		return Long.parseLong(name.substring(0,name.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	private Path segmentPath(long baseOffset) {
+		return config.getDirectory().resolve(String.format("%020d%s",baseOffset,SEGMENT_SUFFIX));
+	}
+
+	/**
+	 * @param size size of a new segment, 0 to map an existing one as it is
+	 */
+	private Segment openSegment(Path path, long baseOffset, int size) throws IOException {
+		Segment segment = new Segment();
+		segment.baseOffset = baseOffset;
+		segment.path = path;
+		segment.channel = FileChannel.open(path,StandardOpenOption.CREATE,StandardOpenOption.READ,StandardOpenOption.WRITE);
+		segment.buffer = segment.channel.map(FileChannel.MapMode.READ_WRITE,0,size > 0 ? size : segment.channel.size());
+		segment.writer = segment.buffer.duplicate();
+		return segment;
+	}
+
+	/**
+	 * Finds the end of the valid records of a segment and wipes whatever a crash
+	 * may have left after them
+	 */
+	private void recover(Segment segment) {
+		ByteBuffer buffer = segment.buffer;
+		int position = 0;
+		int count = 0;
+		while(position + HEADER_SIZE <= buffer.capacity()){
+			int length = buffer.getInt(position);
+			if(length <= 0 || position + HEADER_SIZE + length > buffer.capacity()
+					|| buffer.getInt(position + 4) != checksumOf(segment.writer,position + HEADER_SIZE,length)){
+				break;
+			}
+			position += HEADER_SIZE + length;
+			count++;
+		}
+		if(position + 4 <= buffer.capacity() && buffer.getInt(position) != 0){
+			warn(log,"Dropping the torn tail of journal segment %s after %d records",segment.path,count);
+			for(int i = position; i < buffer.capacity(); i++){
+				buffer.put(i,(byte)0);
+			}
+		}
+		segment.limit = position;
+		segment.count = count;
+	}
+
+	private int checksumOf(ByteBuffer view, int position, int length) {
+		view.limit(position + length).position(position);
+		checksum.reset();
+		checksum.update(view);
+		view.limit(view.capacity());
+		return (int)checksum.getValue();
+	}
+
+	/**
+	 * @return the offset of the record
+	 */
+	public long append(String topic, T event) {
+		return appendEncoded(topic,new byte[][]{encode(topic,event)});
+	}
+
+	/**
+	 * Appends the events as records with consecutive offsets
+	 * @return the offset of the first record
+	 */
+	public long appendAll(String topic, Collection<T> events) {
+		byte[][] records = new byte[events.size()][];
+		int i = 0;
+		for(T event : events){
+			records[i++] = encode(topic,event);
+		}
+		return appendEncoded(topic,records);
+	}
+
+	/**
+	 * Encodes an event ahead of its append, so that an event which cannot be
+	 * journaled is refused to whoever publishes it
+	 * @return the encoded event, to be appended with {@link #appendEncoded(String, byte[][])}
+	 * @throws IllegalArgumentException if the record of the event does not fit in a segment
+	 */
+	public byte[] encode(String topic, T event) {
+		byte[] retVal = codec.encode(event);
+		int size = HEADER_SIZE + 2 + topic.getBytes(StandardCharsets.UTF_8).length + retVal.length;
+		if(size > config.getSegmentSize()){
+			throw new IllegalArgumentException(String.format("A record of %d bytes does not fit in a segment of %d bytes",size,config.getSegmentSize()));
+		}
+		return retVal;
+	}
+
+	/**
+	 * Appends events encoded by {@link #encode(String, Object)} as records with consecutive offsets
+	 * @return the offset of the first record
+	 * @throws UncheckedIOException if a new segment could not be created
+	 */
+	public synchronized long appendEncoded(String topic, byte[][] events) {
+		byte[] key = topic.getBytes(StandardCharsets.UTF_8);
+		long first = nextOffset;
+		for(byte[] event : events){
+			write(key,event);
+		}
+		flush();
+		return first;
+	}
+
+	private long write(byte[] topic, byte[] event) {
+		if(closed){
+			throw new IllegalStateException("The journal is closed");
+		}
+		int length = 2 + topic.length + event.length;
+		if(HEADER_SIZE + length > config.getSegmentSize()){
+			throw new IllegalArgumentException(String.format("A record of %d bytes does not fit in a segment of %d bytes",HEADER_SIZE + length,config.getSegmentSize()));
+		}
+		if(active.limit + HEADER_SIZE + length > active.capacity()){
+			roll();
+		}
+
+		Segment segment = active;
+		int position = segment.limit;
+		ByteBuffer writer = segment.writer;
+		writer.position(position + HEADER_SIZE);
+		writer.putShort((short)topic.length);
+		writer.put(topic);
+		writer.put(event);
+		writer.putInt(position + 4,checksumOf(writer,position + HEADER_SIZE,length));
+		//the length goes last, it is what makes the record visible
+		writer.putInt(position,length);
+
+		segment.limit = position + HEADER_SIZE + length;
+		segment.count = segment.count + 1;
+		long offset = nextOffset;
+		nextOffset = offset + 1;
+		dirty = true;
+		return offset;
+	}
+
+	private void flush() {
+		if(config.getFsyncPolicy() == FsyncPolicy.PER_WRITE){
+			//a mapping can only be forced as a whole before java 9
+			active.buffer.force();
+			dirty = false;
+		}
+	}
+
+	private void commit() {
+		if(dirty){
+			dirty = false;
+			active.buffer.force();
+		}
+	}
+
+	private void roll() {
+		Segment completed = active;
+		if(config.getFsyncPolicy() != FsyncPolicy.OS){
+			completed.buffer.force();
+		}
+		completed.completedAt = System.currentTimeMillis();
+		try {
+			Files.setLastModifiedTime(completed.path,FileTime.fromMillis(completed.completedAt));
+			Segment segment = openSegment(segmentPath(nextOffset),nextOffset,config.getSegmentSize());
+			segments.add(segment);
+			active = segment;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		enforceRetention();
+	}
+
+	/**
+	 * Removes the oldest completed segments which exceed the size or age limit.
+	 * This is done whenever a segment is rolled, and periodically when the
+	 * segments have a maximum age.
+	 */
+	public synchronized void enforceRetention() {
+		if(closed){
+			return;
+		}
+		long retained = 0;
+		for(Segment segment : segments){
+			retained += segment.capacity();
+		}
+		long now = System.currentTimeMillis();
+		while(segments.size() > 1){
+			Segment oldest = segments.get(0);
+			if(retained <= config.getMaxRetainedBytes() && now - oldest.completedAt <= config.getMaxAgeMillis()){
+				break;
+			}
+			//readers still holding the segment keep their mapping
+			segments.remove(0);
+			retained -= oldest.capacity();
+			try {
+				oldest.channel.close();
+				Files.deleteIfExists(oldest.path);
+			} catch (IOException e) {
+				warn(log,e,"Failed to remove journal segment %s",oldest.path);
+			}
+		}
+	}
+
+	/**
+	 * @return the offset of the oldest record retained
+	 */
+	public long getFirstOffset() {
+		return segments.get(0).baseOffset;
+	}
+
+	/**
+	 * @return the offset the next record will get
+	 */
+	public long getNextOffset() {
+		return nextOffset;
+	}
+
+	/**
+	 * Hands the events of the topic with an offset in [from, to) to the consumer.
+	 * Reading starts at the oldest record retained if from is older.
+	 * @return the offset following the last record read
+	 */
+	long read(long from, long to, String topic, RecordConsumer<T> consumer) {
+		byte[] key = topic.getBytes(StandardCharsets.UTF_8);
+		long offset = from;
+		for(Segment segment : segments){
+			//the count is read first, the records it covers are complete
+			long end = Math.min(segment.baseOffset + segment.count,to);
+			if(offset >= end){
+				continue;
+			}
+			ByteBuffer reader = segment.buffer.duplicate();
+			int position = 0;
+			for(long current = segment.baseOffset; current < end; current++){
+				int length = reader.getInt(position);
+				if(current >= offset && matches(reader,position + HEADER_SIZE,key)){
+					consumer.accept(current,decode(reader,position + HEADER_SIZE,length));
+				}
+				position += HEADER_SIZE + length;
+			}
+			offset = end;
+		}
+		return offset;
+	}
+
+	/**
+	 * Hands the events of every topic starting with the prefix, with an offset in
+	 * [from, to), to the consumer. Only the records matching are decoded.
+	 * @return the offset following the last record read
+	 */
+	long readPrefixed(long from, long to, String prefix, TopicRecordConsumer<T> consumer) {
+		byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+		long offset = from;
+		for(Segment segment : segments){
+			long end = Math.min(segment.baseOffset + segment.count,to);
+			if(offset >= end){
+				continue;
+			}
+			ByteBuffer reader = segment.buffer.duplicate();
+			int position = 0;
+			for(long current = segment.baseOffset; current < end; current++){
+				int length = reader.getInt(position);
+				if(current >= offset && startsWith(reader,position + HEADER_SIZE,key)){
+					consumer.accept(current,topicOf(reader,position + HEADER_SIZE),decode(reader,position + HEADER_SIZE,length));
+				}
+				position += HEADER_SIZE + length;
+			}
+			offset = end;
+		}
+		return offset;
+	}
+
+	private boolean startsWith(ByteBuffer reader, int position, byte[] prefix) {
+		if(reader.getShort(position) < prefix.length){
+			return false;
+		}
+		for(int i = 0; i < prefix.length; i++){
+			if(reader.get(position + 2 + i) != prefix[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private String topicOf(ByteBuffer reader, int position) {
+		byte[] topic = new byte[reader.getShort(position)];
+		reader.position(position + 2);
+		reader.get(topic);
+		return new String(topic,StandardCharsets.UTF_8);
+	}
+
+	private boolean matches(ByteBuffer reader, int position, byte[] key) {
+		if(reader.getShort(position) != key.length){
+			return false;
+		}
+		for(int i = 0; i < key.length; i++){
+			if(reader.get(position + 2 + i) != key[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private T decode(ByteBuffer reader, int position, int length) {
+		int topicLength = reader.getShort(position);
+		byte[] data = new byte[length - 2 - topicLength];
+		reader.position(position + 2 + topicLength);
+		reader.get(data);
+		return codec.decode(data,0,data.length);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+		if(housekeeper != null){
+			housekeeper.shutdown();
+		}
+		if(config.getFsyncPolicy() != FsyncPolicy.OS){
+			active.buffer.force();
+		}
+		for(Segment segment : segments){
+			segment.channel.close();
+		}
+	}
+
+}
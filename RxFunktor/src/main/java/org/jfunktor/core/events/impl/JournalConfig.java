@@ -0,0 +1,104 @@
+package org.jfunktor.core.events.impl;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of a {@link Journal}
+ */
+public class JournalConfig {
+
+	/**
+	 * When the appended records are forced to the storage device
+	 */
+	public enum FsyncPolicy{
+		/** after every record, nothing acknowledged is ever lost */
+		PER_WRITE,
+		/** every group commit interval, a crash loses at most that interval */
+		GROUP_COMMIT,
+		/** whenever the operating system writes the pages back, a crash of the host may lose anything not yet written back */
+		OS
+	}
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	public static final long DEFAULT_GROUP_COMMIT_MILLIS = 10;
+
+	private Path directory;
+	private int segmentSize = DEFAULT_SEGMENT_SIZE;
+	private long maxRetainedBytes = Long.MAX_VALUE;
+	private long maxAgeMillis = Long.MAX_VALUE;
+	private FsyncPolicy fsyncPolicy = FsyncPolicy.GROUP_COMMIT;
+	private long groupCommitMillis = DEFAULT_GROUP_COMMIT_MILLIS;
+
+	/**
+	 * @param directory where the segments are kept, created if missing
+	 */
+	public JournalConfig(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Size of a segment file, a segment is rolled once its next record does not fit
+	 */
+	public JournalConfig withSegmentSize(int segmentSize) {
+		this.segmentSize = segmentSize;
+		return this;
+	}
+
+	/**
+	 * Removes the oldest segments once all the segments together are larger than maxRetainedBytes
+	 */
+	public JournalConfig withMaxRetainedBytes(long maxRetainedBytes) {
+		this.maxRetainedBytes = maxRetainedBytes;
+		return this;
+	}
+
+	/**
+	 * Removes the segments which were completed longer than maxAge ago. The age
+	 * is checked on every roll and at least every second, so a segment outlives
+	 * maxAge by a second at most even if nothing is appended any more.
+	 */
+	public JournalConfig withMaxAge(long maxAge, TimeUnit unit) {
+		this.maxAgeMillis = unit.toMillis(maxAge);
+		return this;
+	}
+
+	public JournalConfig withFsyncPolicy(FsyncPolicy fsyncPolicy) {
+		this.fsyncPolicy = fsyncPolicy;
+		return this;
+	}
+
+	/**
+	 * Interval of the {@link FsyncPolicy#GROUP_COMMIT} policy
+	 */
+	public JournalConfig withGroupCommit(long interval, TimeUnit unit) {
+		this.groupCommitMillis = unit.toMillis(interval);
+		return this;
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+
+	public long getMaxRetainedBytes() {
+		return maxRetainedBytes;
+	}
+
+	public long getMaxAgeMillis() {
+		return maxAgeMillis;
+	}
+
+	public FsyncPolicy getFsyncPolicy() {
+		return fsyncPolicy;
+	}
+
+	public long getGroupCommitMillis() {
+		return groupCommitMillis;
+	}
+
+}
@@ -0,0 +1,140 @@
+package org.jfunktor.core.events.impl;
+
+import java.util.function.Consumer;
+
+import org.jfunktor.core.events.api.BusSubscription;
+
+import rx.Observer;
+import rx.Scheduler;
+
+/**
+ * A subscription which first replays the journaled events of its topic and then
+ * switches over to the live events.
+ *
+ * The bus journals an event before delivering it, so while the replay runs the
+ * live events can simply be ignored: they are in the journal and get replayed.
+ * The last stretch of the journal is replayed while holding the lock the live
+ * deliveries wait on, so no event is lost or delivered twice at the switch.
+ * From then on the live events are delivered on the publishing thread, like to
+ * a SYNC subscriber.
+ */
+class JournalReplay<T> implements BusSubscription {
+
+	private Journal<T> journal;
+	private String topic;
+	private Observer<T> observer;
+	private Consumer<JournalReplay<T>> onUnsubscribe;
+
+	/**
+	 * offset of the next event to deliver
+	 */
+	private volatile long next;
+	private volatile boolean live;
+	private volatile boolean unsubscribed;
+
+	/**
+	 * @param topic the normalized topic
+	 * @param from offset of the first event to replay
+	 * @param onUnsubscribe detaches the subscription from the bus
+	 */
+	JournalReplay(Journal<T> journal, String topic, long from, Observer<T> observer, Consumer<JournalReplay<T>> onUnsubscribe) {
+		this.journal = journal;
+		this.topic = topic;
+		this.observer = observer;
+		this.onUnsubscribe = onUnsubscribe;
+		next = from;
+	}
+
+	void start(Scheduler scheduler) {
+		Scheduler.Worker worker = scheduler.createWorker();
+		worker.schedule(()->{
+			try{
+				replay();
+			}finally{
+				worker.unsubscribe();
+			}
+		});
+	}
+
+	private void replay() {
+		try{
+			next = journal.read(next,journal.getNextOffset(),topic,(offset,event)->replayed(offset,event));
+			synchronized(this){
+				next = journal.read(next,journal.getNextOffset(),topic,(offset,event)->replayed(offset,event));
+				live = true;
+			}
+		}catch(RuntimeException e){
+			unsubscribe();
+			observer.onError(e);
+		}
+	}
+
+	private void replayed(long offset, T event) {
+		next = offset + 1;
+		deliver(event);
+	}
+
+	private void deliver(T event) {
+		if(!unsubscribed){
+			observer.onNext(event);
+		}
+	}
+
+	/**
+	 * Delivers a live event, called by the bus once the event is journaled
+	 * @param offset offset of the event, negative if it failed to be journaled
+	 */
+	void onNext(long offset, T event) {
+		if(!live){
+			synchronized(this){
+				if(!live){
+					//still replaying, the event is replayed from the journal
+					return;
+				}
+			}
+		}
+		//an event the journal failed to take cannot have been replayed
+		if(offset < 0 || offset >= next){
+			deliver(event);
+		}
+	}
+
+	void onCompleted() {
+		if(!unsubscribed){
+			unsubscribed = true;
+			observer.onCompleted();
+		}
+	}
+
+	@Override
+	public void unsubscribe() {
+		if(!unsubscribed){
+			unsubscribed = true;
+			onUnsubscribe.accept(this);
+		}
+	}
+
+	@Override
+	public boolean isUnsubscribed() {
+		return unsubscribed;
+	}
+
+	@Override
+	public String getTopic() {
+		return topic;
+	}
+
+	/**
+	 * @return the number of journaled events, of any topic, left to replay
+	 */
+	@Override
+	public int getQueueDepth() {
+		return live ? 0 : (int)Math.max(journal.getNextOffset() - next,0);
+	}
+
+	@Override
+	public long getDropped() {
+		return 0;
+	}
+
+}
@@ -0,0 +1,50 @@
+package org.jfunktor.core.events.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jfunktor.core.events.api.Event;
+import org.jfunktor.core.events.api.EventCodec;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Codec of {@link Event} as a JSON object holding its name and details.
+ * The details must be plain JSON values, maps and lists.
+ */
+public class JsonEventCodec implements EventCodec<Event> {
+
+	private static final String NAME = "name";
+	private static final String DETAILS = "details";
+
+	private ObjectMapper mapper = new ObjectMapper();
+
+	@Override
+	public byte[] encode(Event event) {
+		ObjectNode node = mapper.createObjectNode();
+		node.put(NAME,event.getEventName());
+		node.set(DETAILS,mapper.valueToTree(event.getEventDetails()));
+		try {
+			return mapper.writeValueAsBytes(node);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Event decode(byte[] data, int offset, int length) {
+		try {
+			JsonNode node = mapper.readTree(mapper.getFactory().createParser(data,offset,length));
+			Map<String,Object> details = node.has(DETAILS) ? mapper.treeToValue(node.get(DETAILS),Map.class) : new HashMap<>();
+			return new Event(node.get(NAME).asText(),details);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}
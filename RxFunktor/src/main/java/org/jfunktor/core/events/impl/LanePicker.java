@@ -0,0 +1,50 @@
+package org.jfunktor.core.events.impl;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Picks the lane to take the next event from when events of several priorities
+ * wait, lane 0 being the most urgent.
+ *
+ * The most urgent lane with an event goes first, but a lane passed over
+ * {@link #MAX_BYPASS} times in a row while it had events waiting goes next
+ * whatever waits above it, so a flood of urgent events slows the other lanes
+ * down without ever starving them. Used by a single draining thread at a time.
+ */
+class LanePicker {
+
+	/**
+	 * number of events a waiting lane lets through from the lanes above it before it gets one
+	 */
+	static final int MAX_BYPASS = 32;
+
+	private int[] bypassed;
+
+	LanePicker(int lanes){
+		bypassed = new int[lanes];
+	}
+
+	/**
+	 * @param ready tells whether a lane has an event waiting
+	 * @return the lane to take the next event from, -1 if none has any
+	 */
+	int pick(IntPredicate ready) {
+		int retVal = -1;
+		for(int i = 0; i < bypassed.length; i++){
+			if(!ready.test(i)){
+				continue;
+			}
+			if(retVal < 0){
+				retVal = i;
+			}else if(++bypassed[i] > MAX_BYPASS){
+				bypassed[i] = 0;
+				return i;
+			}
+		}
+		if(retVal >= 0){
+			bypassed[retVal] = 0;
+		}
+		return retVal;
+	}
+
+}
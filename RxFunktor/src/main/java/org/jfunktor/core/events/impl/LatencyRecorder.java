@@ -0,0 +1,38 @@
+package org.jfunktor.core.events.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.jfunktor.core.events.api.LatencyHistogram;
+
+/**
+ * Records latencies into the buckets of a {@link LatencyHistogram} without
+ * locking, so several threads can record at once and a snapshot can be taken
+ * at any time.
+ */
+class LatencyRecorder {
+
+	private AtomicLongArray counts = new AtomicLongArray(LatencyHistogram.BUCKET_COUNT);
+	private AtomicLong sum = new AtomicLong();
+	private AtomicLong max = new AtomicLong();
+
+	void record(long nanos) {
+		counts.incrementAndGet(LatencyHistogram.bucketOf(nanos));
+		sum.addAndGet(nanos);
+		long current;
+		while(nanos > (current = max.get()) && !max.compareAndSet(current,nanos)){
+		}
+	}
+
+	/**
+	 * The buckets are copied one by one, latencies recorded meanwhile may or may not be part of it
+	 */
+	LatencyHistogram snapshot() {
+		long[] copy = new long[LatencyHistogram.BUCKET_COUNT];
+		for(int i = 0; i < copy.length; i++){
+			copy[i] = counts.get(i);
+		}
+		return new LatencyHistogram(copy,sum.get(),max.get());
+	}
+
+}
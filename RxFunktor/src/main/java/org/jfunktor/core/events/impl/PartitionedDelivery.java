@@ -0,0 +1,185 @@
+package org.jfunktor.core.events.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.jfunktor.core.events.api.EventBus.OverflowPolicy;
+
+import rx.Observer;
+import rx.Scheduler;
+
+/**
+ * Delivers the events of one PARTITIONED subscriber over several lanes.
+ *
+ * Every lane is an {@link AsyncDelivery} with its own worker, and an event goes
+ * to the lane picked by the hash of its key. The events of a key are therefore
+ * delivered in order, one at a time, while the events of different keys are
+ * delivered in parallel. The subscriber is completed once every lane is done.
+ *
+ * A key extractor which throws, or a lane overflowing under the ERROR policy,
+ * fails the whole subscriber: the other lanes are cancelled and no event is
+ * taken any more.
+ */
+class PartitionedDelivery<T> implements QueuedDelivery<T> {
+
+	private Function<T,?> keyExtractor;
+	private List<AsyncDelivery<T>> lanes;
+	private Observer<T> observer;
+	private Consumer<PartitionedDelivery<T>> onFailure;
+
+	private AtomicInteger running;
+	private AtomicBoolean failed = new AtomicBoolean();
+	private volatile boolean broken;
+
+	/**
+	 * @param keyExtractor key of an event, events with equal keys share a lane
+	 * @param lanes number of lanes
+	 * @param capacity maximum number of undelivered events of a lane
+	 * @param policy what to do with an event which does not fit in its lane
+	 * @param observer the subscriber, called from several lanes at once
+	 * @param scheduler where the lanes call the subscriber
+	 * @param onFailure called once when the subscriber fails, from its key extractor or an overflow
+	 */
+	PartitionedDelivery(Function<T,?> keyExtractor,int lanes,int capacity,OverflowPolicy policy,Observer<T> observer,
+			Scheduler scheduler,Consumer<PartitionedDelivery<T>> onFailure){
+		if(lanes <= 0){
+			throw new IllegalArgumentException("Lane count must be positive");
+		}
+		this.keyExtractor = keyExtractor;
+		this.lanes = new ArrayList<>(lanes);
+		this.observer = observer;
+		this.onFailure = onFailure;
+		running = new AtomicInteger(lanes);
+
+		Observer<T> lane = new Observer<T>() {
+
+			@Override
+			public void onCompleted() {
+				if(running.decrementAndGet() == 0 && !failed.get()){
+					observer.onCompleted();
+				}
+			}
+
+			@Override
+			public void onError(Throwable e) {
+				if(failed.compareAndSet(false,true)){
+					observer.onError(e);
+				}
+			}
+
+			@Override
+			public void onNext(T event) {
+				observer.onNext(event);
+			}
+
+		};
+		for(int i = 0; i < lanes; i++){
+			this.lanes.add(new AsyncDelivery<>(capacity,policy,lane,scheduler,this::overflowed));
+		}
+	}
+
+	private AsyncDelivery<T> laneOf(T event) {
+		Object key = keyExtractor.apply(event);
+		if(key == null){
+			return lanes.get(0);
+		}
+		int hash = key.hashCode();
+		return lanes.get(Math.floorMod(hash ^ (hash >>> 16),lanes.size()));
+	}
+
+	@Override
+	public void onNext(T event) {
+		if(broken){
+			return;
+		}
+		AsyncDelivery<T> lane;
+		try{
+			lane = laneOf(event);
+		}catch(Throwable e){
+			fail(e);
+			return;
+		}
+		lane.onNext(event);
+	}
+
+	/**
+	 * The event has no lane, so the order of its key cannot be kept any more
+	 */
+	private void fail(Throwable e) {
+		broken = true;
+		cancelLanes(null);
+		if(failed.compareAndSet(false,true)){
+			observer.onError(e);
+		}
+		onFailure.accept(this);
+	}
+
+	/**
+	 * The lane which overflowed fails the subscriber itself once it is drained
+	 */
+	private void overflowed(AsyncDelivery<T> overflowed) {
+		broken = true;
+		cancelLanes(overflowed);
+		onFailure.accept(this);
+	}
+
+	/**
+	 * @param spared a lane left running, null for none
+	 */
+	private void cancelLanes(AsyncDelivery<T> spared) {
+		for(AsyncDelivery<T> lane : lanes){
+			if(lane != spared){
+				lane.unsubscribe();
+			}
+		}
+	}
+
+	@Override
+	public void onCompleted() {
+		for(AsyncDelivery<T> lane : lanes){
+			lane.onCompleted();
+		}
+	}
+
+	@Override
+	public void onError(Throwable e) {
+		for(AsyncDelivery<T> lane : lanes){
+			lane.onError(e);
+		}
+	}
+
+	@Override
+	public void unsubscribe() {
+		for(AsyncDelivery<T> lane : lanes){
+			lane.unsubscribe();
+		}
+	}
+
+	@Override
+	public boolean isUnsubscribed() {
+		return lanes.get(0).isUnsubscribed();
+	}
+
+	@Override
+	public int getQueueDepth() {
+		int retVal = 0;
+		for(AsyncDelivery<T> lane : lanes){
+			retVal += lane.getQueueDepth();
+		}
+		return retVal;
+	}
+
+	@Override
+	public long getDropped() {
+		long retVal = 0;
+		for(AsyncDelivery<T> lane : lanes){
+			retVal += lane.getDropped();
+		}
+		return retVal;
+	}
+
+}
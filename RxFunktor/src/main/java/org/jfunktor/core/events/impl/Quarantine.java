@@ -0,0 +1,144 @@
+package org.jfunktor.core.events.impl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.jfunktor.core.events.api.BusSubscription;
+import org.jfunktor.core.events.impl.QuarantineEvent.Reason;
+
+/**
+ * Watches the queue of one subscriber and quarantines it when it falls behind.
+ *
+ * The bus checks every guarded subscriber periodically from a single thread. A
+ * quarantined subscriber keeps its queue but the publishers are diverted to the
+ * quarantine, which keeps their events in a side buffer or hands them to a dead
+ * letter topic. Once the queue is drained the buffered events are queued back,
+ * in order, before the publishers are let through again.
+ */
+class Quarantine<T> implements Consumer<T> {
+
+	private AsyncDelivery<T> delivery;
+	private QuarantinePolicy policy;
+	private Consumer<T> deadLetter;
+
+	private Deque<T> sideBuffer = new ArrayDeque<>();
+	private volatile boolean active;
+	private Reason reason;
+	private long sidelined;
+	private volatile long dropped;
+
+	//only touched by the checking thread
+	private long lastTaken = -1;
+	private long lastProgress;
+
+	/**
+	 * @param deadLetter where the events go while quarantined, null to keep them in a side buffer
+	 */
+	Quarantine(AsyncDelivery<T> delivery, QuarantinePolicy policy, Consumer<T> deadLetter) {
+		this.delivery = delivery;
+		this.policy = policy;
+		this.deadLetter = deadLetter;
+	}
+
+	/**
+	 * @param now {@link System#nanoTime()}
+	 * @return the event to emit if the subscriber was quarantined or resumed, null otherwise
+	 */
+	QuarantineEvent check(long now, BusSubscription subscription) {
+		int lag = delivery.getQueueDepth();
+		long taken = delivery.getTaken();
+		if(taken != lastTaken || lag == 0){
+			lastTaken = taken;
+			lastProgress = now;
+		}
+		boolean stalled = now - lastProgress >= TimeUnit.MILLISECONDS.toNanos(policy.getMaxStallMillis());
+
+		if(!active){
+			Reason cause = lag >= policy.getMaxLag() ? Reason.LAG : stalled ? Reason.STALL : null;
+			if(cause == null){
+				return null;
+			}
+			synchronized(this){
+				reason = cause;
+				sidelined = 0;
+				active = true;
+			}
+			delivery.divert(this);
+			return new QuarantineEvent(subscription,true,cause,lag,0);
+		}
+		if(!stalled && lag <= policy.getResumeLag() && resume()){
+			return new QuarantineEvent(subscription,false,reason,delivery.getQueueDepth(),sidelined);
+		}
+		return null;
+	}
+
+	/**
+	 * Queues the buffered events back, short of the lag which would quarantine the subscriber again
+	 * @return true if the subscriber was let through again
+	 */
+	private synchronized boolean resume() {
+		while(!sideBuffer.isEmpty() && delivery.getQueueDepth() + 1 < policy.getMaxLag() && delivery.offer(sideBuffer.peekFirst())){
+			sideBuffer.pollFirst();
+		}
+		if(!sideBuffer.isEmpty()){
+			return false;
+		}
+		active = false;
+		delivery.divert(null);
+		return true;
+	}
+
+	/**
+	 * Takes an event diverted from the queue of the subscriber
+	 */
+	@Override
+	public void accept(T event) {
+		boolean resumed;
+		synchronized(this){
+			resumed = !active;
+			if(!resumed){
+				sidelined++;
+				if(deadLetter == null){
+					if(sideBuffer.size() >= policy.getSideBufferSize()){
+						sideBuffer.pollFirst();
+						dropped++;
+					}
+					sideBuffer.addLast(event);
+					return;
+				}
+			}
+		}
+		//handed over outside of the lock, a full queue may hold the caller and a
+		//publish may deliver to other subscribers right away
+		if(resumed){
+			//the queue takes it again
+			delivery.onNext(event);
+		}else{
+			deadLetter.accept(event);
+		}
+	}
+
+	boolean isActive() {
+		return active;
+	}
+
+	synchronized int getBuffered() {
+		return sideBuffer.size();
+	}
+
+	long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Forgets the buffered events of an unsubscribed subscriber
+	 */
+	synchronized void release() {
+		sideBuffer.clear();
+		active = false;
+		delivery.divert(null);
+	}
+
+}
@@ -0,0 +1,71 @@
+package org.jfunktor.core.events.impl;
+
+import org.jfunktor.core.events.api.BusSubscription;
+
+/**
+ * Emitted by {@link RxBus#quarantineEvents()} when a subscriber is quarantined
+ * and again when it resumes
+ */
+public class QuarantineEvent {
+
+	public enum Reason{
+		/** too many events were waiting in its queue */
+		LAG,
+		/** it had not taken any event for too long */
+		STALL
+	}
+
+	private BusSubscription subscription;
+	private boolean quarantined;
+	private Reason reason;
+	private int lag;
+	private long sidelined;
+
+	/**
+	 * @param quarantined false when the subscriber resumes
+	 * @param reason why the subscriber was quarantined
+	 * @param lag events waiting in the queue of the subscriber
+	 * @param sidelined events buffered or dead lettered during the quarantine
+	 */
+	QuarantineEvent(BusSubscription subscription, boolean quarantined, Reason reason, int lag, long sidelined) {
+		this.subscription = subscription;
+		this.quarantined = quarantined;
+		this.reason = reason;
+		this.lag = lag;
+		this.sidelined = sidelined;
+	}
+
+	/**
+	 * @return the handle returned when subscribing
+	 */
+	public BusSubscription getSubscription() {
+		return subscription;
+	}
+
+	public String getTopic() {
+		return subscription.getTopic();
+	}
+
+	public boolean isQuarantined() {
+		return quarantined;
+	}
+
+	public Reason getReason() {
+		return reason;
+	}
+
+	public int getLag() {
+		return lag;
+	}
+
+	public long getSidelined() {
+		return sidelined;
+	}
+
+	@Override
+	public String toString() {
+		return "QuarantineEvent [topic=" + getTopic() + ", quarantined=" + quarantined + ", reason=" + reason
+				+ ", lag=" + lag + ", sidelined=" + sidelined + "]";
+	}
+
+}
@@ -0,0 +1,108 @@
+package org.jfunktor.core.events.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jfunktor.core.events.api.EventBus;
+
+/**
+ * When a queued subscriber of a {@link RxBus} is quarantined and where its
+ * events go meanwhile, see {@link RxBus#withQuarantine(QuarantinePolicy)}
+ */
+public class QuarantinePolicy {
+
+	public static final int DEFAULT_MAX_LAG = EventBus.DEFAULT_QUEUE_CAPACITY * 3 / 4;
+
+	public static final long DEFAULT_MAX_STALL_MILLIS = 5000;
+
+	public static final long DEFAULT_CHECK_INTERVAL_MILLIS = 100;
+
+	public static final int DEFAULT_SIDE_BUFFER_SIZE = 10000;
+
+	private int maxLag = DEFAULT_MAX_LAG;
+	private int resumeLag = DEFAULT_MAX_LAG / 4;
+	private long maxStallMillis = DEFAULT_MAX_STALL_MILLIS;
+	private long checkIntervalMillis = DEFAULT_CHECK_INTERVAL_MILLIS;
+	private int sideBufferSize = DEFAULT_SIDE_BUFFER_SIZE;
+	private String deadLetterTopic;
+
+	/**
+	 * A subscriber is quarantined once maxLag events wait in its queue, it should
+	 * be below the capacity of the queue so that publishers are diverted before
+	 * the queue is full
+	 */
+	public QuarantinePolicy withMaxLag(int maxLag) {
+		this.maxLag = maxLag;
+		return this;
+	}
+
+	/**
+	 * A quarantined subscriber resumes once at most resumeLag events wait in its queue
+	 */
+	public QuarantinePolicy withResumeLag(int resumeLag) {
+		this.resumeLag = resumeLag;
+		return this;
+	}
+
+	/**
+	 * A subscriber is quarantined once it has events waiting and has not taken
+	 * any for maxStall, whatever its lag
+	 */
+	public QuarantinePolicy withMaxStall(long maxStall, TimeUnit unit) {
+		this.maxStallMillis = unit.toMillis(maxStall);
+		return this;
+	}
+
+	/**
+	 * How often the subscribers are checked
+	 */
+	public QuarantinePolicy withCheckInterval(long interval, TimeUnit unit) {
+		this.checkIntervalMillis = unit.toMillis(interval);
+		return this;
+	}
+
+	/**
+	 * Keeps the events of a quarantined subscriber in a side buffer of the given
+	 * size, dropping the oldest when full, and hands them over when it resumes
+	 */
+	public QuarantinePolicy withSideBuffer(int size) {
+		this.sideBufferSize = size;
+		return this;
+	}
+
+	/**
+	 * Publishes the events of a quarantined subscriber to the given topic of the
+	 * bus instead of buffering them, the subscriber does not get them back
+	 */
+	public QuarantinePolicy withDeadLetterTopic(String topic) {
+		this.deadLetterTopic = topic;
+		return this;
+	}
+
+	public int getMaxLag() {
+		return maxLag;
+	}
+
+	public int getResumeLag() {
+		return resumeLag;
+	}
+
+	public long getMaxStallMillis() {
+		return maxStallMillis;
+	}
+
+	public long getCheckIntervalMillis() {
+		return checkIntervalMillis;
+	}
+
+	public int getSideBufferSize() {
+		return sideBufferSize;
+	}
+
+	/**
+	 * @return the dead letter topic, null if the events are kept in a side buffer
+	 */
+	public String getDeadLetterTopic() {
+		return deadLetterTopic;
+	}
+
+}
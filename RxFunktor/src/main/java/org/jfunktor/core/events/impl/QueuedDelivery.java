@@ -0,0 +1,15 @@
+package org.jfunktor.core.events.impl;
+
+import rx.Observer;
+import rx.Subscription;
+
+/**
+ * A subscriber fed through queues, whose backlog the bus reports on its subscription
+ */
+interface QueuedDelivery<T> extends Observer<T>, Subscription {
+
+	int getQueueDepth();
+
+	long getDropped();
+
+}
@@ -0,0 +1,193 @@
+package org.jfunktor.core.events.impl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Correlates the replies of a bus with its requests in flight.
+ *
+ * A request is correlated by the key given by the correlation key function of
+ * the bus, so that a responder which got a copy of the request, through a
+ * {@link SocketBridge}, a {@link SharedMemoryTransport} or a journal replay,
+ * can still reply to it. Without such a function, or for a null key, a request
+ * is correlated by its own identity and the responder has to reply to the very
+ * request object it received.
+ *
+ * The requests waiting on the same key are answered in the order they were
+ * sent, one per reply, so a request sent several times gets as many replies.
+ * All the requests of a bus share one map, a request in flight costs an entry of
+ * the map and is itself a timeout on the {@link TimerWheel}, which fails and
+ * removes the request if no reply comes in time.
+ */
+class ReplyDispatcher<T> {
+
+	/**
+	 * A request object compared by identity, whatever its equals
+	 */
+	private static final class Identity{
+
+		private Object request;
+
+		Identity(Object request){
+			this.request = request;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(request);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Identity && ((Identity)obj).request == request;
+		}
+	};
+
+	private class Pending extends TimerWheel.Timeout{
+
+		private Object key;
+		private String topic;
+		private long timeoutMillis;
+		private Subscriber<? super T> subscriber;
+
+		Pending(Object key,String topic,long timeout,TimeUnit unit,Subscriber<? super T> subscriber){
+			super(null,System.nanoTime() + unit.toNanos(timeout));
+			this.key = key;
+			this.topic = topic;
+			this.timeoutMillis = unit.toMillis(timeout);
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		void run() {
+			if(remove(this)){
+				subscriber.onError(new TimeoutException(String.format("No reply to the request on %s within %d ms",topic,timeoutMillis)));
+			}
+		}
+	};
+
+	private String busName;
+	private TimerWheel timer;
+	private volatile Function<T,?> correlationKey;
+	/**
+	 * the requests awaiting a reply per key, oldest first, only ever changed within a compute of the map
+	 */
+	private Map<Object,Deque<Pending>> inFlight = new ConcurrentHashMap<>();
+
+	ReplyDispatcher(String busName, TimerWheel timer) {
+		this.busName = busName;
+		this.timer = timer;
+	}
+
+	/**
+	 * @param correlationKey gives the key a request and its copies share, null to correlate the requests by identity
+	 */
+	void setCorrelationKey(Function<T,?> correlationKey) {
+		this.correlationKey = correlationKey;
+	}
+
+	private Object keyOf(T request) {
+		Function<T,?> function = correlationKey;
+		Object retVal = function != null ? function.apply(request) : null;
+		return retVal != null ? retVal : new Identity(request);
+	}
+
+	/**
+	 * @param publish publishes the request, called once the request is awaited so that a replying SYNC subscriber finds it
+	 */
+	Observable<T> request(String topic, T evt, long timeout, TimeUnit unit, Consumer<T> publish) {
+		return Observable.create(subscriber->{
+			//the request is its own timeout, it is complete before it is awaited
+			Pending pending = new Pending(keyOf(evt),topic,timeout,unit,subscriber);
+			inFlight.compute(pending.key,(key,waiting)->{
+				Deque<Pending> retVal = waiting != null ? waiting : new ArrayDeque<>(2);
+				retVal.add(pending);
+				return retVal;
+			});
+			try{
+				timer.schedule(pending);
+			}catch(IllegalStateException e){
+				//the bus is shutting down
+				remove(pending);
+				subscriber.onError(e);
+				return;
+			}
+			//an unsubscribed request is forgotten right away
+			subscriber.add(Subscriptions.create(()->forget(pending)));
+			publish.accept(evt);
+		});
+	}
+
+	/**
+	 * @return false if the request was not awaited any more
+	 */
+	private boolean remove(Pending pending) {
+		AtomicBoolean removed = new AtomicBoolean();
+		inFlight.computeIfPresent(pending.key,(key,waiting)->{
+			removed.set(waiting.remove(pending));
+			return waiting.isEmpty() ? null : waiting;
+		});
+		return removed.get();
+	}
+
+	private void forget(Pending pending) {
+		if(remove(pending)){
+			pending.cancel();
+		}
+	}
+
+	/**
+	 * Answers the oldest request awaiting a reply under the key of the request
+	 * @return false if the request is not awaited, it timed out or was answered already
+	 */
+	boolean reply(T request, T response) {
+		AtomicReference<Pending> answered = new AtomicReference<>();
+		inFlight.computeIfPresent(keyOf(request),(key,waiting)->{
+			answered.set(waiting.poll());
+			return waiting.isEmpty() ? null : waiting;
+		});
+		Pending pending = answered.get();
+		if(pending == null){
+			return false;
+		}
+		pending.cancel();
+		pending.subscriber.onNext(response);
+		pending.subscriber.onCompleted();
+		return true;
+	}
+
+	/**
+	 * @return number of requests awaiting their reply
+	 */
+	int getInFlight() {
+		return inFlight.values().stream().mapToInt(waiting->waiting.size()).sum();
+	}
+
+	/**
+	 * Fails every request in flight, the bus is shutting down
+	 */
+	void cancelAll() {
+		inFlight.keySet().forEach(key->{
+			Deque<Pending> waiting = inFlight.remove(key);
+			if(waiting != null){
+				waiting.forEach(pending->{
+					pending.cancel();
+					pending.subscriber.onError(new IllegalStateException(String.format("Bus %s was shut down before the reply",busName)));
+				});
+			}
+		});
+	}
+
+}
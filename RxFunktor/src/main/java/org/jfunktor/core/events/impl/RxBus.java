@@ -1,60 +1,495 @@
 package org.jfunktor.core.events.impl;
 
+import static org.jfunktor.common.utils.LogUtil.warn;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
 
+import org.jfunktor.core.events.api.BusMetrics;
+import org.jfunktor.core.events.api.BusSubscription;
+import org.jfunktor.core.events.api.Criteria;
 import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.api.Topic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import rx.Observable;
 import rx.Observer;
+import rx.Scheduler;
 import rx.Subscription;
 import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
 import rx.subjects.PublishSubject;
 import rx.subjects.SerializedSubject;
 import rx.subjects.Subject;
 
+/**
+ * RxJava backed implementation of the EventBus.
+ *
+ * Published events are serialized through a lock-free drain and then routed
+ * by a dispatch table keyed on the normalized topic. Each subscriber owns its
+ * own sink, so a publish only touches the subscribers of its topic and an event
+ * for a topic without subscribers is detected with a single map miss.
+ *
+ * In the default {@link PublishMode#SERIALIZED} mode there is one drain for the
+ * whole bus, so all events of a priority are delivered in one global order. In
+ * {@link PublishMode#PER_TOPIC} mode topics are striped across several drains,
+ * so producers on different topics do not serialize against each other and the
+ * ordering is guaranteed per topic only.
+ *
+ * Topics are made of segments separated by dots. Subscribing to a pattern where
+ * a segment is * (exactly one segment) or # (zero or more segments), such as
+ * orders.* or orders.#, receives the events of every matching topic. Patterns are
+ * kept in a {@link TopicTrie} and an event is dead only when neither its topic
+ * nor any pattern has a subscriber.
+ *
+ * Every topic subscribed to, or resolved with {@link #topic(String)}, is interned
+ * in a {@link TopicRegistry}. Publishing with a {@link Topic} handle reaches the
+ * route of the topic through an array read, and the route caches its pattern
+ * matches until the patterns change, so such a publish does no string work.
+ * The routes are kept for the lifetime of the bus, up to the maximum set with
+ * {@link #withMaxTopics(int)}.
+ *
+ * A bus can be given a {@link Journal}. Every published event is then appended
+ * to it by the drain right before it is dispatched, so the journal holds the
+ * events in the order they were delivered, and {@link #subscribeFrom} can replay
+ * a topic from any retained offset before switching over to the live events.
+ *
+ * A topic marked sticky keeps its last events in the {@link StickyCache} of the
+ * bus and hands them to every new subscriber of the topic before its live
+ * events. Caching an event and delivering it, or reading the cache and adding a
+ * subscriber, are done under the lock of the route of the topic, so a subscriber
+ * never misses an event nor gets one twice.
+ *
+ * Every route counts the events published to it and every subscriber is called
+ * through a {@link SubscriptionMeter}, which counts its events and times a sample
+ * of them. {@link #getMetrics()} reads the counters without stopping the bus.
+ *
+ * A topic can be given a {@link Priority}. Every drain has a lane per priority
+ * and delivers the events of the urgent lanes first, as do the queues of the
+ * subscribers of several topics, without starving the lanes below.
+ *
+ * With a {@link DedupPolicy}, the bus drops the events whose idempotency key
+ * it has seen within a sliding window, remembered by a {@link DedupWindow} in
+ * bounded memory, and counts them in {@link #getDuplicates()}.
+ *
+ * With a {@link QuarantinePolicy}, the queued subscribers are checked for lag and
+ * stalls, and one falling behind is quarantined by a {@link Quarantine} until it
+ * catches up. The subscription handle stays the same throughout.
+ *
+ * A criteria subscription is kept in the {@link CriteriaIndex} of the route of
+ * its topic rather than among its sinks. The drain matches each event once
+ * against the index and only calls the subscribers whose criteria it meets.
+ *
+ * A {@link #request} is correlated with its reply by a {@link ReplyDispatcher}
+ * shared by all the requests of the bus, so a request in flight costs a map
+ * entry and a timeout of a {@link TimerWheel} rather than a subscription. The
+ * requests are correlated by identity unless the bus is given a correlation key
+ * with {@link #withCorrelationKey(Function)}.
+ * The events published later with {@link #publishAfter} are timeouts of the same
+ * wheel, journaled if the bus has a journal so that {@link #recoverScheduled()}
+ * can schedule them again on a bus opened on it after a restart.
+ */
 public class RxBus<T> implements EventBus<T> {
-	
-	enum SubscribeAction{
-		subscribe,unsubscribe;
+
+	private static Logger log = LoggerFactory.getLogger(RxBus.class);
+
+	/**
+	 * Slots of the ring of the drain of a SERIALIZED bus
+	 */
+	static final int DRAIN_CAPACITY = 1024;
+
+	/**
+	 * Slots of the ring of each drain of a PER_TOPIC bus
+	 */
+	static final int STRIPE_CAPACITY = 256;
+
+	public enum PublishMode{
+		SERIALIZED,
+		PER_TOPIC
+	}
+
+	/**
+	 * The lane the events of a topic take through the drains and the queues of
+	 * the subscribers, see {@link RxBus#markPriority(String, Priority)}
+	 */
+	public enum Priority{
+		HIGH,
+		NORMAL,
+		LOW
 	}
-	
+
+	/**
+	 * Slots of the ring of the HIGH and LOW lanes of a drain, their events being few
+	 */
+	static final int PRIORITY_LANE_CAPACITY = 64;
+
+	/**
+	 * The envelope of a published event, or batch, on its way through a drain.
+	 * The envelopes are the slots of the ring of a drain, they are filled in by
+	 * the publishers and reused once their event is dispatched.
+	 */
 	private class WrappedEvent<T>{
-		
-		private String topic;
+
+		private TopicRoute route;
 		private T event;
-		
-		WrappedEvent(String channel,T evt){
-			topic = channel;
+		private Collection<T> events;
+
+		private String key;
+		private byte[][] records;
+		private long offset = -1;
+
+		/**
+		 * The position of the ring the slot is ready for, see {@link Drain}.
+		 * An envelope which overflowed the ring holds the position it waits for.
+		 */
+		private volatile long sequence;
+
+		WrappedEvent(long sequence){
+			this.sequence = sequence;
+		}
+
+		/**
+		 * @param route the route of the topic, null if the topic was never interned
+		 * @param key the normalized topic
+		 * @param evts the events of a batch, null for a single event
+		 * @param records the events encoded for the journal, null if the bus has none
+		 */
+		void set(TopicRoute route,String key,T evt,Collection<T> evts,byte[][] records){
+			this.route = route;
+			this.key = key;
 			event = evt;
+			events = evts;
+			this.records = records;
+			offset = -1;
 		}
 
-		public String getTopic() {
-			return topic;
+		/**
+		 * Lets go of the event so that a free slot does not keep it alive
+		 */
+		void clear(){
+			route = null;
+			key = null;
+			event = null;
+			events = null;
+			records = null;
+		}
+
+		public TopicRoute getRoute() {
+			return route;
 		}
 
 		public T getEvent() {
 			return event;
 		}
-		
+
+		public boolean isBatch() {
+			return events != null;
+		}
+
+		/**
+		 * Hands the event, or every event of a batch, to sinks subscribed to
+		 * several topics, a pattern or the dead topics. A queued one takes the
+		 * event in the lane of its topic, so that it gets the events of an urgent
+		 * topic ahead of those of the other topics it waits on.
+		 * @param sinks observers, as held by a {@link SinkArray}
+		 */
+		@SuppressWarnings("unchecked")
+		void deliverAcrossTopics(Object[] sinks) {
+			int lane = route != null ? route.priority.ordinal() : AsyncDelivery.NORMAL_LANE;
+			if(lane == AsyncDelivery.NORMAL_LANE){
+				deliverTo(sinks);
+				return;
+			}
+			for(int i = 0; i < sinks.length; i++){
+				if(sinks[i] instanceof AsyncDelivery){
+					AsyncDelivery<T> sink = (AsyncDelivery<T>)sinks[i];
+					if(events == null){
+						sink.onNext(event,lane);
+					}else{
+						events.forEach(evt->sink.onNext(evt,lane));
+					}
+				}else{
+					deliverTo((Observer<T>)sinks[i]);
+				}
+			}
+		}
+
+		/**
+		 * Hands the event, or every event of a batch, to the sinks of its topic.
+		 * They only ever get the events of that topic, all of the same priority,
+		 * so their queues have no use for lanes.
+		 * @param sinks observers, as held by a {@link SinkArray}
+		 */
+		@SuppressWarnings("unchecked")
+		void deliverTo(Object[] sinks) {
+			if(events == null){
+				for(int i = 0; i < sinks.length; i++){
+					((Observer<T>)sinks[i]).onNext(event);
+				}
+			}else{
+				for(int i = 0; i < sinks.length; i++){
+					for(T evt : events){
+						((Observer<T>)sinks[i]).onNext(evt);
+					}
+				}
+			}
+		}
+
+		private void deliverTo(Observer<T> sink) {
+			if(events == null){
+				sink.onNext(event);
+			}else{
+				for(T evt : events){
+					sink.onNext(evt);
+				}
+			}
+		}
+
+		/**
+		 * Hands the event, or every event of a batch, to the criteria subscriptions it matches
+		 */
+		void deliverMatching(CriteriaIndex<Observer<T>> index) {
+			if(events == null){
+				index.match(event,sink->sink.onNext(event));
+			}else{
+				for(T evt : events){
+					index.match(evt,sink->sink.onNext(evt));
+				}
+			}
+		}
+
+		/**
+		 * Hands the journaled event, or every event of a batch, to the replaying
+		 * subscriptions. Events which failed to be journaled keep an offset of -1.
+		 */
+		@SuppressWarnings("unchecked")
+		void replayTo(Object[] replays) {
+			for(int i = 0; i < replays.length; i++){
+				JournalReplay<T> replay = (JournalReplay<T>)replays[i];
+				if(events == null){
+					replay.onNext(offset,event);
+				}else{
+					long next = offset;
+					for(T evt : events){
+						replay.onNext(next,evt);
+						next = offset < 0 ? offset : next + 1;
+					}
+				}
+			}
+		}
+
+		public String getKey() {
+			return key;
+		}
+
 	};
-	
-	private class WrappedSubscription implements Subscription{
+
+	/**
+	 * A multi producer queue drained by whichever publisher gets in first.
+	 * Publishers never block each other, only one of them delivers at a time
+	 * and the events are delivered in the order they were queued.
+	 *
+	 * The queue is a ring of pre-allocated envelopes, so queuing an event
+	 * allocates nothing. A publisher claims the next slot by moving the tail,
+	 * fills it in and marks it ready; the drain frees the slot for the next turn
+	 * of the ring once the event is dispatched. When the ring is full, because
+	 * the subscribers are slower than the publishers or one of them publishes a
+	 * burst from its callback, the event is queued in a new envelope on an
+	 * overflow queue rather than waiting. An overflowed event is dispatched once
+	 * every slot claimed before it has been, and publishers keep overflowing
+	 * until the overflow is empty, so the events of a publisher stay in order.
+	 *
+	 * There is such a ring, with its overflow, per {@link Priority}. The drain
+	 * looks at the rings before every event and takes the most urgent one as
+	 * picked by a {@link LanePicker}, so an urgent event waits for the event
+	 * being dispatched only, whatever the backlog of the lanes below it. The
+	 * order is kept within a lane, hence within a topic.
+	 */
+	private class Drain{
+
+		@SuppressWarnings("unchecked")
+		private Lane[] lanes = (Lane[])new RxBus<?>.Lane[Priority.values().length];
+		private LanePicker picker = new LanePicker(lanes.length);
+		private IntPredicate ready = lane->lanes[lane].isReady();
+		private AtomicInteger wip = new AtomicInteger();
+		private Consumer<WrappedEvent<T>> target;
+
+		/**
+		 * @param capacity number of slots of the ring of the NORMAL lane, a power of 2
+		 */
+		Drain(int capacity,Consumer<WrappedEvent<T>> target){
+			this.target = target;
+			for(Priority priority : Priority.values()){
+				lanes[priority.ordinal()] = new Lane(priority == Priority.NORMAL ? capacity : PRIORITY_LANE_CAPACITY);
+			}
+		}
+
+		/**
+		 * @param evts the events of a batch, null for a single event
+		 * @param records the events encoded for the journal, null if the bus has none
+		 */
+		void emit(TopicRoute route,String key,T evt,Collection<T> evts,byte[][] records){
+			Lane lane = lanes[route != null ? route.priority.ordinal() : AsyncDelivery.NORMAL_LANE];
+			lane.emit(route,key,evt,evts,records);
+			if(wip.getAndIncrement() == 0){
+				drain();
+			}
+		}
+
+		private void drain() {
+			int missed = 1;
+			do{
+				for(;;){
+					int next = picker.pick(ready);
+					if(next < 0){
+						break;
+					}
+					lanes[next].dispatchNext(target);
+				}
+				missed = wip.addAndGet(-missed);
+			}while(missed != 0);
+		}
+	};
+
+	/**
+	 * The ring and overflow of one priority of a {@link Drain}
+	 */
+	private class Lane{
+
+		private WrappedEvent<T>[] ring;
+		private int mask;
+		private AtomicLong tail = new AtomicLong();
+		private long head;
+		private Queue<WrappedEvent<T>> overflow = new ConcurrentLinkedQueue<>();
+
+		/**
+		 * @param capacity number of slots of the ring, a power of 2
+		 */
+		@SuppressWarnings("unchecked")
+		Lane(int capacity){
+			ring = (WrappedEvent<T>[])new RxBus<?>.WrappedEvent<?>[capacity];
+			for(int i = 0; i < capacity; i++){
+				ring[i] = new WrappedEvent<>(i);
+			}
+			mask = capacity - 1;
+		}
+
+		void emit(TopicRoute route,String key,T evt,Collection<T> evts,byte[][] records){
+			WrappedEvent<T> slot = overflow.isEmpty() ? claim() : null;
+			if(slot != null){
+				long position = slot.sequence;
+				slot.set(route,key,evt,evts,records);
+				slot.sequence = position + 1;
+			}else{
+				WrappedEvent<T> late = new WrappedEvent<>(tail.get());
+				late.set(route,key,evt,evts,records);
+				overflow.offer(late);
+			}
+		}
+
+		/**
+		 * @return the slot claimed, null if the ring is full
+		 */
+		private WrappedEvent<T> claim() {
+			for(;;){
+				long position = tail.get();
+				WrappedEvent<T> slot = ring[(int)position & mask];
+				long sequence = slot.sequence;
+				if(sequence == position){
+					if(tail.compareAndSet(position,position + 1)){
+						return slot;
+					}
+				}else if(sequence < position){
+					//the slot still holds its event of the previous turn
+					return null;
+				}
+			}
+		}
+
+		/**
+		 * Called by the draining thread only
+		 */
+		boolean isReady() {
+			WrappedEvent<T> late = overflow.peek();
+			return (late != null && head >= late.sequence) || ring[(int)head & mask].sequence == head + 1;
+		}
+
+		/**
+		 * Dispatches the next event, the lane being ready
+		 */
+		void dispatchNext(Consumer<WrappedEvent<T>> target) {
+			WrappedEvent<T> late = overflow.peek();
+			if(late != null && head >= late.sequence){
+				overflow.poll();
+				dispatch(target,late);
+				return;
+			}
+			WrappedEvent<T> slot = ring[(int)head & mask];
+			try{
+				dispatch(target,slot);
+			}finally{
+				slot.clear();
+				slot.sequence = head + ring.length;
+				head++;
+			}
+		}
+
+		/**
+		 * Nothing thrown may leave the drain, its publisher would leave the work in
+		 * progress counted and no event would ever be drained again
+		 */
+		private void dispatch(Consumer<WrappedEvent<T>> target, WrappedEvent<T> wrap) {
+			try{
+				target.accept(wrap);
+			}catch(Throwable e){
+				metrics.failed(wrap.isBatch() ? wrap.events.size() : 1);
+				warn(log,e,"Bus %s failed to dispatch an event of topic %s",busName,wrap.getKey());
+			}
+		}
+	};
+
+	private class WrappedSubscription implements BusSubscription{
 
 		private Subscription delegate;
 		private String topic;
-		
-		WrappedSubscription(Subscription subscription,String topic){
+		private Observer<T> sink;
+		private Quarantine<T> quarantine;
+		private AtomicBoolean unsubscribed = new AtomicBoolean();
+
+		WrappedSubscription(Subscription subscription,String topic,Observer<T> sink){
 			delegate = subscription;
 			this.topic = topic;
+			this.sink = sink;
 		}
-		
+
 		@Override
 		public void unsubscribe() {
-			System.out.println("Unsubscribe for topic "+topic);
-			updateTopic(topic,SubscribeAction.unsubscribe);
-			
+			//the sink must leave its route once only, however many threads unsubscribe
+			if(!unsubscribed.compareAndSet(false,true)){
+				return;
+			}
+			removeRoute(topic,sink);
+			if(quarantine != null){
+				guarded.remove(this);
+				quarantine.release();
+			}
+
 			//now delegate to actual subscription
 			delegate.unsubscribe();
 		}
@@ -63,48 +498,381 @@ public class RxBus<T> implements EventBus<T> {
 		public boolean isUnsubscribed() {
 			return delegate.isUnsubscribed();
 		}
-		
+
+		@Override
+		public String getTopic() {
+			return topic;
+		}
+
+		@Override
+		public int getQueueDepth() {
+			int retVal = sink instanceof QueuedDelivery ? ((QueuedDelivery<T>)sink).getQueueDepth() : 0;
+			return quarantine != null ? retVal + quarantine.getBuffered() : retVal;
+		}
+
+		@Override
+		public long getDropped() {
+			long retVal = sink instanceof QueuedDelivery ? ((QueuedDelivery<T>)sink).getDropped() : 0;
+			return quarantine != null ? retVal + quarantine.getDropped() : retVal;
+		}
+
+		@Override
+		public boolean isQuarantined() {
+			return quarantine != null && quarantine.isActive();
+		}
+
+	};
+
+	/**
+	 * The patterns matching a topic as of a version of the trie
+	 */
+	private static class PatternMatch<S>{
+
+		private int version;
+		private List<TopicTrie.Node<S>> nodes;
+
+		PatternMatch(int version,List<TopicTrie.Node<S>> nodes){
+			this.version = version;
+			this.nodes = nodes;
+		}
+	};
+
+	/**
+	 * The subscribers of a topic as of one change. Every change copies the
+	 * snapshot and swaps the copy in, so a publisher reads the plain, criteria
+	 * and replaying subscribers of a topic as of the same moment: the topic is
+	 * dead exactly when that snapshot holds no subscriber, whatever subscribes
+	 * and unsubscribes meanwhile.
+	 */
+	private class Subscribers{
+
+		private Object[] sinks;
+		private CriteriaIndex<Observer<T>> criteria;
+		private Object[] replays;
+
+		Subscribers(Object[] sinks,CriteriaIndex<Observer<T>> criteria,Object[] replays){
+			this.sinks = sinks;
+			this.criteria = criteria;
+			this.replays = replays;
+		}
+
+		boolean isEmpty(){
+			return sinks.length == 0 && criteria.isEmpty() && replays.length == 0;
+		}
+	};
+
+	/**
+	 * The subscribers of a single topic. A route lives as long as the bus, a
+	 * route without subscribers is a dead topic. Changes are serialized on the
+	 * route, publishers read its subscribers without locking.
+	 */
+	private class TopicRoute{
+
+		private Topic topic;
+		private int hash;
+		private volatile Subscribers subscribers = new Subscribers(SinkArray.empty(),CriteriaIndex.empty(),SinkArray.empty());
+		private volatile PatternMatch<Observer<T>> matches;
+		private volatile boolean sticky;
+		private volatile Priority priority = Priority.NORMAL;
+		private LongAdder published = new LongAdder();
+
+		TopicRoute(Topic topic){
+			this.topic = topic;
+			hash = spread(topic.getName().hashCode());
+		}
+
+		synchronized void add(Observer<T> sink){
+			Subscribers current = subscribers;
+			subscribers = new Subscribers(SinkArray.with(current.sinks,sink),current.criteria,current.replays);
+		}
+
+		synchronized void add(Criteria criteria,Observer<T> sink){
+			Subscribers current = subscribers;
+			subscribers = new Subscribers(current.sinks,current.criteria.with(criteria,sink),current.replays);
+		}
+
+		synchronized void add(JournalReplay<T> replay){
+			Subscribers current = subscribers;
+			subscribers = new Subscribers(current.sinks,current.criteria,SinkArray.with(current.replays,replay));
+		}
+
+		/**
+		 * Removes a plain or criteria subscriber
+		 */
+		synchronized void remove(Observer<T> sink){
+			Subscribers current = subscribers;
+			Object[] sinks = SinkArray.without(current.sinks,sink);
+			if(sinks != current.sinks){
+				subscribers = new Subscribers(sinks,current.criteria,current.replays);
+			}else{
+				subscribers = new Subscribers(sinks,current.criteria.without(sink),current.replays);
+			}
+		}
+
+		synchronized void remove(JournalReplay<T> replay){
+			Subscribers current = subscribers;
+			subscribers = new Subscribers(current.sinks,current.criteria,SinkArray.without(current.replays,replay));
+		}
+
+		synchronized void clear(){
+			subscribers = new Subscribers(SinkArray.empty(),CriteriaIndex.empty(),SinkArray.empty());
+		}
+
+		/**
+		 * @return false if the topic has no subscriber
+		 */
+		boolean dispatch(WrappedEvent<T> wrap){
+			Subscribers current = subscribers;
+			if(current.isEmpty()){
+				return false;
+			}
+			wrap.deliverTo(current.sinks);
+			if(!current.criteria.isEmpty()){
+				wrap.deliverMatching(current.criteria);
+			}
+			if(current.replays.length > 0){
+				wrap.replayTo(current.replays);
+			}
+			return true;
+		}
+
+		List<TopicTrie.Node<Observer<T>>> patternMatches(){
+			//read the version first so that a concurrent change invalidates what is cached
+			int version = patterns.getVersion();
+			PatternMatch<Observer<T>> current = matches;
+			if(current == null || current.version != version){
+				current = new PatternMatch<>(version,patterns.match(topic.getName()));
+				matches = current;
+			}
+			return current.nodes;
+		}
+
+		@SuppressWarnings("unchecked")
+		void complete(){
+			Subscribers current = subscribers;
+			for(Object sink : current.sinks){
+				((Observer<T>)sink).onCompleted();
+			}
+			current.criteria.getSinks().forEach(sink->sink.onCompleted());
+			for(Object replay : current.replays){
+				((JournalReplay<T>)replay).onCompleted();
+			}
+		}
 	};
-	
+
 	private String busName;
-	private Subject<WrappedEvent<T>,WrappedEvent<T>> subject = new SerializedSubject<WrappedEvent<T>,WrappedEvent<T>>(PublishSubject.create());
-	
-	private Map<String,AtomicInteger> topicMap = new ConcurrentHashMap<>();
-	
+	private Drain[] drains;
+	private Drain deadTopicDrain;
+	private volatile boolean completed;
+	private Journal<T> journal;
+	private StickyCache<T> stickyCache;
+	private BusMeter metrics;
+	private TimerWheel timer;
+	private ReplyDispatcher<T> replies;
+	private ScheduledPublications<T> scheduled;
+
+	private volatile DedupWindow<T> dedup;
+	private LongAdder duplicates = new LongAdder();
+
+	private QuarantinePolicy quarantinePolicy;
+	private Subscription quarantineCheck;
+	private List<WrappedSubscription> guarded = new CopyOnWriteArrayList<>();
+	private Subject<QuarantineEvent,QuarantineEvent> quarantineEvents = new SerializedSubject<>(PublishSubject.create());
+
+	private TopicRegistry<TopicRoute> topicRegistry = new TopicRegistry<>(topic->new TopicRoute(topic));
+
+	private SinkArray<Observer<T>> deadTopicSinks = new SinkArray<>();
+
+	private TopicTrie<Observer<T>> patterns = new TopicTrie<>();
+
 	public RxBus(String name){
+		this(name,PublishMode.SERIALIZED);
+	}
+
+	public RxBus(String name,PublishMode mode){
+		this(name,mode,null);
+	}
+
+	/**
+	 * Creates a bus journaling every event it publishes
+	 * @param journal the journal of the bus, it is left open by {@link #unSubscribeAll()}
+	 */
+	public RxBus(String name,PublishMode mode,Journal<T> journal){
+		this(name,mode,journal,new StickyCache<>(StickyCache.DEFAULT_BUDGET));
+	}
+
+	/**
+	 * @param journal the journal of the bus, null for none
+	 * @param stickyCache holds the last events of the sticky topics
+	 */
+	public RxBus(String name,PublishMode mode,Journal<T> journal,StickyCache<T> stickyCache){
 		busName = name;
+		metrics = new BusMeter(name);
+		timer = new TimerWheel(name);
+		replies = new ReplyDispatcher<>(name,timer);
+		scheduled = new ScheduledPublications<>(timer,journal,this::publish);
+		this.journal = journal;
+		this.stickyCache = stickyCache;
+		if(mode == PublishMode.PER_TOPIC){
+			drains = createDrains(Runtime.getRuntime().availableProcessors() * 4,STRIPE_CAPACITY);
+			//dead topic sinks are shared by every stripe so they get their own drain
+			deadTopicDrain = new Drain(STRIPE_CAPACITY,wrap->dispatchDeadTopic(wrap));
+		}else{
+			drains = createDrains(1,DRAIN_CAPACITY);
+		}
 	}
-	
-	
+
+	@SuppressWarnings("unchecked")
+	private Drain[] createDrains(int stripes, int capacity) {
+		//a power of 2 so that a topic hash can be masked to its stripe
+		int size = Math.max(Integer.highestOneBit(stripes - 1) << 1,1);
+		Drain[] retVal = (Drain[])new RxBus<?>.Drain[size];
+		for(int i = 0; i < retVal.length; i++){
+			retVal[i] = new Drain(capacity,wrap->dispatch(wrap));
+		}
+		return retVal;
+	}
+
+
 	@Override
 	public EventBus<T> unSubscribeAll() {
-		subject.onCompleted();
+		completed = true;
+		if(quarantineCheck != null){
+			quarantineCheck.unsubscribe();
+		}
+		guarded.clear();
+		quarantineEvents.onCompleted();
+		replies.cancelAll();
+		timer.stop();
+		topicRegistry.forEach(route->route.complete());
+		patterns.forEach(sink->sink.onCompleted());
+		deadTopicSinks.forEach(sink->sink.onCompleted());
 		unSubscribeTopics();
 		return this;
 	}
 
 	private void unSubscribeTopics() {
-		topicMap.clear();
+		topicRegistry.forEach(route->route.clear());
+		patterns.clear();
+		deadTopicSinks.clear();
 	}
 
 
 	@Override
-	public Subscription subscribe(String topic, Consumer<T> consumer) {
+	public BusSubscription subscribe(String topic, Consumer<T> consumer) {
 		return this.subscribe(topic, DeliveryMode.SYNC, consumer);
 	}
 
 	@Override
 	public EventBus<T> publish(String topic, T evt) {
-		WrappedEvent wrap = new WrappedEvent(topic,evt);
-		subject.onNext(wrap);
+		if(completed || isRepeat(evt)){
+			return this;
+		}
+		String key = TopicRegistry.normalize(topic);
+		TopicRoute route = topicRegistry.find(key);
+		drainOf(route,key).emit(route,key,evt,null,recordsOf(key,evt));
 		return this;
 	}
 
-	
+
 	@Override
-	public Subscription subscribe(String topic, DeliveryMode async, Consumer<T> consumer) {
+	public EventBus<T> publish(Topic topic, T evt) {
+		TopicRoute route = topicRegistry.get(topic);
+		if(completed || isRepeat(evt)){
+			return this;
+		}
+		drainOf(route,topic.getName()).emit(route,topic.getName(),evt,null,recordsOf(topic.getName(),evt));
+		return this;
+	}
 
-		return this.subscribeWithObserver(topic,async,new Observer<T>() {
+
+	@Override
+	public Topic topic(String name) {
+		return topicRegistry.intern(name).topic;
+	}
+
+
+	@Override
+	public EventBus<T> publishAll(String topic, Collection<T> evts) {
+		if(completed || evts.isEmpty()){
+			return this;
+		}
+		List<T> batch = new ArrayList<>(evts);
+		if(dedup != null){
+			batch.removeIf(evt->isRepeat(evt));
+			if(batch.isEmpty()){
+				return this;
+			}
+		}
+		//the whole batch is routed once and delivered as one unit
+		String key = TopicRegistry.normalize(topic);
+		TopicRoute route = topicRegistry.find(key);
+		drainOf(route,key).emit(route,key,null,batch,recordsOf(key,batch));
+		return this;
+	}
+
+
+	/**
+	 * Encodes the event for the journal on the publishing thread, so that an
+	 * event the journal refuses fails its publication rather than the drain
+	 * @return null if the bus has no journal
+	 */
+	private byte[][] recordsOf(String key, T evt) {
+		return journal != null ? new byte[][]{journal.encode(key,evt)} : null;
+	}
+
+
+	private byte[][] recordsOf(String key, List<T> batch) {
+		if(journal == null){
+			return null;
+		}
+		byte[][] retVal = new byte[batch.size()][];
+		for(int i = 0; i < retVal.length; i++){
+			retVal[i] = journal.encode(key,batch.get(i));
+		}
+		return retVal;
+	}
+
+
+	private boolean isRepeat(T evt) {
+		DedupWindow<T> window = dedup;
+		if(window != null && window.isRepeat(evt)){
+			duplicates.increment();
+			return true;
+		}
+		return false;
+	}
+
+
+	private Drain drainOf(TopicRoute route, String key) {
+		if(drains.length == 1){
+			return drains[0];
+		}
+		int hash = route != null ? route.hash : spread(key.hashCode());
+		return drains[hash & (drains.length - 1)];
+	}
+
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+
+	@Override
+	public BusSubscription subscribe(String topic, DeliveryMode async, Consumer<T> consumer) {
+
+		return this.subscribeWithObserver(topic,async,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribe(String topic, int capacity, OverflowPolicy policy, Consumer<T> consumer) {
+		return this.subscribeWithObserver(topic,capacity,policy,observerOf(consumer));
+	}
+
+
+	private static <E> Observer<E> observerOf(Consumer<E> consumer) {
+		return new Observer<E>() {
 
 			@Override
 			public void onCompleted() {
@@ -115,105 +883,637 @@ public class RxBus<T> implements EventBus<T> {
 			}
 
 			@Override
-			public void onNext(T event) {
+			public void onNext(E event) {
 				consumer.accept(event);
 			}
 
 
-		});
+		};
 	}
 
 
-	private void updateTopic(String topic, SubscribeAction unsubscribe) {
-		String topicLower = topic.toLowerCase();
-		if(SubscribeAction.subscribe == unsubscribe){
-			//subscription related logic
-			topicMap.get(topicLower).incrementAndGet();
+	private void dispatch(WrappedEvent<T> wrap) {
+		int count = wrap.isBatch() ? wrap.events.size() : 1;
+		if(journal != null){
+			try{
+				wrap.offset = journal.appendEncoded(wrap.getKey(),wrap.records);
+			}catch(RuntimeException e){
+				//the event is still delivered live, it is missing from the journal only
+				metrics.failed(count);
+				warn(log,e,"Bus %s failed to journal an event of topic %s",busName,wrap.getKey());
+			}
+		}
+		TopicRoute route = routeOf(wrap);
+		boolean matched = false;
+		if(route != null){
+			route.published.add(count);
+			if(route.sticky){
+				synchronized(route){
+					if(wrap.isBatch()){
+						wrap.events.forEach(evt->stickyCache.put(route.topic.getName(),evt));
+					}else{
+						stickyCache.put(route.topic.getName(),wrap.getEvent());
+					}
+					matched = route.dispatch(wrap);
+				}
+			}else{
+				matched = route.dispatch(wrap);
+			}
 		}else{
-			//unsubscribe related logic
-			if(topicMap.get(topicLower).get() > 0){
-				
-				int val = topicMap.get(topicLower).decrementAndGet();
-				System.out.println("Unsubscribe for topic "+topic+" with val post update "+val);
+			metrics.unrouted(count);
+		}
+		if(!patterns.isEmpty()){
+			List<TopicTrie.Node<Observer<T>>> nodes = route != null ? route.patternMatches() : patterns.match(wrap.getKey());
+			for(int i = 0; i < nodes.size(); i++){
+				wrap.deliverAcrossTopics(nodes.get(i).getSinks());
+				matched = true;
 			}
 		}
+		if(matched){
+			return;
+		}
+		metrics.dead(count);
+
+		if(deadTopicDrain != null){
+			if(!deadTopicSinks.isEmpty()){
+				deadTopicDrain.emit(wrap.getRoute(),wrap.getKey(),wrap.getEvent(),wrap.events,null);
+			}
+		}else{
+			dispatchDeadTopic(wrap);
+		}
 	}
 
 
-	private void defineTopic(String topic) {
-		topicMap.put(topic.toLowerCase(), new AtomicInteger(1));
+	/**
+	 * The route is looked up again for a topic which had none when the event was
+	 * published: it may have been subscribed to since, and a replay started in
+	 * between must get the event live as it cannot be sure to find it journaled
+	 */
+	private TopicRoute routeOf(WrappedEvent<T> wrap) {
+		TopicRoute route = wrap.getRoute();
+		return route != null ? route : topicRegistry.find(wrap.getKey());
 	}
 
 
-	private boolean isTopicDefined(String topic) {
-		
-		boolean retVal = false;
-		String topicLower = topic.toLowerCase();
-		if(topicMap.containsKey(topicLower))
-			if(topicMap.get(topicLower).get() > 0)
-				retVal = true;
-		
-		return retVal;
+	private void dispatchDeadTopic(WrappedEvent<T> wrap) {
+		wrap.deliverAcrossTopics(deadTopicSinks.get());
+	}
+
+
+	private void addRoute(String topic, Observer<T> sink) {
+		if(TopicTrie.isPattern(topic)){
+			patterns.add(normalize(topic),sink);
+			return;
+		}
+		TopicRoute route = topicRegistry.intern(topic);
+		if(route.sticky){
+			synchronized(route){
+				stickyCache.get(route.topic.getName()).forEach(sink::onNext);
+				route.add(sink);
+			}
+		}else{
+			route.add(sink);
+		}
+	}
+
+
+	private void removeRoute(String topic, Observer<T> sink) {
+		if(topic == null){
+			deadTopicSinks.remove(sink);
+			return;
+		}
+		if(TopicTrie.isPattern(topic)){
+			patterns.remove(normalize(topic),sink);
+			return;
+		}
+		//an emptied route turns the topic dead again
+		TopicRoute route = topicRegistry.find(normalize(topic));
+		if(route != null){
+			route.remove(sink);
+		}
+	}
+
+
+	/**
+	 * Indexes the criteria of a subscriber with those of the other subscribers of
+	 * the topic. A sticky topic hands the cached events meeting the criteria first.
+	 */
+	private void addCriteria(TopicRoute route, Criteria criteria, Observer<T> sink) {
+		synchronized(route){
+			if(route.sticky){
+				stickyCache.get(route.topic.getName()).stream()
+				.filter(evt->criteria.matches(CriteriaIndex.detailsOf(evt)))
+				.forEach(sink::onNext);
+			}
+			route.add(criteria,sink);
+		}
+	}
+
+
+	private String normalize(String topic) {
+		return TopicRegistry.normalize(topic);
+	}
+
+
+	/**
+	 * Creates the sink of a SYNC subscriber. A pattern can match topics of
+	 * different stripes, so its sink must be safe for concurrent publishers.
+	 */
+	private Subject<T,T> createSink(String topic) {
+		Subject<T,T> sink = PublishSubject.create();
+		if(drains.length > 1 && TopicTrie.isPattern(topic)){
+			return new SerializedSubject<>(sink);
+		}
+		return sink;
 	}
 
 
 	@Override
-	public Subscription subscribeForDeadTopics(EventBus.DeliveryMode async,
+	public BusSubscription subscribeForDeadTopics(EventBus.DeliveryMode async,
 			Consumer<T> consumer) {
-		return this.subscribeForDeadTopicsWithObserver(async,new Observer<T>() {
+		return this.subscribeForDeadTopicsWithObserver(async,observerOf(consumer));
+	}
 
-			@Override
-			public void onCompleted() {
-				// TODO Auto-generated method stub
-				
-			}
 
-			@Override
-			public void onError(Throwable e) {
-				// TODO Auto-generated method stub
-				
-			}
+	@Override
+	public BusSubscription subscribeForDeadTopicsWithObserver(EventBus.DeliveryMode async,
+			Observer<T> consumer) {
+		checkMode(async);
+		SubscriptionMeter<T> meter = metrics.meter(null,async,consumer);
+		if(async == DeliveryMode.ASYNC || async == DeliveryMode.VIRTUAL){
+			AsyncDelivery<T> delivery = createDelivery(null,DEFAULT_QUEUE_CAPACITY,DEFAULT_OVERFLOW_POLICY,meter,schedulerOf(async));
+			deadTopicSinks.add(delivery);
+			return meter.attach(guard(new WrappedSubscription(delivery,null,delivery),delivery));
+		}
 
-			@Override
-			public void onNext(T event) {
-				consumer.accept(event);
-			}
+		Subject<T,T> sink = PublishSubject.create();
+		Subscription subscription = sink.subscribe(meter);
 
+		deadTopicSinks.add(sink);
 
-		});
+		return meter.attach(new WrappedSubscription(subscription,null,sink));
 	}
 
 
 	@Override
-	public Subscription subscribeForDeadTopicsWithObserver(EventBus.DeliveryMode async,
+	public BusSubscription subscribeWithObserver(String topic, EventBus.DeliveryMode async,
 			Observer<T> consumer) {
-		return subject.filter(event->{
-			return !isTopicDefined(event.getTopic());
-		})
-		.map(evt->{return evt.getEvent();})
-		.observeOn(async == DeliveryMode.ASYNC ? Schedulers.io() : Schedulers.immediate())
-		.subscribe(consumer);
+		checkMode(async);
+		if(async == DeliveryMode.ASYNC || async == DeliveryMode.VIRTUAL){
+			return subscribeQueued(topic,DEFAULT_QUEUE_CAPACITY,DEFAULT_OVERFLOW_POLICY,consumer,async);
+		}
+
+		SubscriptionMeter<T> meter = metrics.meter(normalize(topic),async,consumer);
+		Subject<T,T> sink = createSink(topic);
+		Subscription subscription = sink.subscribe(meter);
+
+		//add the sink to the routing table of the topic
+		addRoute(topic,sink);
+
+		return meter.attach(new WrappedSubscription(subscription,topic,sink));
 	}
 
 
 	@Override
-	public Subscription subscribeWithObserver(String topic, EventBus.DeliveryMode async,
+	public BusSubscription subscribe(String topic, Function<T,?> keyExtractor, int lanes, Consumer<T> consumer) {
+		return this.subscribeWithObserver(topic,keyExtractor,lanes,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeWithObserver(String topic, Function<T,?> keyExtractor, int lanes,
 			Observer<T> consumer) {
-		Subscription subscription = subject.filter(event->{return event.getTopic().equalsIgnoreCase(topic)?true:false;})
-		.map(evt->{return evt.getEvent();})
-		.observeOn(async == DeliveryMode.ASYNC ? Schedulers.io() : Schedulers.immediate())
-		.subscribe(consumer);
-	
-		//add the topic to the topic map
-		if(isTopicDefined(topic)){
-			updateTopic(topic,SubscribeAction.subscribe);
-		}else{
-			defineTopic(topic);
+		return this.subscribeWithObserver(topic,keyExtractor,lanes,DEFAULT_QUEUE_CAPACITY,DEFAULT_OVERFLOW_POLICY,consumer);
+	}
+
+
+	@Override
+	public BusSubscription subscribe(String topic, Function<T,?> keyExtractor, int lanes, int capacity,
+			OverflowPolicy policy, Consumer<T> consumer) {
+		return this.subscribeWithObserver(topic,keyExtractor,lanes,capacity,policy,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeWithObserver(String topic, Function<T,?> keyExtractor, int lanes, int capacity,
+			OverflowPolicy policy, Observer<T> consumer) {
+		SubscriptionMeter<T> meter = metrics.meter(normalize(topic),DeliveryMode.PARTITIONED,consumer);
+		//a failed subscriber leaves the routing table right away
+		PartitionedDelivery<T> sink = new PartitionedDelivery<>(keyExtractor,lanes,capacity,policy,meter,Schedulers.io(),
+				failed->removeRoute(topic,failed));
+
+		addRoute(topic,sink);
+
+		return meter.attach(new WrappedSubscription(sink,topic,sink));
+	}
+
+
+	@Override
+	public BusSubscription subscribeConflated(String topic, Function<T,?> keyExtractor, Consumer<T> consumer) {
+		return this.subscribeConflatedWithObserver(topic,keyExtractor,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeConflatedWithObserver(String topic, Function<T,?> keyExtractor, Observer<T> consumer) {
+		SubscriptionMeter<T> meter = metrics.meter(normalize(topic),DeliveryMode.ASYNC,consumer);
+		ConflatingDelivery<T> sink = new ConflatingDelivery<>(keyExtractor,meter,Schedulers.io());
+
+		addRoute(topic,sink);
+
+		return meter.attach(new WrappedSubscription(sink,topic,sink));
+	}
+
+
+	@Override
+	public BusSubscription subscribe(String topic, Criteria criteria, DeliveryMode async, Consumer<T> consumer) {
+		return this.subscribeWithObserver(topic,criteria,async,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeWithObserver(String topic, Criteria criteria, DeliveryMode async,
+			Observer<T> consumer) {
+		checkMode(async);
+		if(TopicTrie.isPattern(topic)){
+			throw new IllegalArgumentException(String.format("Cannot match criteria on the pattern %s, criteria are indexed per topic",topic));
+		}
+		TopicRoute route = topicRegistry.intern(topic);
+		SubscriptionMeter<T> meter = metrics.meter(route.topic.getName(),async,consumer);
+		if(async == DeliveryMode.ASYNC || async == DeliveryMode.VIRTUAL){
+			AsyncDelivery<T> sink = createDelivery(topic,DEFAULT_QUEUE_CAPACITY,DEFAULT_OVERFLOW_POLICY,meter,schedulerOf(async));
+			addCriteria(route,criteria,sink);
+			return meter.attach(guard(new WrappedSubscription(sink,topic,sink),sink));
 		}
-		
-		return new WrappedSubscription(subscription,topic);
+
+		Subject<T,T> sink = PublishSubject.create();
+		Subscription subscription = sink.subscribe(meter);
+		addCriteria(route,criteria,sink);
+		return meter.attach(new WrappedSubscription(subscription,topic,sink));
+	}
+
+
+	private static void checkMode(DeliveryMode mode) {
+		if(mode == DeliveryMode.PARTITIONED){
+			throw new IllegalArgumentException("A PARTITIONED subscription needs a key extractor and a lane count");
+		}
+	}
+
+
+	private static Scheduler schedulerOf(DeliveryMode mode) {
+		return mode == DeliveryMode.VIRTUAL ? VirtualThreads.scheduler() : Schedulers.io();
+	}
+
+
+	@Override
+	public BusSubscription subscribe(Topic topic, DeliveryMode async, Consumer<T> consumer) {
+		return this.subscribeWithObserver(topic,async,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeWithObserver(Topic topic, DeliveryMode async, Observer<T> consumer) {
+		//subscribing is not on the hot path, the handle is only checked to belong to this bus
+		topicRegistry.get(topic);
+		return this.subscribeWithObserver(topic.getName(),async,consumer);
+	}
+
+
+	@Override
+	public BusSubscription subscribeWithObserver(String topic, int capacity, OverflowPolicy policy,
+			Observer<T> consumer) {
+		return subscribeQueued(topic,capacity,policy,consumer,DeliveryMode.ASYNC);
+	}
+
+
+	/**
+	 * @param mode ASYNC or VIRTUAL, which decides where the subscriber is called
+	 */
+	private BusSubscription subscribeQueued(String topic, int capacity, OverflowPolicy policy,
+			Observer<T> consumer, DeliveryMode mode) {
+		SubscriptionMeter<T> meter = metrics.meter(normalize(topic),mode,consumer);
+		AsyncDelivery<T> sink = createDelivery(topic,capacity,policy,meter,schedulerOf(mode));
+
+		addRoute(topic,sink);
+
+		return meter.attach(guard(new WrappedSubscription(sink,topic,sink),sink));
+	}
+
+
+	@Override
+	public BusSubscription subscribeBatched(String topic, int maxBatch, long maxDelay, TimeUnit unit,
+			Consumer<List<T>> consumer) {
+		Subject<T,T> sink = createSink(topic);
+
+		//batches are handed over to the consumer thread so that a slow bulk write does not hold the bus
+		SubscriptionMeter<List<T>> meter = metrics.meter(normalize(topic),DeliveryMode.ASYNC,observerOf(consumer));
+		AsyncDelivery<List<T>> delivery = new AsyncDelivery<>(DEFAULT_QUEUE_CAPACITY,DEFAULT_OVERFLOW_POLICY,meter,
+				Schedulers.io(),failed->removeRoute(topic,sink));
+
+		Subscription buffering = sink
+		.buffer(maxDelay,unit,maxBatch,Schedulers.computation())
+		.filter(batch->!batch.isEmpty())
+		.subscribe(delivery);
+
+		addRoute(topic,sink);
+
+		return meter.attach(new WrappedSubscription(Subscriptions.from(buffering,delivery),topic,sink));
+	}
+
+
+	/**
+	 * Replays the journaled events of the topic from the offset onwards, then
+	 * delivers the live events as they are published. The replay runs on an io
+	 * thread, the live events are delivered on the publishing thread.
+	 * @param offset offset of the first event to replay, the oldest event retained is used if it is older
+	 * @throws IllegalStateException if the bus has no journal
+	 * @throws IllegalArgumentException if the topic is a wildcard pattern
+	 */
+	public BusSubscription subscribeFrom(String topic, long offset, Consumer<T> consumer) {
+		return this.subscribeFromWithObserver(topic,offset,observerOf(consumer));
+	}
+
+
+	/**
+	 * @see #subscribeFrom(String, long, Consumer)
+	 */
+	public BusSubscription subscribeFromWithObserver(String topic, long offset, Observer<T> consumer) {
+		if(journal == null){
+			throw new IllegalStateException(String.format("Bus %s has no journal to replay from",busName));
+		}
+		if(TopicTrie.isPattern(topic)){
+			throw new IllegalArgumentException(String.format("Cannot replay the pattern %s, replays are per topic",topic));
+		}
+		TopicRoute route = topicRegistry.intern(topic);
+		SubscriptionMeter<T> meter = metrics.meter(route.topic.getName(),DeliveryMode.ASYNC,consumer);
+		JournalReplay<T> replay = new JournalReplay<>(journal,route.topic.getName(),offset,meter,unsubscribed->route.remove(unsubscribed));
+		route.add(replay);
+		replay.start(Schedulers.io());
+		return meter.attach(replay);
+	}
+
+
+	/**
+	 * Makes the topic keep its last events for the new subscribers
+	 * @param size number of events kept
+	 * @throws IllegalArgumentException if the topic is a wildcard pattern
+	 */
+	public RxBus<T> markSticky(String topic, int size) {
+		TopicRoute route = stickyRoute(topic);
+		stickyCache.retainLast(route.topic.getName(),size);
+		route.sticky = true;
+		return this;
+	}
+
+
+	/**
+	 * Makes the topic keep its last event per key for the new subscribers
+	 * @param keyExtractor key of an event, for instance the instrument of a price
+	 * @throws IllegalArgumentException if the topic is a wildcard pattern
+	 */
+	public RxBus<T> markSticky(String topic, Function<T,?> keyExtractor) {
+		TopicRoute route = stickyRoute(topic);
+		stickyCache.retainLastPerKey(route.topic.getName(),keyExtractor);
+		route.sticky = true;
+		return this;
+	}
+
+
+	/**
+	 * Makes the events of the topic take the lane of the priority through the
+	 * drains and through the queues of the subscribers of several topics. The
+	 * events of a HIGH topic are delivered ahead of the NORMAL and LOW events
+	 * waiting, so a control topic is not held up by the backlog of a busy data
+	 * topic, while a lower lane still gets an event in every
+	 * {@link LanePicker#MAX_BYPASS} when the lanes above it are busy. The order
+	 * of the events is kept per topic only.
+	 * @throws IllegalArgumentException if the topic is a wildcard pattern
+	 */
+	public RxBus<T> markPriority(String topic, Priority priority) {
+		if(TopicTrie.isPattern(topic)){
+			throw new IllegalArgumentException(String.format("Only topics have a priority, %s is a pattern",topic));
+		}
+		topicRegistry.intern(topic).priority = priority;
+		return this;
+	}
+
+
+	private TopicRoute stickyRoute(String topic) {
+		if(TopicTrie.isPattern(topic)){
+			throw new IllegalArgumentException(String.format("Only topics can be sticky, %s is a pattern",topic));
+		}
+		return topicRegistry.intern(topic);
+	}
+
+
+	@Override
+	public Observable<T> request(String topic, T evt, long timeout, TimeUnit unit) {
+		if(completed){
+			return Observable.error(new IllegalStateException(String.format("Bus %s is shut down",busName)));
+		}
+		return replies.request(topic,evt,timeout,unit,request->publish(topic,request));
+	}
+
+
+	@Override
+	public boolean reply(T request, T response) {
+		return replies.reply(request,response);
+	}
+
+
+	@Override
+	public Subscription publishAfter(String topic, T evt, long delay, TimeUnit unit) {
+		if(completed){
+			return Subscriptions.unsubscribed();
+		}
+		return scheduled.publishAfter(topic,evt,delay,unit);
+	}
+
+
+	@Override
+	public Subscription publishAt(String topic, T evt, Instant at) {
+		if(completed){
+			return Subscriptions.unsubscribed();
+		}
+		return scheduled.publishAt(topic,evt,at);
+	}
+
+
+	@Override
+	public Observable<T> asPublisher(String topic, int capacity, OverflowPolicy policy) {
+		if(completed){
+			return Observable.error(new IllegalStateException(String.format("Bus %s is shut down",busName)));
+		}
+		return DemandDelivery.publisher(this,topic,capacity,policy);
+	}
+
+
+	@Override
+	public Observable<T> asPublisher(String topic) {
+		return asPublisher(topic,DEFAULT_QUEUE_CAPACITY,DEFAULT_OVERFLOW_POLICY);
+	}
+
+
+	/**
+	 * Schedules again the publications journaled by a previous bus on the journal
+	 * of this one and still pending when it stopped. Call it once the subscribers
+	 * are in place, the publications already due are published right away.
+	 * @return number of publications scheduled again
+	 * @throws IllegalStateException if the bus has no journal
+	 */
+	public int recoverScheduled() {
+		if(journal == null){
+			throw new IllegalStateException(String.format("Bus %s has no journal to recover from",busName));
+		}
+		return scheduled.recover();
+	}
+
+
+	@Override
+	public BusMetrics getMetrics() {
+		Map<String,Long> published = new HashMap<>();
+		topicRegistry.forEach(route->published.put(route.topic.getName(),route.published.sum()));
+		return metrics.snapshot(published);
+	}
+
+
+	/**
+	 * Sets the number of distinct topics the bus interns before refusing new
+	 * ones, {@link EventBus#DEFAULT_MAX_TOPICS} by default
+	 * @throws IllegalArgumentException if the maximum is not positive
+	 */
+	public RxBus<T> withMaxTopics(int maxTopics) {
+		topicRegistry.setMaxTopics(maxTopics);
+		return this;
+	}
+
+
+	/**
+	 * Sets how many deliveries make up one latency sample, 16 by default. The
+	 * subscriptions made from now on use it.
+	 * @param everyNth 1 to time every delivery, rounded up to a power of 2
+	 */
+	public RxBus<T> withLatencySampling(int everyNth) {
+		metrics.setSampling(everyNth);
+		return this;
+	}
+
+
+	/**
+	 * Correlates the requests with their replies by the key of the request
+	 * rather than by its identity, so that a responder can reply to a copy of
+	 * the request, as received through a {@link SocketBridge}, a
+	 * {@link SharedMemoryTransport} or a journal replay
+	 * @param correlationKey gives the key a request and its copies share, null
+	 * for a request to be correlated by identity
+	 */
+	public RxBus<T> withCorrelationKey(Function<T,?> correlationKey) {
+		replies.setCorrelationKey(correlationKey);
+		return this;
+	}
+
+
+	/**
+	 * Drops the events published from now on whose idempotency key was seen
+	 * within the window of the policy, before they are journaled or delivered
+	 * @throws IllegalStateException if the bus already has a dedup policy
+	 * @throws IllegalArgumentException if the policy makes no sense
+	 */
+	public RxBus<T> withDedup(DedupPolicy<T> policy) {
+		if(dedup != null){
+			throw new IllegalStateException(String.format("Bus %s already has a dedup policy",busName));
+		}
+		dedup = DedupWindow.create(policy);
+		return this;
+	}
+
+
+	/**
+	 * @return number of events dropped as repeats by the dedup policy
+	 */
+	public long getDuplicates() {
+		return duplicates.sum();
+	}
+
+
+	/**
+	 * Checks the queued subscribers made from now on for lag and stalls, and
+	 * quarantines those falling behind
+	 * @throws IllegalStateException if the bus already has a quarantine policy
+	 */
+	public RxBus<T> withQuarantine(QuarantinePolicy policy) {
+		if(quarantinePolicy != null){
+			throw new IllegalStateException(String.format("Bus %s already has a quarantine policy",busName));
+		}
+		quarantinePolicy = policy;
+		quarantineCheck = Schedulers.computation().createWorker().schedulePeriodically(()->checkQuarantines(),
+				policy.getCheckIntervalMillis(),policy.getCheckIntervalMillis(),TimeUnit.MILLISECONDS);
+		return this;
+	}
+
+
+	/**
+	 * @return the subscribers quarantined and resumed, completed by {@link #unSubscribeAll()}
+	 */
+	public Observable<QuarantineEvent> quarantineEvents() {
+		return quarantineEvents;
+	}
+
+
+	/**
+	 * Puts the queued subscription under quarantine if the bus has a policy.
+	 * Dead letters are only used for plain topics other than the dead letter
+	 * topic itself, which could otherwise get their own events back forever.
+	 */
+	private WrappedSubscription guard(WrappedSubscription subscription, AsyncDelivery<T> delivery) {
+		if(quarantinePolicy == null){
+			return subscription;
+		}
+		String deadLetterTopic = quarantinePolicy.getDeadLetterTopic();
+		String topic = subscription.getTopic();
+		Consumer<T> deadLetter = null;
+		if(deadLetterTopic != null && topic != null && !TopicTrie.isPattern(topic) && !normalize(topic).equals(normalize(deadLetterTopic))){
+			deadLetter = evt->publish(deadLetterTopic,evt);
+		}
+		subscription.quarantine = new Quarantine<>(delivery,quarantinePolicy,deadLetter);
+		guarded.add(subscription);
+		return subscription;
+	}
+
+
+	private void checkQuarantines() {
+		long now = System.nanoTime();
+		for(WrappedSubscription subscription : guarded){
+			QuarantineEvent event = subscription.quarantine.check(now,subscription);
+			if(event != null){
+				if(event.isQuarantined()){
+					warn(log,"Subscriber of %s on bus %s quarantined for %s, %d events behind",event.getTopic(),busName,event.getReason(),event.getLag());
+				}else{
+					warn(log,"Subscriber of %s on bus %s resumed after %d events set aside",event.getTopic(),busName,event.getSidelined());
+				}
+				quarantineEvents.onNext(event);
+			}
+		}
+	}
+
+
+	public StickyCache<T> getStickyCache() {
+		return stickyCache;
+	}
+
+
+	/**
+	 * @return the journal of the bus, null if it has none
+	 */
+	public Journal<T> getJournal() {
+		return journal;
+	}
+
+
+	private AsyncDelivery<T> createDelivery(String topic, int capacity, OverflowPolicy policy, Observer<T> consumer,
+			Scheduler scheduler) {
+		//a subscriber failed by an overflow leaves the routing table right away
+		return new AsyncDelivery<>(capacity,policy,consumer,scheduler,delivery->removeRoute(topic,delivery));
 	}
-	
-	
 
 }
@@ -0,0 +1,146 @@
+package org.jfunktor.core.events.impl;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import rx.Subscription;
+
+/**
+ * The events of a bus waiting to be published at a later time.
+ *
+ * Every pending publication is a timeout of the {@link TimerWheel} of the bus,
+ * holding its topic and event itself, so scheduling and cancelling one takes
+ * constant time and a pending publication costs a single object.
+ *
+ * On a bus with a {@link Journal}, a publication is journaled when it is
+ * scheduled, and settled once it is published or cancelled, under topics of
+ * their own which the replays of the plain topics never read. The publications
+ * journaled and left unsettled by a previous bus, because it was shut down or
+ * crashed, can be scheduled again with {@link #recover()}. A publication is
+ * settled after it is published, so one published right before a crash is
+ * published again on recovery. A publication scheduled further ahead than the
+ * retention of the journal is lost on recovery.
+ */
+class ScheduledPublications<T> {
+
+	static final String TIMER_PREFIX = "$timer/";
+
+	static final String SCHEDULED_PREFIX = TIMER_PREFIX+"at/";
+
+	static final String SETTLED_PREFIX = TIMER_PREFIX+"settled/";
+
+	private class Publication extends TimerWheel.Timeout implements Subscription{
+
+		private String topic;
+		private T event;
+		private long offset = -1;
+		private boolean settled;
+
+		Publication(String topic,T event,long deadline){
+			super(null,deadline);
+			this.topic = topic;
+			this.event = event;
+		}
+
+		@Override
+		void run() {
+			if(settle()){
+				publish.accept(topic,event);
+				journalSettled(this);
+			}
+		}
+
+		@Override
+		public void unsubscribe() {
+			if(settle()){
+				cancel();
+				journalSettled(this);
+			}
+		}
+
+		@Override
+		public synchronized boolean isUnsubscribed() {
+			return settled;
+		}
+
+		/**
+		 * @return false if the publication was already published or cancelled
+		 */
+		private synchronized boolean settle(){
+			if(settled){
+				return false;
+			}
+			settled = true;
+			return true;
+		}
+	}
+
+	private TimerWheel timer;
+	private Journal<T> journal;
+	private BiConsumer<String,T> publish;
+
+	/**
+	 * @param journal the journal of the bus, null if it has none
+	 * @param publish publishes a due event to its topic, called on the timer thread
+	 */
+	ScheduledPublications(TimerWheel timer, Journal<T> journal, BiConsumer<String,T> publish) {
+		this.timer = timer;
+		this.journal = journal;
+		this.publish = publish;
+	}
+
+	Subscription publishAfter(String topic, T evt, long delay, TimeUnit unit) {
+		return schedule(topic,evt,System.currentTimeMillis() + unit.toMillis(delay));
+	}
+
+	Subscription publishAt(String topic, T evt, Instant at) {
+		return schedule(topic,evt,at.toEpochMilli());
+	}
+
+	private Subscription schedule(String topic, T evt, long dueAt) {
+		Publication retVal = publication(topic,evt,dueAt);
+		if(journal != null){
+			retVal.offset = journal.append(SCHEDULED_PREFIX+dueAt+"/"+topic,evt);
+		}
+		return timer.schedule(retVal);
+	}
+
+	private Publication publication(String topic, T evt, long dueAt) {
+		long delay = Math.max(dueAt - System.currentTimeMillis(),0);
+		return new Publication(topic,evt,System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay));
+	}
+
+	private void journalSettled(Publication publication) {
+		if(publication.offset >= 0){
+			journal.append(SETTLED_PREFIX+publication.offset,publication.event);
+		}
+	}
+
+	/**
+	 * Schedules again the publications journaled and left unsettled, those due already are published right away
+	 * @return number of publications scheduled again
+	 */
+	int recover() {
+		if(journal == null){
+			return 0;
+		}
+		Map<Long,Publication> pending = new LinkedHashMap<>();
+		journal.readPrefixed(journal.getFirstOffset(),journal.getNextOffset(),TIMER_PREFIX,(offset,topic,evt)->{
+			if(topic.startsWith(SCHEDULED_PREFIX)){
+				//the topic scheduled may itself hold slashes
+				String[] dueAndTopic = topic.substring(SCHEDULED_PREFIX.length()).split("/",2);
+				Publication publication = publication(dueAndTopic[1],evt,Long.parseLong(dueAndTopic[0]));
+				publication.offset = offset;
+				pending.put(offset,publication);
+			}else if(topic.startsWith(SETTLED_PREFIX)){
+				pending.remove(Long.parseLong(topic.substring(SETTLED_PREFIX.length())));
+			}
+		});
+		pending.values().forEach(timer::schedule);
+		return pending.size();
+	}
+
+}
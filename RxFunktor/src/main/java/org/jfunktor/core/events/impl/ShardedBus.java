@@ -0,0 +1,656 @@
+package org.jfunktor.core.events.impl;
+
+import static org.jfunktor.common.utils.LogUtil.warn;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.jfunktor.core.events.api.BusMetrics;
+import org.jfunktor.core.events.api.BusSubscription;
+import org.jfunktor.core.events.api.Criteria;
+import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.api.SubscriptionMetrics;
+import org.jfunktor.core.events.api.Topic;
+import org.jfunktor.core.events.api.TopicMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import rx.Observable;
+import rx.Observer;
+import rx.Subscription;
+import rx.observers.SerializedObserver;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * An EventBus spreading its topics over several independent {@link RxBus} shards.
+ *
+ * A single RxBus delivers from one drain, so it is bound to one core however
+ * many publishers it has. Here every topic is hashed to one of N shards and
+ * every shard has a queue and a thread of its own: publishing only queues the
+ * event for the shard of its topic, and the thread of the shard publishes it to
+ * its bus, so the SYNC subscribers of a shard run on its thread. Topics of
+ * different shards are delivered in parallel, the events of a topic in the
+ * order they were published. A shard thread never waits on a queue: an event a
+ * subscriber publishes to a topic of its own shard is delivered on the spot, as
+ * the thread would otherwise wait on itself once the queue is full, and one it
+ * publishes to a full shard of another thread is refused with an
+ * IllegalStateException, as two shards publishing to each other would otherwise
+ * wait on each other. A publication which is refused, or dropped as its
+ * publisher was interrupted or the bus closed, is counted by
+ * {@link BusMetrics#getFailedDispatches()}.
+ *
+ * A subscription to a pattern, or for dead topics, spans all the shards: it is
+ * made on every shard and its subscriber is serialized, as the shards call it
+ * from their own threads. A topic is dead when its shard has no subscriber for
+ * it. Such a subscription is counted once per shard in the metrics.
+ */
+public class ShardedBus<T> implements EventBus<T> {
+
+	private static Logger log = LoggerFactory.getLogger(ShardedBus.class);
+
+	public static final int DEFAULT_SHARD_QUEUE_CAPACITY = 8192;
+
+	private static final long OFFER_RECHECK_MILLIS = 100;
+
+	private static final int DRAIN_BATCH = 256;
+
+	/**
+	 * An event, or a batch of events, waiting for the thread of its shard
+	 */
+	private static class Publication<T>{
+
+		private String topic;
+		private Topic handle;
+		private T event;
+		private Collection<T> events;
+
+		Publication(String topic,Topic handle,T event,Collection<T> events){
+			this.topic = topic;
+			this.handle = handle;
+			this.event = event;
+			this.events = events;
+		}
+
+		int size(){
+			return events != null ? events.size() : 1;
+		}
+	};
+
+	private class Shard{
+
+		private int index;
+		private RxBus<T> bus;
+		private BlockingQueue<Publication<T>> queue;
+		private Thread thread;
+		private volatile boolean stopped;
+
+		Shard(int index,int capacity,ThreadFactory threadFactory){
+			this.index = index;
+			bus = new RxBus<>(busName+"-"+index);
+			queue = new ArrayBlockingQueue<>(capacity);
+			thread = threadFactory.newThread(()->run());
+		}
+
+		/**
+		 * Waits for room in the queue of the shard, waking up now and then so
+		 * that a publisher is not held by a shard stopped meanwhile. A subscriber
+		 * of the shard publishing to it from the thread of the shard would wait
+		 * for itself to make room, so its event is delivered there and then. The
+		 * thread of another shard is not made to wait at all.
+		 * @throws IllegalStateException if the caller is the thread of another shard and the queue is full
+		 */
+		void submit(Publication<T> publication) {
+			Shard current = currentShard.get();
+			if(current == this){
+				deliver(publication);
+				return;
+			}
+			if(current != null){
+				if(!queue.offer(publication)){
+					dropped.add(publication.size());
+					throw new IllegalStateException(String.format("Shard %d of bus %s is full, shard %d cannot wait for it",index,busName,current.index));
+				}
+				return;
+			}
+			try{
+				while(!queue.offer(publication,OFFER_RECHECK_MILLIS,TimeUnit.MILLISECONDS)){
+					if(stopped){
+						dropped.add(publication.size());
+						return;
+					}
+				}
+			}catch(InterruptedException e){
+				dropped.add(publication.size());
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private void run() {
+			currentShard.set(this);
+			List<Publication<T>> batch = new ArrayList<>(DRAIN_BATCH);
+			while(!stopped){
+				Publication<T> first;
+				try{
+					first = queue.poll(OFFER_RECHECK_MILLIS,TimeUnit.MILLISECONDS);
+				}catch(InterruptedException e){
+					return;
+				}
+				if(first == null){
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch,DRAIN_BATCH - 1);
+				//a publication which fails does not take the rest of the batch with it
+				for(int i = 0; i < batch.size(); i++){
+					try{
+						deliver(batch.get(i));
+					}catch(Throwable e){
+						dropped.add(batch.get(i).size());
+						warn(log,e,"Shard %d of bus %s failed to deliver",index,busName);
+					}
+				}
+				batch.clear();
+			}
+		}
+
+		private void deliver(Publication<T> publication) {
+			if(publication.events != null){
+				bus.publishAll(publication.topic,publication.events);
+			}else if(publication.handle != null){
+				bus.publish(publication.handle,publication.event);
+			}else{
+				bus.publish(publication.topic,publication.event);
+			}
+		}
+
+		void stop() {
+			stopped = true;
+		}
+	};
+
+	/**
+	 * A topic of this bus and its handle on the bus of its shard
+	 */
+	private static class ShardRoute{
+
+		private Topic topic;
+		private int shard;
+		private Topic handle;
+
+		ShardRoute(Topic topic,int shard,Topic handle){
+			this.topic = topic;
+			this.shard = shard;
+			this.handle = handle;
+		}
+	};
+
+	/**
+	 * A subscription made on several shards at once
+	 */
+	private static class ShardedSubscription implements BusSubscription{
+
+		private List<BusSubscription> parts;
+
+		ShardedSubscription(List<BusSubscription> parts){
+			this.parts = parts;
+		}
+
+		@Override
+		public void unsubscribe() {
+			parts.forEach(part->part.unsubscribe());
+		}
+
+		@Override
+		public boolean isUnsubscribed() {
+			return parts.stream().allMatch(part->part.isUnsubscribed());
+		}
+
+		@Override
+		public String getTopic() {
+			return parts.get(0).getTopic();
+		}
+
+		@Override
+		public int getQueueDepth() {
+			return parts.stream().mapToInt(part->part.getQueueDepth()).sum();
+		}
+
+		@Override
+		public long getDropped() {
+			return parts.stream().mapToLong(part->part.getDropped()).sum();
+		}
+
+		@Override
+		public boolean isQuarantined() {
+			return parts.stream().anyMatch(part->part.isQuarantined());
+		}
+	};
+
+	private String busName;
+	private List<Shard> shards;
+	/**
+	 * the shard whose thread is the current one, none for any other thread
+	 */
+	private ThreadLocal<Shard> currentShard = new ThreadLocal<>();
+	/**
+	 * publications refused or lost before they reached the bus of their shard
+	 */
+	private LongAdder dropped = new LongAdder();
+	private volatile boolean closed;
+	private TimerWheel timer;
+	private ReplyDispatcher<T> replies;
+	private ScheduledPublications<T> scheduled;
+	private TopicRegistry<ShardRoute> topicRegistry;
+
+	/**
+	 * Creates a bus with one shard per available processor
+	 */
+	public ShardedBus(String name){
+		this(name,Runtime.getRuntime().availableProcessors());
+	}
+
+	public ShardedBus(String name,int shardCount){
+		this(name,shardCount,DEFAULT_SHARD_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * @param shardCount number of shards, each with its own bus and thread
+	 * @param queueCapacity number of publications a shard holds before its publishers wait
+	 */
+	public ShardedBus(String name,int shardCount,int queueCapacity){
+		if(shardCount <= 0){
+			throw new IllegalArgumentException(String.format("Bus %s needs at least one shard",name));
+		}
+		busName = name;
+		timer = new TimerWheel(name);
+		replies = new ReplyDispatcher<>(name,timer);
+		scheduled = new ScheduledPublications<>(timer,null,this::publish);
+		ThreadFactory threadFactory = new ThreadFactoryBuilder()
+				.setNameFormat(name+"-shard-%d")
+				.setDaemon(true)
+				.build();
+		shards = new ArrayList<>(shardCount);
+		for(int i = 0; i < shardCount; i++){
+			shards.add(new Shard(i,queueCapacity,threadFactory));
+		}
+		topicRegistry = new TopicRegistry<>(topic->{
+			int shard = shardIndexOf(topic.getName());
+			return new ShardRoute(topic,shard,shards.get(shard).bus.topic(topic.getName()));
+		});
+		for(Shard shard : shards){
+			shard.thread.start();
+		}
+	}
+
+
+	private int shardIndexOf(String key) {
+		int hash = key.hashCode();
+		return Math.floorMod(hash ^ (hash >>> 16),shards.size());
+	}
+
+
+	private Shard shardOf(String topic) {
+		return shards.get(shardIndexOf(TopicRegistry.normalize(topic)));
+	}
+
+
+	/**
+	 * Makes the subscription on the shard of the topic, or on every shard for a pattern
+	 */
+	private BusSubscription subscribeOn(String topic, Function<EventBus<T>,BusSubscription> subscription) {
+		if(!TopicTrie.isPattern(topic)){
+			return subscription.apply(shardOf(topic).bus);
+		}
+		return subscribeOnAll(subscription);
+	}
+
+
+	private BusSubscription subscribeOnAll(Function<EventBus<T>,BusSubscription> subscription) {
+		List<BusSubscription> parts = new ArrayList<>(shards.size());
+		for(Shard shard : shards){
+			parts.add(subscription.apply(shard.bus));
+		}
+		return new ShardedSubscription(parts);
+	}
+
+
+	/**
+	 * The subscriber of a pattern is called by several shards
+	 */
+	private static <E> Observer<E> serializedFor(String topic, Observer<E> observer) {
+		return topic == null || TopicTrie.isPattern(topic) ? new SerializedObserver<>(observer) : observer;
+	}
+
+
+	@Override
+	public EventBus<T> unSubscribeAll() {
+		closed = true;
+		replies.cancelAll();
+		timer.stop();
+		for(Shard shard : shards){
+			shard.stop();
+			shard.bus.unSubscribeAll();
+		}
+		return this;
+	}
+
+
+	@Override
+	public BusSubscription subscribe(String topic, Consumer<T> consumer) {
+		return this.subscribe(topic,DeliveryMode.SYNC,consumer);
+	}
+
+
+	@Override
+	public EventBus<T> publish(String topic, T evt) {
+		if(closed){
+			return this;
+		}
+		shardOf(topic).submit(new Publication<>(topic,null,evt,null));
+		return this;
+	}
+
+
+	@Override
+	public EventBus<T> publish(Topic topic, T evt) {
+		ShardRoute route = topicRegistry.get(topic);
+		if(closed){
+			return this;
+		}
+		shards.get(route.shard).submit(new Publication<>(null,route.handle,evt,null));
+		return this;
+	}
+
+
+	@Override
+	public EventBus<T> publishAll(String topic, Collection<T> evts) {
+		if(closed || evts.isEmpty()){
+			return this;
+		}
+		shardOf(topic).submit(new Publication<>(topic,null,null,new ArrayList<>(evts)));
+		return this;
+	}
+
+
+	@Override
+	public Topic topic(String name) {
+		return topicRegistry.intern(name).topic;
+	}
+
+
+	@Override
+	public BusSubscription subscribe(String topic, DeliveryMode async, Consumer<T> consumer) {
+		return this.subscribeWithObserver(topic,async,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeWithObserver(String topic, DeliveryMode async, Observer<T> consumer) {
+		Observer<T> observer = serializedFor(topic,consumer);
+		return subscribeOn(topic,bus->bus.subscribeWithObserver(topic,async,observer));
+	}
+
+
+	@Override
+	public BusSubscription subscribe(String topic, int capacity, OverflowPolicy policy, Consumer<T> consumer) {
+		return this.subscribeWithObserver(topic,capacity,policy,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeWithObserver(String topic, int capacity, OverflowPolicy policy, Observer<T> consumer) {
+		Observer<T> observer = serializedFor(topic,consumer);
+		return subscribeOn(topic,bus->bus.subscribeWithObserver(topic,capacity,policy,observer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeBatched(String topic, int maxBatch, long maxDelay, TimeUnit unit,
+			Consumer<List<T>> consumer) {
+		Observer<List<T>> observer = serializedFor(topic,observerOf(consumer));
+		return subscribeOn(topic,bus->bus.subscribeBatched(topic,maxBatch,maxDelay,unit,observer::onNext));
+	}
+
+
+	@Override
+	public BusSubscription subscribeForDeadTopics(DeliveryMode async, Consumer<T> consumer) {
+		return this.subscribeForDeadTopicsWithObserver(async,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeForDeadTopicsWithObserver(DeliveryMode async, Observer<T> consumer) {
+		Observer<T> observer = serializedFor(null,consumer);
+		return subscribeOnAll(bus->bus.subscribeForDeadTopicsWithObserver(async,observer));
+	}
+
+
+	/**
+	 * The lanes of a pattern subscription are per shard and the consumer is
+	 * serialized like that of any pattern, so its lanes take turns calling it
+	 */
+	@Override
+	public BusSubscription subscribe(String topic, Function<T,?> keyExtractor, int lanes, Consumer<T> consumer) {
+		return this.subscribeWithObserver(topic,keyExtractor,lanes,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeWithObserver(String topic, Function<T,?> keyExtractor, int lanes, Observer<T> consumer) {
+		return this.subscribeWithObserver(topic,keyExtractor,lanes,DEFAULT_QUEUE_CAPACITY,DEFAULT_OVERFLOW_POLICY,consumer);
+	}
+
+
+	@Override
+	public BusSubscription subscribe(String topic, Function<T,?> keyExtractor, int lanes, int capacity,
+			OverflowPolicy policy, Consumer<T> consumer) {
+		return this.subscribeWithObserver(topic,keyExtractor,lanes,capacity,policy,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeWithObserver(String topic, Function<T,?> keyExtractor, int lanes, int capacity,
+			OverflowPolicy policy, Observer<T> consumer) {
+		Observer<T> observer = serializedFor(topic,consumer);
+		return subscribeOn(topic,bus->bus.subscribeWithObserver(topic,keyExtractor,lanes,capacity,policy,observer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeConflated(String topic, Function<T,?> keyExtractor, Consumer<T> consumer) {
+		return this.subscribeConflatedWithObserver(topic,keyExtractor,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeConflatedWithObserver(String topic, Function<T,?> keyExtractor, Observer<T> consumer) {
+		Observer<T> observer = serializedFor(topic,consumer);
+		return subscribeOn(topic,bus->bus.subscribeConflatedWithObserver(topic,keyExtractor,observer));
+	}
+
+
+	@Override
+	public BusSubscription subscribe(String topic, Criteria criteria, DeliveryMode async, Consumer<T> consumer) {
+		return this.subscribeWithObserver(topic,criteria,async,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeWithObserver(String topic, Criteria criteria, DeliveryMode async, Observer<T> consumer) {
+		Observer<T> observer = serializedFor(topic,consumer);
+		return subscribeOn(topic,bus->bus.subscribeWithObserver(topic,criteria,async,observer));
+	}
+
+
+	@Override
+	public BusSubscription subscribe(Topic topic, DeliveryMode async, Consumer<T> consumer) {
+		return this.subscribeWithObserver(topic,async,observerOf(consumer));
+	}
+
+
+	@Override
+	public BusSubscription subscribeWithObserver(Topic topic, DeliveryMode async, Observer<T> consumer) {
+		ShardRoute route = topicRegistry.get(topic);
+		return shards.get(route.shard).bus.subscribeWithObserver(route.handle,async,consumer);
+	}
+
+
+	@Override
+	public Observable<T> request(String topic, T evt, long timeout, TimeUnit unit) {
+		if(closed){
+			return Observable.error(new IllegalStateException(String.format("Bus %s is shut down",busName)));
+		}
+		return replies.request(topic,evt,timeout,unit,request->publish(topic,request));
+	}
+
+
+	@Override
+	public boolean reply(T request, T response) {
+		return replies.reply(request,response);
+	}
+
+
+	@Override
+	public Subscription publishAfter(String topic, T evt, long delay, TimeUnit unit) {
+		if(closed){
+			return Subscriptions.unsubscribed();
+		}
+		return scheduled.publishAfter(topic,evt,delay,unit);
+	}
+
+
+	@Override
+	public Subscription publishAt(String topic, T evt, Instant at) {
+		if(closed){
+			return Subscriptions.unsubscribed();
+		}
+		return scheduled.publishAt(topic,evt,at);
+	}
+
+
+	@Override
+	public Observable<T> asPublisher(String topic, int capacity, OverflowPolicy policy) {
+		if(closed){
+			return Observable.error(new IllegalStateException(String.format("Bus %s is shut down",busName)));
+		}
+		return DemandDelivery.publisher(this,topic,capacity,policy);
+	}
+
+
+	@Override
+	public Observable<T> asPublisher(String topic) {
+		return asPublisher(topic,DEFAULT_QUEUE_CAPACITY,DEFAULT_OVERFLOW_POLICY);
+	}
+
+
+	/**
+	 * Adds up the metrics of the shards
+	 */
+	@Override
+	public BusMetrics getMetrics() {
+		long published = 0;
+		long deadEvents = 0;
+		long failedDispatches = dropped.sum();
+		Map<String,List<SubscriptionMetrics>> subscriptions = new LinkedHashMap<>();
+		Map<String,Long> publishedTo = new LinkedHashMap<>();
+		List<SubscriptionMetrics> deadTopicSubscriptions = new ArrayList<>();
+		for(Shard shard : shards){
+			BusMetrics metrics = shard.bus.getMetrics();
+			published += metrics.getPublished();
+			deadEvents += metrics.getDeadEvents();
+			failedDispatches += metrics.getFailedDispatches();
+			deadTopicSubscriptions.addAll(metrics.getDeadTopicSubscriptions());
+			for(TopicMetrics topic : metrics.getTopics()){
+				subscriptions.computeIfAbsent(topic.getTopic(),key->new ArrayList<>()).addAll(topic.getSubscriptions());
+				publishedTo.merge(topic.getTopic(),topic.getPublished(),Long::sum);
+			}
+		}
+		List<TopicMetrics> topics = new ArrayList<>(subscriptions.size());
+		subscriptions.forEach((topic,subs)->topics.add(new TopicMetrics(topic,publishedTo.get(topic),subs)));
+		return new BusMetrics(busName,System.nanoTime(),published,deadEvents,failedDispatches,topics,deadTopicSubscriptions);
+	}
+
+
+	/**
+	 * Sets the number of distinct topics the bus, and each of its shards, interns
+	 * @see RxBus#withMaxTopics(int)
+	 */
+	public ShardedBus<T> withMaxTopics(int maxTopics) {
+		topicRegistry.setMaxTopics(maxTopics);
+		for(Shard shard : shards){
+			shard.bus.withMaxTopics(maxTopics);
+		}
+		return this;
+	}
+
+
+	/**
+	 * @see RxBus#withLatencySampling(int)
+	 */
+	public ShardedBus<T> withLatencySampling(int everyNth) {
+		for(Shard shard : shards){
+			shard.bus.withLatencySampling(everyNth);
+		}
+		return this;
+	}
+
+
+	/**
+	 * @see RxBus#withCorrelationKey(Function)
+	 */
+	public ShardedBus<T> withCorrelationKey(Function<T,?> correlationKey) {
+		replies.setCorrelationKey(correlationKey);
+		return this;
+	}
+
+
+	public int getShardCount() {
+		return shards.size();
+	}
+
+
+	/**
+	 * @return number of publications queued for the shard threads
+	 */
+	public int getBacklog() {
+		int retVal = 0;
+		for(Shard shard : shards){
+			retVal += shard.queue.size();
+		}
+		return retVal;
+	}
+
+
+	private static <E> Observer<E> observerOf(Consumer<E> consumer) {
+		return new Observer<E>() {
+
+			@Override
+			public void onCompleted() {
+			}
+
+			@Override
+			public void onError(Throwable e) {
+			}
+
+			@Override
+			public void onNext(E event) {
+				consumer.accept(event);
+			}
+
+		};
+	}
+
+}
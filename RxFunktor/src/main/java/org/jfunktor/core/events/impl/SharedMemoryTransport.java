@@ -0,0 +1,293 @@
+package org.jfunktor.core.events.impl;
+
+import static org.jfunktor.common.utils.LogUtil.warn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jfunktor.core.events.api.BusSubscription;
+import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.api.EventCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Carries the events of a bus to the buses of other processes of the same host
+ * through {@link SharedRing}s, memory mapped files best kept in /dev/shm.
+ *
+ * A process exports topics of its bus into a ring of its own: every event
+ * published to them is encoded and written to the ring by the publishing thread.
+ * The processes importing the ring read it on a thread of their own and publish
+ * its events to their bus under the same topic, where they are subscribed to
+ * like any other event. Writing and reading the ring are plain memory accesses;
+ * an importer spins, then yields, and only parks once the ring has been idle for
+ * a while. A topic is meant to be exported by a single process, a process
+ * exporting a topic it also imports would write the events it imports back.
+ *
+ * Either side can crash. The lock of a crashed writer is released by the
+ * operating system and a writer started again on the ring carries on after the
+ * last event written in full, with its readers. The writer never waits for the
+ * readers: a reader falling a whole ring behind skips to the latest event and
+ * counts the events lost. A ring which is not there yet when imported, or is
+ * created again, is read from its first event once it shows up.
+ */
+public class SharedMemoryTransport<T> implements Closeable {
+
+	private static Logger log = LoggerFactory.getLogger(SharedMemoryTransport.class);
+
+	private static final int POLL_LIMIT = 256;
+
+	private static final int SPINS = 100;
+
+	private static final int YIELDS = 100;
+
+	private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/**
+	 * how often an idle importer checks whether its ring file was created again
+	 */
+	private static final long RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	/**
+	 * Reads a ring of another process into the bus
+	 */
+	private class Importer implements Runnable{
+
+		private Path file;
+		private boolean fromStart;
+		private SharedRing ring;
+		private SharedRing.Reader reader;
+		private Object fileKey;
+		private long previouslyLost;
+		private volatile long lost;
+
+		Importer(Path file){
+			this.file = file;
+			//a ring created after the import started only holds events meant for this process
+			fromStart = !Files.exists(file);
+		}
+
+		@Override
+		public void run() {
+			int idle = 0;
+			long recheckAt = 0;
+			while(!closed){
+				int read = 0;
+				if(reader != null){
+					read = reader.poll(POLL_LIMIT,(topic,event)->deliver(topic,event));
+					lost = previouslyLost + reader.getLost();
+				}
+				if(read > 0){
+					idle = 0;
+					continue;
+				}
+				idle++;
+				if(idle <= SPINS){
+					continue;
+				}
+				if(idle <= SPINS + YIELDS){
+					Thread.yield();
+					continue;
+				}
+				long now = System.nanoTime();
+				if(now - recheckAt >= 0){
+					recheckAt = now + RECHECK_NANOS;
+					recheck();
+				}
+				LockSupport.parkNanos(this,Math.min(MAX_PARK_NANOS,(idle - SPINS - YIELDS) * 1000L));
+			}
+			closeRing();
+		}
+
+		/**
+		 * Attaches to the ring once it is there, and again if its file was created again
+		 */
+		private void recheck() {
+			try{
+				Object current = Files.readAttributes(file,BasicFileAttributes.class).fileKey();
+				if(ring != null && Objects.equals(current,fileKey)){
+					return;
+				}
+				SharedRing attached = SharedRing.attach(file);
+				if(attached == null){
+					return;
+				}
+				if(ring != null){
+					previouslyLost += reader.getLost();
+					closeRing();
+					fromStart = true;
+				}
+				ring = attached;
+				fileKey = current;
+				reader = ring.reader(fromStart);
+			}catch(NoSuchFileException e){
+				//the writer has not created the ring yet, or removed it
+			}catch(IOException e){
+				warn(log,e,"Failed to attach to the ring %s",file);
+			}
+		}
+
+		private void closeRing() {
+			if(ring != null){
+				try{
+					ring.close();
+				}catch(IOException e){
+					warn(log,e,"Failed to close the ring %s",file);
+				}
+			}
+		}
+	};
+
+	private String name;
+	private EventBus<T> bus;
+	private EventCodec<T> codec;
+	private ThreadFactory threadFactory;
+	private volatile boolean closed;
+
+	private SharedRing exported;
+	private List<BusSubscription> exports = new ArrayList<>();
+	private List<Importer> importers = new CopyOnWriteArrayList<>();
+
+	private LongAdder written = new LongAdder();
+	private LongAdder imported = new LongAdder();
+	private LongAdder failed = new LongAdder();
+
+	/**
+	 * @param name name of the transport, also used to name the import threads
+	 * @param bus the bus of this process
+	 * @param codec encodes the events written to the rings and decodes the events read
+	 */
+	public SharedMemoryTransport(String name, EventBus<T> bus, EventCodec<T> codec) {
+		this.name = name;
+		this.bus = bus;
+		this.codec = codec;
+		threadFactory = new ThreadFactoryBuilder()
+				.setNameFormat(name+"-shm-import-%d")
+				.setDaemon(true)
+				.build();
+	}
+
+	/**
+	 * Writes the events published to the topics on the bus to the ring, from now on
+	 * @param topics plain topics, the topic of an event matched by a pattern is not known to its subscriber
+	 * @throws IllegalStateException if the transport exports already, or another process writes the ring
+	 * @throws IllegalArgumentException if a topic is a wildcard pattern
+	 */
+	public synchronized SharedMemoryTransport<T> export(SharedRingConfig config, String... topics) throws IOException {
+		if(exported != null){
+			throw new IllegalStateException(String.format("Transport %s already exports to %s",name,exported.getFile()));
+		}
+		for(String topic : topics){
+			if(TopicTrie.isPattern(topic)){
+				throw new IllegalArgumentException(String.format("Cannot export the pattern %s, topics are exported one by one",topic));
+			}
+		}
+		exported = SharedRing.create(config);
+		for(String topic : topics){
+			byte[] key = topic.getBytes(StandardCharsets.UTF_8);
+			exports.add(bus.subscribe(topic,DeliveryMode.SYNC,evt->write(key,evt)));
+		}
+		return this;
+	}
+
+	private void write(byte[] topic, T evt) {
+		try{
+			exported.write(topic,codec.encode(evt));
+			written.increment();
+		}catch(RuntimeException e){
+			failed.increment();
+			warn(log,e,"Transport %s failed to export an event of %s",name,new String(topic,StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * Publishes to the bus the events written to the ring by another process
+	 * from now on, or from its first event if the ring is not there yet
+	 */
+	public SharedMemoryTransport<T> importFrom(SharedRingConfig config) {
+		if(closed){
+			throw new IllegalStateException(String.format("Transport %s is closed",name));
+		}
+		Importer importer = new Importer(config.getFile());
+		importers.add(importer);
+		//attach right away, so that the events written as soon as this returns are read
+		importer.recheck();
+		threadFactory.newThread(importer).start();
+		return this;
+	}
+
+	private void deliver(byte[] topic, byte[] event) {
+		String key = new String(topic,StandardCharsets.UTF_8);
+		try{
+			bus.publish(key,codec.decode(event,0,event.length));
+			imported.increment();
+		}catch(RuntimeException e){
+			failed.increment();
+			warn(log,e,"Transport %s failed to import an event of %s",name,key);
+		}
+	}
+
+	/**
+	 * @return number of events written to the exported ring
+	 */
+	public long getExported() {
+		return written.sum();
+	}
+
+	/**
+	 * @return number of events read from the imported rings and published
+	 */
+	public long getImported() {
+		return imported.sum();
+	}
+
+	/**
+	 * @return number of events overwritten by a writer before they could be imported
+	 */
+	public long getLost() {
+		long retVal = 0;
+		for(Importer importer : importers){
+			retVal += importer.lost;
+		}
+		return retVal;
+	}
+
+	/**
+	 * @return number of events which could not be encoded, written or decoded
+	 */
+	public long getFailed() {
+		return failed.sum();
+	}
+
+	/**
+	 * Stops exporting and importing, the rings are left for the next transport
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+		exports.forEach(BusSubscription::unsubscribe);
+		if(exported != null){
+			exported.close();
+		}
+	}
+
+}
@@ -0,0 +1,295 @@
+package org.jfunktor.core.events.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.lmax.disruptor.util.Util;
+
+/**
+ * A ring of events in a memory mapped file, written by one process and read by
+ * any number of others on the same host.
+ *
+ * The file starts with a header holding the layout of the ring and the sequence
+ * of the next event, followed by the slots. An event with sequence s goes into
+ * slot s modulo the number of slots, as its topic and encoded event behind a tag.
+ * The writer clears the tag, writes the event and sets the tag to s + 1 last,
+ * with ordered stores on the mapping, so a reader sees a complete event once
+ * the tag it expects is there. A reader checks the tag again after copying the
+ * event: a different tag means the writer went round the ring meanwhile and the
+ * copy is discarded.
+ *
+ * The writer holds a lock on the file, released by the operating system if the
+ * process dies. A writer opening a ring left by a previous one carries on from
+ * the last event written in full. The file of a ring never shrinks, so a reader
+ * can never touch a page which is not there anymore.
+ */
+class SharedRing implements Closeable {
+
+	static final int MAGIC = 0x52785269;
+
+	static final int HEADER_SIZE = 64;
+
+	private static final int SLOTS_OFFSET = 4;
+	private static final int SLOT_SIZE_OFFSET = 8;
+	private static final int CURSOR_OFFSET = 16;
+
+	/**
+	 * tag, event length and topic length of a slot
+	 */
+	static final int SLOT_HEADER_SIZE = 14;
+
+	/**
+	 * Receives the events read from the ring
+	 */
+	interface RecordConsumer{
+
+		void accept(byte[] topic, byte[] event);
+
+	};
+
+	/**
+	 * The position of a reading process in the ring, the writer knows nothing about it
+	 */
+	class Reader{
+
+		private long next;
+		private long lost;
+
+		Reader(long next){
+			this.next = next;
+		}
+
+		/**
+		 * Hands the events written since the previous poll to the consumer
+		 * @return number of events read, 0 if the writer has not written any
+		 */
+		int poll(int limit, RecordConsumer consumer){
+			int retVal = 0;
+			while(retVal < limit){
+				long slot = slotAddress(next);
+				long tag = UnsafeMemory.getLongVolatile(slot);
+				if(tag == next + 1){
+					int eventLength = UnsafeMemory.getInt(slot + 8);
+					int topicLength = UnsafeMemory.getShort(slot + 12);
+					if(topicLength >= 0 && eventLength >= 0 && SLOT_HEADER_SIZE + topicLength + eventLength <= slotSize){
+						byte[] topic = new byte[topicLength];
+						byte[] event = new byte[eventLength];
+						UnsafeMemory.copyToArray(slot + SLOT_HEADER_SIZE,topic,topicLength);
+						UnsafeMemory.copyToArray(slot + SLOT_HEADER_SIZE + topicLength,event,eventLength);
+						//the copies must not be read after the tag check, or a slot being
+						//rewritten could pass for the one the tag was read with
+						UnsafeMemory.loadFence();
+						if(UnsafeMemory.getLongVolatile(slot) == tag){
+							next++;
+							retVal++;
+							consumer.accept(topic,event);
+							continue;
+						}
+					}
+					skipToCursor();
+				}else if(tag > next + 1 || getCursor() - next > slots){
+					//the writer went round the ring past this reader
+					skipToCursor();
+				}else{
+					break;
+				}
+			}
+			return retVal;
+		}
+
+		private void skipToCursor(){
+			long cursor = getCursor();
+			lost += Math.max(cursor - next,1);
+			next = Math.max(cursor,next + 1);
+		}
+
+		long getLost(){
+			return lost;
+		}
+	};
+
+	private Path file;
+	private FileChannel channel;
+	private FileLock lock;
+	//held so that the mapping the address points into is not unmapped
+	private MappedByteBuffer buffer;
+	private long address;
+	private int slots;
+	private int slotSize;
+	private long cursor;
+	private boolean closed;
+
+	private SharedRing(Path file, FileChannel channel, MappedByteBuffer buffer, FileLock lock) {
+		this.file = file;
+		this.channel = channel;
+		this.buffer = buffer;
+		this.lock = lock;
+		address = UnsafeMemory.addressOf(buffer);
+	}
+
+	/**
+	 * Opens the ring for writing, creating it if needed
+	 * @throws IllegalStateException if another process writes the ring, or the ring has another layout
+	 */
+	static SharedRing create(SharedRingConfig config) throws IOException {
+		int slots = Util.ceilingNextPowerOfTwo(Math.max(config.getSlots(),2));
+		int slotSize = config.getSlotSize();
+		long size = HEADER_SIZE + (long)slots * slotSize;
+		if(slotSize <= SLOT_HEADER_SIZE || slotSize % 8 != 0 || size > Integer.MAX_VALUE){
+			throw new IllegalArgumentException(String.format("Cannot lay out %d slots of %d bytes, a slot is a multiple of 8 bytes and the ring at most 2 GB",slots,slotSize));
+		}
+		Path file = config.getFile();
+		if(file.getParent() != null){
+			Files.createDirectories(file.getParent());
+		}
+		FileChannel channel = FileChannel.open(file,StandardOpenOption.CREATE,StandardOpenOption.READ,StandardOpenOption.WRITE);
+		FileLock lock = null;
+		try{
+			lock = channel.tryLock(0,HEADER_SIZE,false);
+		}catch(OverlappingFileLockException e){
+			//held by this very process
+		}
+		if(lock == null){
+			channel.close();
+			throw new IllegalStateException(String.format("Ring %s is written by another process",file));
+		}
+		if(channel.size() < size){
+			channel.write(ByteBuffer.wrap(new byte[1]),size - 1);
+		}
+		SharedRing retVal = new SharedRing(file,channel,channel.map(FileChannel.MapMode.READ_WRITE,0,size),lock);
+		long address = retVal.address;
+		if(UnsafeMemory.getIntVolatile(address) == MAGIC){
+			if(UnsafeMemory.getInt(address + SLOTS_OFFSET) != slots || UnsafeMemory.getInt(address + SLOT_SIZE_OFFSET) != slotSize){
+				retVal.close();
+				throw new IllegalStateException(String.format("Ring %s has %d slots of %d bytes, remove it to change its layout",
+						file,UnsafeMemory.getInt(address + SLOTS_OFFSET),UnsafeMemory.getInt(address + SLOT_SIZE_OFFSET)));
+			}
+			retVal.layOut(slots,slotSize);
+			retVal.recover();
+		}else{
+			//never finished by a previous writer, no reader can have mapped it
+			UnsafeMemory.setMemory(address,size,(byte)0);
+			UnsafeMemory.putInt(address + SLOTS_OFFSET,slots);
+			UnsafeMemory.putInt(address + SLOT_SIZE_OFFSET,slotSize);
+			UnsafeMemory.putOrderedInt(address,MAGIC);
+			retVal.layOut(slots,slotSize);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Opens the ring for reading
+	 * @return null if the ring is not there yet or not laid out by its writer yet
+	 */
+	static SharedRing attach(Path file) throws IOException {
+		if(!Files.exists(file)){
+			return null;
+		}
+		FileChannel channel = FileChannel.open(file,StandardOpenOption.READ);
+		long size = channel.size();
+		if(size < HEADER_SIZE){
+			channel.close();
+			return null;
+		}
+		SharedRing retVal = new SharedRing(file,channel,channel.map(FileChannel.MapMode.READ_ONLY,0,size),null);
+		long address = retVal.address;
+		//the magic number is written last, the layout is complete once it is there
+		boolean laidOut = UnsafeMemory.getIntVolatile(address) == MAGIC;
+		int slots = UnsafeMemory.getInt(address + SLOTS_OFFSET);
+		int slotSize = UnsafeMemory.getInt(address + SLOT_SIZE_OFFSET);
+		if(!laidOut || HEADER_SIZE + (long)slots * slotSize > size){
+			retVal.close();
+			return null;
+		}
+		retVal.layOut(slots,slotSize);
+		return retVal;
+	}
+
+	private void layOut(int slots, int slotSize) {
+		this.slots = slots;
+		this.slotSize = slotSize;
+	}
+
+	/**
+	 * Carries on from the last event written in full, which the previous writer
+	 * may have died right after, before it moved the cursor on
+	 */
+	private void recover() {
+		cursor = getCursor();
+		if(UnsafeMemory.getLongVolatile(slotAddress(cursor)) == cursor + 1){
+			cursor++;
+			UnsafeMemory.putOrderedLong(address + CURSOR_OFFSET,cursor);
+		}
+	}
+
+	private long slotAddress(long sequence) {
+		return address + HEADER_SIZE + (sequence & (slots - 1)) * slotSize;
+	}
+
+	/**
+	 * Writes the event, the writer never waits for the readers
+	 * @throws IllegalArgumentException if the event does not fit in a slot
+	 */
+	synchronized void write(byte[] topic, byte[] event) {
+		if(closed){
+			return;
+		}
+		if(SLOT_HEADER_SIZE + topic.length + event.length > slotSize || topic.length > Short.MAX_VALUE){
+			throw new IllegalArgumentException(String.format("An event of %d bytes does not fit in a slot of %d bytes",topic.length + event.length,slotSize));
+		}
+		long slot = slotAddress(cursor);
+		UnsafeMemory.putLongVolatile(slot,0L);
+		//no write of the slot may become visible before its tag is cleared
+		UnsafeMemory.storeFence();
+		UnsafeMemory.putInt(slot + 8,event.length);
+		UnsafeMemory.putShort(slot + 12,(short)topic.length);
+		UnsafeMemory.copyFromArray(topic,slot + SLOT_HEADER_SIZE,topic.length);
+		UnsafeMemory.copyFromArray(event,slot + SLOT_HEADER_SIZE + topic.length,event.length);
+		UnsafeMemory.putOrderedLong(slot,cursor + 1);
+		cursor++;
+		UnsafeMemory.putOrderedLong(address + CURSOR_OFFSET,cursor);
+	}
+
+	/**
+	 * @return the sequence of the next event the writer writes
+	 */
+	long getCursor() {
+		return UnsafeMemory.getLongVolatile(address + CURSOR_OFFSET);
+	}
+
+	/**
+	 * @param fromStart true to read every event of the ring still there, false to read the events written from now on
+	 */
+	Reader reader(boolean fromStart) {
+		long cursor = getCursor();
+		return new Reader(fromStart ? Math.max(cursor - slots,0) : cursor);
+	}
+
+	Path getFile() {
+		return file;
+	}
+
+	/**
+	 * The mapping stays valid until it is collected, so a late access after closing is harmless
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+		if(lock != null){
+			lock.release();
+		}
+		channel.close();
+	}
+
+}
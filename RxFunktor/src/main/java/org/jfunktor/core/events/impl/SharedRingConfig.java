@@ -0,0 +1,69 @@
+package org.jfunktor.core.events.impl;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Settings of a {@link SharedRing}. The writer of a ring decides its layout, the
+ * readers take it from the file and only use the path.
+ */
+public class SharedRingConfig {
+
+	/**
+	 * The memory backed file system of Linux, a file there never reaches a disk
+	 */
+	public static final Path SHARED_MEMORY = Paths.get("/dev/shm");
+
+	public static final int DEFAULT_SLOTS = 16 * 1024;
+
+	public static final int DEFAULT_SLOT_SIZE = 1024;
+
+	private Path file;
+	private int slots = DEFAULT_SLOTS;
+	private int slotSize = DEFAULT_SLOT_SIZE;
+
+	/**
+	 * @param file the ring file, best placed in {@link #SHARED_MEMORY}
+	 */
+	public SharedRingConfig(Path file) {
+		this.file = file;
+	}
+
+	/**
+	 * @return the settings of the ring of that name in {@link #SHARED_MEMORY}, or in the temporary directory on a host without it
+	 */
+	public static SharedRingConfig inSharedMemory(String name) {
+		Path directory = Files.isDirectory(SHARED_MEMORY) ? SHARED_MEMORY : Paths.get(System.getProperty("java.io.tmpdir"));
+		return new SharedRingConfig(directory.resolve(name+".ring"));
+	}
+
+	/**
+	 * Number of events the ring holds before a reader falling behind loses the oldest, rounded up to a power of 2
+	 */
+	public SharedRingConfig withSlots(int slots) {
+		this.slots = slots;
+		return this;
+	}
+
+	/**
+	 * Size of a slot, which bounds the size of an encoded event along with its topic
+	 */
+	public SharedRingConfig withSlotSize(int slotSize) {
+		this.slotSize = slotSize;
+		return this;
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	public int getSlots() {
+		return slots;
+	}
+
+	public int getSlotSize() {
+		return slotSize;
+	}
+
+}
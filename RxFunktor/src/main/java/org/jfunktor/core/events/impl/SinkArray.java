@@ -0,0 +1,83 @@
+package org.jfunktor.core.events.impl;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * The subscribers of a route kept in a plain array, copied on every change.
+ *
+ * Publishing reads the array once and walks it with an index, so delivering an
+ * event allocates nothing, not even an iterator. Subscribing and unsubscribing
+ * copy the array under the lock of the holder and publish the copy, so a
+ * publisher always sees a complete array.
+ */
+class SinkArray<S> {
+
+	private static final Object[] EMPTY = new Object[0];
+
+	private volatile Object[] sinks = EMPTY;
+
+	/**
+	 * @return the current subscribers, the array must not be written to
+	 */
+	Object[] get() {
+		return sinks;
+	}
+
+	boolean isEmpty() {
+		return sinks.length == 0;
+	}
+
+	synchronized void add(S sink) {
+		sinks = with(sinks,sink);
+	}
+
+	/**
+	 * @return false if the sink was not held
+	 */
+	synchronized boolean remove(S sink) {
+		Object[] current = sinks;
+		sinks = without(current,sink);
+		return sinks != current;
+	}
+
+	/**
+	 * @return a copy of the array with the sink appended
+	 */
+	static Object[] with(Object[] sinks, Object sink) {
+		Object[] retVal = Arrays.copyOf(sinks,sinks.length + 1);
+		retVal[sinks.length] = sink;
+		return retVal;
+	}
+
+	/**
+	 * @return a copy of the array without the first sink equal to the given one, the array itself if it holds none
+	 */
+	static Object[] without(Object[] sinks, Object sink) {
+		for(int i = 0; i < sinks.length; i++){
+			if(sinks[i].equals(sink)){
+				Object[] retVal = sinks.length == 1 ? EMPTY : new Object[sinks.length - 1];
+				System.arraycopy(sinks,0,retVal,0,i);
+				System.arraycopy(sinks,i + 1,retVal,i,sinks.length - i - 1);
+				return retVal;
+			}
+		}
+		return sinks;
+	}
+
+	static Object[] empty() {
+		return EMPTY;
+	}
+
+	synchronized void clear() {
+		sinks = EMPTY;
+	}
+
+	@SuppressWarnings("unchecked")
+	void forEach(Consumer<S> action) {
+		for(Object sink : sinks){
+			action.accept((S)sink);
+		}
+	}
+
+}
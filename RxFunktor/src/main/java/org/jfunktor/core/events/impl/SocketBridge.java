@@ -0,0 +1,529 @@
+package org.jfunktor.core.events.impl;
+
+import static org.jfunktor.common.utils.LogUtil.warn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jfunktor.core.events.api.BusSubscription;
+import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.api.EventBus.OverflowPolicy;
+import org.jfunktor.core.events.api.EventCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Forwards topics of a bus to the buses of other processes over TCP, for the
+ * processes which cannot share memory through a {@link SharedMemoryTransport}.
+ *
+ * A bridge listens for the events sent to its bus, and connects to the bridges
+ * of other processes to send them the events published to some of its topics.
+ * An event travels as a frame: the length of the rest of the frame, the length
+ * of the topic, the topic and the encoded event. Every connection starts with
+ * {@link #MAGIC} so that a stray client is turned away.
+ *
+ * Sending is queued: the publishing thread encodes the frame and queues it, a
+ * thread per connection writes the queued frames in batches. The thread writes
+ * as many frames as are queued with every write, and a small batch lingers a
+ * little for more, like Nagle's algorithm but under the control of the bridge,
+ * so the sockets run without delay. The receiving side reads on a single
+ * selector thread and publishes every event on its bus from there, so a slow
+ * receiving bus stops the reads, the TCP window of the connection closes and
+ * the queue of the sender fills up, at which point its {@link OverflowPolicy}
+ * applies to the publishers.
+ *
+ * A connection is kept open and made again, with a growing delay, whenever it
+ * breaks. The frames of a batch being written when it breaks are counted as
+ * lost.
+ */
+public class SocketBridge<T> implements Closeable {
+
+	private static Logger log = LoggerFactory.getLogger(SocketBridge.class);
+
+	public static final int MAGIC = 0x52784272;
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+
+	public static final long DEFAULT_LINGER_MICROS = 100;
+
+	/**
+	 * length of a frame and length of its topic
+	 */
+	private static final int FRAME_HEADER_SIZE = 6;
+
+	private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+	private static final int BATCH_SIZE = 64 * 1024;
+
+	private static final int RECEIVE_BUFFER_SIZE = 64 * 1024;
+
+	private static final long MIN_BACKOFF_MILLIS = 10;
+
+	private static final long MAX_BACKOFF_MILLIS = 1000;
+
+	/**
+	 * A connection to a remote bridge, with its queue of frames to send
+	 */
+	private class Link implements Runnable{
+
+		private InetSocketAddress remote;
+		private OverflowPolicy policy;
+		private BlockingQueue<byte[]> frames;
+		private List<BusSubscription> exports = new ArrayList<>();
+		private ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_SIZE);
+		private volatile SocketChannel channel;
+		private volatile boolean stopped;
+
+		Link(InetSocketAddress remote,int capacity,OverflowPolicy policy){
+			this.remote = remote;
+			this.policy = policy;
+			frames = new ArrayBlockingQueue<>(capacity);
+		}
+
+		void send(byte[] topic, T evt){
+			if(stopped){
+				return;
+			}
+			byte[] event = codec.encode(evt);
+			byte[] frame = new byte[FRAME_HEADER_SIZE + topic.length + event.length];
+			ByteBuffer.wrap(frame).putInt(frame.length - 4).putShort((short)topic.length).put(topic).put(event);
+			switch(policy){
+				case BLOCK:
+					try{
+						while(!frames.offer(frame,100,TimeUnit.MILLISECONDS)){
+							if(stopped){
+								return;
+							}
+						}
+					}catch(InterruptedException e){
+						Thread.currentThread().interrupt();
+						dropped.increment();
+					}
+					break;
+				case DROP_NEWEST:
+					if(!frames.offer(frame)){
+						dropped.increment();
+					}
+					break;
+				case DROP_OLDEST:
+					while(!frames.offer(frame)){
+						if(frames.poll() != null){
+							dropped.increment();
+						}
+					}
+					break;
+				default:
+					if(!frames.offer(frame)){
+						dropped.increment();
+						warn(log,"Bridge %s stops sending to %s, its queue of %d frames is full",name,remote,frames.size());
+						stop();
+					}
+			}
+		}
+
+		@Override
+		public void run(){
+			long backoff = MIN_BACKOFF_MILLIS;
+			while(!stopped){
+				int batched = 0;
+				try{
+					if(channel == null){
+						channel = open(remote);
+						backoff = MIN_BACKOFF_MILLIS;
+					}
+					byte[] frame = frames.poll(100,TimeUnit.MILLISECONDS);
+					long lingerUntil = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(linger);
+					batch.clear();
+					while(frame != null){
+						if(frame.length > batch.remaining()){
+							if(batch.position() > 0){
+								flush(batched);
+								batched = 0;
+							}
+							if(frame.length > batch.capacity()){
+								//too large to be batched, written on its own
+								writeFully(ByteBuffer.wrap(frame));
+								written(1);
+								frame = frames.poll();
+								continue;
+							}
+						}
+						batch.put(frame);
+						batched++;
+						frame = frames.poll();
+						long left = lingerUntil - System.nanoTime();
+						if(frame == null && batch.position() < BATCH_SIZE / 2 && left > 0){
+							//a small batch waits a little for more frames
+							frame = frames.poll(left,TimeUnit.NANOSECONDS);
+						}
+					}
+					if(batch.position() > 0){
+						flush(batched);
+					}
+				}catch(InterruptedException e){
+					return;
+				}catch(IOException e){
+					lost.add(batched);
+					closeChannel();
+					if(!stopped){
+						warn(log,e,"Bridge %s lost its connection to %s, connecting again in %d ms",name,remote,backoff);
+						try{
+							Thread.sleep(backoff);
+						}catch(InterruptedException interrupted){
+							return;
+						}
+						backoff = Math.min(backoff * 2,MAX_BACKOFF_MILLIS);
+					}
+				}
+			}
+			closeChannel();
+		}
+
+		private void flush(int batched) throws IOException {
+			batch.flip();
+			writeFully(batch);
+			batch.clear();
+			written(batched);
+		}
+
+		private void writeFully(ByteBuffer buffer) throws IOException {
+			//a blocking channel writes all of it, waiting for the remote side to read
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+		}
+
+		private void written(int count){
+			sent.add(count);
+			batches.increment();
+		}
+
+		void stop(){
+			stopped = true;
+			exports.forEach(BusSubscription::unsubscribe);
+			closeChannel();
+		}
+
+		private void closeChannel(){
+			SocketChannel current = channel;
+			channel = null;
+			if(current != null){
+				try{
+					current.close();
+				}catch(IOException e){
+					warn(log,e,"Bridge %s failed to close its connection to %s",name,remote);
+				}
+			}
+		}
+	};
+
+	/**
+	 * A connection accepted from a remote bridge, with the frames it has sent in part
+	 */
+	private static class Peer{
+
+		private ByteBuffer buffer = ByteBuffer.allocate(RECEIVE_BUFFER_SIZE);
+		private boolean greeted;
+	};
+
+	private String name;
+	private EventBus<T> bus;
+	private EventCodec<T> codec;
+	private ThreadFactory threadFactory;
+	private long linger = DEFAULT_LINGER_MICROS;
+	private volatile boolean closed;
+
+	private ServerSocketChannel server;
+	private Selector selector;
+	private Thread receiver;
+	private List<Link> links = new CopyOnWriteArrayList<>();
+
+	private LongAdder sent = new LongAdder();
+	private LongAdder batches = new LongAdder();
+	private LongAdder received = new LongAdder();
+	private LongAdder dropped = new LongAdder();
+	private LongAdder lost = new LongAdder();
+
+	/**
+	 * @param name name of the bridge, also used to name its threads
+	 * @param bus the bus of this process
+	 * @param codec encodes the events sent and decodes the events received
+	 */
+	public SocketBridge(String name, EventBus<T> bus, EventCodec<T> codec) {
+		this.name = name;
+		this.bus = bus;
+		this.codec = codec;
+		threadFactory = new ThreadFactoryBuilder()
+				.setNameFormat(name+"-bridge-%d")
+				.setDaemon(true)
+				.build();
+	}
+
+	/**
+	 * Sets how long a batch smaller than half the batch buffer waits for more frames, 100 us by default
+	 * @param delay 0 to write every batch right away
+	 */
+	public SocketBridge<T> withLinger(long delay, TimeUnit unit) {
+		linger = unit.toMicros(delay);
+		return this;
+	}
+
+	/**
+	 * Publishes on the bus the events sent by the bridges connecting to the address
+	 * @param address where to listen, port 0 for any free port, see {@link #getLocalAddress()}
+	 * @throws IllegalStateException if the bridge listens already
+	 */
+	public synchronized SocketBridge<T> listen(InetSocketAddress address) throws IOException {
+		if(server != null){
+			throw new IllegalStateException(String.format("Bridge %s already listens on %s",name,server.getLocalAddress()));
+		}
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.setOption(StandardSocketOptions.SO_REUSEADDR,true);
+		server.bind(address);
+		server.configureBlocking(false);
+		server.register(selector,SelectionKey.OP_ACCEPT);
+		receiver = threadFactory.newThread(()->receive());
+		receiver.start();
+		return this;
+	}
+
+	/**
+	 * @return the address the bridge listens on, null if it does not
+	 */
+	public InetSocketAddress getLocalAddress() throws IOException {
+		return server != null ? (InetSocketAddress)server.getLocalAddress() : null;
+	}
+
+	/**
+	 * Sends the events published to the topics on the bus to the bridge listening at the address
+	 * @see #connect(InetSocketAddress, int, OverflowPolicy, String...)
+	 */
+	public SocketBridge<T> connect(InetSocketAddress remote, String... topics) {
+		return connect(remote,DEFAULT_QUEUE_CAPACITY,EventBus.DEFAULT_OVERFLOW_POLICY,topics);
+	}
+
+	/**
+	 * Sends the events published to the topics on the bus to the bridge listening at the address
+	 * @param capacity number of frames queued for the connection
+	 * @param policy what a publisher does when the queue is full because the remote side does not keep up
+	 * @param topics plain topics, the topic of an event matched by a pattern is not known to its subscriber
+	 * @throws IllegalArgumentException if a topic is a wildcard pattern
+	 */
+	public synchronized SocketBridge<T> connect(InetSocketAddress remote, int capacity, OverflowPolicy policy, String... topics) {
+		if(closed){
+			throw new IllegalStateException(String.format("Bridge %s is closed",name));
+		}
+		for(String topic : topics){
+			if(TopicTrie.isPattern(topic)){
+				throw new IllegalArgumentException(String.format("Cannot forward the pattern %s, topics are forwarded one by one",topic));
+			}
+		}
+		Link link = new Link(remote,capacity,policy);
+		for(String topic : topics){
+			byte[] key = topic.getBytes(StandardCharsets.UTF_8);
+			link.exports.add(bus.subscribe(topic,DeliveryMode.SYNC,evt->link.send(key,evt)));
+		}
+		links.add(link);
+		threadFactory.newThread(link).start();
+		return this;
+	}
+
+	private static SocketChannel open(InetSocketAddress remote) throws IOException {
+		SocketChannel retVal = SocketChannel.open();
+		try{
+			//the bridge batches the frames itself
+			retVal.setOption(StandardSocketOptions.TCP_NODELAY,true);
+			retVal.connect(remote);
+			ByteBuffer magic = ByteBuffer.allocate(4).putInt(0,MAGIC);
+			while(magic.hasRemaining()){
+				retVal.write(magic);
+			}
+			return retVal;
+		}catch(IOException e){
+			retVal.close();
+			throw e;
+		}
+	}
+
+	private void receive() {
+		while(!closed){
+			try{
+				selector.select(100);
+				for(SelectionKey key : selector.selectedKeys()){
+					if(!key.isValid()){
+						continue;
+					}
+					if(key.isAcceptable()){
+						SocketChannel channel = server.accept();
+						if(channel != null){
+							channel.configureBlocking(false);
+							channel.register(selector,SelectionKey.OP_READ,new Peer());
+						}
+					}else if(key.isReadable()){
+						read(key);
+					}
+				}
+				selector.selectedKeys().clear();
+			}catch(IOException e){
+				if(!closed){
+					warn(log,e,"Bridge %s failed to receive",name);
+				}
+			}
+		}
+		try{
+			for(SelectionKey key : selector.keys()){
+				key.channel().close();
+			}
+			selector.close();
+		}catch(IOException e){
+			warn(log,e,"Bridge %s failed to close its connections",name);
+		}
+	}
+
+	private void read(SelectionKey key) {
+		SocketChannel channel = (SocketChannel)key.channel();
+		Peer peer = (Peer)key.attachment();
+		try{
+			if(channel.read(peer.buffer) < 0){
+				disconnect(key,null);
+				return;
+			}
+			ByteBuffer buffer = peer.buffer;
+			buffer.flip();
+			if(!peer.greeted && buffer.remaining() >= 4){
+				if(buffer.getInt() != MAGIC){
+					buffer.clear();
+					disconnect(key,String.format("Bridge %s turned away %s, it is not a bridge",name,channel.getRemoteAddress()));
+					return;
+				}
+				peer.greeted = true;
+			}
+			while(peer.greeted && buffer.remaining() >= 4){
+				int length = buffer.getInt(buffer.position());
+				if(length < 2 || length > MAX_FRAME_SIZE){
+					disconnect(key,String.format("Bridge %s got a frame of %d bytes from %s",name,length,channel.getRemoteAddress()));
+					return;
+				}
+				if(buffer.remaining() < 4 + length){
+					if(buffer.capacity() < 4 + length){
+						//the buffer grows to hold the largest frame received
+						ByteBuffer larger = ByteBuffer.allocate(4 + length);
+						larger.put(buffer);
+						larger.flip();
+						peer.buffer = larger;
+						buffer = larger;
+					}
+					break;
+				}
+				int position = buffer.position() + 4;
+				int topicLength = buffer.getShort(position);
+				String topic = new String(buffer.array(),position + 2,topicLength,StandardCharsets.UTF_8);
+				int eventOffset = position + 2 + topicLength;
+				deliver(topic,buffer.array(),eventOffset,length - 2 - topicLength);
+				buffer.position(position + length);
+			}
+			buffer.compact();
+		}catch(IOException e){
+			disconnect(key,String.format("Bridge %s lost a connection",name));
+		}
+	}
+
+	private void deliver(String topic, byte[] data, int offset, int length) {
+		try{
+			bus.publish(topic,codec.decode(data,offset,length));
+			received.increment();
+		}catch(RuntimeException e){
+			warn(log,e,"Bridge %s failed to publish an event of %s",name,topic);
+		}
+	}
+
+	private void disconnect(SelectionKey key, String reason) {
+		if(reason != null){
+			warn(log,reason);
+		}
+		key.cancel();
+		try{
+			key.channel().close();
+		}catch(IOException e){
+			warn(log,e,"Bridge %s failed to close a connection",name);
+		}
+	}
+
+	/**
+	 * @return number of events written to the connections
+	 */
+	public long getSent() {
+		return sent.sum();
+	}
+
+	/**
+	 * @return number of writes the events were sent with
+	 */
+	public long getBatches() {
+		return batches.sum();
+	}
+
+	/**
+	 * @return number of events received and published on the bus
+	 */
+	public long getReceived() {
+		return received.sum();
+	}
+
+	/**
+	 * @return number of events dropped by the overflow policy of a connection
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * @return number of events being written when a connection broke
+	 */
+	public long getLost() {
+		return lost.sum();
+	}
+
+	/**
+	 * Stops sending and receiving and closes every connection
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+		links.forEach(Link::stop);
+		if(server != null){
+			//the receiving thread closes the connections once it is woken up
+			server.close();
+			selector.wakeup();
+			try{
+				receiver.join(TimeUnit.SECONDS.toMillis(1));
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,217 @@
+package org.jfunktor.core.events.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * The last events of the sticky topics of a bus.
+ *
+ * A sticky topic keeps either its last N events or its last event per key. All
+ * the sticky topics share one budget: every event is weighed when it is cached
+ * and, once the total weight exceeds the budget, the oldest events of the least
+ * recently used topics are evicted until it fits again. A topic is used whenever
+ * an event is published to it or a subscriber reads it.
+ */
+public class StickyCache<T> {
+
+	/**
+	 * Budget of the default cache of a bus, in events
+	 */
+	public static final long DEFAULT_BUDGET = 10000;
+
+	private static class Entry<T>{
+
+		private T event;
+		private long weight;
+
+		Entry(T event,long weight){
+			this.event = event;
+			this.weight = weight;
+		}
+	};
+
+	/**
+	 * The cached events of one topic, oldest first
+	 */
+	private static abstract class Entries<T>{
+
+		/**
+		 * @return the entries pushed out to make room for the new one
+		 */
+		abstract List<Entry<T>> add(Entry<T> entry);
+
+		abstract Entry<T> evictOldest();
+
+		abstract Iterator<Entry<T>> iterator();
+	};
+
+	private static class LastN<T> extends Entries<T>{
+
+		private int size;
+		private Deque<Entry<T>> entries = new ArrayDeque<>();
+
+		LastN(int size){
+			this.size = size;
+		}
+
+		@Override
+		List<Entry<T>> add(Entry<T> entry) {
+			entries.addLast(entry);
+			List<Entry<T>> retVal = new ArrayList<>(1);
+			while(entries.size() > size){
+				retVal.add(entries.removeFirst());
+			}
+			return retVal;
+		}
+
+		@Override
+		Entry<T> evictOldest() {
+			return entries.pollFirst();
+		}
+
+		@Override
+		Iterator<Entry<T>> iterator() {
+			return entries.iterator();
+		}
+	};
+
+	private static class LastPerKey<T> extends Entries<T>{
+
+		private Function<T,?> keyExtractor;
+		private LinkedHashMap<Object,Entry<T>> entries = new LinkedHashMap<>();
+
+		LastPerKey(Function<T,?> keyExtractor){
+			this.keyExtractor = keyExtractor;
+		}
+
+		@Override
+		List<Entry<T>> add(Entry<T> entry) {
+			Object key = keyExtractor.apply(entry.event);
+			//removed first so that the key moves to the newest position
+			Entry<T> replaced = entries.remove(key);
+			entries.put(key,entry);
+			List<Entry<T>> retVal = new ArrayList<>(1);
+			if(replaced != null){
+				retVal.add(replaced);
+			}
+			return retVal;
+		}
+
+		@Override
+		Entry<T> evictOldest() {
+			Iterator<Entry<T>> iterator = entries.values().iterator();
+			if(!iterator.hasNext()){
+				return null;
+			}
+			Entry<T> retVal = iterator.next();
+			iterator.remove();
+			return retVal;
+		}
+
+		@Override
+		Iterator<Entry<T>> iterator() {
+			return entries.values().iterator();
+		}
+	};
+
+	private long budget;
+	private ToLongFunction<T> weigher;
+	private long weight;
+
+	/**
+	 * The sticky topics from the least to the most recently used
+	 */
+	private Map<String,Entries<T>> topics = new LinkedHashMap<>(16,0.75f,true);
+
+	/**
+	 * A cache weighing every event as 1, the budget is a number of events
+	 */
+	public StickyCache(long budget) {
+		this(budget,event->1);
+	}
+
+	/**
+	 * @param budget total weight of the events cached for all the topics
+	 * @param weigher weight of an event, for instance an estimate of its size in bytes
+	 */
+	public StickyCache(long budget, ToLongFunction<T> weigher) {
+		this.budget = budget;
+		this.weigher = weigher;
+	}
+
+	synchronized void retainLast(String topic, int size) {
+		if(size <= 0){
+			throw new IllegalArgumentException(String.format("A sticky topic must keep at least 1 event, %d given for %s",size,topic));
+		}
+		replace(topic,new LastN<>(size));
+	}
+
+	synchronized void retainLastPerKey(String topic, Function<T,?> keyExtractor) {
+		replace(topic,new LastPerKey<>(keyExtractor));
+	}
+
+	private void replace(String topic, Entries<T> entries) {
+		Entries<T> previous = topics.put(topic,entries);
+		if(previous != null){
+			previous.iterator().forEachRemaining(entry->weight -= entry.weight);
+		}
+	}
+
+	/**
+	 * Caches the event if the topic is sticky
+	 */
+	synchronized void put(String topic, T event) {
+		Entries<T> entries = topics.get(topic);
+		if(entries == null){
+			return;
+		}
+		Entry<T> entry = new Entry<>(event,weigher.applyAsLong(event));
+		weight += entry.weight;
+		for(Entry<T> removed : entries.add(entry)){
+			weight -= removed.weight;
+		}
+		evict();
+	}
+
+	private void evict() {
+		Iterator<Entries<T>> lru = topics.values().iterator();
+		while(weight > budget && lru.hasNext()){
+			Entries<T> entries = lru.next();
+			Entry<T> evicted;
+			while(weight > budget && (evicted = entries.evictOldest()) != null){
+				weight -= evicted.weight;
+			}
+		}
+	}
+
+	/**
+	 * @return the cached events of the topic, oldest first
+	 */
+	synchronized List<T> get(String topic) {
+		Entries<T> entries = topics.get(topic);
+		List<T> retVal = new ArrayList<>();
+		if(entries != null){
+			entries.iterator().forEachRemaining(entry->retVal.add(entry.event));
+		}
+		return retVal;
+	}
+
+	/**
+	 * @return the total weight of the events cached
+	 */
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+}
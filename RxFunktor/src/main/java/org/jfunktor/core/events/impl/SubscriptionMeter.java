@@ -0,0 +1,96 @@
+package org.jfunktor.core.events.impl;
+
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jfunktor.core.events.api.BusSubscription;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.api.SubscriptionMetrics;
+
+import rx.Observer;
+
+/**
+ * Sits in front of a subscriber and counts the calls made to it.
+ *
+ * Timing a call costs two reads of the clock, far more than counting it, so
+ * only one call in every sampling interval is timed. The tick deciding which
+ * call is timed is a plain field: a lost update under concurrent deliveries only
+ * shifts the sample.
+ */
+class SubscriptionMeter<T> implements Observer<T> {
+
+	private long id;
+	private String topic;
+	private DeliveryMode mode;
+	private Observer<T> observer;
+	private int sampleMask;
+	private Set<SubscriptionMeter<?>> meters;
+
+	private LongAdder delivered = new LongAdder();
+	private LatencyRecorder latency = new LatencyRecorder();
+	private int tick;
+
+	private volatile BusSubscription subscription;
+
+	/**
+	 * @param sampleMask a call is timed when the tick masked with it is 0
+	 * @param meters the meters of the bus, joined once the subscription is attached
+	 */
+	SubscriptionMeter(long id, String topic, DeliveryMode mode, Observer<T> observer, int sampleMask, Set<SubscriptionMeter<?>> meters) {
+		this.id = id;
+		this.topic = topic;
+		this.mode = mode;
+		this.observer = observer;
+		this.sampleMask = sampleMask;
+		this.meters = meters;
+	}
+
+	/**
+	 * Registers the meter with its bus. Done last, so that a subscription which
+	 * failed to be made never shows in the metrics.
+	 * @return the subscription, so that it can be returned right away
+	 */
+	<S extends BusSubscription> S attach(S subscription) {
+		this.subscription = subscription;
+		meters.add(this);
+		return subscription;
+	}
+
+	BusSubscription getSubscription() {
+		return subscription;
+	}
+
+	@Override
+	public void onNext(T event) {
+		delivered.increment();
+		if((tick++ & sampleMask) != 0){
+			observer.onNext(event);
+			return;
+		}
+		long start = System.nanoTime();
+		try{
+			observer.onNext(event);
+		}finally{
+			latency.record(System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public void onCompleted() {
+		observer.onCompleted();
+	}
+
+	@Override
+	public void onError(Throwable e) {
+		observer.onError(e);
+	}
+
+	String getTopic() {
+		return topic;
+	}
+
+	SubscriptionMetrics snapshot() {
+		return new SubscriptionMetrics(id,topic,mode,delivered.sum(),subscription.getQueueDepth(),subscription.getDropped(),latency.snapshot());
+	}
+
+}
@@ -0,0 +1,243 @@
+package org.jfunktor.core.events.impl;
+
+import static org.jfunktor.common.utils.LogUtil.warn;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A hierarchical timer wheel running its tasks on a single daemon thread.
+ *
+ * Time is cut in ticks. The first level of the wheel has a bucket per tick, and
+ * every level above has a bucket per turn of the level below it, so four levels
+ * of 512 buckets span years of 10 ms ticks. A task is filed at the lowest level
+ * whose span covers its deadline; whenever a level turns, the tasks of the next
+ * bucket of the level above are filed again one level down, until they reach the
+ * bucket of their own tick. Scheduling only queues the task, and cancelling only
+ * flags it, so both take constant time and are cheap enough to arm a timeout per
+ * request; the wheel thread files the new tasks and drops the cancelled ones as
+ * it goes round. A pending task costs its own object and a slot of a bucket,
+ * which lets a wheel hold millions of them. The thread is started by the first
+ * task.
+ */
+class TimerWheel {
+
+	private static Logger log = LoggerFactory.getLogger(TimerWheel.class);
+
+	public static final long DEFAULT_TICK_MILLIS = 10;
+
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+
+	static final int LEVELS = 4;
+
+	/**
+	 * A task of the wheel. It can be subclassed to save the task object when
+	 * the timeout is all the state of the task.
+	 */
+	static class Timeout{
+
+		private Runnable task;
+		private long deadline;
+		private volatile boolean cancelled;
+
+		/**
+		 * @param deadline when the task is due, as of {@link System#nanoTime()}
+		 */
+		Timeout(Runnable task,long deadline){
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Runs the task on the wheel thread
+		 */
+		void run(){
+			task.run();
+		}
+
+		/**
+		 * The task will not run, unless it already has
+		 */
+		void cancel(){
+			cancelled = true;
+		}
+
+		boolean isCancelled(){
+			return cancelled;
+		}
+	};
+
+	private String name;
+	private long tickNanos;
+	private int bits;
+	private List<Timeout>[][] levels;
+	private Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+
+	private long startTime;
+	private long tick;
+	private Thread worker;
+	private volatile boolean stopped;
+
+	TimerWheel(String name) {
+		this(name,DEFAULT_TICK_MILLIS,TimeUnit.MILLISECONDS,DEFAULT_WHEEL_SIZE);
+	}
+
+	/**
+	 * @param name prefix of the name of the wheel thread
+	 * @param wheelSize number of buckets of every level, rounded up to a power of 2
+	 */
+	@SuppressWarnings("unchecked")
+	TimerWheel(String name, long tick, TimeUnit unit, int wheelSize) {
+		if(wheelSize < 2 || wheelSize > 1 << 15){
+			throw new IllegalArgumentException(String.format("A wheel has from 2 to 32768 buckets, not %d",wheelSize));
+		}
+		this.name = name;
+		tickNanos = unit.toNanos(tick);
+		bits = Integer.numberOfTrailingZeros(Integer.highestOneBit(wheelSize - 1) << 1);
+		levels = (List<Timeout>[][])new List<?>[LEVELS][1 << bits];
+		for(List<Timeout>[] level : levels){
+			for(int i = 0; i < level.length; i++){
+				level[i] = new ArrayList<>();
+			}
+		}
+	}
+
+	/**
+	 * @return the handle to cancel the task, the task runs on the wheel thread at most a tick late
+	 * @throws IllegalStateException if the wheel is stopped
+	 */
+	Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		return schedule(new Timeout(task,System.nanoTime() + unit.toNanos(delay)));
+	}
+
+	/**
+	 * Schedules a timeout for its deadline
+	 * @return the timeout
+	 * @throws IllegalStateException if the wheel is stopped
+	 */
+	<E extends Timeout> E schedule(E timeout) {
+		if(stopped){
+			throw new IllegalStateException(String.format("Timer %s is stopped",name));
+		}
+		added.offer(timeout);
+		start();
+		return timeout;
+	}
+
+	private synchronized void start() {
+		if(worker == null && !stopped){
+			startTime = System.nanoTime();
+			worker = new ThreadFactoryBuilder()
+					.setNameFormat(name+"-timer-%d")
+					.setDaemon(true)
+					.build()
+					.newThread(()->run());
+			worker.start();
+		}
+	}
+
+	/**
+	 * Stops the wheel thread, the tasks not run yet never will
+	 */
+	synchronized void stop() {
+		stopped = true;
+		if(worker != null){
+			LockSupport.unpark(worker);
+		}
+	}
+
+	private void run() {
+		while(!stopped){
+			long deadline = startTime + (tick + 1) * tickNanos;
+			long now;
+			while(!stopped && (now = System.nanoTime()) < deadline){
+				LockSupport.parkNanos(this,deadline - now);
+			}
+			if(stopped){
+				return;
+			}
+			fileAdded();
+			cascade();
+			expire(levels[0][(int)(tick & (levels[0].length - 1))]);
+			tick++;
+		}
+	}
+
+	private void fileAdded() {
+		Timeout timeout;
+		while((timeout = added.poll()) != null){
+			if(!timeout.cancelled){
+				file(timeout);
+			}
+		}
+	}
+
+	/**
+	 * Files the timeout at the lowest level spanning its deadline, the top level
+	 * takes the timeouts beyond the span of the wheel and files them again as it turns
+	 */
+	private void file(Timeout timeout) {
+		//a task already due goes into the bucket expired right now
+		long due = Math.max((timeout.deadline - startTime + tickNanos - 1) / tickNanos - 1,tick);
+		long delta = due - tick;
+		int level = 0;
+		while(level < LEVELS - 1 && delta >= 1L << (bits * (level + 1))){
+			level++;
+		}
+		List<Timeout>[] buckets = levels[level];
+		buckets[(int)((due >>> (bits * level)) & (buckets.length - 1))].add(timeout);
+	}
+
+	/**
+	 * Files again, one level down, the timeouts of the bucket of every level turning at this tick
+	 */
+	private void cascade() {
+		for(int level = LEVELS - 1; level > 0; level--){
+			int shift = bits * level;
+			if((tick & ((1L << shift) - 1)) != 0){
+				continue;
+			}
+			List<Timeout>[] buckets = levels[level];
+			int index = (int)((tick >>> shift) & (buckets.length - 1));
+			List<Timeout> bucket = buckets[index];
+			if(bucket.isEmpty()){
+				continue;
+			}
+			buckets[index] = new ArrayList<>();
+			for(int i = 0; i < bucket.size(); i++){
+				Timeout timeout = bucket.get(i);
+				if(!timeout.cancelled){
+					file(timeout);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the tasks of the bucket of the tick, all of them are due
+	 */
+	private void expire(List<Timeout> bucket) {
+		for(int i = 0; i < bucket.size(); i++){
+			Timeout timeout = bucket.get(i);
+			if(timeout.cancelled){
+				continue;
+			}
+			try{
+				timeout.run();
+			}catch(Throwable e){
+				warn(log,e,"Task of timer %s failed",name);
+			}
+		}
+		bucket.clear();
+	}
+
+}
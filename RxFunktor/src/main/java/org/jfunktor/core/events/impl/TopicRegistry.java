@@ -0,0 +1,134 @@
+package org.jfunktor.core.events.impl;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.api.Topic;
+
+/**
+ * Interns the topics of a bus and holds the route of each of them.
+ *
+ * A topic is normalized and given the next free id the first time it is
+ * interned. Its route then stays at that index of an array for the lifetime of
+ * the bus, so resolving a {@link Topic} handle is an array read with no string
+ * work at all. Topics which were never interned are not held on to, which keeps
+ * publishes to arbitrary throwaway topics from growing the registry.
+ *
+ * A route is never reclaimed, even once its last subscriber is gone: a handle of
+ * its topic may still be held anywhere and must keep resolving to it. Instead
+ * the registry holds at most a maximum of topics, {@link EventBus#DEFAULT_MAX_TOPICS}
+ * by default, and refuses to intern any more, so that subscribing to an
+ * endless stream of distinct topics fails rather than exhausting the memory.
+ */
+class TopicRegistry<R> {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * The handles and their routes, swapped as a whole when the table grows
+	 */
+	private static class Table{
+
+		private Topic[] topics;
+		private Object[] routes;
+
+		Table(int capacity){
+			topics = new Topic[capacity];
+			routes = new Object[capacity];
+		}
+
+		Table(Table from,int capacity){
+			topics = Arrays.copyOf(from.topics,capacity);
+			routes = Arrays.copyOf(from.routes,capacity);
+		}
+	};
+
+	private Map<String,R> byName = new ConcurrentHashMap<>();
+	private volatile Table table = new Table(INITIAL_CAPACITY);
+	private int size;
+	private int maxTopics = EventBus.DEFAULT_MAX_TOPICS;
+	private Function<Topic,R> factory;
+
+	/**
+	 * @param factory creates the route of a newly interned topic
+	 */
+	TopicRegistry(Function<Topic,R> factory){
+		this.factory = factory;
+	}
+
+	static String normalize(String topic) {
+		return topic.toLowerCase();
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the maximum is not positive
+	 */
+	synchronized void setMaxTopics(int maxTopics) {
+		if(maxTopics <= 0){
+			throw new IllegalArgumentException(String.format("A bus holds at least one topic, not %d",maxTopics));
+		}
+		this.maxTopics = maxTopics;
+	}
+
+	/**
+	 * @return the route of the topic, interning the topic if needed
+	 * @throws IllegalStateException if the topic is new and the registry is full
+	 */
+	R intern(String topic) {
+		String key = normalize(topic);
+		R route = byName.get(key);
+		if(route != null){
+			return route;
+		}
+		synchronized(this){
+			route = byName.get(key);
+			if(route == null){
+				if(size >= maxTopics){
+					throw new IllegalStateException(String.format("Cannot intern topic %s, the bus already holds its maximum of %d topics",key,maxTopics));
+				}
+				Topic handle = new Topic(key,size);
+				route = factory.apply(handle);
+
+				Table current = table;
+				Table next = size < current.topics.length ? current : new Table(current,current.topics.length * 2);
+				next.topics[size] = handle;
+				next.routes[size] = route;
+				table = next;
+				size++;
+
+				byName.put(key,route);
+			}
+			return route;
+		}
+	}
+
+	/**
+	 * @return the route of an already normalized topic, null if it was never interned
+	 */
+	R find(String key) {
+		return byName.get(key);
+	}
+
+	/**
+	 * @return the route of the handle
+	 * @throws IllegalArgumentException if the handle was not created by this registry
+	 */
+	@SuppressWarnings("unchecked")
+	R get(Topic topic) {
+		Table current = table;
+		int id = topic.getId();
+		if(id < 0 || id >= current.topics.length || current.topics[id] != topic){
+			throw new IllegalArgumentException(String.format("%s does not belong to this bus",topic));
+		}
+		return (R)current.routes[id];
+	}
+
+	void forEach(Consumer<R> action) {
+		byName.values().forEach(action);
+	}
+
+}
@@ -0,0 +1,185 @@
+package org.jfunktor.core.events.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Index of the wildcard topic patterns subscribed to on a bus.
+ *
+ * Patterns are split on {@link #SEPARATOR} into segments and stored one segment
+ * per level. A {@link #ANY_ONE} segment matches exactly one topic segment and a
+ * {@link #ANY_MANY} segment matches zero or more. Matching a topic walks the trie
+ * segment by segment, so its cost depends on the depth of the topic and not on
+ * the number of patterns subscribed.
+ *
+ * Lookups are lock-free. Changes are serialized on the trie and prune the nodes
+ * which no longer lead to a subscriber.
+ */
+class TopicTrie<S> {
+
+	static final String SEPARATOR = ".";
+	static final String ANY_ONE = "*";
+	static final String ANY_MANY = "#";
+
+	static class Node<S>{
+
+		private Map<String,Node<S>> children = new ConcurrentHashMap<>();
+		private SinkArray<S> sinks = new SinkArray<>();
+
+		/**
+		 * @return the sinks of the pattern, see {@link SinkArray#get()}
+		 */
+		Object[] getSinks() {
+			return sinks.get();
+		}
+
+		private boolean isEmpty() {
+			return sinks.isEmpty() && children.isEmpty();
+		}
+	};
+
+	private Node<S> root = new Node<>();
+	private volatile String[] firstSegments = new String[0];
+	private volatile int size;
+	private volatile int version;
+
+	/**
+	 * @return true if the topic contains a wildcard segment and has to be subscribed through the trie
+	 */
+	static boolean isPattern(String topic) {
+		for(String segment : split(topic)){
+			if(ANY_ONE.equals(segment) || ANY_MANY.equals(segment)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static String[] split(String topic) {
+		return topic.split("\\.",-1);
+	}
+
+	synchronized void add(String pattern, S sink) {
+		Node<S> node = root;
+		for(String segment : split(pattern)){
+			node = node.children.computeIfAbsent(segment,key->new Node<>());
+		}
+		node.sinks.add(sink);
+		size++;
+		version++;
+		firstSegments = root.children.keySet().toArray(new String[0]);
+	}
+
+	synchronized boolean remove(String pattern, S sink) {
+		String[] segments = split(pattern);
+		List<Node<S>> path = new ArrayList<>(segments.length + 1);
+		Node<S> node = root;
+		path.add(node);
+		for(String segment : segments){
+			node = node.children.get(segment);
+			if(node == null){
+				return false;
+			}
+			path.add(node);
+		}
+		if(!node.sinks.remove(sink)){
+			return false;
+		}
+		size--;
+		version++;
+
+		//drop the nodes which do not lead to any subscriber anymore
+		for(int i = segments.length; i > 0 && path.get(i).isEmpty(); i--){
+			path.get(i - 1).children.remove(segments[i - 1]);
+		}
+		firstSegments = root.children.keySet().toArray(new String[0]);
+		return true;
+	}
+
+	synchronized void clear() {
+		root = new Node<>();
+		firstSegments = new String[0];
+		size = 0;
+		version++;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return a counter bumped by every change, so that callers can cache the result of {@link #match(String)}
+	 */
+	int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the nodes of every pattern matching the topic, each one once
+	 */
+	List<Node<S>> match(String topic) {
+		if(!mayMatch(topic)){
+			return Collections.emptyList();
+		}
+		List<Node<S>> matched = new ArrayList<>(2);
+		match(root,split(topic),0,matched);
+		return matched;
+	}
+
+	/**
+	 * Rules out, without allocating, a topic whose first segment starts no pattern,
+	 * which is the common case of a topic published without any subscriber
+	 */
+	private boolean mayMatch(String topic) {
+		int end = topic.indexOf(SEPARATOR);
+		if(end < 0){
+			end = topic.length();
+		}
+		for(String first : firstSegments){
+			if(ANY_ONE.equals(first) || ANY_MANY.equals(first) || (first.length() == end && topic.startsWith(first))){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void match(Node<S> node, String[] segments, int index, List<Node<S>> matched) {
+		if(index == segments.length){
+			if(!node.sinks.isEmpty() && !matched.contains(node)){
+				matched.add(node);
+			}
+		}else{
+			Node<S> exact = node.children.get(segments[index]);
+			if(exact != null){
+				match(exact,segments,index + 1,matched);
+			}
+			Node<S> anyOne = node.children.get(ANY_ONE);
+			if(anyOne != null){
+				match(anyOne,segments,index + 1,matched);
+			}
+		}
+		Node<S> anyMany = node.children.get(ANY_MANY);
+		if(anyMany != null){
+			for(int next = index; next <= segments.length; next++){
+				match(anyMany,segments,next,matched);
+			}
+		}
+	}
+
+	/**
+	 * Visits the sinks of every pattern
+	 */
+	void forEach(Consumer<S> action) {
+		forEach(root,action);
+	}
+
+	private void forEach(Node<S> node, Consumer<S> action) {
+		node.sinks.forEach(action);
+		node.children.values().forEach(child->forEach(child,action));
+	}
+
+}
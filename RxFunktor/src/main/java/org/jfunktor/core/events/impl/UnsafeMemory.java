@@ -0,0 +1,229 @@
+package org.jfunktor.core.events.impl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+
+/**
+ * The operations of sun.misc.Unsafe on native memory which {@link SharedRing}
+ * needs, and the only place the bus touches Unsafe.
+ *
+ * The library is built for java 8, which has no VarHandle, so ordered and
+ * volatile access to a mapped file takes Unsafe. It is looked up reflectively
+ * and its methods are bound to method handles, so no class is compiled against
+ * the internal api. The handles are constants, the JIT compiles a call through
+ * them down to the call of Unsafe itself.
+ */
+final class UnsafeMemory {
+
+	private static final MethodHandle GET_INT;
+	private static final MethodHandle GET_SHORT;
+	private static final MethodHandle GET_LONG_OF;
+	private static final MethodHandle GET_INT_VOLATILE;
+	private static final MethodHandle GET_LONG_VOLATILE;
+	private static final MethodHandle PUT_INT;
+	private static final MethodHandle PUT_SHORT;
+	private static final MethodHandle PUT_LONG_VOLATILE;
+	private static final MethodHandle PUT_ORDERED_INT;
+	private static final MethodHandle PUT_ORDERED_LONG;
+	private static final MethodHandle SET_MEMORY;
+	private static final MethodHandle COPY_MEMORY;
+	private static final MethodHandle LOAD_FENCE;
+	private static final MethodHandle STORE_FENCE;
+
+	private static final long BYTES;
+
+	/**
+	 * offset of the native address in a direct buffer, read through Unsafe rather
+	 * than by opening the field with reflection, which later JDKs refuse
+	 */
+	private static final long ADDRESS_FIELD_OFFSET;
+
+	static{
+		try{
+			Class<?> type = Class.forName("sun.misc.Unsafe");
+			Field field = type.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			Object unsafe = field.get(null);
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+			GET_INT = bind(lookup,type,unsafe,"getInt",int.class,long.class);
+			GET_SHORT = bind(lookup,type,unsafe,"getShort",short.class,long.class);
+			GET_LONG_OF = bind(lookup,type,unsafe,"getLong",long.class,Object.class,long.class);
+			GET_INT_VOLATILE = bind(lookup,type,unsafe,"getIntVolatile",int.class,Object.class,long.class);
+			GET_LONG_VOLATILE = bind(lookup,type,unsafe,"getLongVolatile",long.class,Object.class,long.class);
+			PUT_INT = bind(lookup,type,unsafe,"putInt",void.class,long.class,int.class);
+			PUT_SHORT = bind(lookup,type,unsafe,"putShort",void.class,long.class,short.class);
+			PUT_LONG_VOLATILE = bind(lookup,type,unsafe,"putLongVolatile",void.class,Object.class,long.class,long.class);
+			PUT_ORDERED_INT = bind(lookup,type,unsafe,"putOrderedInt",void.class,Object.class,long.class,int.class);
+			PUT_ORDERED_LONG = bind(lookup,type,unsafe,"putOrderedLong",void.class,Object.class,long.class,long.class);
+			SET_MEMORY = bind(lookup,type,unsafe,"setMemory",void.class,long.class,long.class,byte.class);
+			COPY_MEMORY = bind(lookup,type,unsafe,"copyMemory",void.class,Object.class,long.class,Object.class,long.class,long.class);
+			LOAD_FENCE = bind(lookup,type,unsafe,"loadFence",void.class);
+			STORE_FENCE = bind(lookup,type,unsafe,"storeFence",void.class);
+
+			BYTES = (int)bind(lookup,type,unsafe,"arrayBaseOffset",int.class,Class.class).invokeExact(byte[].class);
+			ADDRESS_FIELD_OFFSET = (long)bind(lookup,type,unsafe,"objectFieldOffset",long.class,Field.class).invokeExact(Buffer.class.getDeclaredField("address"));
+		}catch(Throwable e){
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private UnsafeMemory() {
+	}
+
+	private static MethodHandle bind(MethodHandles.Lookup lookup, Class<?> type, Object unsafe, String name, Class<?> returnType, Class<?>... parameterTypes) throws ReflectiveOperationException {
+		return lookup.findVirtual(type,name,MethodType.methodType(returnType,parameterTypes)).bindTo(unsafe);
+	}
+
+	/**
+	 * None of the methods bound throws a checked exception
+	 */
+	private static RuntimeException rethrow(Throwable e) {
+		if(e instanceof Error){
+			throw (Error)e;
+		}
+		if(e instanceof RuntimeException){
+			return (RuntimeException)e;
+		}
+		return new IllegalStateException(e);
+	}
+
+	/**
+	 * @return the native address of the content of a direct or mapped buffer
+	 */
+	static long addressOf(Buffer buffer) {
+		try{
+			return (long)GET_LONG_OF.invokeExact((Object)buffer,ADDRESS_FIELD_OFFSET);
+		}catch(Throwable e){
+			throw rethrow(e);
+		}
+	}
+
+	static int getInt(long address) {
+		try{
+			return (int)GET_INT.invokeExact(address);
+		}catch(Throwable e){
+			throw rethrow(e);
+		}
+	}
+
+	static short getShort(long address) {
+		try{
+			return (short)GET_SHORT.invokeExact(address);
+		}catch(Throwable e){
+			throw rethrow(e);
+		}
+	}
+
+	static int getIntVolatile(long address) {
+		try{
+			return (int)GET_INT_VOLATILE.invokeExact((Object)null,address);
+		}catch(Throwable e){
+			throw rethrow(e);
+		}
+	}
+
+	static long getLongVolatile(long address) {
+		try{
+			return (long)GET_LONG_VOLATILE.invokeExact((Object)null,address);
+		}catch(Throwable e){
+			throw rethrow(e);
+		}
+	}
+
+	static void putInt(long address, int value) {
+		try{
+			PUT_INT.invokeExact(address,value);
+		}catch(Throwable e){
+			throw rethrow(e);
+		}
+	}
+
+	static void putShort(long address, short value) {
+		try{
+			PUT_SHORT.invokeExact(address,value);
+		}catch(Throwable e){
+			throw rethrow(e);
+		}
+	}
+
+	static void putLongVolatile(long address, long value) {
+		try{
+			PUT_LONG_VOLATILE.invokeExact((Object)null,address,value);
+		}catch(Throwable e){
+			throw rethrow(e);
+		}
+	}
+
+	/**
+	 * Stores the value after every store before it, without waiting for it to be visible
+	 */
+	static void putOrderedInt(long address, int value) {
+		try{
+			PUT_ORDERED_INT.invokeExact((Object)null,address,value);
+		}catch(Throwable e){
+			throw rethrow(e);
+		}
+	}
+
+	/**
+	 * Stores the value after every store before it, without waiting for it to be visible
+	 */
+	static void putOrderedLong(long address, long value) {
+		try{
+			PUT_ORDERED_LONG.invokeExact((Object)null,address,value);
+		}catch(Throwable e){
+			throw rethrow(e);
+		}
+	}
+
+	static void setMemory(long address, long bytes, byte value) {
+		try{
+			SET_MEMORY.invokeExact(address,bytes,value);
+		}catch(Throwable e){
+			throw rethrow(e);
+		}
+	}
+
+	static void copyToArray(long address, byte[] target, int length) {
+		try{
+			COPY_MEMORY.invokeExact((Object)null,address,(Object)target,BYTES,(long)length);
+		}catch(Throwable e){
+			throw rethrow(e);
+		}
+	}
+
+	static void copyFromArray(byte[] source, long address, int length) {
+		try{
+			COPY_MEMORY.invokeExact((Object)source,BYTES,(Object)null,address,(long)length);
+		}catch(Throwable e){
+			throw rethrow(e);
+		}
+	}
+
+	/**
+	 * No load after the fence is done before a load ahead of it
+	 */
+	static void loadFence() {
+		try{
+			LOAD_FENCE.invokeExact();
+		}catch(Throwable e){
+			throw rethrow(e);
+		}
+	}
+
+	/**
+	 * No store after the fence is done before a store ahead of it
+	 */
+	static void storeFence() {
+		try{
+			STORE_FENCE.invokeExact();
+		}catch(Throwable e){
+			throw rethrow(e);
+		}
+	}
+
+}
@@ -0,0 +1,65 @@
+package org.jfunktor.core.events.impl;
+
+import static org.jfunktor.common.utils.LogUtil.info;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * Scheduler of the VIRTUAL subscribers.
+ *
+ * Every task runs on a new virtual thread, so a subscriber blocking on I/O parks
+ * its virtual thread instead of holding a pooled platform thread. A worker of the
+ * scheduler still runs its tasks one after the other, which keeps the events of
+ * a subscriber in order.
+ *
+ * The library is built for java 8, so virtual threads are looked up reflectively.
+ * On a runtime without them the io scheduler is used instead.
+ */
+public final class VirtualThreads {
+
+	private static Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+
+	private static final String THREAD_PREFIX = "rxfunktor-virtual-";
+
+	private static final ExecutorService EXECUTOR = createExecutor();
+
+	private static final Scheduler SCHEDULER = EXECUTOR != null ? Schedulers.from(EXECUTOR) : Schedulers.io();
+
+	private VirtualThreads() {
+	}
+
+	private static ExecutorService createExecutor() {
+		try{
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			builder = builderType.getMethod("name",String.class,long.class).invoke(builder,THREAD_PREFIX,0L);
+			ThreadFactory factory = (ThreadFactory)builderType.getMethod("factory").invoke(builder);
+			Method executor = Executors.class.getMethod("newThreadPerTaskExecutor",ThreadFactory.class);
+			return (ExecutorService)executor.invoke(null,factory);
+		}catch(ReflectiveOperationException e){
+			info(log,"Virtual threads are not available on java %s, VIRTUAL subscribers run on the io scheduler",System.getProperty("java.version"));
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the runtime has virtual threads
+	 */
+	public static boolean isAvailable() {
+		return EXECUTOR != null;
+	}
+
+	public static Scheduler scheduler() {
+		return SCHEDULER;
+	}
+
+}
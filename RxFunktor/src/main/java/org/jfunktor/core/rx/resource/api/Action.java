@@ -1,6 +1,7 @@
 package org.jfunktor.core.rx.resource.api;
 
 import org.jfunktor.core.events.api.Event;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
 import rx.Observer;
 
 /**
@@ -10,6 +11,14 @@ public interface Action<T> {
 
     public Subscription subscribe(Observer<T> subscriber);
 
+    /**
+     * Subscribes with the given delivery mode. An ASYNC or VIRTUAL subscriber is
+     * called in order off the thread emitting the events, VIRTUAL on virtual threads
+     * when the runtime has them.
+     * @throws IllegalArgumentException for PARTITIONED, which needs a key
+     */
+    public Subscription subscribe(Observer<T> subscriber, DeliveryMode mode);
+
     public boolean isActive();
 
     public void activate(boolean activate);
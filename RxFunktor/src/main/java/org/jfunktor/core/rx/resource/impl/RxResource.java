@@ -1,13 +1,19 @@
 package org.jfunktor.core.rx.resource.impl;
 
 import org.jfunktor.core.events.api.Event;
+import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.api.EventBus.OverflowPolicy;
+import org.jfunktor.core.events.impl.VirtualThreads;
 import org.jfunktor.core.resource.api.ResourceException;
 import org.jfunktor.core.rx.resource.api.Action;
 import org.jfunktor.core.rx.resource.api.Resource;
+import rx.BackpressureOverflow;
 import rx.Observable;
 import rx.Observer;
 import rx.Subscription;
 import rx.functions.Func1;
+import rx.schedulers.Schedulers;
 import rx.subjects.PublishSubject;
 import rx.subjects.SerializedSubject;
 import rx.subjects.Subject;
@@ -18,6 +24,11 @@ import java.util.concurrent.ConcurrentHashMap;
 
 public class RxResource implements Resource<Event> {
 
+	/**
+	 * what the buffer of a slow ASYNC or VIRTUAL subscriber drops once full, as on the bus
+	 */
+	private static final BackpressureOverflow.Strategy OVERFLOW_STRATEGY = overflowStrategyOf(EventBus.DEFAULT_OVERFLOW_POLICY);
+
 	private String resource;
 	private String version;
 	
@@ -46,10 +57,16 @@ public class RxResource implements Resource<Event> {
 
 		@Override
 		public org.jfunktor.core.rx.resource.api.Subscription subscribe(Observer<Event> subscriber) {
+			return subscribe(subscriber,DeliveryMode.SYNC);
+		}
+
+		@Override
+		public org.jfunktor.core.rx.resource.api.Subscription subscribe(Observer<Event> subscriber, DeliveryMode mode) {
+			Observable<Event> delivered = deliveredIn(mode);
 			//check if the subscriber is already subscribed
 			if(!subscription.containsKey(subscriber)){
 				//create the new subscription and return it
-				Subscription rxSubscription = observable.subscribe(subscriber);
+				Subscription rxSubscription = delivered.subscribe(subscriber);
 
 				org.jfunktor.core.rx.resource.api.Subscription subs = new SubscriptionImpl(this,rxSubscription, subscriber);
 
@@ -63,6 +80,28 @@ public class RxResource implements Resource<Event> {
 			}
 		}
 
+		private Observable<Event> deliveredIn(DeliveryMode mode) {
+			switch(mode){
+			case SYNC:
+				return observable;
+			case ASYNC:
+				return bounded(observable).observeOn(Schedulers.io());
+			case VIRTUAL:
+				return bounded(observable).observeOn(VirtualThreads.scheduler());
+			default:
+				throw new IllegalArgumentException(String.format("Action %s cannot deliver in %s mode",name,mode));
+			}
+		}
+
+		/**
+		 * Buffers up to {@link EventBus#DEFAULT_QUEUE_CAPACITY} events for a subscriber
+		 * falling behind, so that it cannot make the resource run out of memory
+		 */
+		private Observable<Event> bounded(Observable<Event> events) {
+			return events.onBackpressureBuffer(EventBus.DEFAULT_QUEUE_CAPACITY,
+					()->log(String.format("WARNING : Action %s dropped an event of a slow subscriber",name)),OVERFLOW_STRATEGY);
+		}
+
 		public void unsubscribeAll(){
 			subscription.forEach((key,value)->{
 				Observer<Event> obs = (Observer<Event>)key;
@@ -162,6 +201,22 @@ public class RxResource implements Resource<Event> {
 		switchFunction = createSwitchFunction();
 	}
 
+	/**
+	 * The events come from a subject, which cannot wait for a subscriber, so BLOCK is not supported
+	 */
+	private static BackpressureOverflow.Strategy overflowStrategyOf(OverflowPolicy policy) {
+		switch(policy){
+		case DROP_NEWEST:
+			return BackpressureOverflow.ON_OVERFLOW_DROP_LATEST;
+		case DROP_OLDEST:
+			return BackpressureOverflow.ON_OVERFLOW_DROP_OLDEST;
+		case ERROR:
+			return BackpressureOverflow.ON_OVERFLOW_ERROR;
+		default:
+			throw new IllegalArgumentException(String.format("A resource cannot deliver under the %s overflow policy",policy));
+		}
+	}
+
 	private Func1<Event,Event> createSwitchFunction() {
 
 		return safely(event->{
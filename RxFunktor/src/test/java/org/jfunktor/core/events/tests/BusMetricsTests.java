@@ -0,0 +1,182 @@
+package org.jfunktor.core.events.tests;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.jfunktor.core.events.api.BusMetrics;
+import org.jfunktor.core.events.api.Event;
+import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.api.LatencyHistogram;
+import org.jfunktor.core.events.api.SubscriptionMetrics;
+import org.jfunktor.core.events.api.TopicMetrics;
+import org.jfunktor.core.events.impl.BusMetricsJmx;
+import org.jfunktor.core.events.impl.DisruptorBus;
+import org.jfunktor.core.events.impl.RxBus;
+import org.junit.Test;
+
+public class BusMetricsTests {
+
+	private Event event(String name) {
+		return new Event(name,new HashMap<>());
+	}
+
+	private void assertCounts(EventBus<Event> eventBus) throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(100);
+		eventBus.subscribe("orders",DeliveryMode.SYNC,evt->{});
+		eventBus.subscribe("orders",DeliveryMode.ASYNC,evt->latch.countDown());
+
+		for(int i = 0; i < 100; i++){
+			eventBus.publish("Orders",event("Order"+i));
+		}
+		for(int i = 0; i < 10; i++){
+			eventBus.publish("nobody",event("Lost"+i));
+		}
+		assertTrue("Not all events were received",latch.await(5,TimeUnit.SECONDS));
+
+		BusMetrics metrics = eventBus.getMetrics();
+		assertEquals(110,metrics.getPublished());
+		assertEquals(10,metrics.getDeadEvents());
+
+		TopicMetrics orders = metrics.getTopic("orders");
+		assertEquals(100,orders.getPublished());
+		assertEquals(200,orders.getDelivered());
+		assertEquals(2,orders.getSubscriptions().size());
+		for(SubscriptionMetrics subscription : orders.getSubscriptions()){
+			assertEquals(100,subscription.getDelivered());
+			assertEquals(0,subscription.getDropped());
+		}
+		assertNull(metrics.getTopic("nobody"));
+
+		eventBus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_rx_bus_counts() throws InterruptedException {
+		assertCounts(new RxBus<>("metrics-bus-1"));
+	}
+
+	@Test
+	public void test_disruptor_bus_counts() throws InterruptedException {
+		assertCounts(new DisruptorBus<>("metrics-bus-2"));
+	}
+
+	@Test
+	public void test_latency_of_a_slow_subscriber() throws InterruptedException {
+
+		RxBus<Event> eventBus = new RxBus<Event>("metrics-bus-3").withLatencySampling(1);
+		CountDownLatch latch = new CountDownLatch(20);
+		eventBus.subscribe("orders",DeliveryMode.ASYNC,evt->{
+			try{
+				Thread.sleep(2);
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			latch.countDown();
+		});
+		eventBus.subscribe("orders",DeliveryMode.SYNC,evt->{});
+
+		for(int i = 0; i < 20; i++){
+			eventBus.publish("orders",event("Order"+i));
+		}
+		assertTrue("Not all events were received",latch.await(5,TimeUnit.SECONDS));
+
+		//the latency of the last event is recorded once the subscriber returns
+		long deadline = System.currentTimeMillis() + 5000;
+		while(eventBus.getMetrics().getTopic("orders").getLatency().getCount() < 40 && System.currentTimeMillis() < deadline){
+			Thread.yield();
+		}
+		TopicMetrics orders = eventBus.getMetrics().getTopic("orders");
+		for(SubscriptionMetrics subscription : orders.getSubscriptions()){
+			assertEquals(20,subscription.getLatency().getCount());
+			if(subscription.getMode() == DeliveryMode.ASYNC){
+				assertTrue("Sleeping subscriber was too fast "+subscription,subscription.getLatency().getP50() >= TimeUnit.MILLISECONDS.toNanos(2));
+			}
+		}
+		assertEquals("Topic latency is not the merge of its subscriptions",40,orders.getLatency().getCount());
+		assertTrue(orders.getLatency().getMax() >= orders.getLatency().getP999());
+
+		eventBus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_histogram_percentiles() {
+
+		long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+		long sum = 0;
+		for(long latency = 1000; latency <= 100000; latency += 1000){
+			counts[LatencyHistogram.bucketOf(latency)]++;
+			sum += latency;
+		}
+		LatencyHistogram histogram = new LatencyHistogram(counts,sum,100000);
+
+		assertEquals(100,histogram.getCount());
+		assertEquals(50500,histogram.getMean(),0.001);
+		//buckets are 1/16th of a power of 2 wide
+		assertEquals(50000,histogram.getP50(),50000 / 16);
+		assertEquals(99000,histogram.getP99(),99000 / 16);
+		assertEquals(100000,histogram.getP999());
+
+		LatencyHistogram merged = histogram.merge(histogram);
+		assertEquals(200,merged.getCount());
+		assertEquals(histogram.getP50(),merged.getP50());
+		assertEquals(0,LatencyHistogram.EMPTY.getP99());
+	}
+
+	@Test
+	public void test_unsubscribed_subscription_leaves_the_metrics() {
+
+		RxBus<Event> eventBus = new RxBus<>("metrics-bus-4");
+		eventBus.subscribe("orders",evt->{}).unsubscribe();
+		eventBus.publish("orders",event("Order"));
+
+		BusMetrics metrics = eventBus.getMetrics();
+		assertEquals(0,metrics.getTopic("orders").getSubscriptions().size());
+		assertEquals(1,metrics.getDeadEvents());
+	}
+
+	@Test
+	public void test_failed_subscription_never_enters_the_metrics() {
+
+		RxBus<Event> eventBus = new RxBus<>("metrics-bus-6");
+		eventBus.subscribe("orders",evt->{});
+		try{
+			eventBus.subscribe("orders",0,EventBus.OverflowPolicy.BLOCK,evt->{});
+			fail("A subscription without a queue was made");
+		}catch(IllegalArgumentException e){
+			//expected
+		}
+
+		assertEquals(1,eventBus.getMetrics().getTopic("orders").getSubscriptions().size());
+	}
+
+	@Test
+	public void test_jmx() throws Exception {
+
+		RxBus<Event> eventBus = new RxBus<>("metrics-bus-5");
+		eventBus.subscribe("orders",evt->{});
+		eventBus.publish("orders",event("Order"));
+
+		ObjectName name = BusMetricsJmx.register(eventBus);
+		try{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertEquals(1L,server.getAttribute(name,"Published"));
+			CompositeData[] topics = (CompositeData[])server.getAttribute(name,"Topics");
+			assertEquals(1,topics.length);
+			assertEquals("orders",topics[0].get("topic"));
+			assertEquals(1L,topics[0].get("delivered"));
+		}finally{
+			BusMetricsJmx.unregister(name);
+		}
+		eventBus.unSubscribeAll();
+	}
+
+}
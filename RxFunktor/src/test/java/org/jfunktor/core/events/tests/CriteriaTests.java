@@ -0,0 +1,133 @@
+package org.jfunktor.core.events.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.jfunktor.core.events.api.BusSubscription;
+import org.jfunktor.core.events.api.Criteria;
+import org.jfunktor.core.events.api.Event;
+import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.impl.DisruptorBus;
+import org.jfunktor.core.events.impl.RxBus;
+import org.junit.Test;
+
+import rx.observers.TestSubscriber;
+
+public class CriteriaTests {
+
+	private Event order(int index, String region, Object amount) {
+		Map<String,Object> details = new HashMap<>();
+		details.put("index",index);
+		details.put("region",region);
+		details.put("amount",amount);
+		return new Event("Order"+index,details);
+	}
+
+	private void assertMatching(EventBus<Event> eventBus, DeliveryMode mode) {
+		TestSubscriber<Event> europe = new TestSubscriber<>();
+		TestSubscriber<Event> largeInEurope = new TestSubscriber<>();
+		TestSubscriber<Event> small = new TestSubscriber<>();
+		TestSubscriber<Event> everything = new TestSubscriber<>();
+		eventBus.subscribeWithObserver("orders",new Criteria().equalTo("region","EU"),mode,europe);
+		eventBus.subscribeWithObserver("orders",new Criteria().equalTo("region","EU").atLeast("amount",1000),mode,largeInEurope);
+		eventBus.subscribeWithObserver("orders",new Criteria().lessThan("amount",100),mode,small);
+		eventBus.subscribeWithObserver("orders",new Criteria(),mode,everything);
+
+		String[] regions = {"EU","US","APAC"};
+		for(int i = 0; i < 30; i++){
+			eventBus.publish("orders",order(i,regions[i % 3],i * 100));
+		}
+
+		everything.awaitValueCount(30,5000,TimeUnit.MILLISECONDS);
+		europe.awaitValueCount(10,5000,TimeUnit.MILLISECONDS);
+		largeInEurope.awaitValueCount(6,5000,TimeUnit.MILLISECONDS);
+		small.awaitValueCount(1,5000,TimeUnit.MILLISECONDS);
+
+		everything.assertValueCount(30);
+		europe.assertValueCount(10);
+		for(Event evt : europe.getOnNextEvents()){
+			assertEquals("EU",evt.getEventDetails().get("region"));
+		}
+		//EU orders are 0,3,...,27 and from 12 on their amount is at least 1000
+		largeInEurope.assertValueCount(6);
+		assertEquals("Order12",largeInEurope.getOnNextEvents().get(0).getEventName());
+		small.assertValueCount(1);
+		assertEquals("Order0",small.getOnNextEvents().get(0).getEventName());
+
+		eventBus.unSubscribeAll();
+		everything.awaitTerminalEvent(5000,TimeUnit.MILLISECONDS);
+		everything.assertCompleted();
+	}
+
+	@Test
+	public void test_rx_bus_sync_criteria() {
+		assertMatching(new RxBus<>("criteria-bus-1"),DeliveryMode.SYNC);
+	}
+
+	@Test
+	public void test_rx_bus_async_criteria() {
+		assertMatching(new RxBus<>("criteria-bus-2"),DeliveryMode.ASYNC);
+	}
+
+	@Test
+	public void test_disruptor_bus_criteria() {
+		assertMatching(new DisruptorBus<>("criteria-bus-3"),DeliveryMode.SYNC);
+		assertMatching(new DisruptorBus<>("criteria-bus-4"),DeliveryMode.ASYNC);
+	}
+
+	@Test
+	public void test_numbers_match_by_value() {
+		Criteria criteria = new Criteria().equalTo("amount",5).between("index",1L,2.5);
+
+		assertTrue(criteria.matches(order(1,"EU",5L).getEventDetails()));
+		assertTrue(criteria.matches(order(2,"EU",5.0).getEventDetails()));
+		assertFalse(criteria.matches(order(3,"EU",5).getEventDetails()));
+		assertFalse(criteria.matches(order(1,"EU",5.5).getEventDetails()));
+		assertFalse("A string is not in a numeric range",criteria.matches(order(1,"EU","5").getEventDetails()));
+
+		RxBus<Event> eventBus = new RxBus<>("criteria-bus-5");
+		List<Event> received = new CopyOnWriteArrayList<>();
+		eventBus.subscribe("orders",criteria,DeliveryMode.SYNC,received::add);
+		eventBus.publish("orders",order(1,"EU",5L));
+		eventBus.publish("orders",order(2,"EU",5.0));
+		eventBus.publish("orders",order(3,"EU",5));
+		eventBus.publish("orders",order(1,"EU",5.5));
+		assertEquals(2,received.size());
+	}
+
+	@Test
+	public void test_unsubscribed_criteria_and_dead_topics() {
+		RxBus<Event> eventBus = new RxBus<>("criteria-bus-6");
+		TestSubscriber<Event> dead = new TestSubscriber<>();
+		eventBus.subscribeForDeadTopicsWithObserver(DeliveryMode.SYNC,dead);
+
+		Criteria criteria = new Criteria().equalTo("region","EU");
+		List<Event> received = new CopyOnWriteArrayList<>();
+		BusSubscription subscription = eventBus.subscribe("orders",criteria,DeliveryMode.SYNC,received::add);
+		//the subscription keeps the criteria it was made with
+		criteria.equalTo("region","US");
+
+		eventBus.publish("orders",order(0,"EU",10));
+		eventBus.publish("orders",order(1,"US",10));
+		assertEquals(1,received.size());
+		dead.assertNoValues();
+		assertEquals(2,eventBus.getMetrics().getTopic("orders").getPublished());
+
+		subscription.unsubscribe();
+		eventBus.publish("orders",order(2,"EU",10));
+		assertEquals(1,received.size());
+		dead.assertValueCount(1);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void test_criteria_on_a_pattern() {
+		new RxBus<Event>("criteria-bus-7").subscribe("orders.*",new Criteria(),DeliveryMode.SYNC,evt->{});
+	}
+
+}
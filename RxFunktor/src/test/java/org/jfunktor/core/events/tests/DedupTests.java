@@ -0,0 +1,174 @@
+package org.jfunktor.core.events.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jfunktor.core.events.api.Event;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.impl.DedupPolicy;
+import org.jfunktor.core.events.impl.RxBus;
+import org.junit.Test;
+
+import rx.observers.TestSubscriber;
+
+public class DedupTests {
+
+	private Event order(Object id) {
+		Map<String,Object> details = new HashMap<>();
+		details.put("id",id);
+		return new Event("Order"+id,details);
+	}
+
+	private DedupPolicy<Event> byId() {
+		return new DedupPolicy<Event>(evt->evt.getEventDetails().get("id"));
+	}
+
+	@Test
+	public void test_repeats_are_delivered_once() {
+
+		RxBus<Event> eventBus = new RxBus<Event>("dedup-bus-1").withDedup(byId());
+		TestSubscriber<Event> orders = new TestSubscriber<>();
+		eventBus.subscribeWithObserver("orders",DeliveryMode.SYNC,orders);
+
+		for(int retry = 0; retry < 3; retry++){
+			for(int i = 0; i < 100; i++){
+				eventBus.publish("orders",order(i));
+			}
+		}
+		//an event without a key is never a repeat
+		eventBus.publish("orders",new Event("Unkeyed",new HashMap<>()));
+		eventBus.publish("orders",new Event("Unkeyed",new HashMap<>()));
+
+		orders.assertValueCount(102);
+		for(int i = 0; i < 100; i++){
+			assertEquals("Order"+i,orders.getOnNextEvents().get(i).getEventName());
+		}
+		assertEquals(200,eventBus.getDuplicates());
+		assertEquals(102,eventBus.getMetrics().getPublished());
+	}
+
+	@Test
+	public void test_repeats_of_a_batch_are_dropped() {
+
+		RxBus<Event> eventBus = new RxBus<Event>("dedup-bus-2").withDedup(byId());
+		TestSubscriber<Event> orders = new TestSubscriber<>();
+		eventBus.subscribeWithObserver("orders",DeliveryMode.SYNC,orders);
+
+		eventBus.publish("orders",order(1));
+		eventBus.publishAll("orders",Arrays.asList(order(1),order(2),order(2),order(3)));
+		eventBus.publishAll("orders",Arrays.asList(order(3)));
+
+		orders.assertValueCount(3);
+		assertEquals("Order3",orders.getOnNextEvents().get(2).getEventName());
+		assertEquals(3,eventBus.getDuplicates());
+	}
+
+	@Test
+	public void test_keys_are_forgotten_once_out_of_the_window() throws InterruptedException {
+
+		RxBus<Event> eventBus = new RxBus<Event>("dedup-bus-3").withDedup(byId().withWindow(200,TimeUnit.MILLISECONDS).withBuckets(2));
+		TestSubscriber<Event> orders = new TestSubscriber<>();
+		eventBus.subscribeWithObserver("orders",DeliveryMode.SYNC,orders);
+
+		eventBus.publish("orders",order(1));
+		eventBus.publish("orders",order(1));
+		orders.assertValueCount(1);
+
+		Thread.sleep(300);
+		eventBus.publish("orders",order(1));
+		orders.assertValueCount(2);
+		assertEquals(1,eventBus.getDuplicates());
+	}
+
+	@Test
+	public void test_keys_beyond_the_maximum_are_not_remembered() {
+
+		RxBus<Event> eventBus = new RxBus<Event>("dedup-bus-4").withDedup(byId().withMaxKeys(5).withBuckets(2));
+		TestSubscriber<Event> orders = new TestSubscriber<>();
+		eventBus.subscribeWithObserver("orders",DeliveryMode.SYNC,orders);
+
+		for(int retry = 0; retry < 2; retry++){
+			for(int i = 0; i < 20; i++){
+				eventBus.publish("orders",order(i));
+			}
+		}
+		//a bucket remembers 5 keys, a slide of the window may bring in another 5
+		assertTrue(eventBus.getDuplicates() >= 5 && eventBus.getDuplicates() <= 10);
+		assertEquals(40,orders.getOnNextEvents().size() + eventBus.getDuplicates());
+	}
+
+	@Test
+	public void test_bloom_filters_drop_every_repeat_and_few_others() {
+
+		RxBus<Event> eventBus = new RxBus<Event>("dedup-bus-5").withDedup(byId().withMaxKeys(10000).withFalsePositiveRate(0.01));
+		TestSubscriber<Event> orders = new TestSubscriber<>();
+		eventBus.subscribeWithObserver("orders",DeliveryMode.SYNC,orders);
+
+		for(int i = 0; i < 10000; i++){
+			eventBus.publish("orders",order("order-"+i));
+		}
+		long falsePositives = eventBus.getDuplicates();
+		assertTrue("Too many false positives "+falsePositives,falsePositives < 300);
+
+		for(int i = 0; i < 10000; i++){
+			eventBus.publish("orders",order("order-"+i));
+		}
+		assertEquals(10000 + falsePositives,eventBus.getDuplicates());
+		orders.assertValueCount(10000 - (int)falsePositives);
+	}
+
+	@Test
+	public void test_a_key_published_concurrently_is_delivered_once() throws InterruptedException {
+
+		RxBus<Event> eventBus = new RxBus<Event>("dedup-bus-8").withDedup(byId().withMaxKeys(10000).withFalsePositiveRate(0.01));
+		Set<Object> delivered = ConcurrentHashMap.newKeySet();
+		AtomicInteger twice = new AtomicInteger();
+		eventBus.subscribe("orders",DeliveryMode.SYNC,evt->{
+			if(!delivered.add(evt.getEventDetails().get("id"))){
+				twice.incrementAndGet();
+			}
+		});
+
+		Thread[] publishers = new Thread[4];
+		for(int p = 0; p < publishers.length; p++){
+			publishers[p] = new Thread(()->{
+				for(int i = 0; i < 5000; i++){
+					eventBus.publish("orders",order(i));
+				}
+			});
+			publishers[p].start();
+		}
+		for(Thread publisher : publishers){
+			publisher.join(10000);
+		}
+
+		assertEquals("A key was delivered twice",0,twice.get());
+		assertEquals(20000,delivered.size() + eventBus.getDuplicates());
+	}
+
+	@Test
+	public void test_a_bus_has_a_single_dedup_policy() {
+
+		RxBus<Event> eventBus = new RxBus<Event>("dedup-bus-6").withDedup(byId());
+		try{
+			eventBus.withDedup(byId());
+			fail("The bus took a second dedup policy");
+		}catch(IllegalStateException e){
+			//expected
+		}
+		try{
+			new RxBus<Event>("dedup-bus-7").withDedup(byId().withFalsePositiveRate(1.5));
+			fail("The bus took a false positive rate above 1");
+		}catch(IllegalArgumentException e){
+			//expected
+		}
+	}
+
+}
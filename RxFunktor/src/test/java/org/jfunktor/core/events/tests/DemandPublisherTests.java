@@ -0,0 +1,169 @@
+package org.jfunktor.core.events.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.jfunktor.core.events.api.Event;
+import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.api.EventBus.OverflowPolicy;
+import org.jfunktor.core.events.impl.DisruptorBus;
+import org.jfunktor.core.events.impl.RxBus;
+import org.jfunktor.core.events.impl.ShardedBus;
+import org.junit.Test;
+
+import rx.Subscription;
+import rx.exceptions.MissingBackpressureException;
+import rx.observers.TestSubscriber;
+
+public class DemandPublisherTests {
+
+	private Event event(String name) {
+		return new Event(name,new HashMap<>());
+	}
+
+	private List<String> names(List<Event> events) {
+		return events.stream().map(evt->evt.getEventName()).collect(Collectors.toList());
+	}
+
+	private void assertInOrder(List<Event> events, int from) {
+		List<String> names = names(events);
+		for(int i = 0; i < names.size(); i++){
+			assertEquals("Events were received out of order","Order"+(from + i),names.get(i));
+		}
+	}
+
+	private void assertDemandHonoured(EventBus<Event> eventBus) throws InterruptedException {
+		TestSubscriber<Event> orders = new TestSubscriber<>(0L);
+		eventBus.asPublisher("orders").subscribe(orders);
+
+		for(int i = 0; i < 10; i++){
+			eventBus.publish("orders",event("Order"+i));
+		}
+		Thread.sleep(50);
+		orders.assertNoValues();
+
+		orders.requestMore(3);
+		orders.awaitValueCount(3,5000,TimeUnit.MILLISECONDS);
+		Thread.sleep(50);
+		orders.assertValueCount(3);
+
+		orders.requestMore(20);
+		orders.awaitValueCount(10,5000,TimeUnit.MILLISECONDS);
+		orders.assertValueCount(10);
+		assertInOrder(orders.getOnNextEvents(),0);
+
+		//the outstanding demand is served as the events come
+		eventBus.publish("orders",event("Order10"));
+		orders.awaitValueCount(11,5000,TimeUnit.MILLISECONDS);
+		assertInOrder(orders.getOnNextEvents(),0);
+
+		eventBus.unSubscribeAll();
+		orders.awaitTerminalEvent(5,TimeUnit.SECONDS);
+		orders.assertCompleted();
+	}
+
+	@Test
+	public void test_rx_bus_delivers_what_is_requested() throws InterruptedException {
+		assertDemandHonoured(new RxBus<>("publisher-bus-1"));
+	}
+
+	@Test
+	public void test_disruptor_bus_delivers_what_is_requested() throws InterruptedException {
+		assertDemandHonoured(new DisruptorBus<>("publisher-bus-2"));
+	}
+
+	@Test
+	public void test_sharded_bus_delivers_what_is_requested() throws InterruptedException {
+		assertDemandHonoured(new ShardedBus<>("publisher-bus-3",2));
+	}
+
+	@Test
+	public void test_events_beyond_the_capacity_are_dropped() {
+
+		RxBus<Event> eventBus = new RxBus<>("publisher-bus-4");
+		TestSubscriber<Event> newest = new TestSubscriber<>(0L);
+		TestSubscriber<Event> oldest = new TestSubscriber<>(0L);
+		eventBus.asPublisher("orders",4,OverflowPolicy.DROP_OLDEST).subscribe(newest);
+		eventBus.asPublisher("orders",4,OverflowPolicy.DROP_NEWEST).subscribe(oldest);
+
+		for(int i = 0; i < 10; i++){
+			eventBus.publish("orders",event("Order"+i));
+		}
+		newest.requestMore(10);
+		oldest.requestMore(10);
+
+		assertInOrder(newest.getOnNextEvents(),6);
+		newest.assertValueCount(4);
+		assertInOrder(oldest.getOnNextEvents(),0);
+		oldest.assertValueCount(4);
+	}
+
+	@Test
+	public void test_overflow_error_ends_the_subscription() {
+
+		RxBus<Event> eventBus = new RxBus<>("publisher-bus-5");
+		TestSubscriber<Event> orders = new TestSubscriber<>(0L);
+		TestSubscriber<Event> dead = new TestSubscriber<>();
+		eventBus.subscribeForDeadTopicsWithObserver(DeliveryMode.SYNC,dead);
+		eventBus.asPublisher("orders",4,OverflowPolicy.ERROR).subscribe(orders);
+
+		for(int i = 0; i < 5; i++){
+			eventBus.publish("orders",event("Order"+i));
+		}
+		orders.assertError(MissingBackpressureException.class);
+		orders.assertNoValues();
+
+		//the topic has no subscriber left
+		eventBus.publish("orders",event("Order5"));
+		dead.assertValueCount(1);
+	}
+
+	@Test
+	public void test_a_full_buffer_blocks_the_publisher_until_more_is_requested() throws InterruptedException {
+
+		RxBus<Event> eventBus = new RxBus<>("publisher-bus-6");
+		TestSubscriber<Event> orders = new TestSubscriber<>(0L);
+		eventBus.asPublisher("orders",2,OverflowPolicy.BLOCK).subscribe(orders);
+
+		Thread publisher = new Thread(()->{
+			for(int i = 0; i < 10; i++){
+				eventBus.publish("orders",event("Order"+i));
+			}
+		});
+		publisher.start();
+		publisher.join(300);
+		assertTrue("The publisher did not wait for demand",publisher.isAlive());
+		orders.assertNoValues();
+
+		orders.requestMore(10);
+		publisher.join(5000);
+		assertFalse(publisher.isAlive());
+		orders.assertValueCount(10);
+		assertInOrder(orders.getOnNextEvents(),0);
+	}
+
+	@Test
+	public void test_cancelling_removes_the_subscription_from_the_bus() {
+
+		RxBus<Event> eventBus = new RxBus<>("publisher-bus-7");
+		TestSubscriber<Event> orders = new TestSubscriber<>();
+		TestSubscriber<Event> dead = new TestSubscriber<>();
+		eventBus.subscribeForDeadTopicsWithObserver(DeliveryMode.SYNC,dead);
+		Subscription subscription = eventBus.asPublisher("orders").take(2).subscribe(orders);
+
+		for(int i = 0; i < 3; i++){
+			eventBus.publish("orders",event("Order"+i));
+		}
+		orders.assertValueCount(2);
+		orders.assertCompleted();
+		assertTrue(subscription.isUnsubscribed());
+		assertEquals(Arrays.asList("Order2"),names(dead.getOnNextEvents()));
+	}
+
+}
@@ -0,0 +1,403 @@
+package org.jfunktor.core.events.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.jfunktor.core.events.api.BusSubscription;
+import org.jfunktor.core.events.api.Criteria;
+import org.jfunktor.core.events.api.Event;
+import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.api.EventBus.OverflowPolicy;
+import org.jfunktor.core.events.api.Topic;
+import org.jfunktor.core.events.impl.DisruptorBus;
+import org.jfunktor.core.events.impl.RxBus;
+import org.jfunktor.core.events.impl.DisruptorBus.WaitStrategyType;
+import org.junit.After;
+import org.junit.Test;
+
+import com.lmax.disruptor.dsl.ProducerType;
+
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+
+public class DisruptorBusTests {
+
+	private EventBus eventBus = new DisruptorBus("disruptor-bus-1");
+
+	@After
+	public void tearDown() throws Exception {
+		eventBus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_event_subscription_synchronous() {
+
+		TestThreadedConsumer<Object> consumer = new TestThreadedConsumer<Object>();
+
+		Event evt = new Event("Test",new HashMap());
+
+		eventBus.subscribe("channel",consumer);
+
+		eventBus.publish("Channel",evt);
+		eventBus.publish("channel2",evt);
+
+		List events = consumer.getAccepted();
+
+		Map<String,List<Object>> eventMap = consumer.getEventMap();
+
+		assertTrue("No useful events received",events.size() == 1);
+
+		eventMap.keySet().forEach(threadName -> {assertTrue(String.format("Event was received asynchronous creation : %s, received : %s", consumer.getCreationThread(),threadName),threadName.equals(consumer.getCreationThread()));});
+	}
+
+	@Test
+	public void test_event_subscription_asynchronous() throws InterruptedException {
+		assertAsynchronousDelivery(eventBus);
+	}
+
+	@Test
+	public void test_event_subscription_asynchronous_single_producer_busy_spin() throws InterruptedException {
+		EventBus localEventBus = new DisruptorBus("disruptor-bus-2",64,ProducerType.SINGLE,WaitStrategyType.BUSY_SPIN);
+		try{
+			assertAsynchronousDelivery(localEventBus);
+		}finally{
+			localEventBus.unSubscribeAll();
+		}
+	}
+
+	@Test
+	public void test_event_subscription_asynchronous_yielding() throws InterruptedException {
+		EventBus localEventBus = new DisruptorBus("disruptor-bus-3",64,ProducerType.MULTI,WaitStrategyType.YIELDING);
+		try{
+			assertAsynchronousDelivery(localEventBus);
+		}finally{
+			localEventBus.unSubscribeAll();
+		}
+	}
+
+	private void assertAsynchronousDelivery(EventBus bus) throws InterruptedException {
+
+		int count = 1000;
+		CountDownLatch latch = new CountDownLatch(count);
+		TestThreadedConsumer<Object> consumer = new TestThreadedConsumer<Object>(){
+
+			@Override
+			public void accept(Object evt) {
+				super.accept(evt);
+				latch.countDown();
+			}
+
+		};
+
+		//every event must be received, the default policy would drop events once the queue is full
+		bus.subscribe("channel",EventBus.DEFAULT_QUEUE_CAPACITY,OverflowPolicy.BLOCK,consumer);
+
+		for(int i = 0; i < count; i++){
+			bus.publish("channel",new Event("Test"+i,new HashMap()));
+			bus.publish("other",new Event("Other"+i,new HashMap()));
+		}
+
+		assertTrue("Not all events were received",latch.await(5,TimeUnit.SECONDS));
+
+		List<Object> events = consumer.getAccepted();
+
+		assertEquals(count,events.size());
+		for(int i = 0; i < count; i++){
+			assertEquals("Events were received out of order","Test"+i,((Event)events.get(i)).getEventName());
+		}
+
+		consumer.getEventMap().keySet().forEach(threadName -> {assertFalse(String.format("Event was received synchronous creation : %s, received : %s", consumer.getCreationThread(),threadName),threadName.equals(consumer.getCreationThread()));});
+	}
+
+	@Test
+	public void test_dead_topics_synchronous_and_asynchronous() throws InterruptedException {
+
+		TestSubscriber syncConsumer = new TestSubscriber();
+		TestSubscriber asyncConsumer = new TestSubscriber();
+
+		Event evt = new Event("TestDead",new HashMap());
+
+		eventBus.subscribe("Topic1", event->{});
+		eventBus.subscribeForDeadTopicsWithObserver(DeliveryMode.SYNC,syncConsumer);
+		eventBus.subscribeForDeadTopicsWithObserver(DeliveryMode.ASYNC,asyncConsumer);
+
+		eventBus.publish("Topic1",evt); //NO
+		eventBus.publish("Topic2",evt); //YES
+		eventBus.publish("Topic3",evt); //YES
+
+		asyncConsumer.awaitValueCount(2,5,TimeUnit.SECONDS);
+
+		syncConsumer.assertValueCount(2);
+		asyncConsumer.assertValueCount(2);
+	}
+
+	@Test
+	public void test_consumer_unsubscription() throws InterruptedException {
+
+		TestSubscriber consumer = new TestSubscriber();
+		TestSubscriber deadTopicConsumer = new TestSubscriber();
+
+		Event evt = new Event("TestUnsubscribe",new HashMap());
+
+		Subscription subscription = eventBus.subscribeWithObserver("Channel1",DeliveryMode.ASYNC,consumer);
+		eventBus.subscribeForDeadTopicsWithObserver(DeliveryMode.SYNC,deadTopicConsumer);
+
+		eventBus.publish("Channel1",evt);
+		consumer.awaitValueCount(1,5,TimeUnit.SECONDS);
+
+		subscription.unsubscribe();
+		assertTrue(subscription.isUnsubscribed());
+
+		eventBus.publish("Channel1",evt);
+
+		consumer.assertValueCount(1);
+		deadTopicConsumer.assertValueCount(1);
+	}
+
+	@Test
+	public void test_publish_all_and_subscribe_batched() throws InterruptedException {
+
+		TestSubscriber syncConsumer = new TestSubscriber();
+		List<List<Object>> batches = new CopyOnWriteArrayList<>();
+		AtomicInteger batched = new AtomicInteger();
+		CountDownLatch received = new CountDownLatch(1);
+
+		eventBus.subscribeWithObserver("channel",DeliveryMode.SYNC,syncConsumer);
+		eventBus.subscribeBatched("channel",8,1,TimeUnit.SECONDS,batch->{
+			List<Object> chunk = (List<Object>)batch;
+			batches.add(chunk);
+			if(batched.addAndGet(chunk.size()) == 100){
+				received.countDown();
+			}
+		});
+
+		List<Event> events = new ArrayList<>();
+		for(int i = 0; i < 100; i++){
+			events.add(new Event("Test"+i,new HashMap()));
+		}
+		eventBus.publishAll("channel",events);
+
+		assertTrue("Not all events were received",received.await(5,TimeUnit.SECONDS));
+
+		syncConsumer.assertValueCount(100);
+		batches.forEach(batch->assertTrue("Batch larger than allowed",batch.size() <= 8));
+		assertEquals("Test99",((Event)batches.get(batches.size() - 1).get(batches.get(batches.size() - 1).size() - 1)).getEventName());
+	}
+
+	@Test
+	public void test_partial_batches_of_a_quiet_topic_are_delivered_after_the_delay() throws InterruptedException {
+
+		List<List<Object>> batches = new CopyOnWriteArrayList<>();
+		CountDownLatch received = new CountDownLatch(1);
+		eventBus.subscribeBatched("channel",8,100,TimeUnit.MILLISECONDS,batch->{
+			batches.add((List<Object>)batch);
+			received.countDown();
+		});
+
+		for(int i = 0; i < 3; i++){
+			eventBus.publish("channel",new Event("Test"+i,new HashMap()));
+		}
+
+		assertTrue("The partial batch was not delivered",received.await(5,TimeUnit.SECONDS));
+		assertEquals(1,batches.size());
+		assertEquals(3,batches.get(0).size());
+	}
+
+	@Test
+	public void test_topic_handles() throws InterruptedException {
+
+		TestSubscriber syncConsumer = new TestSubscriber();
+		TestSubscriber asyncConsumer = new TestSubscriber();
+		TestSubscriber deadTopicConsumer = new TestSubscriber();
+
+		Topic topic = eventBus.topic("Channel");
+		Topic other = eventBus.topic("other");
+
+		Event evt = new Event("TestHandle",new HashMap());
+
+		eventBus.subscribeWithObserver(topic,DeliveryMode.SYNC,syncConsumer);
+		eventBus.subscribeWithObserver("channel",DeliveryMode.ASYNC,asyncConsumer);
+		eventBus.subscribeForDeadTopicsWithObserver(DeliveryMode.SYNC,deadTopicConsumer);
+
+		eventBus.publish(topic,evt);
+		eventBus.publish("CHANNEL",evt);
+		eventBus.publish(other,evt); //dead
+
+		asyncConsumer.awaitValueCount(2,5,TimeUnit.SECONDS);
+
+		syncConsumer.assertValueCount(2);
+		asyncConsumer.assertValueCount(2);
+		deadTopicConsumer.assertValueCount(1);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void test_topic_handle_of_another_bus(){
+
+		EventBus localEventBus = new RxBus("bus-other");
+
+		eventBus.publish(localEventBus.topic("channel"),new Event("TestHandle",new HashMap()));
+	}
+
+	@Test
+	public void test_partitioned_delivery() throws InterruptedException {
+
+		int keys = 8;
+		int count = 1000;
+		Map<Object,List<Integer>> received = new ConcurrentHashMap<>();
+		CountDownLatch latch = new CountDownLatch(count);
+
+		eventBus.subscribe("orders",evt->((Event)evt).getEventDetails().get("order"),4,evt->{
+			Event event = (Event)evt;
+			Object order = event.getEventDetails().get("order");
+			received.computeIfAbsent(order,key->new CopyOnWriteArrayList<>()).add((Integer)event.getEventDetails().get("sequence"));
+			latch.countDown();
+		});
+
+		for(int i = 0; i < count; i++){
+			Map<String,Object> details = new HashMap<>();
+			details.put("order","order"+(i % keys));
+			details.put("sequence",i / keys);
+			eventBus.publish("orders",new Event("Order",details));
+		}
+
+		assertTrue("Not all events were received",latch.await(5,TimeUnit.SECONDS));
+
+		assertEquals(keys,received.size());
+		received.values().forEach(sequences->{
+			for(int i = 0; i < sequences.size(); i++){
+				assertEquals("Events of a key were received out of order",Integer.valueOf(i),sequences.get(i));
+			}
+		});
+	}
+
+	@Test
+	public void test_virtual_delivery() throws InterruptedException {
+
+		int count = 1000;
+		List<Integer> received = new CopyOnWriteArrayList<>();
+		List<String> threads = new CopyOnWriteArrayList<>();
+		CountDownLatch latch = new CountDownLatch(count);
+
+		eventBus.subscribe("orders",DeliveryMode.VIRTUAL,evt->{
+			received.add((Integer)((Event)evt).getEventDetails().get("sequence"));
+			threads.add(Thread.currentThread().getName());
+			latch.countDown();
+		});
+
+		for(int i = 0; i < count; i++){
+			Map<String,Object> details = new HashMap<>();
+			details.put("sequence",i);
+			eventBus.publish("orders",new Event("Order",details));
+		}
+
+		assertTrue("Not all events were received",latch.await(5,TimeUnit.SECONDS));
+		for(int i = 0; i < count; i++){
+			assertEquals("Events were received out of order",Integer.valueOf(i),received.get(i));
+		}
+		assertFalse("Events were received on the publishing thread",threads.contains(Thread.currentThread().getName()));
+	}
+
+	@Test
+	public void test_conflated_delivery() throws InterruptedException {
+
+		int keys = 4;
+		int count = 1000;
+		CountDownLatch gate = new CountDownLatch(1);
+		Map<Object,List<Integer>> received = new ConcurrentHashMap<>();
+		CountDownLatch latest = new CountDownLatch(keys);
+
+		BusSubscription subscription = eventBus.subscribeConflated("prices",evt->((Event)evt).getEventDetails().get("instrument"),evt->{
+			try{
+				gate.await();
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			Event event = (Event)evt;
+			Integer sequence = (Integer)event.getEventDetails().get("sequence");
+			received.computeIfAbsent(event.getEventDetails().get("instrument"),key->new CopyOnWriteArrayList<>()).add(sequence);
+			if(sequence >= count - keys){
+				latest.countDown();
+			}
+		});
+
+		for(int i = 0; i < count; i++){
+			Map<String,Object> details = new HashMap<>();
+			details.put("instrument","instrument"+(i % keys));
+			details.put("sequence",i);
+			eventBus.publish("prices",new Event("Price",details));
+		}
+		assertTrue("The backlog is not bounded by the keys",subscription.getQueueDepth() <= keys);
+
+		gate.countDown();
+		assertTrue("The latest prices were not received",latest.await(5,TimeUnit.SECONDS));
+
+		int delivered = received.values().stream().mapToInt(List::size).sum();
+		//the first event may already be with the consumer when the others arrive
+		assertTrue("Intermediate events were delivered: "+received,delivered <= keys + 1);
+		assertEquals(count - delivered,subscription.getDropped());
+		received.values().forEach(sequences->assertTrue(sequences.get(sequences.size() - 1) >= count - keys));
+	}
+
+	/**
+	 * Counts the events and the calls made while another was still running
+	 */
+	private static class OverlapCounter implements Consumer<Object>{
+
+		private AtomicInteger inside = new AtomicInteger();
+		private AtomicInteger overlaps = new AtomicInteger();
+		private AtomicInteger received = new AtomicInteger();
+
+		@Override
+		public void accept(Object evt) {
+			if(inside.incrementAndGet() > 1){
+				overlaps.incrementAndGet();
+			}
+			received.incrementAndGet();
+			inside.decrementAndGet();
+		}
+	};
+
+	@Test
+	public void test_synchronous_subscribers_are_not_called_concurrently() throws InterruptedException {
+
+		OverlapCounter topicConsumer = new OverlapCounter();
+		OverlapCounter criteriaConsumer = new OverlapCounter();
+		eventBus.subscribe("channel",DeliveryMode.SYNC,topicConsumer);
+		eventBus.subscribe("channel",new Criteria(),DeliveryMode.SYNC,criteriaConsumer);
+
+		Thread[] publishers = new Thread[4];
+		for(int p = 0; p < publishers.length; p++){
+			publishers[p] = new Thread(()->{
+				for(int i = 0; i < 10000; i++){
+					eventBus.publish("channel",new Event("Test",new HashMap()));
+				}
+			});
+			publishers[p].start();
+		}
+		for(Thread publisher : publishers){
+			publisher.join(10000);
+		}
+
+		assertEquals(40000,topicConsumer.received.get());
+		assertEquals(40000,criteriaConsumer.received.get());
+		assertEquals("A subscriber was called by two publishers at once",0,topicConsumer.overlaps.get());
+		assertEquals("A criteria subscriber was called by two publishers at once",0,criteriaConsumer.overlaps.get());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void test_partitioned_mode_without_key() {
+		eventBus.subscribe("orders",DeliveryMode.PARTITIONED,evt->{});
+	}
+
+}
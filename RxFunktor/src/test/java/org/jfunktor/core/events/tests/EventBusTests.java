@@ -2,13 +2,22 @@ package org.jfunktor.core.events.tests;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jfunktor.core.events.api.BusSubscription;
+import org.jfunktor.core.events.api.Criteria;
 import org.jfunktor.core.events.api.Event;
 import org.jfunktor.core.events.api.EventBus;
 import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.api.Topic;
 import org.jfunktor.core.events.impl.RxBus;
 import org.junit.After;
 import org.junit.Before;
@@ -564,4 +573,382 @@ public class EventBusTests {
 		assertTrue(String.format("DeadTopicConsumer Received events %d do not match with expected %d",deadEvents.size(),3),deadEvents.size() == 3);
 	}
 		
+	@Test
+	public void test_topic_routing_case_insensitive(){
+
+		TestSubscriber consumer = new TestSubscriber();
+		TestSubscriber deadTopicConsumer = new TestSubscriber();
+
+		Event evt = new Event("TestRouting",new HashMap());
+
+		EventBus localEventBus = new RxBus("bus-3");
+
+		Subscription subscription = localEventBus.subscribeWithObserver("Orders",EventBus.DeliveryMode.SYNC,consumer);
+		localEventBus.subscribeForDeadTopicsWithObserver(DeliveryMode.SYNC, deadTopicConsumer);
+
+		localEventBus.publish("ORDERS", evt);
+		localEventBus.publish("orders", evt);
+		localEventBus.publish("Items", evt);
+
+		assertTrue(String.format("Consumer Received events %d do not match with expected %d",consumer.getOnNextEvents().size(),2),consumer.getOnNextEvents().size() == 2);
+		assertTrue(String.format("DeadTopicConsumer Received events %d do not match with expected %d",deadTopicConsumer.getOnNextEvents().size(),1),deadTopicConsumer.getOnNextEvents().size() == 1);
+
+		//once the last subscriber leaves the topic is dead again
+		subscription.unsubscribe();
+
+		localEventBus.publish("Orders", evt);
+
+		assertTrue(String.format("DeadTopicConsumer Received events %d do not match with expected %d",deadTopicConsumer.getOnNextEvents().size(),2),deadTopicConsumer.getOnNextEvents().size() == 2);
+	}
+
+	@Test
+	public void test_publish_all(){
+
+		TestSubscriber consumer1 = new TestSubscriber();
+		TestSubscriber consumer2 = new TestSubscriber();
+		TestSubscriber deadTopicConsumer = new TestSubscriber();
+
+		EventBus localEventBus = new RxBus("bus-4");
+
+		localEventBus.subscribeWithObserver("Channel1",EventBus.DeliveryMode.SYNC,consumer1);
+		localEventBus.subscribeWithObserver("Channel1",EventBus.DeliveryMode.SYNC,consumer2);
+		localEventBus.subscribeForDeadTopicsWithObserver(DeliveryMode.SYNC, deadTopicConsumer);
+
+		Event evt1 = new Event("Test1",new HashMap());
+		Event evt2 = new Event("Test2",new HashMap());
+		Event evt3 = new Event("Test3",new HashMap());
+
+		localEventBus.publishAll("Channel1",Arrays.asList(evt1,evt2,evt3));
+		localEventBus.publishAll("Channel2",Arrays.asList(evt1,evt2));
+
+		consumer1.assertValues(evt1,evt2,evt3);
+		consumer2.assertValues(evt1,evt2,evt3);
+		deadTopicConsumer.assertValues(evt1,evt2);
+	}
+
+	@Test
+	public void test_subscribe_batched() throws InterruptedException{
+
+		List<List<Object>> batches = new CopyOnWriteArrayList<>();
+		CountDownLatch received = new CountDownLatch(3);
+
+		EventBus localEventBus = new RxBus("bus-5");
+
+		localEventBus.subscribeBatched("Channel1",4,200,TimeUnit.MILLISECONDS,batch->{
+			batches.add((List<Object>)batch);
+			received.countDown();
+		});
+
+		for(int i = 0; i < 10; i++){
+			localEventBus.publish("Channel1",new Event("Test"+i,new HashMap()));
+		}
+
+		//two full chunks right away, the last two events once the delay expires
+		assertTrue("Batches were not received",received.await(5,TimeUnit.SECONDS));
+
+		assertEquals(3,batches.size());
+		assertEquals(4,batches.get(0).size());
+		assertEquals(4,batches.get(1).size());
+		assertEquals(2,batches.get(2).size());
+		assertEquals("Test9",((Event)batches.get(2).get(1)).getEventName());
+
+		localEventBus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_wildcard_topics(){
+
+		TestSubscriber anyOne = new TestSubscriber();
+		TestSubscriber anyMany = new TestSubscriber();
+		TestSubscriber inner = new TestSubscriber();
+		TestSubscriber exact = new TestSubscriber();
+		TestSubscriber deadTopicConsumer = new TestSubscriber();
+
+		EventBus localEventBus = new RxBus("bus-6");
+
+		localEventBus.subscribeWithObserver("orders.*",EventBus.DeliveryMode.SYNC,anyOne);
+		localEventBus.subscribeWithObserver("Orders.#",EventBus.DeliveryMode.SYNC,anyMany);
+		localEventBus.subscribeWithObserver("*.created.#",EventBus.DeliveryMode.SYNC,inner);
+		localEventBus.subscribeWithObserver("orders.created",EventBus.DeliveryMode.SYNC,exact);
+		localEventBus.subscribeForDeadTopicsWithObserver(DeliveryMode.SYNC, deadTopicConsumer);
+
+		Event evt = new Event("TestWildcard",new HashMap());
+
+		localEventBus.publish("orders",evt); //#
+		localEventBus.publish("orders.created",evt); //* # inner exact
+		localEventBus.publish("ORDERS.cancelled",evt); //* #
+		localEventBus.publish("orders.created.eu.north",evt); //# inner
+		localEventBus.publish("items.created",evt); //inner
+		localEventBus.publish("items.deleted",evt); //dead
+
+		anyOne.assertValueCount(2);
+		anyMany.assertValueCount(4);
+		inner.assertValueCount(3);
+		exact.assertValueCount(1);
+		deadTopicConsumer.assertValueCount(1);
+	}
+
+	@Test
+	public void test_wildcard_topics_unsubscription(){
+
+		TestSubscriber consumer = new TestSubscriber();
+		TestSubscriber deadTopicConsumer = new TestSubscriber();
+
+		EventBus localEventBus = new RxBus("bus-7",RxBus.PublishMode.PER_TOPIC);
+
+		Subscription subscription = localEventBus.subscribeWithObserver("orders.#",EventBus.DeliveryMode.SYNC,consumer);
+		localEventBus.subscribeForDeadTopicsWithObserver(DeliveryMode.SYNC, deadTopicConsumer);
+
+		Event evt = new Event("TestWildcard",new HashMap());
+
+		localEventBus.publish("orders.created",evt);
+
+		subscription.unsubscribe();
+
+		localEventBus.publish("orders.created",evt);
+
+		consumer.assertValueCount(1);
+		deadTopicConsumer.assertValueCount(1);
+	}
+
+	@Test
+	public void test_topic_handles(){
+
+		TestSubscriber handleConsumer = new TestSubscriber();
+		TestSubscriber nameConsumer = new TestSubscriber();
+		TestSubscriber patternConsumer = new TestSubscriber();
+		TestSubscriber deadTopicConsumer = new TestSubscriber();
+
+		Topic topic = eventBus.topic("Orders.Created");
+
+		assertSame(topic,eventBus.topic("orders.created"));
+		assertEquals("orders.created",topic.getName());
+
+		Event evt = new Event("TestHandle",new HashMap());
+
+		eventBus.subscribeForDeadTopicsWithObserver(DeliveryMode.SYNC,deadTopicConsumer);
+		eventBus.publish(topic,evt); //dead, resolved but not subscribed yet
+
+		eventBus.subscribeWithObserver(topic,DeliveryMode.SYNC,handleConsumer);
+		eventBus.subscribeWithObserver("ORDERS.CREATED",DeliveryMode.SYNC,nameConsumer);
+		eventBus.subscribeWithObserver("orders.*",DeliveryMode.SYNC,patternConsumer);
+
+		eventBus.publish(topic,evt);
+		eventBus.publish("orders.created",evt);
+
+		handleConsumer.assertValueCount(2);
+		nameConsumer.assertValueCount(2);
+		patternConsumer.assertValueCount(2);
+		deadTopicConsumer.assertValueCount(1);
+	}
+
+	/**
+	 * A detail whose comparison always fails
+	 */
+	private static class Unordered implements Comparable<Unordered>{
+
+		@Override
+		public int compareTo(Unordered other) {
+			throw new IllegalStateException("Unordered values cannot be compared");
+		}
+	};
+
+	@Test
+	public void test_a_failed_dispatch_does_not_stop_the_bus(){
+
+		RxBus<Event> localEventBus = new RxBus<>("bus-10");
+		TestSubscriber other = new TestSubscriber();
+		localEventBus.subscribeWithObserver("orders",new Criteria().atLeast("amount",new Unordered()),DeliveryMode.SYNC,new TestSubscriber<>());
+		localEventBus.subscribeWithObserver("payments",DeliveryMode.SYNC,other);
+
+		Map<String,Object> details = new HashMap<>();
+		//the match of the criteria fails inside the drain
+		details.put("amount",new Unordered());
+		localEventBus.publish("orders",new Event("TestFailure",details));
+		localEventBus.publish("payments",new Event("TestAfterFailure",new HashMap()));
+		localEventBus.publish("payments",new Event("TestAfterFailure",new HashMap()));
+
+		other.assertValueCount(2);
+		assertEquals(1,localEventBus.getMetrics().getFailedDispatches());
+	}
+
+	@Test
+	public void test_topic_count_is_bounded(){
+
+		RxBus<Event> localEventBus = new RxBus<Event>("bus-9").withMaxTopics(3);
+		TestSubscriber consumer = new TestSubscriber();
+
+		localEventBus.subscribeWithObserver("orders",DeliveryMode.SYNC,consumer);
+		localEventBus.subscribeWithObserver("payments",DeliveryMode.SYNC,consumer);
+		localEventBus.topic("shipments");
+		//publishing does not intern the topic
+		for(int i = 0; i < 10; i++){
+			localEventBus.publish("throwaway"+i,new Event("TestBound",new HashMap()));
+		}
+		try{
+			localEventBus.subscribeWithObserver("refunds",DeliveryMode.SYNC,consumer);
+			fail("A topic beyond the maximum was interned");
+		}catch(IllegalStateException e){
+			//expected
+		}
+		localEventBus.subscribeWithObserver("ORDERS",DeliveryMode.SYNC,consumer);
+		localEventBus.publish("orders",new Event("TestBound",new HashMap()));
+
+		consumer.assertValueCount(2);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void test_topic_handle_of_another_bus(){
+
+		EventBus localEventBus = new RxBus("bus-8");
+
+		eventBus.publish(localEventBus.topic("orders"),new Event("TestHandle",new HashMap()));
+	}
+
+	@Test
+	public void test_partitioned_delivery() throws InterruptedException {
+
+		int keys = 8;
+		int count = 1000;
+		Map<Object,List<Integer>> received = new ConcurrentHashMap<>();
+		Map<Object,Set<String>> threads = new ConcurrentHashMap<>();
+		CountDownLatch latch = new CountDownLatch(count);
+
+		eventBus.subscribe("orders",evt->((Event)evt).getEventDetails().get("order"),4,evt->{
+			Event event = (Event)evt;
+			Object order = event.getEventDetails().get("order");
+			received.computeIfAbsent(order,key->new CopyOnWriteArrayList<>()).add((Integer)event.getEventDetails().get("sequence"));
+			threads.computeIfAbsent(order,key->ConcurrentHashMap.newKeySet()).add(Thread.currentThread().getName());
+			latch.countDown();
+		});
+
+		for(int i = 0; i < count; i++){
+			Map<String,Object> details = new HashMap<>();
+			details.put("order","order"+(i % keys));
+			details.put("sequence",i / keys);
+			eventBus.publish("orders",new Event("Order",details));
+		}
+
+		assertTrue("Not all events were received",latch.await(5,TimeUnit.SECONDS));
+
+		assertEquals(keys,received.size());
+		received.values().forEach(sequences->{
+			for(int i = 0; i < sequences.size(); i++){
+				assertEquals("Events of a key were received out of order",Integer.valueOf(i),sequences.get(i));
+			}
+		});
+		threads.values().forEach(names->assertEquals("Events of a key were received on several lanes",1,names.size()));
+	}
+
+	@Test
+	public void test_partitioned_delivery_with_capacity() throws InterruptedException {
+
+		int count = 5000;
+		CountDownLatch latch = new CountDownLatch(count);
+		BusSubscription subscription = eventBus.subscribe("orders",evt->((Event)evt).getEventDetails().get("order"),4,16,
+				EventBus.OverflowPolicy.BLOCK,evt->latch.countDown());
+
+		for(int i = 0; i < count; i++){
+			Map<String,Object> details = new HashMap<>();
+			details.put("order","order"+(i % 8));
+			eventBus.publish("orders",new Event("Order",details));
+		}
+
+		assertTrue("Not all events were received",latch.await(5,TimeUnit.SECONDS));
+		assertEquals(0,subscription.getDropped());
+	}
+
+	@Test
+	public void test_partitioned_key_failure_fails_the_subscriber() {
+
+		RxBus<Event> localEventBus = new RxBus<>("bus-11");
+		IllegalStateException failure = new IllegalStateException("No key");
+		TestSubscriber<Event> consumer = new TestSubscriber<>();
+		TestSubscriber<Event> other = new TestSubscriber<>();
+		localEventBus.subscribeWithObserver("orders",evt->{throw failure;},4,consumer);
+		localEventBus.subscribeWithObserver("orders",DeliveryMode.SYNC,other);
+
+		localEventBus.publish("orders",new Event("Order",new HashMap<>()));
+		localEventBus.publish("orders",new Event("Order",new HashMap<>()));
+
+		consumer.awaitTerminalEvent(5,TimeUnit.SECONDS);
+		consumer.assertError(failure);
+		consumer.assertNoValues();
+		other.assertValueCount(2);
+		assertEquals(0,localEventBus.getMetrics().getFailedDispatches());
+	}
+
+	@Test
+	public void test_virtual_delivery() throws InterruptedException {
+
+		int count = 1000;
+		List<Integer> received = new CopyOnWriteArrayList<>();
+		List<String> threads = new CopyOnWriteArrayList<>();
+		CountDownLatch latch = new CountDownLatch(count);
+
+		eventBus.subscribe("orders",DeliveryMode.VIRTUAL,evt->{
+			received.add((Integer)((Event)evt).getEventDetails().get("sequence"));
+			threads.add(Thread.currentThread().getName());
+			latch.countDown();
+		});
+
+		for(int i = 0; i < count; i++){
+			Map<String,Object> details = new HashMap<>();
+			details.put("sequence",i);
+			eventBus.publish("orders",new Event("Order",details));
+		}
+
+		assertTrue("Not all events were received",latch.await(5,TimeUnit.SECONDS));
+		for(int i = 0; i < count; i++){
+			assertEquals("Events were received out of order",Integer.valueOf(i),received.get(i));
+		}
+		assertFalse("Events were received on the publishing thread",threads.contains(Thread.currentThread().getName()));
+	}
+
+	@Test
+	public void test_conflated_delivery() throws InterruptedException {
+
+		int keys = 4;
+		int count = 1000;
+		CountDownLatch gate = new CountDownLatch(1);
+		Map<Object,List<Integer>> received = new ConcurrentHashMap<>();
+		CountDownLatch latest = new CountDownLatch(keys);
+
+		BusSubscription subscription = eventBus.subscribeConflated("prices",evt->((Event)evt).getEventDetails().get("instrument"),evt->{
+			try{
+				gate.await();
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			Event event = (Event)evt;
+			Integer sequence = (Integer)event.getEventDetails().get("sequence");
+			received.computeIfAbsent(event.getEventDetails().get("instrument"),key->new CopyOnWriteArrayList<>()).add(sequence);
+			if(sequence >= count - keys){
+				latest.countDown();
+			}
+		});
+
+		for(int i = 0; i < count; i++){
+			Map<String,Object> details = new HashMap<>();
+			details.put("instrument","instrument"+(i % keys));
+			details.put("sequence",i);
+			eventBus.publish("prices",new Event("Price",details));
+		}
+		assertTrue("The backlog is not bounded by the keys",subscription.getQueueDepth() <= keys);
+
+		gate.countDown();
+		assertTrue("The latest prices were not received",latest.await(5,TimeUnit.SECONDS));
+
+		int delivered = received.values().stream().mapToInt(List::size).sum();
+		//the first event may already be with the consumer when the others arrive
+		assertTrue("Intermediate events were delivered: "+received,delivered <= keys + 1);
+		assertEquals(count - delivered,subscription.getDropped());
+		received.values().forEach(sequences->assertTrue(sequences.get(sequences.size() - 1) >= count - keys));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void test_partitioned_mode_without_key() {
+		eventBus.subscribe("orders",DeliveryMode.PARTITIONED,evt->{});
+	}
+
 }
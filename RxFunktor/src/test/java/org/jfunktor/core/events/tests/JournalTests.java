@@ -0,0 +1,302 @@
+package org.jfunktor.core.events.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.jfunktor.core.events.api.Event;
+import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.impl.Journal;
+import org.jfunktor.core.events.impl.JournalConfig;
+import org.jfunktor.core.events.impl.JournalConfig.FsyncPolicy;
+import org.jfunktor.core.events.impl.JsonEventCodec;
+import org.jfunktor.core.events.impl.RxBus;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import rx.observers.TestSubscriber;
+
+public class JournalTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Event event(String name, int index) {
+		Map<String,Object> details = new HashMap<>();
+		details.put("index",index);
+		return new Event(name,details);
+	}
+
+	private List<String> namesOf(List<Event> events) {
+		return events.stream().map(evt->evt.getEventName()).collect(Collectors.toList());
+	}
+
+	@Test
+	public void test_replay_then_live() throws IOException {
+
+		Path directory = folder.newFolder("journal").toPath();
+		try(Journal<Event> journal = new Journal<>(new JournalConfig(directory),new JsonEventCodec())){
+
+			RxBus<Event> bus = new RxBus<>("journal-bus-1",RxBus.PublishMode.SERIALIZED,journal);
+
+			for(int i = 0; i < 100; i++){
+				bus.publish("Orders",event("Order"+i,i));
+				bus.publish("other",event("Other"+i,i));
+			}
+			bus.publishAll("orders",Arrays.asList(event("Order100",100),event("Order101",101)));
+
+			TestSubscriber<Event> consumer = new TestSubscriber<>();
+			bus.subscribeFromWithObserver("orders",0,consumer);
+
+			for(int i = 102; i < 150; i++){
+				bus.publish("orders",event("Order"+i,i));
+			}
+
+			consumer.awaitValueCount(150,5,TimeUnit.SECONDS);
+			consumer.assertValueCount(150);
+			List<String> names = namesOf(consumer.getOnNextEvents());
+			for(int i = 0; i < 150; i++){
+				assertEquals("Events were replayed out of order","Order"+i,names.get(i));
+			}
+			assertEquals(100,consumer.getOnNextEvents().get(100).getEventDetails().get("index"));
+			assertEquals(250,journal.getNextOffset());
+
+			bus.unSubscribeAll();
+		}
+	}
+
+	@Test
+	public void test_replay_from_offset() throws IOException {
+
+		Path directory = folder.newFolder("journal").toPath();
+		try(Journal<Event> journal = new Journal<>(new JournalConfig(directory).withFsyncPolicy(FsyncPolicy.PER_WRITE),new JsonEventCodec())){
+
+			RxBus<Event> bus = new RxBus<>("journal-bus-2",RxBus.PublishMode.PER_TOPIC,journal);
+
+			for(int i = 0; i < 10; i++){
+				bus.publish("orders",event("Order"+i,i));
+			}
+
+			TestSubscriber<Event> consumer = new TestSubscriber<>();
+			bus.subscribeFromWithObserver("orders",7,consumer);
+
+			consumer.awaitValueCount(3,5,TimeUnit.SECONDS);
+			assertEquals(Arrays.asList("Order7","Order8","Order9"),namesOf(consumer.getOnNextEvents()));
+
+			bus.unSubscribeAll();
+		}
+	}
+
+	@Test
+	public void test_recovery_after_reopen() throws IOException {
+
+		Path directory = folder.newFolder("journal").toPath();
+		JournalConfig config = new JournalConfig(directory).withSegmentSize(64 * 1024).withFsyncPolicy(FsyncPolicy.OS);
+
+		try(Journal<Event> journal = new Journal<>(config,new JsonEventCodec())){
+			for(int i = 0; i < 20; i++){
+				journal.append("orders",event("Order"+i,i));
+			}
+		}
+
+		//a record torn by a crash, its length is there but not its content
+		Path segment = Files.list(directory).findFirst().get();
+		long end = lastRecordEnd(segment);
+		try(RandomAccessFile file = new RandomAccessFile(segment.toFile(),"rw")){
+			file.seek(end);
+			file.writeInt(100);
+			file.writeInt(12345);
+		}
+
+		try(Journal<Event> journal = new Journal<>(config,new JsonEventCodec())){
+			assertEquals(20,journal.getNextOffset());
+
+			RxBus<Event> bus = new RxBus<>("journal-bus-3",RxBus.PublishMode.SERIALIZED,journal);
+			bus.publish("orders",event("Order20",20));
+
+			TestSubscriber<Event> consumer = new TestSubscriber<>();
+			bus.subscribeFromWithObserver("orders",0,consumer);
+			consumer.awaitValueCount(21,5,TimeUnit.SECONDS);
+
+			List<String> names = namesOf(consumer.getOnNextEvents());
+			assertEquals(21,names.size());
+			assertEquals("Order20",names.get(20));
+
+			bus.unSubscribeAll();
+		}
+	}
+
+	/**
+	 * The journal has no api for positions, the end of its records is found by
+	 * looking for the first zero length
+	 */
+	private long lastRecordEnd(Path segment) throws IOException {
+		try(RandomAccessFile file = new RandomAccessFile(segment.toFile(),"r")){
+			long position = 0;
+			int length;
+			while((length = file.readInt()) != 0){
+				position += 8 + length;
+				file.seek(position);
+			}
+			return position;
+		}
+	}
+
+	@Test
+	public void test_segment_rolling_and_retention() throws IOException {
+
+		Path directory = folder.newFolder("journal").toPath();
+		JournalConfig config = new JournalConfig(directory)
+				.withSegmentSize(4096)
+				.withMaxRetainedBytes(3 * 4096)
+				.withGroupCommit(1,TimeUnit.MILLISECONDS);
+
+		try(Journal<Event> journal = new Journal<>(config,new JsonEventCodec())){
+
+			for(int i = 0; i < 1000; i++){
+				journal.append("orders",event("Order"+i,i));
+			}
+
+			assertTrue("Segments were not removed",Files.list(directory).count() <= 3);
+			assertTrue(journal.getFirstOffset() > 0);
+
+			RxBus<Event> bus = new RxBus<>("journal-bus-4",RxBus.PublishMode.SERIALIZED,journal);
+
+			TestSubscriber<Event> consumer = new TestSubscriber<>();
+			bus.subscribeFromWithObserver("orders",0,consumer);
+			int retained = (int)(1000 - journal.getFirstOffset());
+			consumer.awaitValueCount(retained,5,TimeUnit.SECONDS);
+
+			List<String> names = namesOf(consumer.getOnNextEvents());
+			assertEquals(retained,names.size());
+			assertEquals("Order"+journal.getFirstOffset(),names.get(0));
+			assertEquals("Order999",names.get(names.size() - 1));
+
+			bus.unSubscribeAll();
+		}
+	}
+
+	@Test
+	public void test_age_retention_of_a_quiet_journal() throws IOException, InterruptedException {
+
+		Path directory = folder.newFolder("journal").toPath();
+		JournalConfig config = new JournalConfig(directory)
+				.withSegmentSize(4096)
+				.withMaxAge(200,TimeUnit.MILLISECONDS);
+
+		try(Journal<Event> journal = new Journal<>(config,new JsonEventCodec())){
+
+			for(int i = 0; i < 200; i++){
+				journal.append("orders",event("Order"+i,i));
+			}
+			assertTrue("No segment was rolled",Files.list(directory).count() > 1);
+
+			//nothing is appended any more, the old segments still go
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while(Files.list(directory).count() > 1 && System.nanoTime() < deadline){
+				Thread.sleep(50);
+			}
+			assertEquals("Old segments of a quiet journal were kept",1,Files.list(directory).count());
+			assertTrue(journal.getFirstOffset() > 0);
+		}
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void test_subscribe_from_without_journal() {
+		new RxBus<Event>("journal-bus-5").subscribeFrom("orders",0,evt->{});
+	}
+
+	@Test
+	public void test_record_larger_than_a_segment_is_refused_to_its_publisher() throws IOException {
+
+		Path directory = folder.newFolder("journal").toPath();
+		try(Journal<Event> journal = new Journal<>(new JournalConfig(directory).withSegmentSize(4096),new JsonEventCodec())){
+
+			RxBus<Event> bus = new RxBus<>("journal-bus-7",RxBus.PublishMode.SERIALIZED,journal);
+			TestSubscriber<Event> consumer = new TestSubscriber<>();
+			bus.subscribeWithObserver("orders",EventBus.DeliveryMode.SYNC,consumer);
+
+			Map<String,Object> details = new HashMap<>();
+			details.put("payload",new String(new char[8192]).replace('\0','x'));
+			try{
+				bus.publish("orders",new Event("Huge",details));
+				fail("The record of the event does not fit in a segment");
+			}catch(IllegalArgumentException e){
+				//expected
+			}
+			bus.publish("orders",event("Order0",0));
+
+			consumer.assertValueCount(1);
+			assertEquals(1,journal.getNextOffset());
+			bus.unSubscribeAll();
+		}
+	}
+
+	@Test
+	public void test_journal_failure_does_not_stop_the_bus() throws IOException {
+
+		Path directory = folder.newFolder("journal").toPath();
+		Journal<Event> journal = new Journal<>(new JournalConfig(directory),new JsonEventCodec());
+		RxBus<Event> bus = new RxBus<>("journal-bus-8",RxBus.PublishMode.SERIALIZED,journal);
+		TestSubscriber<Event> consumer = new TestSubscriber<>();
+		bus.subscribeWithObserver("orders",EventBus.DeliveryMode.SYNC,consumer);
+
+		bus.publish("orders",event("Order0",0));
+		journal.close();
+		bus.publish("orders",event("Order1",1));
+		bus.publishAll("orders",Arrays.asList(event("Order2",2),event("Order3",3)));
+
+		consumer.assertValueCount(4);
+		assertEquals(3,bus.getMetrics().getFailedDispatches());
+		bus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_replay_delivered_once_under_concurrent_publish() throws Exception {
+
+		Path directory = folder.newFolder("journal").toPath();
+		try(Journal<Event> journal = new Journal<>(new JournalConfig(directory),new JsonEventCodec())){
+
+			RxBus<Event> bus = new RxBus<>("journal-bus-6",RxBus.PublishMode.PER_TOPIC,journal);
+			int count = 5000;
+
+			Thread publisher = new Thread(()->{
+				for(int i = 0; i < count; i++){
+					bus.publish("orders",event("Order"+i,i));
+				}
+			});
+			publisher.start();
+
+			List<TestSubscriber<Event>> consumers = new ArrayList<>();
+			for(int i = 0; i < 5; i++){
+				TestSubscriber<Event> consumer = new TestSubscriber<>();
+				bus.subscribeFromWithObserver("orders",0,consumer);
+				consumers.add(consumer);
+			}
+			publisher.join();
+
+			for(TestSubscriber<Event> consumer : consumers){
+				consumer.awaitValueCount(count,5,TimeUnit.SECONDS);
+				List<String> names = namesOf(consumer.getOnNextEvents());
+				assertEquals(count,names.size());
+				for(int i = 0; i < count; i++){
+					assertEquals("Order"+i,names.get(i));
+				}
+			}
+
+			bus.unSubscribeAll();
+		}
+	}
+
+}
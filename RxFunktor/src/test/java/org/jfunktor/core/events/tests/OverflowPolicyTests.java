@@ -0,0 +1,199 @@
+package org.jfunktor.core.events.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jfunktor.core.events.api.BusSubscription;
+import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.api.EventBus.OverflowPolicy;
+import org.jfunktor.core.events.impl.RxBus;
+import org.junit.After;
+import org.junit.Test;
+
+import rx.exceptions.MissingBackpressureException;
+import rx.observers.TestSubscriber;
+
+public class OverflowPolicyTests {
+
+	private EventBus<Integer> eventBus = new RxBus<>("overflow-bus");
+
+	/**
+	 * Holds on to the first event until released so that the queue behind it fills up
+	 */
+	private class StuckConsumer extends TestSubscriber<Integer>{
+
+		private CountDownLatch entered = new CountDownLatch(1);
+		private CountDownLatch release = new CountDownLatch(1);
+		private List<Integer> received = new CopyOnWriteArrayList<>();
+
+		@Override
+		public void onNext(Integer event) {
+			received.add(event);
+			entered.countDown();
+			try{
+				release.await();
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			super.onNext(event);
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		eventBus.unSubscribeAll();
+	}
+
+	private BusSubscription fillUp(StuckConsumer consumer,OverflowPolicy policy,int count) throws InterruptedException {
+		BusSubscription subscription = eventBus.subscribeWithObserver("channel",2,policy,consumer);
+		eventBus.publish("channel",0);
+		assertTrue("Consumer never received the first event",consumer.entered.await(5,TimeUnit.SECONDS));
+		for(int i = 1; i < count; i++){
+			eventBus.publish("channel",i);
+		}
+		return subscription;
+	}
+
+	@Test
+	public void test_drop_newest() throws InterruptedException {
+		StuckConsumer consumer = new StuckConsumer();
+		BusSubscription subscription = fillUp(consumer,OverflowPolicy.DROP_NEWEST,10);
+
+		assertEquals(2,subscription.getQueueDepth());
+		assertEquals(7,subscription.getDropped());
+
+		consumer.release.countDown();
+		consumer.awaitValueCount(3,5,TimeUnit.SECONDS);
+
+		consumer.assertValues(0,1,2);
+	}
+
+	@Test
+	public void test_drop_oldest() throws InterruptedException {
+		StuckConsumer consumer = new StuckConsumer();
+		BusSubscription subscription = fillUp(consumer,OverflowPolicy.DROP_OLDEST,10);
+
+		assertEquals(2,subscription.getQueueDepth());
+		assertEquals(7,subscription.getDropped());
+
+		consumer.release.countDown();
+		consumer.awaitValueCount(3,5,TimeUnit.SECONDS);
+
+		consumer.assertValues(0,8,9);
+	}
+
+	@Test
+	public void test_error_terminates_subscriber() throws InterruptedException {
+		StuckConsumer consumer = new StuckConsumer();
+		TestSubscriber<Integer> deadTopicConsumer = new TestSubscriber<>();
+		eventBus.subscribeForDeadTopicsWithObserver(DeliveryMode.SYNC,deadTopicConsumer);
+
+		fillUp(consumer,OverflowPolicy.ERROR,4);
+
+		consumer.release.countDown();
+		consumer.awaitTerminalEvent(5,TimeUnit.SECONDS);
+
+		consumer.assertError(MissingBackpressureException.class);
+
+		//the failed subscriber no longer keeps the topic alive
+		eventBus.publish("channel",10);
+		deadTopicConsumer.assertValues(10);
+	}
+
+	@Test
+	public void test_block_holds_publisher() throws InterruptedException {
+		StuckConsumer consumer = new StuckConsumer();
+		BusSubscription subscription = eventBus.subscribeWithObserver("channel",2,OverflowPolicy.BLOCK,consumer);
+		eventBus.publish("channel",0);
+		assertTrue("Consumer never received the first event",consumer.entered.await(5,TimeUnit.SECONDS));
+
+		CountDownLatch published = new CountDownLatch(1);
+		Thread publisher = new Thread(()->{
+			for(int i = 1; i < 10; i++){
+				eventBus.publish("channel",i);
+			}
+			published.countDown();
+		});
+		publisher.start();
+
+		assertFalse("Publisher was not blocked by a full queue",published.await(300,TimeUnit.MILLISECONDS));
+		assertEquals(2,subscription.getQueueDepth());
+
+		consumer.release.countDown();
+		assertTrue("Publisher was not released",published.await(5,TimeUnit.SECONDS));
+		consumer.awaitValueCount(10,5,TimeUnit.SECONDS);
+
+		consumer.assertValues(0,1,2,3,4,5,6,7,8,9);
+		assertEquals(0,subscription.getDropped());
+	}
+
+	@Test
+	public void test_failing_subscriber_releases_blocked_publisher() throws InterruptedException {
+		IllegalStateException failure = new IllegalStateException("Subscriber failed");
+		StuckConsumer consumer = new StuckConsumer(){
+
+			@Override
+			public void onNext(Integer event) {
+				super.onNext(event);
+				throw failure;
+			}
+		};
+		BusSubscription subscription = eventBus.subscribeWithObserver("channel",2,OverflowPolicy.BLOCK,consumer);
+		eventBus.publish("channel",0);
+		assertTrue("Consumer never received the first event",consumer.entered.await(5,TimeUnit.SECONDS));
+
+		CountDownLatch published = new CountDownLatch(1);
+		Thread publisher = new Thread(()->{
+			for(int i = 1; i < 10; i++){
+				eventBus.publish("channel",i);
+			}
+			published.countDown();
+		});
+		publisher.start();
+		assertFalse("Publisher was not blocked by a full queue",published.await(300,TimeUnit.MILLISECONDS));
+
+		consumer.release.countDown();
+		assertTrue("A failed subscriber held the publisher",published.await(5,TimeUnit.SECONDS));
+		consumer.awaitTerminalEvent(5,TimeUnit.SECONDS);
+
+		consumer.assertError(failure);
+		consumer.assertValues(0);
+		assertEquals(0,subscription.getQueueDepth());
+	}
+
+	@Test
+	public void test_default_policy_never_holds_publisher() throws InterruptedException {
+		StuckConsumer consumer = new StuckConsumer();
+		BusSubscription subscription = eventBus.subscribeWithObserver("channel",DeliveryMode.ASYNC,consumer);
+		TestSubscriber<Integer> other = new TestSubscriber<>();
+		eventBus.subscribeWithObserver("channel",DeliveryMode.SYNC,other);
+		eventBus.publish("channel",0);
+		assertTrue("Consumer never received the first event",consumer.entered.await(5,TimeUnit.SECONDS));
+
+		int count = EventBus.DEFAULT_QUEUE_CAPACITY * 2;
+		CountDownLatch published = new CountDownLatch(1);
+		Thread publisher = new Thread(()->{
+			for(int i = 1; i < count; i++){
+				eventBus.publish("channel",i);
+			}
+			published.countDown();
+		});
+		publisher.start();
+
+		assertTrue("A stalled subscriber held the publisher",published.await(5,TimeUnit.SECONDS));
+		other.assertValueCount(count);
+		assertEquals(EventBus.DEFAULT_QUEUE_CAPACITY,subscription.getQueueDepth());
+		assertEquals(count - 1 - EventBus.DEFAULT_QUEUE_CAPACITY,subscription.getDropped());
+
+		consumer.release.countDown();
+		consumer.awaitValueCount(EventBus.DEFAULT_QUEUE_CAPACITY + 1,5,TimeUnit.SECONDS);
+		//the newest events are kept
+		assertEquals(Integer.valueOf(count - 1),consumer.getOnNextEvents().get(EventBus.DEFAULT_QUEUE_CAPACITY));
+	}
+
+}
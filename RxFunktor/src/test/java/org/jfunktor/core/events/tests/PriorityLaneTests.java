@@ -0,0 +1,162 @@
+package org.jfunktor.core.events.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.jfunktor.core.events.api.Event;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.impl.RxBus;
+import org.jfunktor.core.events.impl.RxBus.Priority;
+import org.junit.Test;
+
+public class PriorityLaneTests {
+
+	private Event event(String name) {
+		return new Event(name,new HashMap<>());
+	}
+
+	/**
+	 * Records the events and holds the first one until released
+	 */
+	private static class Recorder implements Consumer<Event>{
+
+		private List<String> names = Collections.synchronizedList(new ArrayList<>());
+		private CountDownLatch stuck = new CountDownLatch(1);
+		private CountDownLatch release = new CountDownLatch(1);
+		private String holding;
+
+		Recorder(String holding){
+			this.holding = holding;
+		}
+
+		@Override
+		public void accept(Event evt) {
+			if(evt.getEventName().equals(holding)){
+				stuck.countDown();
+				try{
+					release.await();
+				}catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+				}
+			}
+			names.add(evt.getEventName());
+		}
+
+		List<String> snapshot() {
+			synchronized(names){
+				return new ArrayList<>(names);
+			}
+		}
+	};
+
+	private void awaitCount(Recorder recorder, int count) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while(recorder.names.size() < count && System.nanoTime() < deadline){
+			Thread.sleep(5);
+		}
+		assertEquals(count,recorder.names.size());
+	}
+
+	@Test
+	public void test_high_priority_events_overtake_the_drain_backlog() throws InterruptedException {
+
+		RxBus<Event> eventBus = new RxBus<Event>("priority-bus-1").markPriority("control",Priority.HIGH);
+		Recorder recorder = new Recorder("Data0");
+		eventBus.subscribe("data",DeliveryMode.SYNC,recorder);
+		eventBus.subscribe("control",DeliveryMode.SYNC,recorder);
+
+		//holds the drain, the events published meanwhile wait in their lanes
+		Thread draining = new Thread(()->eventBus.publish("data",event("Data0")));
+		draining.start();
+		assertTrue(recorder.stuck.await(5,TimeUnit.SECONDS));
+		for(int i = 1; i <= 500; i++){
+			eventBus.publish("data",event("Data"+i));
+		}
+		eventBus.publish("control",event("Shutdown"));
+		recorder.release.countDown();
+		draining.join(5000);
+
+		List<String> names = recorder.snapshot();
+		assertEquals(502,names.size());
+		assertEquals("Data0",names.get(0));
+		assertEquals("The control event waited for the data backlog","Shutdown",names.get(1));
+		for(int i = 1; i <= 500; i++){
+			assertEquals("Data"+i,names.get(i + 1));
+		}
+	}
+
+	@Test
+	public void test_low_priority_events_are_not_starved() throws InterruptedException {
+
+		RxBus<Event> eventBus = new RxBus<Event>("priority-bus-2").markPriority("audit",Priority.LOW);
+		Recorder recorder = new Recorder("Data0");
+		eventBus.subscribe("data",DeliveryMode.SYNC,recorder);
+		eventBus.subscribe("audit",DeliveryMode.SYNC,recorder);
+
+		Thread draining = new Thread(()->eventBus.publish("data",event("Data0")));
+		draining.start();
+		assertTrue(recorder.stuck.await(5,TimeUnit.SECONDS));
+		for(int i = 1; i <= 300; i++){
+			eventBus.publish("data",event("Data"+i));
+		}
+		for(int i = 0; i < 5; i++){
+			eventBus.publish("audit",event("Audit"+i));
+		}
+		recorder.release.countDown();
+		draining.join(5000);
+
+		List<String> names = recorder.snapshot();
+		assertEquals(306,names.size());
+		int previous = -1;
+		for(int i = 0; i < 5; i++){
+			int index = names.indexOf("Audit"+i);
+			assertTrue("Audit"+i+" came out of order",index > previous);
+			previous = index;
+		}
+		//the low lane gets its share while the normal one is busy
+		assertTrue("Audit0 waited for "+names.indexOf("Audit0")+" events",names.indexOf("Audit0") < 50);
+		assertTrue("The low lane was starved",previous < names.indexOf("Data300"));
+	}
+
+	@Test
+	public void test_a_queued_subscriber_of_several_topics_takes_high_priority_events_first() throws InterruptedException {
+
+		RxBus<Event> eventBus = new RxBus<Event>("priority-bus-3").markPriority("orders.cancel",Priority.HIGH);
+		Recorder recorder = new Recorder("Order0");
+		eventBus.subscribe("orders.#",DeliveryMode.ASYNC,recorder);
+
+		eventBus.publish("orders.new",event("Order0"));
+		assertTrue(recorder.stuck.await(5,TimeUnit.SECONDS));
+		for(int i = 1; i <= 500; i++){
+			eventBus.publish("orders.new",event("Order"+i));
+		}
+		eventBus.publish("orders.cancel",event("Cancel"));
+		recorder.release.countDown();
+		awaitCount(recorder,502);
+
+		List<String> names = recorder.snapshot();
+		assertEquals("Order0",names.get(0));
+		assertEquals("The cancellation waited for the queued orders","Cancel",names.get(1));
+		for(int i = 1; i <= 500; i++){
+			assertEquals("Order"+i,names.get(i + 1));
+		}
+	}
+
+	@Test
+	public void test_patterns_have_no_priority() {
+		try{
+			new RxBus<Event>("priority-bus-4").markPriority("control.*",Priority.HIGH);
+			fail("A pattern was given a priority");
+		}catch(IllegalArgumentException e){
+			//expected
+		}
+	}
+
+}
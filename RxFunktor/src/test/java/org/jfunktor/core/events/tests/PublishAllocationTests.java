@@ -0,0 +1,101 @@
+package org.jfunktor.core.events.tests;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jfunktor.core.events.api.Event;
+import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.api.Topic;
+import org.jfunktor.core.events.impl.RxBus;
+import org.jfunktor.core.events.impl.RxBus.PublishMode;
+import org.junit.Test;
+
+/**
+ * Bytes allocated by the publishing thread per event, as counted by the
+ * ThreadMXBean of the JVM for the current thread, once the publish path is
+ * warmed up and compiled
+ */
+public class PublishAllocationTests {
+
+	private static final int WARMUP = 300000;
+
+	private static final int MEASURED = 200000;
+
+	private Event event = new Event("Order",new HashMap<>());
+
+	private long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private double bytesPerPublish(Runnable publish) {
+		for(int i = 0; i < WARMUP; i++){
+			publish.run();
+		}
+		long before = allocatedBytes();
+		for(int i = 0; i < MEASURED; i++){
+			publish.run();
+		}
+		return (double)(allocatedBytes() - before) / MEASURED;
+	}
+
+	private void assertAllocationFree(EventBus<Event> eventBus) {
+		assumeTrue("Allocations cannot be measured on this JVM",ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+
+		LongAdder received = new LongAdder();
+		eventBus.subscribe("orders",DeliveryMode.SYNC,evt->received.increment());
+		eventBus.subscribe("orders",DeliveryMode.SYNC,evt->received.increment());
+		eventBus.subscribe("orders.*",DeliveryMode.SYNC,evt->received.increment());
+		eventBus.subscribeForDeadTopics(DeliveryMode.SYNC,evt->received.increment());
+		Topic orders = eventBus.topic("orders");
+
+		double byName = bytesPerPublish(()->eventBus.publish("orders",event));
+		double byHandle = bytesPerPublish(()->eventBus.publish(orders,event));
+		double dead = bytesPerPublish(()->eventBus.publish("nobody",event));
+
+		assertEquals(2L * (WARMUP + MEASURED) * 2 + WARMUP + MEASURED,received.sum());
+		assertTrue("Publishing by name allocates "+byName+" B/op",byName < 1);
+		assertTrue("Publishing by handle allocates "+byHandle+" B/op",byHandle < 1);
+		assertTrue("Publishing to a dead topic allocates "+dead+" B/op",dead < 1);
+
+		eventBus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_serialized_publish_does_not_allocate() {
+		assertAllocationFree(new RxBus<>("allocation-bus-1"));
+	}
+
+	@Test
+	public void test_per_topic_publish_does_not_allocate() {
+		assertAllocationFree(new RxBus<>("allocation-bus-2",PublishMode.PER_TOPIC));
+	}
+
+	@Test
+	public void test_burst_beyond_the_ring_keeps_its_order() {
+		RxBus<Integer> eventBus = new RxBus<>("allocation-bus-3");
+		List<Integer> received = new ArrayList<>();
+		eventBus.subscribe("burst",DeliveryMode.SYNC,count->{
+			//published from within the drain, so the ring cannot empty meanwhile
+			for(int i = 0; i < count; i++){
+				eventBus.publish("numbers",i);
+			}
+		});
+		eventBus.subscribe("numbers",DeliveryMode.SYNC,received::add);
+
+		eventBus.publish("burst",5000);
+		eventBus.publish("numbers",5000);
+
+		assertEquals(5001,received.size());
+		for(int i = 0; i <= 5000; i++){
+			assertEquals(Integer.valueOf(i),received.get(i));
+		}
+	}
+
+}
@@ -0,0 +1,184 @@
+package org.jfunktor.core.events.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jfunktor.core.events.api.BusSubscription;
+import org.jfunktor.core.events.api.Event;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.impl.QuarantineEvent;
+import org.jfunktor.core.events.impl.QuarantinePolicy;
+import org.jfunktor.core.events.impl.RxBus;
+import org.junit.Test;
+
+import rx.observers.TestSubscriber;
+
+public class QuarantineTests {
+
+	private Event event(int index) {
+		Map<String,Object> details = new HashMap<>();
+		details.put("index",index);
+		return new Event("Order"+index,details);
+	}
+
+	private void await(CountDownLatch gate) {
+		try{
+			gate.await();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private QuarantinePolicy policy() {
+		return new QuarantinePolicy()
+				.withMaxLag(50)
+				.withResumeLag(5)
+				.withCheckInterval(10,TimeUnit.MILLISECONDS);
+	}
+
+	@Test
+	public void test_lagging_subscriber_is_quarantined_and_resumes() {
+
+		RxBus<Event> eventBus = new RxBus<Event>("quarantine-bus-1").withQuarantine(policy());
+		TestSubscriber<QuarantineEvent> quarantines = new TestSubscriber<>();
+		eventBus.quarantineEvents().subscribe(quarantines);
+
+		CountDownLatch gate = new CountDownLatch(1);
+		List<Integer> received = new CopyOnWriteArrayList<>();
+		BusSubscription subscription = eventBus.subscribe("orders",DeliveryMode.ASYNC,evt->{
+			await(gate);
+			received.add((Integer)evt.getEventDetails().get("index"));
+		});
+
+		for(int i = 0; i < 100; i++){
+			eventBus.publish("orders",event(i));
+		}
+		quarantines.awaitValueCount(1,5000,TimeUnit.MILLISECONDS);
+		QuarantineEvent quarantined = quarantines.getOnNextEvents().get(0);
+		assertTrue(quarantined.isQuarantined());
+		assertEquals(QuarantineEvent.Reason.LAG,quarantined.getReason());
+		assertSame("The event does not carry the handle of the subscriber",subscription,quarantined.getSubscription());
+		assertTrue(subscription.isQuarantined());
+
+		//set aside while quarantined, still counted as behind
+		for(int i = 100; i < 200; i++){
+			eventBus.publish("orders",event(i));
+		}
+		assertTrue(subscription.getQueueDepth() >= 100);
+
+		gate.countDown();
+		quarantines.awaitValueCount(2,5000,TimeUnit.MILLISECONDS);
+		QuarantineEvent resumed = quarantines.getOnNextEvents().get(1);
+		assertFalse(resumed.isQuarantined());
+		//the check may have quarantined it before the first 100 were all published
+		assertTrue(resumed.getSidelined() >= 100);
+		assertFalse(subscription.isQuarantined());
+
+		eventBus.publish("orders",event(200));
+		long deadline = System.currentTimeMillis() + 5000;
+		while(received.size() < 201 && System.currentTimeMillis() < deadline){
+			Thread.yield();
+		}
+		assertEquals(201,received.size());
+		for(int i = 0; i < 201; i++){
+			assertEquals("Events were delivered out of order",Integer.valueOf(i),received.get(i));
+		}
+		assertEquals(0,subscription.getDropped());
+
+		eventBus.unSubscribeAll();
+		quarantines.assertCompleted();
+	}
+
+	@Test
+	public void test_quarantined_events_go_to_the_dead_letter_topic() {
+
+		RxBus<Event> eventBus = new RxBus<Event>("quarantine-bus-2").withQuarantine(policy().withDeadLetterTopic("dead.letters"));
+		TestSubscriber<QuarantineEvent> quarantines = new TestSubscriber<>();
+		eventBus.quarantineEvents().subscribe(quarantines);
+
+		TestSubscriber<Event> deadLetters = new TestSubscriber<>();
+		eventBus.subscribeWithObserver("dead.letters",DeliveryMode.SYNC,deadLetters);
+
+		CountDownLatch gate = new CountDownLatch(1);
+		TestSubscriber<Event> slow = new TestSubscriber<>();
+		eventBus.subscribe("orders",DeliveryMode.ASYNC,evt->{
+			await(gate);
+			slow.onNext(evt);
+		});
+
+		for(int i = 0; i < 100; i++){
+			eventBus.publish("orders",event(i));
+		}
+		quarantines.awaitValueCount(1,5000,TimeUnit.MILLISECONDS);
+		for(int i = 100; i < 150; i++){
+			eventBus.publish("orders",event(i));
+		}
+
+		//the check may have quarantined it before the first 100 were all published
+		int deadLettered = deadLetters.getValueCount();
+		assertTrue(deadLettered >= 50);
+		assertEquals("Order"+(150 - deadLettered),deadLetters.getOnNextEvents().get(0).getEventName());
+
+		gate.countDown();
+		slow.awaitValueCount(150 - deadLettered,5000,TimeUnit.MILLISECONDS);
+		quarantines.awaitValueCount(2,5000,TimeUnit.MILLISECONDS);
+		slow.assertValueCount(150 - deadLettered);
+
+		eventBus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_stalled_subscriber_is_quarantined() {
+
+		RxBus<Event> eventBus = new RxBus<Event>("quarantine-bus-3")
+				.withQuarantine(new QuarantinePolicy()
+						.withMaxStall(50,TimeUnit.MILLISECONDS)
+						.withCheckInterval(10,TimeUnit.MILLISECONDS));
+		TestSubscriber<QuarantineEvent> quarantines = new TestSubscriber<>();
+		eventBus.quarantineEvents().subscribe(quarantines);
+
+		CountDownLatch gate = new CountDownLatch(1);
+		BusSubscription subscription = eventBus.subscribe("orders",DeliveryMode.ASYNC,evt->await(gate));
+		eventBus.publish("orders",event(0));
+		eventBus.publish("orders",event(1));
+
+		quarantines.awaitValueCount(1,5000,TimeUnit.MILLISECONDS);
+		assertEquals(QuarantineEvent.Reason.STALL,quarantines.getOnNextEvents().get(0).getReason());
+		assertTrue(subscription.isQuarantined());
+
+		gate.countDown();
+		quarantines.awaitValueCount(2,5000,TimeUnit.MILLISECONDS);
+		assertFalse(subscription.isQuarantined());
+
+		eventBus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_side_buffer_is_bounded() {
+
+		RxBus<Event> eventBus = new RxBus<Event>("quarantine-bus-4").withQuarantine(policy().withSideBuffer(10));
+		TestSubscriber<QuarantineEvent> quarantines = new TestSubscriber<>();
+		eventBus.quarantineEvents().subscribe(quarantines);
+
+		CountDownLatch gate = new CountDownLatch(1);
+		BusSubscription subscription = eventBus.subscribe("orders",DeliveryMode.ASYNC,evt->await(gate));
+		for(int i = 0; i < 100; i++){
+			eventBus.publish("orders",event(i));
+		}
+		quarantines.awaitValueCount(1,5000,TimeUnit.MILLISECONDS);
+		for(int i = 100; i < 200; i++){
+			eventBus.publish("orders",event(i));
+		}
+		assertEquals(90,subscription.getDropped());
+
+		gate.countDown();
+		eventBus.unSubscribeAll();
+	}
+
+}
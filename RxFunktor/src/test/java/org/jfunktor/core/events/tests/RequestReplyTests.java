@@ -0,0 +1,192 @@
+package org.jfunktor.core.events.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jfunktor.core.events.api.Event;
+import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.api.EventBus.OverflowPolicy;
+import org.jfunktor.core.events.impl.DisruptorBus;
+import org.jfunktor.core.events.impl.RxBus;
+import org.junit.Test;
+
+import rx.Observable;
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+
+public class RequestReplyTests {
+
+	private Event event(String name, int value) {
+		Map<String,Object> details = new HashMap<>();
+		details.put("value",value);
+		return new Event(name,details);
+	}
+
+	private void assertSquares(EventBus<Event> eventBus, DeliveryMode mode) {
+		eventBus.subscribe("square",mode,evt->{
+			int value = (Integer)evt.getEventDetails().get("value");
+			eventBus.reply(evt,event("Square",value * value));
+		});
+
+		for(int i = 0; i < 100; i++){
+			TestSubscriber<Event> replies = new TestSubscriber<>();
+			eventBus.request("square",event("Request",i),5,TimeUnit.SECONDS).subscribe(replies);
+			replies.awaitTerminalEvent(5,TimeUnit.SECONDS);
+			replies.assertNoErrors();
+			replies.assertValueCount(1);
+			replies.assertCompleted();
+			assertEquals(i * i,replies.getOnNextEvents().get(0).getEventDetails().get("value"));
+		}
+		eventBus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_sync_reply() {
+		assertSquares(new RxBus<>("request-bus-1"),DeliveryMode.SYNC);
+	}
+
+	@Test
+	public void test_async_reply() {
+		assertSquares(new RxBus<>("request-bus-2",RxBus.PublishMode.PER_TOPIC),DeliveryMode.ASYNC);
+	}
+
+	@Test
+	public void test_disruptor_bus_reply() {
+		assertSquares(new DisruptorBus<>("request-bus-3"),DeliveryMode.ASYNC);
+	}
+
+	@Test
+	public void test_concurrent_requests() throws InterruptedException {
+
+		RxBus<Event> eventBus = new RxBus<>("request-bus-4");
+		//every request must get its reply, the default policy would drop requests once the queue is full
+		eventBus.subscribe("echo",EventBus.DEFAULT_QUEUE_CAPACITY,OverflowPolicy.BLOCK,evt->eventBus.reply(evt,evt));
+
+		int count = 1000;
+		CountDownLatch latch = new CountDownLatch(count);
+		for(int i = 0; i < count; i++){
+			Event request = event("Echo",i);
+			eventBus.request("echo",request,5,TimeUnit.SECONDS).subscribe(reply->{
+				if(reply == request){
+					latch.countDown();
+				}
+			});
+		}
+		assertTrue("Replies were lost or crossed",latch.await(5,TimeUnit.SECONDS));
+		eventBus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_timeout() {
+
+		RxBus<Event> eventBus = new RxBus<>("request-bus-5");
+		CountDownLatch received = new CountDownLatch(1);
+		Event[] request = new Event[1];
+		eventBus.subscribe("silent",evt->{
+			request[0] = evt;
+			received.countDown();
+		});
+
+		TestSubscriber<Event> replies = new TestSubscriber<>();
+		long start = System.nanoTime();
+		eventBus.request("silent",event("Request",1),50,TimeUnit.MILLISECONDS).subscribe(replies);
+		replies.awaitTerminalEvent(5,TimeUnit.SECONDS);
+
+		replies.assertError(TimeoutException.class);
+		assertTrue("Timed out too early",System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+		assertFalse("A timed out request was still awaited",eventBus.reply(request[0],event("Late",1)));
+		eventBus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_unsubscribed_request_is_forgotten() {
+
+		RxBus<Event> eventBus = new RxBus<>("request-bus-6");
+		Event[] request = new Event[1];
+		eventBus.subscribe("later",evt->request[0] = evt);
+
+		Subscription subscription = eventBus.request("later",event("Request",1),5,TimeUnit.SECONDS).subscribe(reply->fail("Reply to an unsubscribed request"));
+		subscription.unsubscribe();
+		assertFalse(eventBus.reply(request[0],event("Reply",1)));
+		eventBus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_request_is_sent_per_subscription() {
+
+		RxBus<Event> eventBus = new RxBus<>("request-bus-7");
+		int[] requests = new int[1];
+		eventBus.subscribe("count",evt->{
+			requests[0]++;
+			eventBus.reply(evt,event("Count",requests[0]));
+		});
+
+		Observable<Event> request = eventBus.request("count",event("Request",0),5,TimeUnit.SECONDS);
+		assertEquals(0,requests[0]);
+		assertEquals(1,request.toBlocking().single().getEventDetails().get("value"));
+		assertEquals(2,request.toBlocking().single().getEventDetails().get("value"));
+		eventBus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_concurrent_subscriptions_to_a_request() {
+
+		RxBus<Event> eventBus = new RxBus<>("request-bus-9");
+		List<Event> received = new ArrayList<>();
+		eventBus.subscribe("held",evt->received.add(evt));
+
+		Observable<Event> request = eventBus.request("held",event("Request",1),5,TimeUnit.SECONDS);
+		TestSubscriber<Event> first = new TestSubscriber<>();
+		TestSubscriber<Event> second = new TestSubscriber<>();
+		request.subscribe(first);
+		request.subscribe(second);
+		assertEquals(2,received.size());
+
+		assertTrue(eventBus.reply(received.get(0),event("Reply",1)));
+		assertTrue(eventBus.reply(received.get(1),event("Reply",2)));
+		assertFalse(eventBus.reply(received.get(0),event("Reply",3)));
+
+		first.assertNoErrors();
+		first.assertValueCount(1);
+		second.assertNoErrors();
+		second.assertValueCount(1);
+		assertEquals(1,first.getOnNextEvents().get(0).getEventDetails().get("value"));
+		assertEquals(2,second.getOnNextEvents().get(0).getEventDetails().get("value"));
+		eventBus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_reply_to_a_copy_with_a_correlation_key() {
+
+		RxBus<Event> eventBus = new RxBus<Event>("request-bus-10").withCorrelationKey(evt->evt.getEventDetails().get("value"));
+		//a copy, as a transport or a replay would hand it over
+		eventBus.subscribe("copied",evt->eventBus.reply(new Event(evt.getEventName(),evt.getEventDetails()),event("Reply",42)));
+
+		TestSubscriber<Event> replies = new TestSubscriber<>();
+		eventBus.request("copied",event("Request",7),5,TimeUnit.SECONDS).subscribe(replies);
+
+		replies.assertNoErrors();
+		replies.assertValueCount(1);
+		assertEquals(42,replies.getOnNextEvents().get(0).getEventDetails().get("value"));
+		eventBus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_pending_request_fails_on_shutdown() {
+
+		RxBus<Event> eventBus = new RxBus<>("request-bus-8");
+		TestSubscriber<Event> replies = new TestSubscriber<>();
+		eventBus.request("nobody",event("Request",1),5,TimeUnit.SECONDS).subscribe(replies);
+		eventBus.unSubscribeAll();
+		replies.assertError(IllegalStateException.class);
+	}
+
+}
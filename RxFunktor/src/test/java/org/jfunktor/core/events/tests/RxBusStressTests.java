@@ -0,0 +1,117 @@
+package org.jfunktor.core.events.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.impl.RxBus;
+import org.jfunktor.core.events.impl.RxBus.PublishMode;
+import org.junit.After;
+import org.junit.Test;
+
+public class RxBusStressTests {
+
+	private static final int PRODUCERS = 32;
+	private static final int TOPICS = 16;
+	private static final int EVENTS_PER_PRODUCER = 20000;
+
+	private EventBus<int[]> eventBus = new RxBus<>("stress-bus",PublishMode.PER_TOPIC);
+
+	/**
+	 * Checks that a topic consumer is never entered concurrently and sees the
+	 * events of every producer in the order they were published
+	 */
+	private class OrderCheckingConsumer{
+
+		private int[] lastSeen = new int[PRODUCERS];
+		private AtomicInteger inFlight = new AtomicInteger();
+		private AtomicLong received = new AtomicLong();
+		private ConcurrentLinkedQueue<String> violations;
+
+		OrderCheckingConsumer(ConcurrentLinkedQueue<String> violations){
+			this.violations = violations;
+			java.util.Arrays.fill(lastSeen,-1);
+		}
+
+		void accept(String topic,int[] evt){
+			if(inFlight.incrementAndGet() != 1){
+				violations.add(String.format("Topic %s delivered concurrently",topic));
+			}
+			int producer = evt[0];
+			int seq = evt[1];
+			if(seq <= lastSeen[producer]){
+				violations.add(String.format("Topic %s producer %d delivered %d after %d",topic,producer,seq,lastSeen[producer]));
+			}
+			lastSeen[producer] = seq;
+			received.incrementAndGet();
+			inFlight.decrementAndGet();
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		eventBus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_per_topic_ordering_under_concurrent_producers() throws InterruptedException {
+
+		ConcurrentLinkedQueue<String> violations = new ConcurrentLinkedQueue<>();
+
+		List<OrderCheckingConsumer> consumers = new ArrayList<>();
+		for(int t = 0; t < TOPICS; t++){
+			String topic = "topic-"+t;
+			OrderCheckingConsumer consumer = new OrderCheckingConsumer(violations);
+			consumers.add(consumer);
+			eventBus.subscribe(topic,evt->consumer.accept(topic,evt));
+		}
+
+		OrderCheckingConsumer shared = new OrderCheckingConsumer(violations);
+		eventBus.subscribe("shared",evt->shared.accept("shared",evt));
+
+		OrderCheckingConsumer dead = new OrderCheckingConsumer(violations);
+		eventBus.subscribeForDeadTopics(EventBus.DeliveryMode.SYNC,evt->dead.accept("dead",evt));
+
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(PRODUCERS);
+
+		for(int p = 0; p < PRODUCERS; p++){
+			int producer = p;
+			Thread thread = new Thread(()->{
+				try{
+					start.await();
+					String own = "topic-"+(producer % TOPICS);
+					String unknown = "unknown-"+producer;
+					for(int seq = 0; seq < EVENTS_PER_PRODUCER; seq++){
+						eventBus.publish(own,new int[]{producer,seq});
+						eventBus.publish("SHARED",new int[]{producer,seq});
+						eventBus.publish(unknown,new int[]{producer,seq});
+					}
+				}catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+				}finally{
+					done.countDown();
+				}
+			},"producer-"+p);
+			thread.start();
+		}
+
+		start.countDown();
+		assertTrue("Producers did not finish in time",done.await(60,TimeUnit.SECONDS));
+
+		assertTrue("Ordering violations "+violations,violations.isEmpty());
+
+		long total = consumers.stream().mapToLong(consumer->consumer.received.get()).sum();
+		assertEquals((long)PRODUCERS * EVENTS_PER_PRODUCER,total);
+		assertEquals((long)PRODUCERS * EVENTS_PER_PRODUCER,shared.received.get());
+		assertEquals((long)PRODUCERS * EVENTS_PER_PRODUCER,dead.received.get());
+	}
+
+}
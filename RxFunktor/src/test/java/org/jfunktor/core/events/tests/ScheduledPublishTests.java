@@ -0,0 +1,163 @@
+package org.jfunktor.core.events.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import org.jfunktor.core.events.api.Event;
+import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.impl.DisruptorBus;
+import org.jfunktor.core.events.impl.Journal;
+import org.jfunktor.core.events.impl.JournalConfig;
+import org.jfunktor.core.events.impl.JsonEventCodec;
+import org.jfunktor.core.events.impl.RxBus;
+import org.jfunktor.core.events.impl.ShardedBus;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+
+public class ScheduledPublishTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Event event(String name) {
+		Map<String,Object> details = new HashMap<>();
+		details.put("name",name);
+		return new Event(name,details);
+	}
+
+	private List<String> namesOf(List<Event> events) {
+		return events.stream().map(evt->evt.getEventName()).collect(Collectors.toList());
+	}
+
+	private void assertPublishedInDueOrder(EventBus<Event> eventBus) {
+		TestSubscriber<Event> reminders = new TestSubscriber<>();
+		eventBus.subscribeWithObserver("reminders",DeliveryMode.SYNC,reminders);
+
+		long start = System.nanoTime();
+		eventBus.publishAfter("reminders",event("Third"),300,TimeUnit.MILLISECONDS);
+		eventBus.publishAfter("reminders",event("First"),100,TimeUnit.MILLISECONDS);
+		eventBus.publishAt("reminders",event("Second"),Instant.now().plusMillis(200));
+		Subscription cancelled = eventBus.publishAfter("reminders",event("Cancelled"),150,TimeUnit.MILLISECONDS);
+		cancelled.unsubscribe();
+		assertTrue(cancelled.isUnsubscribed());
+		reminders.assertNoValues();
+
+		reminders.awaitValueCount(3,5000,TimeUnit.MILLISECONDS);
+		assertTrue("Published before it was due",System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(300));
+		assertEquals(Arrays.asList("First","Second","Third"),namesOf(reminders.getOnNextEvents()));
+
+		//an instant in the past is due right away
+		eventBus.publishAt("reminders",event("Late"),Instant.now().minusSeconds(60));
+		reminders.awaitValueCount(4,5000,TimeUnit.MILLISECONDS);
+		reminders.assertValueCount(4);
+
+		eventBus.unSubscribeAll();
+		assertTrue(eventBus.publishAfter("reminders",event("AfterShutdown"),0,TimeUnit.MILLISECONDS).isUnsubscribed());
+	}
+
+	@Test
+	public void test_rx_bus_publishes_when_due() {
+		assertPublishedInDueOrder(new RxBus<>("scheduled-bus-1"));
+	}
+
+	@Test
+	public void test_disruptor_bus_publishes_when_due() {
+		assertPublishedInDueOrder(new DisruptorBus<>("scheduled-bus-2"));
+	}
+
+	@Test
+	public void test_sharded_bus_publishes_when_due() {
+		assertPublishedInDueOrder(new ShardedBus<>("scheduled-bus-3",2));
+	}
+
+	@Test
+	public void test_many_pending_publications() throws InterruptedException {
+
+		RxBus<Integer> eventBus = new RxBus<>("scheduled-bus-4");
+		int scheduled = 200000;
+		LongAdder received = new LongAdder();
+		List<Integer> wrong = new CopyOnWriteArrayList<>();
+		eventBus.subscribe("timeouts",DeliveryMode.SYNC,index->{
+			received.increment();
+			if(index % 2 == 1){
+				wrong.add(index);
+			}
+		});
+
+		List<Subscription> pending = new ArrayList<>(scheduled);
+		for(int i = 0; i < scheduled; i++){
+			pending.add(eventBus.publishAfter("timeouts",i,500 + i % 500,TimeUnit.MILLISECONDS));
+		}
+		//every other timeout is cancelled before it is due, as when the awaited answer comes
+		for(int i = 1; i < scheduled; i += 2){
+			pending.get(i).unsubscribe();
+		}
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while(received.sum() < scheduled / 2 && System.nanoTime() < deadline){
+			Thread.sleep(10);
+		}
+		Thread.sleep(100);
+		assertEquals(scheduled / 2,received.sum());
+		assertTrue("Cancelled publications were published "+wrong.size(),wrong.isEmpty());
+
+		eventBus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_pending_publications_survive_a_restart() throws IOException, InterruptedException {
+
+		Path directory = folder.newFolder("journal").toPath();
+		try(Journal<Event> journal = new Journal<>(new JournalConfig(directory),new JsonEventCodec())){
+			RxBus<Event> eventBus = new RxBus<>("scheduled-bus-5",RxBus.PublishMode.SERIALIZED,journal);
+			TestSubscriber<Event> reminders = new TestSubscriber<>();
+			eventBus.subscribeWithObserver("reminders",DeliveryMode.SYNC,reminders);
+
+			eventBus.publishAfter("reminders",event("Soon"),10,TimeUnit.MILLISECONDS);
+			eventBus.publishAfter("reminders",event("Later"),500,TimeUnit.MILLISECONDS);
+			eventBus.publishAfter("reminders",event("Tomorrow"),1,TimeUnit.DAYS);
+			eventBus.publishAfter("reminders",event("Cancelled"),1,TimeUnit.DAYS).unsubscribe();
+
+			reminders.awaitValueCount(1,5000,TimeUnit.MILLISECONDS);
+			assertEquals("Soon",reminders.getOnNextEvents().get(0).getEventName());
+			//Soon is settled on the wheel thread after its delivery, its settle record comes last
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while(journal.getNextOffset() < 7 && System.nanoTime() < deadline){
+				Thread.sleep(10);
+			}
+			assertEquals("4 scheduled, 2 settled and Soon itself were journaled",7,journal.getNextOffset());
+			eventBus.unSubscribeAll();
+		}
+
+		try(Journal<Event> journal = new Journal<>(new JournalConfig(directory),new JsonEventCodec())){
+			RxBus<Event> eventBus = new RxBus<>("scheduled-bus-6",RxBus.PublishMode.SERIALIZED,journal);
+			TestSubscriber<Event> reminders = new TestSubscriber<>();
+			//the timer records are not part of the topic replayed
+			eventBus.subscribeFromWithObserver("reminders",0,reminders);
+
+			assertEquals("Later and Tomorrow are still pending",2,eventBus.recoverScheduled());
+			reminders.awaitValueCount(2,5000,TimeUnit.MILLISECONDS);
+			assertEquals(Arrays.asList("Soon","Later"),namesOf(reminders.getOnNextEvents()));
+
+			eventBus.unSubscribeAll();
+		}
+	}
+
+}
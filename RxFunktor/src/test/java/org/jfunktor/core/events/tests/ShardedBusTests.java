@@ -0,0 +1,239 @@
+package org.jfunktor.core.events.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jfunktor.core.events.api.BusMetrics;
+import org.jfunktor.core.events.api.BusSubscription;
+import org.jfunktor.core.events.api.Event;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.api.Topic;
+import org.jfunktor.core.events.impl.ShardedBus;
+import org.junit.Test;
+
+import rx.observers.TestSubscriber;
+
+public class ShardedBusTests {
+
+	private Event event(String name) {
+		return new Event(name,new HashMap<>());
+	}
+
+	@Test
+	public void test_topics_keep_their_order_across_shards() throws InterruptedException {
+
+		ShardedBus<int[]> eventBus = new ShardedBus<>("sharded-bus-1",4);
+		int topics = 16;
+		int producers = 4;
+		int events = 5000;
+		ConcurrentLinkedQueue<String> violations = new ConcurrentLinkedQueue<>();
+		CountDownLatch received = new CountDownLatch(topics * events);
+		Set<String> threads = ConcurrentHashMap.newKeySet();
+		for(int t = 0; t < topics; t++){
+			String topic = "topic-"+t;
+			int[] lastSeen = new int[producers];
+			Arrays.fill(lastSeen,-1);
+			eventBus.subscribe(topic,evt->{
+				if(evt[1] <= lastSeen[evt[0]]){
+					violations.add(String.format("Topic %s got %d after %d",topic,evt[1],lastSeen[evt[0]]));
+				}
+				lastSeen[evt[0]] = evt[1];
+				threads.add(Thread.currentThread().getName());
+				received.countDown();
+			});
+		}
+
+		for(int p = 0; p < producers; p++){
+			int producer = p;
+			new Thread(()->{
+				//every producer publishes to its share of the topics
+				for(int seq = 0; seq < events; seq++){
+					for(int t = producer; t < topics; t += producers){
+						eventBus.publish("topic-"+t,new int[]{producer,seq});
+					}
+				}
+			},"sharded-producer-"+p).start();
+		}
+
+		assertTrue("Not all events were received",received.await(30,TimeUnit.SECONDS));
+		assertTrue("Ordering violations "+violations,violations.isEmpty());
+		for(String thread : threads){
+			assertTrue("Delivered outside of a shard thread "+thread,thread.startsWith("sharded-bus-1-shard-"));
+		}
+		assertEquals((long)topics * events,eventBus.getMetrics().getPublished());
+
+		eventBus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_patterns_and_dead_topics_span_all_shards() {
+
+		ShardedBus<Event> eventBus = new ShardedBus<>("sharded-bus-2",4);
+		TestSubscriber<Event> orders = new TestSubscriber<>();
+		TestSubscriber<Event> dead = new TestSubscriber<>();
+		eventBus.subscribeWithObserver("orders.*",DeliveryMode.SYNC,orders);
+		eventBus.subscribeForDeadTopicsWithObserver(DeliveryMode.SYNC,dead);
+
+		for(int i = 0; i < 20; i++){
+			eventBus.publish("orders.region"+i,event("Order"+i));
+			eventBus.publish("nobody"+i,event("Lost"+i));
+		}
+
+		orders.awaitValueCount(20,5000,TimeUnit.MILLISECONDS);
+		dead.awaitValueCount(20,5000,TimeUnit.MILLISECONDS);
+		orders.assertValueCount(20);
+		dead.assertValueCount(20);
+
+		BusMetrics metrics = eventBus.getMetrics();
+		assertEquals(40,metrics.getPublished());
+		assertEquals(20,metrics.getDeadEvents());
+		assertEquals("A subscription spanning the shards is metered per shard",4,metrics.getDeadTopicSubscriptions().size());
+
+		eventBus.unSubscribeAll();
+		orders.awaitTerminalEvent(5000,TimeUnit.MILLISECONDS);
+		orders.assertCompleted();
+		dead.assertCompleted();
+	}
+
+	@Test
+	public void test_topic_handles_and_batches() throws InterruptedException {
+
+		ShardedBus<Event> eventBus = new ShardedBus<>("sharded-bus-3");
+		assertEquals(Runtime.getRuntime().availableProcessors(),eventBus.getShardCount());
+
+		Topic orders = eventBus.topic("Orders");
+		assertSame(orders,eventBus.topic("orders"));
+		List<String> received = new CopyOnWriteArrayList<>();
+		CountDownLatch latch = new CountDownLatch(4);
+		eventBus.subscribe(orders,DeliveryMode.ASYNC,evt->{
+			received.add(evt.getEventName());
+			latch.countDown();
+		});
+
+		eventBus.publish(orders,event("Order0"));
+		eventBus.publishAll("orders",Arrays.asList(event("Order1"),event("Order2")));
+		eventBus.publish("ORDERS",event("Order3"));
+
+		assertTrue("Not all events were received",latch.await(5,TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("Order0","Order1","Order2","Order3"),received);
+
+		eventBus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_request_reply() {
+
+		ShardedBus<Event> eventBus = new ShardedBus<>("sharded-bus-4",2);
+		eventBus.subscribe("quotes",DeliveryMode.SYNC,request->{
+			Map<String,Object> details = new HashMap<>();
+			details.put("price",42);
+			eventBus.reply(request,new Event("Quote",details));
+		});
+
+		TestSubscriber<Event> reply = new TestSubscriber<>();
+		eventBus.request("quotes",event("QuoteRequest"),5,TimeUnit.SECONDS).subscribe(reply);
+		reply.awaitTerminalEvent(5000,TimeUnit.MILLISECONDS);
+		reply.assertValueCount(1);
+		assertEquals(42,reply.getOnNextEvents().get(0).getEventDetails().get("price"));
+
+		eventBus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_a_shard_thread_publishing_to_its_full_queue_does_not_wait_for_itself() throws InterruptedException {
+
+		ShardedBus<Event> eventBus = new ShardedBus<>("sharded-bus-5",1,4);
+		CountDownLatch received = new CountDownLatch(100);
+		eventBus.subscribe("pong",DeliveryMode.SYNC,evt->received.countDown());
+		eventBus.subscribe("ping",DeliveryMode.SYNC,evt->{
+			for(int i = 0; i < 100; i++){
+				eventBus.publish("pong",event("Pong"+i));
+			}
+		});
+
+		eventBus.publish("ping",event("Ping"));
+
+		assertTrue("The shard waited for room in its own queue",received.await(5,TimeUnit.SECONDS));
+		eventBus.unSubscribeAll();
+	}
+
+	/**
+	 * @return the name of the thread of the shard delivering the topic
+	 */
+	private String shardThreadOf(ShardedBus<Event> eventBus, String topic) {
+		List<String> thread = new CopyOnWriteArrayList<>();
+		CountDownLatch delivered = new CountDownLatch(1);
+		BusSubscription probe = eventBus.subscribe(topic,DeliveryMode.SYNC,evt->{
+			thread.add(Thread.currentThread().getName());
+			delivered.countDown();
+		});
+		eventBus.publish(topic,event("Probe"));
+		try{
+			assertTrue("The probe was not delivered",delivered.await(5,TimeUnit.SECONDS));
+		}catch(InterruptedException e){
+			throw new AssertionError(e);
+		}
+		probe.unsubscribe();
+		return thread.get(0);
+	}
+
+	@Test
+	public void test_shards_publishing_to_each_other_do_not_wait_on_each_other() throws InterruptedException {
+
+		ShardedBus<Event> eventBus = new ShardedBus<>("sharded-bus-6",2,4);
+		String left = "left";
+		String right = null;
+		for(int i = 0; right == null; i++){
+			if(!shardThreadOf(eventBus,"right"+i).equals(shardThreadOf(eventBus,left))){
+				right = "right"+i;
+			}
+		}
+
+		int count = 1000;
+		AtomicInteger received = new AtomicInteger();
+		AtomicInteger refused = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(2);
+		for(String[] pair : new String[][]{{left,right},{right,left}}){
+			String other = pair[1];
+			eventBus.subscribe(pair[0],DeliveryMode.SYNC,evt->{
+				if(!evt.getEventName().equals("Start")){
+					received.incrementAndGet();
+					return;
+				}
+				for(int i = 0; i < count; i++){
+					try{
+						eventBus.publish(other,event("Data"+i));
+					}catch(IllegalStateException e){
+						refused.incrementAndGet();
+					}
+				}
+				done.countDown();
+			});
+		}
+
+		eventBus.publish(left,event("Start"));
+		eventBus.publish(right,event("Start"));
+
+		assertTrue("The shards waited on each other",done.await(5,TimeUnit.SECONDS));
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while(received.get() + refused.get() < 2 * count && System.nanoTime() < deadline){
+			Thread.sleep(10);
+		}
+		assertEquals(2 * count,received.get() + refused.get());
+		assertEquals(refused.get(),eventBus.getMetrics().getFailedDispatches());
+
+		eventBus.unSubscribeAll();
+	}
+
+}
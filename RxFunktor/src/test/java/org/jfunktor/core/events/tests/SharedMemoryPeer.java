@@ -0,0 +1,34 @@
+package org.jfunktor.core.events.tests;
+
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jfunktor.core.events.api.Event;
+import org.jfunktor.core.events.impl.JsonEventCodec;
+import org.jfunktor.core.events.impl.RxBus;
+import org.jfunktor.core.events.impl.SharedMemoryTransport;
+import org.jfunktor.core.events.impl.SharedRingConfig;
+
+/**
+ * The other process of {@link SharedMemoryTransportTests}: exports the orders of
+ * its bus to a ring, publishes some and dies without closing anything.
+ * <pre>java -cp ... org.jfunktor.core.events.tests.SharedMemoryPeer ringFile events</pre>
+ */
+public class SharedMemoryPeer {
+
+	public static void main(String[] args) throws Exception {
+		int events = Integer.parseInt(args[1]);
+		RxBus<Event> eventBus = new RxBus<>("peer-bus");
+		SharedMemoryTransport<Event> transport = new SharedMemoryTransport<>("peer",eventBus,new JsonEventCodec());
+		transport.export(new SharedRingConfig(Paths.get(args[0])).withSlots(4096),"orders");
+		for(int i = 0; i < events; i++){
+			Map<String,Object> details = new HashMap<>();
+			details.put("index",i);
+			eventBus.publish("orders",new Event("Order"+i,details));
+		}
+		//as a crash would, the ring is neither closed nor unlocked
+		Runtime.getRuntime().halt(0);
+	}
+
+}
@@ -0,0 +1,190 @@
+package org.jfunktor.core.events.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.jfunktor.core.events.api.Event;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.impl.JsonEventCodec;
+import org.jfunktor.core.events.impl.RxBus;
+import org.jfunktor.core.events.impl.SharedMemoryTransport;
+import org.jfunktor.core.events.impl.SharedRingConfig;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import rx.observers.TestSubscriber;
+
+public class SharedMemoryTransportTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Event order(int index) {
+		Map<String,Object> details = new HashMap<>();
+		details.put("index",index);
+		return new Event("Order"+index,details);
+	}
+
+	private void assertInOrder(List<Event> events, int from) {
+		List<String> names = events.stream().map(evt->evt.getEventName()).collect(Collectors.toList());
+		for(int i = 0; i < names.size(); i++){
+			assertEquals("Events were received out of order","Order"+(from + i),names.get(i));
+		}
+	}
+
+	@Test
+	public void test_exported_topics_reach_the_importing_bus() throws IOException {
+
+		SharedRingConfig ring = new SharedRingConfig(folder.getRoot().toPath().resolve("orders.ring")).withSlots(4096);
+		RxBus<Event> exporting = new RxBus<>("shm-bus-1");
+		RxBus<Event> importing = new RxBus<>("shm-bus-2");
+		TestSubscriber<Event> orders = new TestSubscriber<>();
+		TestSubscriber<Event> payments = new TestSubscriber<>();
+		importing.subscribeWithObserver("orders",DeliveryMode.SYNC,orders);
+		importing.subscribeWithObserver("payments",DeliveryMode.SYNC,payments);
+
+		try(SharedMemoryTransport<Event> exporter = new SharedMemoryTransport<Event>("exporter",exporting,new JsonEventCodec()).export(ring,"orders");
+				SharedMemoryTransport<Event> importer = new SharedMemoryTransport<Event>("importer",importing,new JsonEventCodec()).importFrom(ring)){
+
+			for(int i = 0; i < 1000; i++){
+				exporting.publish("orders",order(i));
+				exporting.publish("payments",order(i));
+			}
+
+			orders.awaitValueCount(1000,5000,TimeUnit.MILLISECONDS);
+			orders.assertValueCount(1000);
+			assertInOrder(orders.getOnNextEvents(),0);
+			assertEquals(999,orders.getOnNextEvents().get(999).getEventDetails().get("index"));
+			payments.assertNoValues();
+			assertEquals(1000,exporter.getExported());
+			assertEquals(1000,importer.getImported());
+			assertEquals(0,importer.getLost());
+		}
+	}
+
+	@Test
+	public void test_lagging_reader_skips_what_was_overwritten() throws IOException, InterruptedException {
+
+		SharedRingConfig ring = new SharedRingConfig(folder.getRoot().toPath().resolve("small.ring")).withSlots(16);
+		RxBus<Event> exporting = new RxBus<>("shm-bus-3");
+		RxBus<Event> importing = new RxBus<>("shm-bus-4");
+		CountDownLatch stuck = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		TestSubscriber<Event> orders = new TestSubscriber<>();
+		importing.subscribe("orders",DeliveryMode.SYNC,evt->{
+			if(evt.getEventName().equals("Order0")){
+				stuck.countDown();
+				try{
+					release.await();
+				}catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+				}
+			}
+			orders.onNext(evt);
+		});
+
+		try(SharedMemoryTransport<Event> exporter = new SharedMemoryTransport<Event>("exporter",exporting,new JsonEventCodec()).export(ring,"orders");
+				SharedMemoryTransport<Event> importer = new SharedMemoryTransport<Event>("importer",importing,new JsonEventCodec()).importFrom(ring)){
+
+			exporting.publish("orders",order(0));
+			assertTrue(stuck.await(5,TimeUnit.SECONDS));
+			//the writer goes round the ring many times while the reader is stuck
+			for(int i = 1; i < 200; i++){
+				exporting.publish("orders",order(i));
+			}
+			release.countDown();
+			exporting.publish("orders",order(200));
+
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while(orders.getOnNextEvents().size() + importer.getLost() < 201 && System.nanoTime() < deadline){
+				Thread.sleep(10);
+			}
+			assertTrue("The reader lost nothing",importer.getLost() > 0);
+			assertEquals(201,orders.getOnNextEvents().size() + importer.getLost());
+
+			//caught up, the reader gets the next events again
+			int received = orders.getOnNextEvents().size();
+			exporting.publish("orders",order(201));
+			orders.awaitValueCount(received + 1,5000,TimeUnit.MILLISECONDS);
+			assertEquals("Order201",orders.getOnNextEvents().get(received).getEventName());
+		}
+	}
+
+	@Test
+	public void test_a_new_writer_carries_on_the_ring() throws IOException {
+
+		SharedRingConfig ring = new SharedRingConfig(folder.getRoot().toPath().resolve("handover.ring")).withSlots(1024);
+		RxBus<Event> exporting = new RxBus<>("shm-bus-5");
+		RxBus<Event> importing = new RxBus<>("shm-bus-6");
+		TestSubscriber<Event> orders = new TestSubscriber<>();
+		importing.subscribeWithObserver("orders",DeliveryMode.SYNC,orders);
+
+		try(SharedMemoryTransport<Event> importer = new SharedMemoryTransport<Event>("importer",importing,new JsonEventCodec()).importFrom(ring)){
+			SharedMemoryTransport<Event> first = new SharedMemoryTransport<Event>("first",exporting,new JsonEventCodec()).export(ring,"orders");
+			try{
+				new SharedMemoryTransport<Event>("second",exporting,new JsonEventCodec()).export(ring,"orders");
+				fail("A ring has a single writer");
+			}catch(IllegalStateException e){
+				//expected
+			}
+			for(int i = 0; i < 50; i++){
+				exporting.publish("orders",order(i));
+			}
+			first.close();
+
+			try(SharedMemoryTransport<Event> second = new SharedMemoryTransport<Event>("second",exporting,new JsonEventCodec()).export(ring,"orders")){
+				for(int i = 50; i < 100; i++){
+					exporting.publish("orders",order(i));
+				}
+				orders.awaitValueCount(100,5000,TimeUnit.MILLISECONDS);
+				orders.assertValueCount(100);
+				assertInOrder(orders.getOnNextEvents(),0);
+			}
+		}
+	}
+
+	@Test
+	public void test_events_cross_processes_and_survive_a_crashed_writer() throws Exception {
+
+		Path file = folder.getRoot().toPath().resolve("peer.ring");
+		SharedRingConfig ring = new SharedRingConfig(file).withSlots(4096);
+		RxBus<Event> importing = new RxBus<>("shm-bus-7");
+		TestSubscriber<Event> orders = new TestSubscriber<>();
+		importing.subscribeWithObserver("orders",DeliveryMode.SYNC,orders);
+
+		try(SharedMemoryTransport<Event> importer = new SharedMemoryTransport<Event>("importer",importing,new JsonEventCodec()).importFrom(ring)){
+			String java = System.getProperty("java.home")+File.separator+"bin"+File.separator+"java";
+			Process peer = new ProcessBuilder(java,"-cp",System.getProperty("java.class.path"),
+					SharedMemoryPeer.class.getName(),file.toString(),"500")
+					.inheritIO()
+					.start();
+			assertTrue("The peer did not finish",peer.waitFor(60,TimeUnit.SECONDS));
+
+			orders.awaitValueCount(500,10000,TimeUnit.MILLISECONDS);
+			orders.assertValueCount(500);
+			assertInOrder(orders.getOnNextEvents(),0);
+
+			//the lock of the dead peer is gone, a writer of this process takes over its ring
+			RxBus<Event> exporting = new RxBus<>("shm-bus-8");
+			try(SharedMemoryTransport<Event> exporter = new SharedMemoryTransport<Event>("exporter",exporting,new JsonEventCodec()).export(ring,"orders")){
+				for(int i = 500; i < 600; i++){
+					exporting.publish("orders",order(i));
+				}
+				orders.awaitValueCount(600,5000,TimeUnit.MILLISECONDS);
+				orders.assertValueCount(600);
+				assertInOrder(orders.getOnNextEvents(),0);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,210 @@
+package org.jfunktor.core.events.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.jfunktor.core.events.api.Event;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.api.EventBus.OverflowPolicy;
+import org.jfunktor.core.events.impl.JsonEventCodec;
+import org.jfunktor.core.events.impl.RxBus;
+import org.jfunktor.core.events.impl.SocketBridge;
+import org.junit.Test;
+
+import rx.observers.TestSubscriber;
+
+public class SocketBridgeTests {
+
+	private static final InetSocketAddress ANY_PORT = new InetSocketAddress(InetAddress.getLoopbackAddress(),0);
+
+	private Event order(int index) {
+		return order(index,"");
+	}
+
+	private Event order(int index, String note) {
+		Map<String,Object> details = new HashMap<>();
+		details.put("index",index);
+		details.put("note",note);
+		return new Event("Order"+index,details);
+	}
+
+	private void assertInOrder(List<Event> events, int from) {
+		List<String> names = events.stream().map(evt->evt.getEventName()).collect(Collectors.toList());
+		for(int i = 0; i < names.size(); i++){
+			assertEquals("Events were received out of order","Order"+(from + i),names.get(i));
+		}
+	}
+
+	private String note(int length) {
+		StringBuilder retVal = new StringBuilder();
+		while(retVal.length() < length){
+			retVal.append("0123456789");
+		}
+		return retVal.toString();
+	}
+
+	@Test
+	public void test_forwarded_topics_reach_the_remote_bus_in_batches() throws IOException {
+
+		RxBus<Event> local = new RxBus<>("bridge-bus-1");
+		RxBus<Event> remote = new RxBus<>("bridge-bus-2");
+		TestSubscriber<Event> orders = new TestSubscriber<>();
+		TestSubscriber<Event> payments = new TestSubscriber<>();
+		remote.subscribeWithObserver("orders",DeliveryMode.SYNC,orders);
+		remote.subscribeWithObserver("payments",DeliveryMode.SYNC,payments);
+
+		try(SocketBridge<Event> receiving = new SocketBridge<Event>("receiving",remote,new JsonEventCodec()).listen(ANY_PORT);
+				SocketBridge<Event> sending = new SocketBridge<Event>("sending",local,new JsonEventCodec()).connect(receiving.getLocalAddress(),"orders")){
+
+			for(int i = 0; i < 10000; i++){
+				local.publish("orders",order(i));
+				local.publish("payments",order(i));
+			}
+
+			orders.awaitValueCount(10000,10000,TimeUnit.MILLISECONDS);
+			orders.assertValueCount(10000);
+			assertInOrder(orders.getOnNextEvents(),0);
+			assertEquals(9999,orders.getOnNextEvents().get(9999).getEventDetails().get("index"));
+			payments.assertNoValues();
+			assertEquals(10000,sending.getSent());
+			assertEquals(10000,receiving.getReceived());
+			assertTrue("Every event was written on its own",sending.getBatches() < sending.getSent());
+		}
+	}
+
+	@Test
+	public void test_a_slow_remote_bus_blocks_the_publisher() throws IOException, InterruptedException {
+
+		RxBus<Event> local = new RxBus<>("bridge-bus-3");
+		RxBus<Event> remote = new RxBus<>("bridge-bus-4");
+		CountDownLatch stuck = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		TestSubscriber<Event> orders = new TestSubscriber<>();
+		remote.subscribe("orders",DeliveryMode.SYNC,evt->{
+			stuck.countDown();
+			try{
+				release.await();
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			orders.onNext(evt);
+		});
+		//well beyond what the socket buffers of both sides hold
+		int count = 20000;
+		String note = note(2000);
+		AtomicInteger published = new AtomicInteger();
+
+		try(SocketBridge<Event> receiving = new SocketBridge<Event>("receiving",remote,new JsonEventCodec()).listen(ANY_PORT);
+				SocketBridge<Event> sending = new SocketBridge<Event>("sending",local,new JsonEventCodec())
+						.connect(receiving.getLocalAddress(),16,OverflowPolicy.BLOCK,"orders")){
+
+			Thread publisher = new Thread(()->{
+				for(int i = 0; i < count; i++){
+					local.publish("orders",order(i,note));
+					published.incrementAndGet();
+				}
+			});
+			publisher.start();
+			assertTrue(stuck.await(5,TimeUnit.SECONDS));
+			publisher.join(1000);
+			assertTrue("The publisher did not wait for the remote bus",publisher.isAlive());
+			assertTrue(published.get() < count);
+
+			release.countDown();
+			publisher.join(30000);
+			orders.awaitValueCount(count,30000,TimeUnit.MILLISECONDS);
+			orders.assertValueCount(count);
+			assertInOrder(orders.getOnNextEvents(),0);
+			assertEquals(0,sending.getDropped());
+		}
+	}
+
+	@Test
+	public void test_a_slow_remote_bus_drops_the_newest_events() throws IOException, InterruptedException {
+
+		RxBus<Event> local = new RxBus<>("bridge-bus-5");
+		RxBus<Event> remote = new RxBus<>("bridge-bus-6");
+		CountDownLatch stuck = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		TestSubscriber<Event> orders = new TestSubscriber<>();
+		remote.subscribe("orders",DeliveryMode.SYNC,evt->{
+			stuck.countDown();
+			try{
+				release.await();
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			orders.onNext(evt);
+		});
+		int count = 20000;
+		String note = note(2000);
+
+		try(SocketBridge<Event> receiving = new SocketBridge<Event>("receiving",remote,new JsonEventCodec()).listen(ANY_PORT);
+				SocketBridge<Event> sending = new SocketBridge<Event>("sending",local,new JsonEventCodec())
+						.connect(receiving.getLocalAddress(),16,OverflowPolicy.DROP_NEWEST,"orders")){
+
+			local.publish("orders",order(0,note));
+			assertTrue(stuck.await(5,TimeUnit.SECONDS));
+			//never waits for the remote bus
+			for(int i = 1; i < count; i++){
+				local.publish("orders",order(i,note));
+			}
+			assertTrue("Nothing was dropped",sending.getDropped() > 0);
+
+			release.countDown();
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while(sending.getSent() + sending.getDropped() < count && System.nanoTime() < deadline){
+				Thread.sleep(10);
+			}
+			assertEquals(count,sending.getSent() + sending.getDropped());
+			orders.awaitValueCount((int)sending.getSent(),10000,TimeUnit.MILLISECONDS);
+			assertEquals(sending.getSent(),orders.getOnNextEvents().size());
+		}
+	}
+
+	@Test
+	public void test_the_connection_is_made_again_after_the_remote_side_restarts() throws IOException, InterruptedException {
+
+		RxBus<Event> local = new RxBus<>("bridge-bus-7");
+		RxBus<Event> remote = new RxBus<>("bridge-bus-8");
+		TestSubscriber<Event> orders = new TestSubscriber<>();
+		remote.subscribeWithObserver("orders",DeliveryMode.SYNC,orders);
+
+		SocketBridge<Event> first = new SocketBridge<Event>("first",remote,new JsonEventCodec()).listen(ANY_PORT);
+		InetSocketAddress address = first.getLocalAddress();
+		try(SocketBridge<Event> sending = new SocketBridge<Event>("sending",local,new JsonEventCodec()).connect(address,"orders")){
+			for(int i = 0; i < 100; i++){
+				local.publish("orders",order(i));
+			}
+			orders.awaitValueCount(100,5000,TimeUnit.MILLISECONDS);
+			orders.assertValueCount(100);
+			first.close();
+
+			try(SocketBridge<Event> second = new SocketBridge<Event>("second",remote,new JsonEventCodec()).listen(address)){
+				//the events written before the sender notices the broken connection are lost
+				int index = 100;
+				long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+				while(second.getReceived() == 0 && System.nanoTime() < deadline){
+					local.publish("orders",order(index++));
+					Thread.sleep(20);
+				}
+				assertTrue("The sender did not connect again",second.getReceived() > 0);
+				int received = orders.getOnNextEvents().size();
+				local.publish("orders",order(index));
+				orders.awaitValueCount(received + 1,5000,TimeUnit.MILLISECONDS);
+				assertEquals("Order"+index,orders.getOnNextEvents().get(received).getEventName());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,122 @@
+package org.jfunktor.core.events.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.jfunktor.core.events.api.Event;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.impl.RxBus;
+import org.jfunktor.core.events.impl.StickyCache;
+import org.junit.Test;
+
+import rx.observers.TestSubscriber;
+
+public class StickyTopicTests {
+
+	private Event event(String name, String key) {
+		Map<String,Object> details = new HashMap<>();
+		details.put("key",key);
+		return new Event(name,details);
+	}
+
+	private List<String> namesOf(TestSubscriber<Event> consumer) {
+		return consumer.getOnNextEvents().stream().map(evt->evt.getEventName()).collect(Collectors.toList());
+	}
+
+	@Test
+	public void test_last_events_delivered_before_live_events() {
+
+		RxBus<Event> bus = new RxBus<>("sticky-bus-1");
+		bus.markSticky("Config",2);
+
+		bus.publish("config",event("Config1","a"));
+		bus.publish("config",event("Config2","a"));
+		bus.publishAll("CONFIG",Arrays.asList(event("Config3","a"),event("Config4","a")));
+
+		TestSubscriber<Event> consumer = new TestSubscriber<>();
+		bus.subscribeWithObserver("config",DeliveryMode.SYNC,consumer);
+
+		bus.publish("config",event("Config5","a"));
+
+		assertEquals(Arrays.asList("Config3","Config4","Config5"),namesOf(consumer));
+	}
+
+	@Test
+	public void test_last_event_per_key() throws InterruptedException {
+
+		RxBus<Event> bus = new RxBus<>("sticky-bus-2",RxBus.PublishMode.PER_TOPIC);
+		bus.markSticky("prices",evt->evt.getEventDetails().get("key"));
+
+		bus.publish("prices",event("EUR1","eur"));
+		bus.publish("prices",event("USD1","usd"));
+		bus.publish("prices",event("EUR2","eur"));
+
+		TestSubscriber<Event> consumer = new TestSubscriber<>();
+		bus.subscribeWithObserver("prices",DeliveryMode.ASYNC,consumer);
+
+		consumer.awaitValueCount(2,5,TimeUnit.SECONDS);
+		assertEquals(Arrays.asList("USD1","EUR2"),namesOf(consumer));
+
+		bus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_budget_evicts_least_recently_used_topics() {
+
+		StickyCache<Event> cache = new StickyCache<>(4);
+		RxBus<Event> bus = new RxBus<>("sticky-bus-3",RxBus.PublishMode.SERIALIZED,null,cache);
+		bus.markSticky("old",3);
+		bus.markSticky("new",3);
+
+		bus.publish("old",event("Old1","a"));
+		bus.publish("old",event("Old2","a"));
+		bus.publish("old",event("Old3","a"));
+		bus.publish("new",event("New1","a"));
+		bus.publish("new",event("New2","a"));
+
+		assertEquals(4,cache.getWeight());
+
+		TestSubscriber<Event> oldConsumer = new TestSubscriber<>();
+		TestSubscriber<Event> newConsumer = new TestSubscriber<>();
+		bus.subscribeWithObserver("old",DeliveryMode.SYNC,oldConsumer);
+		bus.subscribeWithObserver("new",DeliveryMode.SYNC,newConsumer);
+
+		assertEquals(Arrays.asList("Old2","Old3"),namesOf(oldConsumer));
+		assertEquals(Arrays.asList("New1","New2"),namesOf(newConsumer));
+
+		//old was read last, new has to give way now
+		bus.publish("old",event("Old4","a"));
+
+		TestSubscriber<Event> lateConsumer = new TestSubscriber<>();
+		bus.subscribeWithObserver("new",DeliveryMode.SYNC,lateConsumer);
+		assertEquals(Arrays.asList("New2"),namesOf(lateConsumer));
+		assertEquals(4,cache.getWeight());
+	}
+
+	@Test
+	public void test_non_sticky_topics_not_cached() {
+
+		RxBus<Event> bus = new RxBus<>("sticky-bus-4");
+		bus.markSticky("config",1);
+
+		bus.publish("other",event("Other1","a"));
+
+		TestSubscriber<Event> consumer = new TestSubscriber<>();
+		bus.subscribeWithObserver("other",DeliveryMode.SYNC,consumer);
+
+		consumer.assertNoValues();
+		assertEquals(0,bus.getStickyCache().getWeight());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void test_patterns_cannot_be_sticky() {
+		new RxBus<Event>("sticky-bus-5").markSticky("config.*",1);
+	}
+
+}
@@ -0,0 +1,126 @@
+package org.jfunktor.core.events.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jfunktor.core.events.api.BusSubscription;
+import org.jfunktor.core.events.api.Criteria;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
+import org.jfunktor.core.events.impl.RxBus;
+import org.jfunktor.core.events.impl.RxBus.PublishMode;
+import org.junit.Test;
+
+public class SubscriptionChurnTests {
+
+	private static final int PUBLISHED = 200000;
+
+	/**
+	 * Subscribes a new subscriber before letting go of the previous one, each
+	 * time of another kind, so that the topic is never without a subscriber
+	 */
+	private Thread handOver(RxBus<Integer> eventBus, String topic, AtomicBoolean running, LongAdder received) {
+		BusSubscription first = eventBus.subscribe(topic,DeliveryMode.SYNC,evt->received.increment());
+		return new Thread(()->{
+			BusSubscription previous = first;
+			for(int i = 0; running.get(); i++){
+				BusSubscription next = i % 2 == 0
+						? eventBus.subscribe(topic,new Criteria(),DeliveryMode.SYNC,evt->received.increment())
+						: eventBus.subscribe(topic,DeliveryMode.SYNC,evt->received.increment());
+				previous.unsubscribe();
+				previous = next;
+			}
+			previous.unsubscribe();
+		},"churn-handover-"+topic);
+	}
+
+	private void assertNeverDead(RxBus<Integer> eventBus) throws InterruptedException {
+		LongAdder dead = new LongAdder();
+		LongAdder received = new LongAdder();
+		eventBus.subscribeForDeadTopics(DeliveryMode.SYNC,evt->dead.increment());
+
+		AtomicBoolean running = new AtomicBoolean(true);
+		List<Thread> churners = new ArrayList<>();
+		churners.add(handOver(eventBus,"orders",running,received));
+		for(int c = 0; c < 2; c++){
+			//short-lived subscribers coming and going next to the hand over
+			churners.add(new Thread(()->{
+				while(running.get()){
+					eventBus.subscribe("orders",DeliveryMode.SYNC,evt->received.increment()).unsubscribe();
+				}
+			},"churn-transient-"+c));
+		}
+		churners.forEach(Thread::start);
+
+		for(int i = 0; i < PUBLISHED; i++){
+			eventBus.publish("orders",i);
+		}
+		running.set(false);
+		for(Thread churner : churners){
+			churner.join(TimeUnit.SECONDS.toMillis(10));
+		}
+
+		assertEquals("A topic handed over between subscribers was routed as dead",0,dead.sum());
+		assertTrue(received.sum() > 0);
+
+		//every subscriber is gone, so the topic is dead again
+		eventBus.publish("orders",-1);
+		assertEquals(1,dead.sum());
+		eventBus.unSubscribeAll();
+	}
+
+	@Test
+	public void test_serialized_handover_never_routes_to_dead_topics() throws InterruptedException {
+		assertNeverDead(new RxBus<>("churn-bus-1"));
+	}
+
+	@Test
+	public void test_per_topic_handover_never_routes_to_dead_topics() throws InterruptedException {
+		assertNeverDead(new RxBus<>("churn-bus-2",PublishMode.PER_TOPIC));
+	}
+
+	@Test
+	public void test_concurrent_unsubscribe_removes_the_subscriber_once() throws InterruptedException {
+
+		RxBus<Integer> eventBus = new RxBus<>("churn-bus-3");
+		LongAdder dead = new LongAdder();
+		LongAdder received = new LongAdder();
+		eventBus.subscribeForDeadTopics(DeliveryMode.SYNC,evt->dead.increment());
+		eventBus.subscribe("orders",DeliveryMode.SYNC,evt->received.increment());
+
+		for(int round = 0; round < 200; round++){
+			BusSubscription subscription = eventBus.subscribe("orders",DeliveryMode.SYNC,evt->received.increment());
+			CountDownLatch start = new CountDownLatch(1);
+			List<Thread> threads = new ArrayList<>();
+			for(int t = 0; t < 4; t++){
+				Thread thread = new Thread(()->{
+					try{
+						start.await();
+					}catch(InterruptedException e){
+						Thread.currentThread().interrupt();
+					}
+					subscription.unsubscribe();
+				});
+				thread.start();
+				threads.add(thread);
+			}
+			start.countDown();
+			for(Thread thread : threads){
+				thread.join();
+			}
+			assertTrue(subscription.isUnsubscribed());
+		}
+
+		//only the subscriber which was never unsubscribed is left
+		eventBus.publish("orders",1);
+		assertEquals(1,received.sum());
+		assertEquals(0,dead.sum());
+		eventBus.unSubscribeAll();
+	}
+
+}
@@ -1,6 +1,8 @@
 package org.jfunktor.core.rxresource.tests;
 
 import org.jfunktor.core.events.api.Event;
+import org.jfunktor.core.events.api.EventBus;
+import org.jfunktor.core.events.api.EventBus.DeliveryMode;
 import org.jfunktor.core.resource.api.ResourceException;
 import org.jfunktor.core.rx.resource.api.Action;
 import org.jfunktor.core.rx.resource.api.Resource;
@@ -19,7 +21,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -52,6 +58,101 @@ public class ResourceTests {
 			
 	}
 
+	@Test
+	public void test_virtual_action_delivery() throws ResourceException {
+
+		TestSubscriber<Event> subscriber = new TestSubscriber<>();
+		List<String> threads = new CopyOnWriteArrayList<>();
+		Resource<Event> resource = new RxResource("Flight","1.0");
+
+		resource.defineAction("find",event->{return event;}).subscribe(new Subscriber<Event>() {
+			@Override
+			public void onCompleted() {
+				subscriber.onCompleted();
+			}
+			@Override
+			public void onError(Throwable e) {
+				subscriber.onError(e);
+			}
+			@Override
+			public void onNext(Event event) {
+				threads.add(Thread.currentThread().getName());
+				subscriber.onNext(event);
+			}
+		},DeliveryMode.VIRTUAL);
+
+		for(int i = 0; i < 100; i++){
+			Map<String,Object> params = new HashMap<>();
+			params.put("index",i);
+			resource.onNext(new Event("find",params));
+		}
+
+		subscriber.awaitValueCount(100,5,TimeUnit.SECONDS);
+		subscriber.assertNoErrors();
+		List<Event> responseEvents = subscriber.getOnNextEvents();
+		for(int i = 0; i < 100; i++){
+			assertEquals("Events were delivered out of order",i,responseEvents.get(i).getEventDetails().get("index"));
+		}
+		assertFalse("Events were delivered on the publishing thread",threads.contains(Thread.currentThread().getName()));
+	}
+
+	@Test
+	public void test_slow_async_subscriber_buffer_is_bounded() throws ResourceException, InterruptedException {
+
+		TestSubscriber<Event> subscriber = new TestSubscriber<>();
+		CountDownLatch stalled = new CountDownLatch(1);
+		Resource<Event> resource = new RxResource("Flight","1.0");
+
+		resource.defineAction("find",event->{return event;}).subscribe(new Subscriber<Event>() {
+			@Override
+			public void onCompleted() {
+				subscriber.onCompleted();
+			}
+			@Override
+			public void onError(Throwable e) {
+				subscriber.onError(e);
+			}
+			@Override
+			public void onNext(Event event) {
+				try{
+					stalled.await();
+				}catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+				}
+				subscriber.onNext(event);
+			}
+		},DeliveryMode.ASYNC);
+
+		int count = 4 * EventBus.DEFAULT_QUEUE_CAPACITY;
+		for(int i = 0; i < count; i++){
+			Map<String,Object> params = new HashMap<>();
+			params.put("index",i);
+			resource.onNext(new Event("find",params));
+		}
+		stalled.countDown();
+
+		//the newest event is kept, the oldest ones beyond the buffer are dropped
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while(!lastIs(subscriber,count - 1) && System.nanoTime() < deadline){
+			Thread.sleep(10);
+		}
+		subscriber.assertNoErrors();
+		assertTrue("The last event was not delivered",lastIs(subscriber,count - 1));
+		assertTrue(String.format("%d events were buffered for a stalled subscriber",subscriber.getOnNextEvents().size()),
+				subscriber.getOnNextEvents().size() < 2 * EventBus.DEFAULT_QUEUE_CAPACITY);
+	}
+
+	private boolean lastIs(TestSubscriber<Event> subscriber, int index) {
+		List<Event> events = subscriber.getOnNextEvents();
+		return !events.isEmpty() && events.get(events.size() - 1).getEventDetails().get("index").equals(index);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void test_partitioned_action_delivery() throws ResourceException {
+		Resource<Event> resource = new RxResource("Flight","1.0");
+		resource.defineAction("find",event->{return event;}).subscribe(new TestSubscriber<>(),DeliveryMode.PARTITIONED);
+	}
+
 	@Test
 	public void test_simple_resource_immutable_event() throws ResourceException {
 		